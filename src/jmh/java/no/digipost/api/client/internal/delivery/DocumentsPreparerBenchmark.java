@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import no.digipost.api.client.DigipostClientConfig;
+import no.digipost.api.client.pdf.EksempelPdf;
+import no.digipost.api.client.representations.Document;
+import no.digipost.api.client.representations.Message;
+import no.digipost.api.client.representations.NorwegianAddress;
+import no.digipost.api.client.representations.PrintDetails;
+import no.digipost.api.client.representations.PrintRecipient;
+import no.digipost.api.client.security.CryptoUtil;
+import no.digipost.api.client.security.DigipostPublicKey;
+import no.digipost.api.client.security.Encrypter;
+import no.digipost.api.client.security.FakeEncryptionKey;
+import no.digipost.print.validate.PdfValidationSettings;
+import no.digipost.print.validate.PdfValidator;
+import no.digipost.sanitizing.HtmlValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static no.digipost.api.client.representations.FileType.PDF;
+import static org.apache.commons.io.IOUtils.toByteArray;
+
+/**
+ * Reading, validating and encrypting a PDF document for print.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentsPreparerBenchmark {
+
+    @Param({"1", "20"})
+    public int pages;
+
+    private final DocumentsPreparer preparer = new DocumentsPreparer(new PdfValidator(), new HtmlValidator());
+    private final DigipostClientConfig config = DigipostClientConfig.newConfiguration().build();
+    private byte[] pdf;
+    private Encrypter encrypter;
+
+    @Setup
+    public void setup() throws IOException {
+        CryptoUtil.addBouncyCastleProviderAndVerify_AES256_CBC_Support();
+        pdf = toByteArray(pages == 1 ? EksempelPdf.printablePdf1Page() : EksempelPdf.pdf20Pages());
+        encrypter = Encrypter.using(new DigipostPublicKey(FakeEncryptionKey.createFakeEncryptionKey()));
+    }
+
+    @Benchmark
+    public Map<Document, InputStream> prepare() throws IOException {
+        Document document = new Document(UUID.randomUUID(), "Brev", PDF);
+        document.encrypt();
+        Message message = Message.newMessage(UUID.randomUUID(), document)
+                .printDetails(new PrintDetails(
+                        new PrintRecipient("Joe Schmoe", new NorwegianAddress("7845", "Far away")),
+                        new PrintRecipient("Dolly Parton", new NorwegianAddress("8942", "Farther away"))))
+                .build();
+        return preparer.prepare(Collections.singletonMap(document, new ByteArrayInputStream(pdf)), message,
+                encrypter, () -> PdfValidationSettings.CHECK_ALL, config);
+    }
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import no.digipost.api.client.SenderId;
+import no.digipost.api.client.delivery.MessageDeliveryApi;
+import no.digipost.api.client.representations.AddDataLink;
+import no.digipost.api.client.representations.AdditionalData;
+import no.digipost.api.client.representations.Autocomplete;
+import no.digipost.api.client.representations.DigipostAddress;
+import no.digipost.api.client.representations.Document;
+import no.digipost.api.client.representations.Identification;
+import no.digipost.api.client.representations.MayHaveSender;
+import no.digipost.api.client.representations.Message;
+import no.digipost.api.client.representations.MessageDelivery;
+import no.digipost.api.client.representations.MessageRecipient;
+import no.digipost.api.client.representations.Recipients;
+import no.digipost.api.client.representations.accounts.UserAccount;
+import no.digipost.api.client.representations.accounts.UserInformation;
+import no.digipost.api.client.representations.sender.SenderInformation;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.ZonedDateTime;
+import java.util.Random;
+import java.util.UUID;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static no.digipost.api.client.DigipostClientConfig.newConfiguration;
+import static no.digipost.api.client.representations.Channel.DIGIPOST;
+import static no.digipost.api.client.representations.FileType.PDF;
+import static no.digipost.api.client.representations.MessageStatus.COMPLETE;
+
+/**
+ * Assembling and sending a multipart message with a primary document and an attachment of
+ * different sizes. The API is stubbed to only consume the multipart entity, so this measures
+ * the client side overhead of a delivery.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageDelivererBenchmark {
+
+    @Param({"10240", "1048576"})
+    public int documentBytes;
+
+    private byte[] content;
+    private MessageDeliverer deliverer;
+
+    @Setup
+    public void setup() {
+        content = new byte[documentBytes];
+        new Random(42).nextBytes(content);
+        CloseableHttpResponse response = MockfriendlyResponse.MockedResponseBuilder.ok(
+                new MessageDelivery(UUID.randomUUID().toString(), DIGIPOST, COMPLETE, ZonedDateTime.now()));
+        deliverer = new MessageDeliverer(newConfiguration().build(), new ConsumingMessageDeliveryApi(response));
+    }
+
+    @Benchmark
+    public MessageDelivery sendMultipartMessage() {
+        Document primaryDocument = new Document(UUID.randomUUID(), "Hoveddokument", PDF);
+        Document attachment = new Document(UUID.randomUUID(), "Vedlegg", PDF);
+        Message message = Message.newMessage(UUID.randomUUID(), primaryDocument)
+                .recipient(new MessageRecipient(new DigipostAddress("test.testesen#1234")))
+                .attachments(attachment)
+                .build();
+        return deliverer.createMessage(message)
+                .addContent(primaryDocument, new ByteArrayInputStream(content))
+                .addContent(attachment, new ByteArrayInputStream(content))
+                .send();
+    }
+
+
+    private static final class ConsumingMessageDeliveryApi implements MessageDeliveryApi {
+
+        private final CloseableHttpResponse response;
+
+        ConsumingMessageDeliveryApi(CloseableHttpResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public CloseableHttpResponse sendMultipartMessage(HttpEntity multipart) {
+            try {
+                multipart.writeTo(NullOutputStream.NULL_OUTPUT_STREAM);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return response;
+        }
+
+        @Override
+        public CloseableHttpResponse addData(AddDataLink document, AdditionalData data) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Recipients search(String searchString) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Autocomplete searchSuggest(String searchString) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CloseableHttpResponse identifyRecipient(Identification identification) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CloseableHttpResponse identifyAndGetEncryptionKey(Identification identification) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CloseableHttpResponse getEncryptionKey(URI location) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CloseableHttpResponse getEncryptionCertificateForPrint() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SenderInformation getSenderInformation(MayHaveSender message) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SenderInformation getSenderInformation(SenderId senderId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SenderInformation getSenderInformation(String orgnr, String avsenderenhet) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public UserAccount createOrActivateUserAccount(SenderId senderId, UserInformation user) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
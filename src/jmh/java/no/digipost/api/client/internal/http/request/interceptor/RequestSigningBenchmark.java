@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http.request.interceptor;
+
+import no.digipost.api.client.internal.http.Headers;
+import no.digipost.api.client.security.CryptoUtil;
+import no.digipost.api.client.security.Digester;
+import no.digipost.api.client.security.TestCertificate;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.protocol.BasicHttpContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * {@link RequestAuthenticationInterceptor} adding the date, content hash and signature to every request sent to the API.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestSigningBenchmark {
+
+    @Param({"0", "10240", "1048576"})
+    public int contentBytes;
+
+    private byte[] content;
+    private RequestAuthenticationInterceptor authenticationInterceptor;
+
+    @Setup
+    public void setup() {
+        CryptoUtil.addBouncyCastleProviderAndVerify_AES256_CBC_Support();
+        content = new byte[contentBytes];
+        new Random(42).nextBytes(content);
+        RequestContentHashFilter hashFilter = new RequestContentHashFilter(Digester.sha256, Headers.X_Content_SHA256);
+        authenticationInterceptor = new RequestAuthenticationInterceptor(null, Clock.systemDefaultZone(), TestCertificate.get().signer(), hashFilter);
+    }
+
+    @Benchmark
+    public HttpPost signRequest() throws IOException {
+        HttpPost request = newRequest();
+        authenticationInterceptor.process(request, new BasicHttpContext());
+        return request;
+    }
+
+    private HttpPost newRequest() {
+        HttpPost request = new HttpPost("https://api.digipost.no/messages");
+        request.setHeader(Headers.X_Digipost_UserId, "1234");
+        if (contentBytes > 0) {
+            request.setEntity(new ByteArrayEntity(content));
+        }
+        return request;
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http.response.interceptor;
+
+import no.digipost.api.client.internal.http.Headers;
+import no.digipost.api.client.representations.EntryPoint;
+import no.digipost.api.client.security.CryptoUtil;
+import no.digipost.api.client.security.ResponseMessageSignatureUtil;
+import no.digipost.api.client.security.TestCertificate;
+import no.digipost.api.client.util.DateUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.util.encoders.Base64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static org.apache.http.HttpHeaders.DATE;
+
+/**
+ * {@link ResponseVerificationInterceptor} verifying the date, content hash and signature of every response from the API.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseVerificationBenchmark {
+
+    @Param({"0", "10240", "1048576"})
+    public int contentBytes;
+
+    private byte[] content;
+    private Header[] headers;
+    private HttpContext context;
+    private ResponseVerificationInterceptor verificationInterceptor;
+
+    @Setup
+    public void setup() {
+        CryptoUtil.addBouncyCastleProviderAndVerify_AES256_CBC_Support();
+        content = new byte[contentBytes];
+        new Random(42).nextBytes(content);
+
+        Instant now = Instant.now();
+        context = new BasicHttpContext();
+        context.setAttribute("request-path", "/messages");
+        BasicHttpResponse unsigned = newResponse(
+                new BasicHeader(DATE, DateUtils.formatDate(now.atZone(ZoneId.systemDefault()))),
+                new BasicHeader(Headers.X_Digipost_UserId, "1234"),
+                new BasicHeader(Headers.X_Content_SHA256, sha256(content)));
+        String signature = new String(Base64.encode(CryptoUtil.sign(TestCertificate.get().privateKey,
+                ResponseMessageSignatureUtil.getCanonicalResponseRepresentation(new ApacheHttpResponseToVerify(context, unsigned)))));
+        unsigned.addHeader(Headers.X_Digipost_Signature, signature);
+        headers = unsigned.getAllHeaders();
+
+        EntryPoint entryPoint = new EntryPoint(TestCertificate.get().pem());
+        verificationInterceptor = new ResponseVerificationInterceptor(Clock.fixed(now, ZoneId.systemDefault()), () -> entryPoint);
+    }
+
+    @Benchmark
+    public HttpResponse verifyResponse() throws IOException {
+        BasicHttpResponse response = newResponseWithContent();
+        verificationInterceptor.process(response, context);
+        return response;
+    }
+
+    private BasicHttpResponse newResponseWithContent() {
+        BasicHttpResponse response = newResponse(headers);
+        if (contentBytes > 0) {
+            response.setEntity(new ByteArrayEntity(content));
+        }
+        return response;
+    }
+
+    private static BasicHttpResponse newResponse(Header ... headers) {
+        BasicHttpResponse response = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        response.setHeaders(headers);
+        return response;
+    }
+
+    private static String sha256(byte[] content) {
+        SHA256Digest digest = new SHA256Digest();
+        digest.update(content, 0, content.length);
+        byte[] hash = new byte[digest.getDigestSize()];
+        digest.doFinal(hash, 0);
+        return new String(Base64.encode(hash));
+    }
+
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Encryption of documents of different sizes with a recipient's public key, using different
+ * {@link CipherProvider cipher providers}. The streamed encryption is not limited by copying
+ * the result in memory, and shows the throughput of the provider's AES implementation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncrypterBenchmark {
+
+    @Param({"1048576", "10485760", "104857600"})
+    public int documentBytes;
+
+    @Param({"BC", "SunJCE", "fastest"})
+    public String provider;
+
+    private byte[] document;
+    private Encrypter encrypter;
+
+    @Setup
+    public void setup() {
+        CryptoUtil.addBouncyCastleProvider();
+        CipherProvider cipherProvider = "fastest".equals(provider) ? CipherProvider.FASTEST_AVAILABLE : CipherProvider.named(provider);
+        cipherProvider.verifyAes256CbcSupport();
+        document = new byte[documentBytes];
+        new Random(42).nextBytes(document);
+        encrypter = Encrypter.using(new DigipostPublicKey(FakeEncryptionKey.createFakeEncryptionKey()), cipherProvider);
+    }
+
+    @Benchmark
+    public InputStream encrypt() {
+        return encrypter.encrypt(document);
+    }
+
+    @Benchmark
+    public void encryptStreamed() {
+        encrypter.encrypt(new ByteArrayInputStream(document), NULL_OUTPUT_STREAM);
+    }
+
+}
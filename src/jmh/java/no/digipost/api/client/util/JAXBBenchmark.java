@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.util;
+
+import no.digipost.api.client.representations.DigipostAddress;
+import no.digipost.api.client.representations.Document;
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEvents;
+import no.digipost.api.client.representations.Message;
+import no.digipost.api.client.representations.MessageRecipient;
+import no.digipost.api.client.representations.inbox.Inbox;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.bind.JAXB;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static no.digipost.api.client.representations.DocumentEventType.OPENED;
+import static no.digipost.api.client.representations.FileType.PDF;
+import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
+
+/**
+ * Marshalling of messages when sending, and unmarshalling of the lists of document events and inbox documents
+ * when receiving. Responses are unmarshalled using {@link JAXB} by the client, which is benchmarked as well as
+ * using the prepared {@link JAXBContextUtils#jaxbContext JAXBContext}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JAXBBenchmark {
+
+    @Param({"10", "1000"})
+    public int elements;
+
+    private Message message;
+    private byte[] marshalledMessage;
+    private DocumentEvents documentEvents;
+    private byte[] marshalledDocumentEvents;
+    private JAXBContext inboxContext;
+    private Inbox inbox;
+    private byte[] marshalledInbox;
+
+    @Setup
+    public void setup() throws JAXBException {
+        List<Document> attachments = new ArrayList<>();
+        for (int i = 0; i < Math.min(elements, 100); i++) {
+            attachments.add(new Document(UUID.randomUUID(), "Vedlegg " + i, PDF));
+        }
+        message = Message.newMessage(UUID.randomUUID(), new Document(UUID.randomUUID(), "Hoveddokument", PDF))
+                .recipient(new MessageRecipient(new DigipostAddress("test.testesen#1234")))
+                .attachments(attachments)
+                .build();
+        marshalledMessage = marshalMessage().toByteArray();
+
+        List<DocumentEvent> events = new ArrayList<>();
+        for (int i = 0; i < elements; i++) {
+            events.add(new DocumentEvent(UUID.randomUUID(), OPENED, ZonedDateTime.now(), ZonedDateTime.now().minusDays(1)));
+        }
+        documentEvents = new DocumentEvents(events);
+        marshalledDocumentEvents = marshalDocumentEvents().toByteArray();
+
+        inboxContext = JAXBContext.newInstance(Inbox.class);
+        StringBuilder inboxXml = new StringBuilder("<inbox xmlns=\"http://api.digipost.no/schema/v7\">");
+        for (int i = 0; i < elements; i++) {
+            inboxXml.append("<document><id>").append(i).append("</id>")
+                .append("<subject>Brev ").append(i).append("</subject><sender>Avsender AS</sender>")
+                .append("<delivery-time>2019-05-23T10:15:30.000+02:00</delivery-time>")
+                .append("<authentication-level>PASSWORD</authentication-level><content-type>application/pdf</content-type>")
+                .append("<content-uri>https://api.digipost.no/inbox/1234/documents/").append(i).append("/content</content-uri>")
+                .append("<delete-uri>https://api.digipost.no/inbox/1234/documents/").append(i).append("</delete-uri></document>");
+        }
+        marshalledInbox = inboxXml.append("</inbox>").toString().getBytes(UTF_8);
+        inbox = unmarshalInbox();
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream marshalMessage() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JAXBContextUtils.marshal(jaxbContext, message, out);
+        return out;
+    }
+
+    @Benchmark
+    public Message unmarshalMessage() {
+        return JAXBContextUtils.unmarshal(jaxbContext, new ByteArrayInputStream(marshalledMessage), Message.class);
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream marshalDocumentEvents() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JAXBContextUtils.marshal(jaxbContext, documentEvents, out);
+        return out;
+    }
+
+    @Benchmark
+    public DocumentEvents unmarshalDocumentEvents() {
+        return JAXBContextUtils.unmarshal(jaxbContext, new ByteArrayInputStream(marshalledDocumentEvents), DocumentEvents.class);
+    }
+
+    @Benchmark
+    public DocumentEvents unmarshalDocumentEventsWithJAXB() {
+        return JAXB.unmarshal(new ByteArrayInputStream(marshalledDocumentEvents), DocumentEvents.class);
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream marshalInbox() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JAXBContextUtils.marshal(inboxContext, inbox, out);
+        return out;
+    }
+
+    @Benchmark
+    public Inbox unmarshalInbox() {
+        return JAXBContextUtils.unmarshal(inboxContext, new ByteArrayInputStream(marshalledInbox), Inbox.class);
+    }
+
+    @Benchmark
+    public Inbox unmarshalInboxWithJAXB() {
+        return JAXB.unmarshal(new ByteArrayInputStream(marshalledInbox), Inbox.class);
+    }
+
+}
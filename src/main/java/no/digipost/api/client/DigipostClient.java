@@ -15,17 +15,25 @@
  */
 package no.digipost.api.client;
 
+import no.digipost.api.client.delivery.DeliveryPriority;
 import no.digipost.api.client.delivery.MessageDeliveryApi;
+import no.digipost.api.client.delivery.MessageTemplate;
 import no.digipost.api.client.delivery.OngoingDelivery;
+import no.digipost.api.client.delivery.Outbox;
 import no.digipost.api.client.document.DocumentApi;
 import no.digipost.api.client.errorhandling.DigipostClientException;
 import no.digipost.api.client.errorhandling.ErrorCode;
 import no.digipost.api.client.inbox.InboxApi;
 import no.digipost.api.client.internal.ApiServiceImpl;
+import no.digipost.api.client.internal.BulkTasks;
+import no.digipost.api.client.internal.PagedPublisher;
 import no.digipost.api.client.internal.delivery.MessageDeliverer;
 import no.digipost.api.client.representations.AddDataLink;
 import no.digipost.api.client.representations.AdditionalData;
 import no.digipost.api.client.representations.Autocomplete;
+import no.digipost.api.client.representations.Document;
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEventType;
 import no.digipost.api.client.representations.DocumentEvents;
 import no.digipost.api.client.representations.DocumentStatus;
 import no.digipost.api.client.representations.Identification;
@@ -44,14 +52,25 @@ import no.digipost.api.client.util.JAXBContextUtils;
 import no.digipost.http.client3.DigipostHttpClientFactory;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
 
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptySet;
+import static java.util.stream.Collectors.toSet;
 import static no.digipost.api.client.internal.http.response.HttpResponseUtils.checkResponse;
 import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
 
@@ -64,7 +83,7 @@ import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
 public class DigipostClient {
 
     static {
-        CryptoUtil.addBouncyCastleProviderAndVerify_AES256_CBC_Support();
+        CryptoUtil.addBouncyCastleProvider();
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(DigipostClient.class);
@@ -82,19 +101,24 @@ public class DigipostClient {
     }
 
     public DigipostClient(DigipostClientConfig config, BrokerId brokerId, Signer signer, HttpClientBuilder clientBuilder) {
-        this(config, new ApiServiceImpl(config, clientBuilder, brokerId, signer));
+        this(config, brokerId, new ApiServiceImpl(config, clientBuilder, brokerId, signer));
     }
 
-    private DigipostClient(DigipostClientConfig config, ApiServiceImpl apiService) {
-        this(config, apiService, apiService, apiService);
+    private DigipostClient(DigipostClientConfig config, BrokerId brokerId, ApiServiceImpl apiService) {
+        this(config, brokerId, apiService, apiService, apiService);
     }
 
     public DigipostClient(DigipostClientConfig config, MessageDeliveryApi apiService, InboxApi inboxApiService, DocumentApi documentApi) {
+        this(config, null, apiService, inboxApiService, documentApi);
+    }
+
+    private DigipostClient(DigipostClientConfig config, BrokerId brokerId, MessageDeliveryApi apiService, InboxApi inboxApiService, DocumentApi documentApi) {
         this.messageApi = apiService;
         this.inboxApiService = inboxApiService;
         this.documentApi = documentApi;
 
-        this.messageSender = new MessageDeliverer(config, apiService);
+        config.cipherProvider.verifyAes256CbcSupport();
+        this.messageSender = new MessageDeliverer(config, apiService, brokerId);
 
         this.eventLogger = config.eventLogger.withDebugLogTo(LOG);
     }
@@ -110,6 +134,40 @@ public class DigipostClient {
         return messageSender.createMessage(message);
     }
 
+    /**
+     * Oppretter en forsendelse med gitt prioritet. Masseutsendelser bør sendes med
+     * {@link DeliveryPriority#BULK}, slik at de ikke forsinker interaktive forsendelser
+     * når klienten er konfigurert med
+     * {@link no.digipost.api.client.DigipostClientConfig.Builder#priorityLanes(int, int) prioriterte køer}.
+     *
+     * @see #createMessage(Message)
+     */
+    public OngoingDelivery.WithPrintFallback createMessage(final Message message, DeliveryPriority priority) {
+        return messageSender.createMessage(message, priority);
+    }
+
+    /**
+     * Oppretter en mal for å sende de samme dokumentene til mange mottakere. Innholdet i dokumentene
+     * leses inn og valideres kun én gang, og hver sending gjør kun det som er spesifikt for mottakeren.
+     * Malen må {@link MessageTemplate#close() lukkes} når den ikke skal brukes mer.
+     *
+     * @see MessageTemplate
+     */
+    public MessageTemplate.Builder createMessageTemplate(Document primaryDocument, Document ... attachments) {
+        return messageSender.createMessageTemplate(primaryDocument, asList(attachments));
+    }
+
+    /**
+     * Oppretter en utboks som lagrer forsendelser i en katalog før de sendes i bakgrunnen, slik at de
+     * blir levert selv om applikasjonen stopper. Forsendelser som ligger igjen i katalogen fra før,
+     * sendes når utboksen åpnes.
+     *
+     * @see Outbox
+     */
+    public Outbox.Builder newOutbox(Path directory) {
+        return messageSender.newOutbox(directory);
+    }
+
     /**
      * Opprette forsendelse som skal gå direkte til print og videre til utsending
      * gjennom vanlig postgang. Krever at avsender har tilgang til å sende direkte
@@ -119,6 +177,16 @@ public class DigipostClient {
         return messageSender.createPrintOnlyMessage(printMessage);
     }
 
+    /**
+     * Oppretter en forsendelse direkte til print med gitt prioritet.
+     *
+     * @see #createPrintOnlyMessage(Message)
+     * @see #createMessage(Message, DeliveryPriority)
+     */
+    public OngoingDelivery.ForPrintOnly createPrintOnlyMessage(final Message printMessage, DeliveryPriority priority) {
+        return messageSender.createPrintOnlyMessage(printMessage, priority);
+    }
+
     public IdentificationResult identifyRecipient(final Identification identification) {
         try (CloseableHttpResponse response = messageApi.identifyRecipient(identification)) {
             checkResponse(response, eventLogger);
@@ -148,6 +216,47 @@ public class DigipostClient {
         return documentApi.getDocumentEvents(organisation, partId, from, to, offset, maxResults);
     }
 
+    /**
+     * Henter hendelser, og gir hendelsene av de angitte typene til {@code consumer} én og én etter hvert som de
+     * leses fra responsen. Minnebruken er den samme uansett {@code maxResults}.
+     *
+     * @return antall hendelser i responsen, inkludert de som ble hoppet over
+     * @see DocumentApi#getDocumentEvents(String, String, ZonedDateTime, ZonedDateTime, int, int, Set, Consumer)
+     */
+    public int getDocumentEvents(ZonedDateTime from, ZonedDateTime to, int offset, int maxResults, Set<DocumentEventType> types, Consumer<? super DocumentEvent> consumer) {
+        return getDocumentEvents(null, null, from, to, offset, maxResults, types, consumer);
+    }
+
+    /**
+     * @see #getDocumentEvents(ZonedDateTime, ZonedDateTime, int, int, Set, Consumer)
+     */
+    public int getDocumentEvents(String organisation, String partId, ZonedDateTime from, ZonedDateTime to, int offset, int maxResults,
+                                 Set<DocumentEventType> types, Consumer<? super DocumentEvent> consumer) {
+        return documentApi.getDocumentEvents(organisation, partId, from, to, offset, maxResults, types, consumer);
+    }
+
+    /**
+     * Publish the document events in a period, e.g. to a backpressured pipeline. The events are fetched
+     * one page at a time, and only when the subscriber has requested more events than it has been given.
+     * Fetching the next page overlaps with the subscriber processing the events of the current one, and
+     * cancelling the subscription aborts any request in flight.
+     *
+     * @param pageSize the number of events to fetch with each request
+     * @see #getDocumentEvents(ZonedDateTime, ZonedDateTime, int, int)
+     */
+    public Publisher<DocumentEvent> publishDocumentEvents(ZonedDateTime from, ZonedDateTime to, int pageSize) {
+        return publishDocumentEvents(null, null, from, to, pageSize);
+    }
+
+    /**
+     * Publish the document events of an organisation in a period.
+     *
+     * @see #publishDocumentEvents(ZonedDateTime, ZonedDateTime, int)
+     */
+    public Publisher<DocumentEvent> publishDocumentEvents(String organisation, String partId, ZonedDateTime from, ZonedDateTime to, int pageSize) {
+        return new PagedPublisher<>((offset, limit) -> getDocumentEvents(organisation, partId, from, to, offset, limit).getEvents(), pageSize);
+    }
+
     /**
      * Hent informasjon om en gitt avsender. Kan enten be om informasjon om
      * "deg selv", eller en avsender du har fullmakt til å sende post for.
@@ -193,6 +302,22 @@ public class DigipostClient {
         return documentApi.getDocumentStatus(senderId, uuid);
     }
 
+    /**
+     * Get the status of many documents. The statuses are fetched concurrently, and on Java 21 or later
+     * every request is done in its own virtual thread.
+     *
+     * @return the status of each document, in the same order as the given uuids
+     */
+    public Map<UUID, DocumentStatus> getDocumentStatuses(SenderId senderId, Collection<UUID> uuids) {
+        List<DocumentStatus> statuses = BulkTasks.map(uuids, uuid -> documentApi.getDocumentStatus(senderId, uuid));
+        Map<UUID, DocumentStatus> statusesByUuid = new LinkedHashMap<>();
+        int i = 0;
+        for (UUID uuid : uuids) {
+            statusesByUuid.put(uuid, statuses.get(i++));
+        }
+        return statusesByUuid;
+    }
+
     public InputStream getContent(String path) {
         return documentApi.getDocumentContent(path);
     }
@@ -219,6 +344,33 @@ public class DigipostClient {
         return inboxApiService.getInbox(senderId, offset, limit);
     }
 
+    /**
+     * Get documents from the inbox for the organisation represented by senderId, and give them to the consumer
+     * one at a time as they are read from the response. The memory used is the same regardless of the limit.
+     *
+     * @param senderId Either an organisation that you operate on behalf of or your brokerId
+     * @param offset Number of documents to skip. For pagination
+     * @param limit Maximum number of documents to retrieve (max 1000)
+     * @param consumer Is given each document
+     * @return The number of documents in the response
+     */
+    public int getInbox(SenderId senderId, int offset, int limit, Consumer<? super InboxDocument> consumer) {
+        return inboxApiService.getInbox(senderId, offset, limit, consumer);
+    }
+
+    /**
+     * Publish the documents in the inbox for the organisation represented by senderId, e.g. to a backpressured
+     * pipeline. The documents are fetched one page at a time, and only when the subscriber has requested more
+     * documents than it has been given. Fetching the next page overlaps with the subscriber processing the
+     * documents of the current one, and cancelling the subscription aborts any request in flight.
+     *
+     * @param senderId Either an organisation that you operate on behalf of or your brokerId
+     * @param pageSize The number of documents to fetch with each request (max 1000)
+     */
+    public Publisher<InboxDocument> publishInbox(SenderId senderId, int pageSize) {
+        return new PagedPublisher<>((offset, limit) -> getInbox(senderId, offset, limit).documents, pageSize);
+    }
+
     /**
      * Get the content of a document as a stream. The content is streamed from the server so remember to
      * close the stream to prevent connection leaks.
@@ -239,6 +391,37 @@ public class DigipostClient {
         inboxApiService.deleteInboxDocument(inboxDocument);
     }
 
+    /**
+     * Process and delete every document in the inbox for the organisation represented by senderId. The
+     * documents are fetched 100 at a time, and given to the handler concurrently, which on Java 21 or later
+     * means in a virtual thread for each document. A document is deleted when the handler returns normally.
+     * If the handler fails for any of the documents, the draining stops, and the failure is thrown when the
+     * documents fetched together with it have been handled. The failed document is left in the inbox.
+     * Should the inbox still contain only documents which have already been handled and deleted, the
+     * draining stops with an error, instead of handling the same documents again and again.
+     *
+     * @param senderId Either an organisation that you operate on behalf of or your brokerId
+     * @param handler Processes each document, e.g. with {@link #getInboxDocumentContent(InboxDocument)}
+     * @return The number of documents which were handled and deleted
+     */
+    public int drainInbox(SenderId senderId, Consumer<? super InboxDocument> handler) {
+        int drained = 0;
+        Set<Long> deleted = emptySet();
+        for (List<InboxDocument> documents = getInbox(senderId).documents; !documents.isEmpty(); documents = getInbox(senderId).documents) {
+            if (documents.stream().map(InboxDocument::getId).allMatch(deleted::contains)) {
+                throw new DigipostClientException(ErrorCode.SERVER_ERROR,
+                        "The " + documents.size() + " documents deleted from the inbox of " + senderId + " are still in the inbox, stopping after " + drained + " documents");
+            }
+            BulkTasks.forEach(documents, document -> {
+                handler.accept(document);
+                deleteInboxDocument(document);
+            });
+            drained += documents.size();
+            deleted = documents.stream().map(InboxDocument::getId).collect(toSet());
+        }
+        return drained;
+    }
+
     public UserAccount createOrActivateUserAccount(SenderId senderId, UserInformation user) {
         return messageApi.createOrActivateUserAccount(senderId, user);
     }
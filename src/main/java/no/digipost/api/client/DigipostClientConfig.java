@@ -15,10 +15,23 @@
  */
 package no.digipost.api.client;
 
+import no.digipost.api.client.metrics.ClientMetrics;
+import no.digipost.api.client.representations.SenderOrganization;
+import no.digipost.api.client.security.CipherProvider;
+
 import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Clock;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
 import static java.util.Objects.requireNonNull;
 
 public final class DigipostClientConfig {
@@ -31,8 +44,24 @@ public final class DigipostClientConfig {
         private Duration printKeyCacheTimeToLive = Duration.ofMinutes(5);
         private URI digipostApiUri = URI.create("https://api.digipost.no");
         private EventLogger eventLogger = EventLogger.NOOP_LOGGER;
+        private ClientMetrics metrics = ClientMetrics.NOOP;
         private Clock clock = Clock.systemDefaultZone();
         private boolean failOnHtmlDiff = false;
+        private boolean eagerlyLoadEntryPoint = false;
+        private Duration entryPointCacheRefreshInterval = Duration.ofMinutes(5);
+        private Duration senderInformationCacheTimeToLive = Duration.ofMinutes(5);
+        private final List<SenderId> preloadedSenders = new ArrayList<>();
+        private int contentSpoolingThreshold = Integer.MAX_VALUE;
+        private Path contentSpoolingDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+        private boolean computeContentHash = false;
+        private int initialConcurrencyLimit = 0;
+        private int maxConcurrencyLimit = 0;
+        private int priorityLaneCapacity = 0;
+        private int reservedInteractiveCapacity = 0;
+        private int fairSchedulingConcurrency = 0;
+        private CipherProvider cipherProvider = CipherProvider.BOUNCY_CASTLE;
+        private final Map<SenderId, Integer> senderIdShares = new HashMap<>();
+        private final Map<SenderOrganization, Integer> senderOrganizationShares = new HashMap<>();
 
         private Builder() {
         }
@@ -56,18 +85,203 @@ public final class DigipostClientConfig {
             return this;
         }
 
+        /**
+         * Fetch the entry point of the Digipost API when the client is created, instead of on the first request.
+         * The entry point is afterwards refreshed in the background, so no request will have to wait for it.
+         */
+        public Builder eagerlyLoadEntryPoint() {
+            this.eagerlyLoadEntryPoint = true;
+            return this;
+        }
+
+        /**
+         * How long a fetched entry point is used before it is refreshed. The refresh is done in the
+         * background, while the previously fetched entry point is still in use.
+         */
+        public Builder entryPointCacheRefreshInterval(Duration refreshInterval) {
+            this.entryPointCacheRefreshInterval = refreshInterval;
+            return this;
+        }
+
+        /**
+         * How long fetched sender information is used before it is refreshed. The refresh is done in the
+         * background, while the previously fetched information is still in use.
+         */
+        public Builder senderInformationCacheTimeToLive(Duration timeToLive) {
+            this.senderInformationCacheTimeToLive = timeToLive;
+            return this;
+        }
+
+        /**
+         * Fetch information about the given senders when the client is created, instead of when first sending
+         * a message on behalf of each of them. Preloaded sender information is kept for as long as the client lives.
+         */
+        public Builder preloadSenderInformation(SenderId ... senderIds) {
+            this.preloadedSenders.addAll(asList(senderIds));
+            return this;
+        }
+
+        /**
+         * Spool document content larger than the given threshold to temporary files while sending a message,
+         * instead of keeping it in memory. This applies both to the content as given and to encrypted content.
+         * The files are deleted when the message has been sent. By default, all content is kept in memory.
+         * The files are created in the directory given by the system property {@code java.io.tmpdir}.
+         *
+         * @param thresholdBytes the size above which content is spooled to disk
+         */
+        public Builder spoolContentToDiskAbove(int thresholdBytes) {
+            return spoolContentToDiskAbove(thresholdBytes, contentSpoolingDirectory);
+        }
+
+        /**
+         * Spool document content larger than the given threshold to temporary files in the given directory.
+         *
+         * @see #spoolContentToDiskAbove(int)
+         */
+        public Builder spoolContentToDiskAbove(int thresholdBytes, Path directory) {
+            this.contentSpoolingThreshold = thresholdBytes;
+            this.contentSpoolingDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Set the {@link no.digipost.api.client.representations.Document#getContentHash() content hash} of each
+         * document which does not already have one, to the SHA-256 hash of the content as given, i.e. before any
+         * encryption. The hash is computed while the content is read, so it does not require an extra pass over
+         * content given as a stream. The hash can later be compared to the one in
+         * {@link no.digipost.api.client.representations.DocumentStatus#contentHash the document status}.
+         */
+        public Builder computeContentHash() {
+            this.computeContentHash = true;
+            return this;
+        }
+
+        /**
+         * Limit the number of concurrent requests to the Digipost API, and adapt the limit to how the API responds.
+         * The limit is raised while responses are successful and latency is stable, and is cut sharply when the API
+         * responds with {@code 503 Service Unavailable}, requests time out, or the latency increases. Requests which
+         * would exceed the limit wait until a request in flight completes. The current limit is reported to
+         * {@link no.digipost.api.client.metrics.ClientMetrics#concurrencyLimitChanged(int) the metrics}.
+         * By default, the number of concurrent requests is not limited by the client.
+         *
+         * @param initialLimit the number of concurrent requests allowed before any responses are received
+         * @param maxLimit the highest number of concurrent requests which will ever be allowed
+         */
+        public Builder adaptiveConcurrencyLimit(int initialLimit, int maxLimit) {
+            if (initialLimit < 1 || maxLimit < initialLimit) {
+                throw new IllegalArgumentException("initialLimit must be at least 1, and maxLimit at least initialLimit, but got " + initialLimit + " and " + maxLimit);
+            }
+            this.initialConcurrencyLimit = initialLimit;
+            this.maxConcurrencyLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Share the given number of concurrent requests to the Digipost API between
+         * {@link no.digipost.api.client.delivery.DeliveryPriority priorities}. Messages sent with
+         * {@link no.digipost.api.client.delivery.DeliveryPriority#BULK bulk priority} may only use the capacity not
+         * reserved for interactive messages, and wait as long as any interactive message is waiting. The requests made
+         * as part of sending a message, e.g. identifying the recipient or fetching the print encryption certificate, have
+         * the priority of the message. Any other request, e.g. searching for recipients, is interactive. The capacity should not exceed the number of connections of
+         * the HTTP client. Combined with an {@link #adaptiveConcurrencyLimit(int, int) adaptive concurrency limit},
+         * the capacity is never above the current limit. The number of waiting requests of each priority is reported to
+         * {@link no.digipost.api.client.metrics.ClientMetrics#queuedRequestsChanged(no.digipost.api.client.delivery.DeliveryPriority, int) the metrics}.
+         *
+         * @param capacity the number of requests which may be in flight at the same time
+         * @param reservedForInteractive how many of these requests only interactive messages may use
+         */
+        public Builder priorityLanes(int capacity, int reservedForInteractive) {
+            if (capacity < 1 || reservedForInteractive < 0 || reservedForInteractive >= capacity) {
+                throw new IllegalArgumentException("capacity must be at least 1, and larger than reservedForInteractive, but got " + capacity + " and " + reservedForInteractive);
+            }
+            this.priorityLaneCapacity = capacity;
+            this.reservedInteractiveCapacity = reservedForInteractive;
+            return this;
+        }
+
+        /**
+         * Deliver at most the given number of messages at the same time, and share this capacity fairly between the
+         * {@link no.digipost.api.client.representations.sender.AuthorialSender authorial senders} of the messages.
+         * Each sender has its own queue of messages waiting to be delivered, and the senders with waiting messages take
+         * turns using weighted round-robin, according to their {@link #senderShare(SenderId, int) shares}. A sender with a
+         * large batch of messages will then not hold back the messages of other senders. This is intended for brokers
+         * sending on behalf of many senders. The queue of each sender is reported to
+         * {@link no.digipost.api.client.metrics.ClientMetrics#senderDeliveryQueued(no.digipost.api.client.representations.sender.AuthorialSender) the metrics}.
+         *
+         * @param concurrency the number of messages which may be delivered at the same time
+         */
+        public Builder fairSenderScheduling(int concurrency) {
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("concurrency must be at least 1, but was " + concurrency);
+            }
+            this.fairSchedulingConcurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * The share of a sender when {@link #fairSenderScheduling(int) scheduling deliveries fairly}. A sender with
+         * share {@code 2} gets twice as many of its messages delivered as each sender with the default share {@code 1},
+         * as long as they all have messages waiting.
+         */
+        public Builder senderShare(SenderId sender, int share) {
+            this.senderIdShares.put(sender, requirePositiveShare(share));
+            return this;
+        }
+
+        /**
+         * The share of a sender organization when {@link #fairSenderScheduling(int) scheduling deliveries fairly}.
+         *
+         * @see #senderShare(SenderId, int)
+         */
+        public Builder senderShare(SenderOrganization sender, int share) {
+            this.senderOrganizationShares.put(sender, requirePositiveShare(share));
+            return this;
+        }
+
+        private static int requirePositiveShare(int share) {
+            if (share < 1) {
+                throw new IllegalArgumentException("share must be at least 1, but was " + share);
+            }
+            return share;
+        }
+
+        /**
+         * The security provider used to encrypt documents with AES256-CBC, before they are sent to Digipost.
+         * By default, documents are encrypted with {@link CipherProvider#BOUNCY_CASTLE BouncyCastle}. Use
+         * {@link CipherProvider#JDK_IF_SUPPORTED} to encrypt with the JDK's own {@code SunJCE} provider, which on
+         * modern CPUs is considerably faster, or {@link CipherProvider#FASTEST_AVAILABLE} to select the provider
+         * by timing the registered ones when the client is created.
+         */
+        public Builder cipherProvider(CipherProvider cipherProvider) {
+            this.cipherProvider = requireNonNull(cipherProvider, "cipherProvider can not be null");
+            return this;
+        }
+
         public Builder eventLogger(EventLogger eventLogger) {
             this.eventLogger = eventLogger;
             return this;
         }
 
+        /**
+         * Report measurements of the requests sent to the Digipost API, e.g. latencies, sizes and failures.
+         *
+         * @see no.digipost.api.client.metrics.InMemoryClientMetrics
+         */
+        public Builder metrics(ClientMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
         public Builder clock(Clock clock) {
             this.clock = clock;
             return this;
         }
 
         public DigipostClientConfig build() {
-            return new DigipostClientConfig(digipostApiUri, printKeyCacheTimeToLive, eventLogger, clock, failOnHtmlDiff);
+            return new DigipostClientConfig(digipostApiUri, printKeyCacheTimeToLive, eventLogger, metrics, clock, failOnHtmlDiff,
+                    eagerlyLoadEntryPoint, entryPointCacheRefreshInterval, senderInformationCacheTimeToLive, preloadedSenders, contentSpoolingThreshold, contentSpoolingDirectory,
+                    computeContentHash, initialConcurrencyLimit, maxConcurrencyLimit, priorityLaneCapacity, reservedInteractiveCapacity,
+                    fairSchedulingConcurrency, senderIdShares, senderOrganizationShares, cipherProvider);
         }
     }
 
@@ -78,15 +292,52 @@ public final class DigipostClientConfig {
     public final URI digipostApiUri;
     public final Duration printKeyCacheTimeToLive;
     public final EventLogger eventLogger;
+    public final ClientMetrics metrics;
     public final Clock clock;
     public final boolean failOnHtmlDiff;
+    public final boolean eagerlyLoadEntryPoint;
+    public final Duration entryPointCacheRefreshInterval;
+    public final Duration senderInformationCacheTimeToLive;
+    public final List<SenderId> preloadedSenders;
+    public final int contentSpoolingThreshold;
+    public final Path contentSpoolingDirectory;
+    public final boolean computeContentHash;
+    public final int initialConcurrencyLimit;
+    public final int maxConcurrencyLimit;
+    public final int priorityLaneCapacity;
+    public final int reservedInteractiveCapacity;
+    public final int fairSchedulingConcurrency;
+    public final Map<SenderId, Integer> senderIdShares;
+    public final Map<SenderOrganization, Integer> senderOrganizationShares;
+    public final CipherProvider cipherProvider;
 
-    private DigipostClientConfig(URI digipostApiUri, Duration printKeyCacheTimeToLive, EventLogger eventLogger, Clock clock, boolean failOnHtmlDiff) {
+    private DigipostClientConfig(URI digipostApiUri, Duration printKeyCacheTimeToLive, EventLogger eventLogger, ClientMetrics metrics, Clock clock, boolean failOnHtmlDiff,
+                                 boolean eagerlyLoadEntryPoint, Duration entryPointCacheRefreshInterval, Duration senderInformationCacheTimeToLive, List<SenderId> preloadedSenders,
+                                 int contentSpoolingThreshold, Path contentSpoolingDirectory, boolean computeContentHash,
+                                 int initialConcurrencyLimit, int maxConcurrencyLimit, int priorityLaneCapacity, int reservedInteractiveCapacity,
+                                 int fairSchedulingConcurrency, Map<SenderId, Integer> senderIdShares, Map<SenderOrganization, Integer> senderOrganizationShares,
+                                 CipherProvider cipherProvider) {
         this.digipostApiUri = requireNonNull(digipostApiUri, "digipostApiUri cat not be null");
         this.printKeyCacheTimeToLive = requireNonNull(printKeyCacheTimeToLive, "printKeyCacheTimeToLive can not be null");
         this.eventLogger = requireNonNull(eventLogger, "eventLogger can not be null");
+        this.metrics = requireNonNull(metrics, "metrics can not be null");
         this.clock = clock;
         this.failOnHtmlDiff = failOnHtmlDiff;
+        this.eagerlyLoadEntryPoint = eagerlyLoadEntryPoint;
+        this.entryPointCacheRefreshInterval = requireNonNull(entryPointCacheRefreshInterval, "entryPointCacheRefreshInterval can not be null");
+        this.senderInformationCacheTimeToLive = requireNonNull(senderInformationCacheTimeToLive, "senderInformationCacheTimeToLive can not be null");
+        this.preloadedSenders = unmodifiableList(new ArrayList<>(preloadedSenders));
+        this.contentSpoolingThreshold = contentSpoolingThreshold;
+        this.contentSpoolingDirectory = requireNonNull(contentSpoolingDirectory, "contentSpoolingDirectory can not be null");
+        this.computeContentHash = computeContentHash;
+        this.initialConcurrencyLimit = initialConcurrencyLimit;
+        this.maxConcurrencyLimit = maxConcurrencyLimit;
+        this.priorityLaneCapacity = priorityLaneCapacity;
+        this.reservedInteractiveCapacity = reservedInteractiveCapacity;
+        this.fairSchedulingConcurrency = fairSchedulingConcurrency;
+        this.senderIdShares = unmodifiableMap(new HashMap<>(senderIdShares));
+        this.senderOrganizationShares = unmodifiableMap(new HashMap<>(senderOrganizationShares));
+        this.cipherProvider = cipherProvider;
     }
 
 }
@@ -17,16 +17,53 @@ package no.digipost.api.client;
 
 import org.slf4j.Logger;
 
+import java.util.function.Supplier;
+
 public interface EventLogger {
-    EventLogger NOOP_LOGGER = eventText -> {};
+    EventLogger NOOP_LOGGER = new EventLogger() {
+        @Override
+        public void log(String logMessage) {
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
 
     void log(String logMessage);
 
+    /**
+     * @return whether logged messages are used for anything. Messages which are costly to
+     *         create should only be created when this is {@code true}, or be logged with
+     *         {@link #log(Supplier)}.
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Log a message which is only created if this logger {@link #isEnabled() is enabled}.
+     */
+    default void log(Supplier<String> logMessage) {
+        if (isEnabled()) {
+            log(logMessage.get());
+        }
+    }
+
     default EventLogger withDebugLogTo(Logger slf4jLogger) {
         EventLogger nested = EventLogger.this;
-        return logMessage -> {
-            slf4jLogger.debug(logMessage);
-            nested.log(logMessage);
+        return new EventLogger() {
+            @Override
+            public void log(String logMessage) {
+                slf4jLogger.debug(logMessage);
+                nested.log(logMessage);
+            }
+
+            @Override
+            public boolean isEnabled() {
+                return slf4jLogger.isDebugEnabled() || nested.isEnabled();
+            }
         };
     }
 }
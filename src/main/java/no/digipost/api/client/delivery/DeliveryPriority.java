@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.delivery;
+
+/**
+ * Prioritet for sending av en forsendelse. Dersom klienten er konfigurert med
+ * {@link no.digipost.api.client.DigipostClientConfig.Builder#priorityLanes(int, int) prioriterte køer},
+ * er en andel av kapasiteten reservert for {@link #INTERACTIVE interaktive} forsendelser, mens
+ * {@link #BULK masseutsendelser} bruker det som er igjen.
+ */
+public enum DeliveryPriority {
+
+    /**
+     * Forsendelser som noen venter på, f.eks. et enkelt brev fra en saksbehandler. Dette er standard.
+     */
+    INTERACTIVE,
+
+    /**
+     * Forsendelser i store mengder, f.eks. fra en nattlig jobb, som må vike for interaktive forsendelser.
+     */
+    BULK
+
+}
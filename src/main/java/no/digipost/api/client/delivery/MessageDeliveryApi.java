@@ -51,6 +51,14 @@ public interface MessageDeliveryApi {
      */
     CloseableHttpResponse sendMultipartMessage(HttpEntity multipart);
 
+    /**
+     * Oppretter og sender en multipartforsendelse med gitt prioritet. Implementasjoner uten
+     * prioriterte køer sender alle forsendelser likt.
+     */
+    default CloseableHttpResponse sendMultipartMessage(HttpEntity multipart, DeliveryPriority priority) {
+        return sendMultipartMessage(multipart);
+    }
+
     /**
      * Legger til ytterligere data til et dokument.
      * Det er en forutsetning at dokumentet har datatype fra tidligere.
@@ -71,6 +79,16 @@ public interface MessageDeliveryApi {
      */
     CloseableHttpResponse identifyAndGetEncryptionKey(Identification identification);
 
+    /**
+     * Identifiserer mottaker og henter krypteringsnøkkel med gitt prioritet, som en del av
+     * en forsendelse med denne prioriteten.
+     *
+     * @see #identifyAndGetEncryptionKey(Identification)
+     */
+    default CloseableHttpResponse identifyAndGetEncryptionKey(Identification identification, DeliveryPriority priority) {
+        return identifyAndGetEncryptionKey(identification);
+    }
+
 
     CloseableHttpResponse getEncryptionKey(URI location);
 
@@ -79,6 +97,16 @@ public interface MessageDeliveryApi {
      */
     CloseableHttpResponse getEncryptionCertificateForPrint();
 
+    /**
+     * Henter public krypteringsnøkkel for print med gitt prioritet, som en del av
+     * en forsendelse med denne prioriteten.
+     *
+     * @see #getEncryptionCertificateForPrint()
+     */
+    default CloseableHttpResponse getEncryptionCertificateForPrint(DeliveryPriority priority) {
+        return getEncryptionCertificateForPrint();
+    }
+
     /**
      * Henter informasjon om en faktisk avsender av en melding, altså
      * det mottaker ser som avsender.
@@ -87,6 +115,16 @@ public interface MessageDeliveryApi {
      */
     SenderInformation getSenderInformation(MayHaveSender message);
 
+    /**
+     * Henter informasjon om den faktiske avsenderen av en melding med gitt prioritet,
+     * som en del av en forsendelse med denne prioriteten.
+     *
+     * @see #getSenderInformation(MayHaveSender)
+     */
+    default SenderInformation getSenderInformation(MayHaveSender message, DeliveryPriority priority) {
+        return getSenderInformation(message);
+    }
+
 
     /**
      * Henter informasjon om en avsender.
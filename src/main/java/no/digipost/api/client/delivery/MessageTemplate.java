@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.delivery;
+
+import no.digipost.api.client.DigipostClient;
+import no.digipost.api.client.representations.Document;
+import no.digipost.api.client.representations.Message.MessageBuilder;
+import no.digipost.api.client.representations.MessageDelivery;
+import no.digipost.api.client.representations.MessageRecipient;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * En mal for å sende de samme dokumentene til mange mottakere. Innholdet i dokumentene leses
+ * inn én gang når malen {@link Builder#build() opprettes}, og valideres kun første gang det
+ * sendes. Hver {@link #send(MessageRecipient) sending} får ny message-id og nye uuid-er for
+ * dokumentene, og kun det som er spesifikt for mottakeren, slik som identifisering og kryptering,
+ * gjøres for hver sending.
+ * <p>
+ * En mal kan brukes fra flere tråder samtidig. Malen må {@link #close() lukkes} når den ikke skal brukes
+ * mer, slik at eventuelle midlertidige filer med innhold blir slettet.
+ *
+ * @see DigipostClient#createMessageTemplate(Document, Document...)
+ */
+public interface MessageTemplate extends AutoCloseable {
+
+    /**
+     * Sender dokumentene i malen til en mottaker. Dersom mottaker ikke er digipostbruker og
+     * det er angitt printdetaljer, bestilles print av brevet (krever at avsender har
+     * fått tilgang til print).
+     *
+     * @return resultatet av sendingen, med message-id generert for denne sendingen.
+     */
+    default MessageDelivery send(MessageRecipient recipient) {
+        return send(recipient, message -> {});
+    }
+
+    /**
+     * Sender dokumentene i malen til en mottaker, med detaljer for forsendelsen som kun gjelder denne mottakeren.
+     *
+     * @param messageDetails gis forsendelsen som bygges for mottakeren, etter eventuelle
+     *                       {@link Builder#messageDetails(Consumer) felles detaljer for malen}.
+     *
+     * @see #send(MessageRecipient)
+     */
+    MessageDelivery send(MessageRecipient recipient, Consumer<? super MessageBuilder> messageDetails);
+
+    /**
+     * Sender dokumentene i malen til alle mottakerne, med {@link DeliveryPriority#BULK bulk-prioritet}.
+     * Sendingene gjøres samtidig, og på Java 21 eller nyere gjøres hver sending i sin egen virtuelle tråd.
+     * Metoden returnerer først når alle sendingene er ferdige, og dersom noen av dem feilet, kastes
+     * den første feilen, med de øvrige som {@link Throwable#getSuppressed() undertrykte} feil.
+     *
+     * @return resultatet av sendingene, i samme rekkefølge som mottakerne.
+     */
+    List<MessageDelivery> sendToAll(Collection<? extends MessageRecipient> recipients);
+
+    /**
+     * Sletter eventuelle midlertidige filer med innholdet i malen.
+     */
+    @Override
+    void close();
+
+
+
+    /**
+     * Legger til innhold for dokumentene i en {@link MessageTemplate}.
+     */
+    public static interface Builder {
+
+        /**
+         * Laster inn innhold til et dokument.
+         */
+        Builder addContent(Document document, InputStream content);
+
+        /**
+         * Laster inn innhold til et dokument.
+         */
+        default Builder addContent(Document document, byte[] content) {
+            return addContent(document, new ByteArrayInputStream(content));
+        }
+
+        /**
+         * Bruker innholdet i en fil for et dokument. Filen leses når den sendes, og må derfor
+         * ikke endres eller slettes så lenge malen er i bruk.
+         */
+        Builder addContent(Document document, Path content);
+
+        /**
+         * Laster inn innhold til et dokument med alternativt innhold for print, hvor sistnevnte må være PDF.
+         */
+        Builder addContent(Document document, InputStream content, InputStream printContent);
+
+        /**
+         * Detaljer som skal gjelde for alle forsendelser fra malen, f.eks. avsender eller leveransetidspunkt.
+         */
+        Builder messageDetails(Consumer<? super MessageBuilder> messageDetails);
+
+        /**
+         * Leser inn innholdet til dokumentene, og oppretter malen. Alle dokumentene i malen må ha innhold.
+         */
+        MessageTemplate build();
+    }
+
+}
@@ -16,11 +16,17 @@
 package no.digipost.api.client.delivery;
 
 import no.digipost.api.client.DigipostClient;
+import no.digipost.api.client.errorhandling.DigipostClientException;
 import no.digipost.api.client.representations.Document;
 import no.digipost.api.client.representations.MessageDelivery;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Supplier;
 
 
 /**
@@ -56,6 +62,45 @@ public interface OngoingDelivery<OPERATIONS extends OngoingDelivery<OPERATIONS>
         return addContent(document, new ByteArrayInputStream(content));
     }
 
+    /**
+     * Laster opp innhold til et dokument fra en fil. Filen blir ikke lest før forsendelsen
+     * sendes, og blir ikke kopiert til minnet mer enn nødvendig.
+     *
+     * @return videre operasjoner for å fullføre leveransen.
+     */
+    default OPERATIONS addContent(Document document, Path content) {
+        try {
+            return addContent(document, Files.newInputStream(content));
+        } catch (IOException e) {
+            throw DigipostClientException.from(e);
+        }
+    }
+
+    /**
+     * Laster opp innhold til et dokument fra en strøm som ikke åpnes før forsendelsen sendes.
+     * Strømmen lukkes så snart innholdet er lest, og en ny strøm åpnes dersom forsendelsen
+     * sendes på nytt. Dette gjør det mulig å holde på mange forsendelser uten å holde like
+     * mange filer eller andre ressurser åpne.
+     *
+     * @return videre operasjoner for å fullføre leveransen.
+     */
+    default OPERATIONS addContent(Document document, Supplier<? extends InputStream> content) {
+        return addContent(document, content.get());
+    }
+
+    /**
+     * Laster opp gjenværende innhold i en buffer til et dokument. Bufferens posisjon blir ikke endret,
+     * og innholdet blir ikke kopiert mer enn nødvendig. Innholdet i bufferen kan derfor ikke endres
+     * før forsendelsen er sendt.
+     *
+     * @return videre operasjoner for å fullføre leveransen.
+     */
+    default OPERATIONS addContent(Document document, ByteBuffer content) {
+        byte[] bytes = new byte[content.remaining()];
+        content.duplicate().get(bytes);
+        return addContent(document, bytes);
+    }
+
 
     /**
      * Operasjoner for å sende forsendelser direkte til print.
@@ -87,6 +132,58 @@ public interface OngoingDelivery<OPERATIONS extends OngoingDelivery<OPERATIONS>
         default SendableWithPrintFallback addContent(Document document, byte[] content, byte[] printContent) {
             return addContent(document, new ByteArrayInputStream(content), new ByteArrayInputStream(printContent));
         }
+
+        /**
+         * Laster opp innhold til et dokument fra en fil, med alternativt innhold for print fra en annen fil,
+         * hvor sistnevnte må være PDF.
+         *
+         * @return videre operasjoner for å fullføre leveransen.
+         *
+         * @see #addContent(Document, Path)
+         */
+        default SendableWithPrintFallback addContent(Document document, Path content, Path printContent) {
+            InputStream contentStream = null;
+            try {
+                contentStream = Files.newInputStream(content);
+                return addContent(document, contentStream, Files.newInputStream(printContent));
+            } catch (IOException e) {
+                if (contentStream != null) {
+                    try {
+                        contentStream.close();
+                    } catch (IOException closeException) {
+                        e.addSuppressed(closeException);
+                    }
+                }
+                throw DigipostClientException.from(e);
+            }
+        }
+
+        /**
+         * Laster opp innhold til et dokument med alternativt innhold for print, hvor sistnevnte må være PDF.
+         * Strømmene åpnes ikke før forsendelsen sendes.
+         *
+         * @return videre operasjoner for å fullføre leveransen.
+         *
+         * @see #addContent(Document, Supplier)
+         */
+        default SendableWithPrintFallback addContent(Document document, Supplier<? extends InputStream> content, Supplier<? extends InputStream> printContent) {
+            return addContent(document, content.get(), printContent.get());
+        }
+
+        /**
+         * Laster opp innhold til et dokument med alternativt innhold for print, hvor sistnevnte må være PDF.
+         *
+         * @return videre operasjoner for å fullføre leveransen.
+         *
+         * @see #addContent(Document, ByteBuffer)
+         */
+        default SendableWithPrintFallback addContent(Document document, ByteBuffer content, ByteBuffer printContent) {
+            byte[] bytes = new byte[content.remaining()];
+            content.duplicate().get(bytes);
+            byte[] printBytes = new byte[printContent.remaining()];
+            printContent.duplicate().get(printBytes);
+            return addContent(document, bytes, printBytes);
+        }
     }
 
 
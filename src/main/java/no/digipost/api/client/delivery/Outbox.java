@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.delivery;
+
+import no.digipost.api.client.DigipostClient;
+import no.digipost.api.client.representations.Document;
+import no.digipost.api.client.representations.Message;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * En utboks som lagrer forsendelser på disk før de sendes, slik at de blir levert selv om
+ * applikasjonen stopper før sendingen er ferdig. En forsendelse er lagret når
+ * {@link Entry#enqueue()} returnerer, og sendes deretter i bakgrunnen. Forsendelser som
+ * ikke var ferdig sendt når utboksen ble lukket eller applikasjonen stoppet, sendes på nytt
+ * neste gang utboksen åpnes fra samme katalog.
+ * <p>
+ * Siden en forsendelse kan bli sendt mer enn én gang, regnes en forsendelse som Digipost
+ * allerede har mottatt (med samme message-id) som levert. Resultatet av hver forsendelse
+ * gis til en {@link OutboxListener}.
+ * <p>
+ * En utboks kan brukes fra flere tråder samtidig, og må {@link #close() lukkes} når den ikke skal brukes mer.
+ *
+ * @see DigipostClient#newOutbox(Path)
+ */
+public interface Outbox extends AutoCloseable {
+
+    /**
+     * Legger til en forsendelse i utboksen. Forsendelsen lagres og sendes først når
+     * {@link Entry#enqueue()} kalles. Forsendelser direkte til print sendes som
+     * {@link DigipostClient#createPrintOnlyMessage(Message) print-forsendelser}.
+     */
+    Entry add(Message message);
+
+    /**
+     * @return antall forsendelser i utboksen som ikke er ferdig sendt.
+     */
+    int getPendingCount();
+
+    /**
+     * Stopper sendingen fra utboksen, og venter på forsendelser som er i ferd med å sendes.
+     * Forsendelser som ikke er sendt ligger igjen i utboksen til neste gang den åpnes.
+     */
+    @Override
+    void close();
+
+
+
+    /**
+     * Innholdet til dokumentene i en forsendelse som legges i en {@link Outbox}.
+     */
+    public static interface Entry {
+
+        /**
+         * Kopierer innhold til et dokument inn i utboksen.
+         */
+        Entry addContent(Document document, InputStream content);
+
+        /**
+         * Kopierer innhold til et dokument inn i utboksen.
+         */
+        default Entry addContent(Document document, byte[] content) {
+            return addContent(document, new ByteArrayInputStream(content));
+        }
+
+        /**
+         * Bruker innholdet i en fil for et dokument. Kun stien til filen lagres i utboksen, og filen leses
+         * når forsendelsen sendes. Filen må derfor ikke endres eller slettes før forsendelsen er levert.
+         */
+        Entry addContent(Document document, Path content);
+
+        /**
+         * Kopierer innhold til et dokument inn i utboksen, med alternativt innhold for print, hvor sistnevnte må være PDF.
+         */
+        Entry addContent(Document document, InputStream content, InputStream printContent);
+
+        /**
+         * Bruker innholdet i filer for et dokument, med alternativt innhold for print, hvor sistnevnte må være PDF.
+         *
+         * @see #addContent(Document, Path)
+         */
+        Entry addContent(Document document, Path content, Path printContent);
+
+        /**
+         * Lagrer forsendelsen i utboksen, og returnerer når den er skrevet til disk.
+         * Forsendelsen sendes deretter i bakgrunnen.
+         *
+         * @return message-id for forsendelsen
+         */
+        String enqueue();
+    }
+
+
+    /**
+     * Innstillinger for en {@link Outbox}.
+     */
+    public static interface Builder {
+
+        /**
+         * Antall tråder som sender forsendelser fra utboksen. Standard er 4.
+         */
+        Builder workers(int workers);
+
+        /**
+         * Hvor stor en loggfil i utboksen kan bli før en ny loggfil påbegynnes. Loggfiler slettes
+         * når alle forsendelsene i dem er sendt. Standard er 16 MB.
+         */
+        Builder segmentSize(long bytes);
+
+        /**
+         * Hvor lenge det ventes før en forsendelse sendes på nytt etter en feil som kan være forbigående,
+         * f.eks. at Digipost er utilgjengelig. Ventetiden dobles for hvert forsøk, opp til en maksimal
+         * ventetid. Standard er fra 1 sekund til 5 minutter.
+         */
+        Builder retryDelay(Duration initial, Duration max);
+
+        /**
+         * Prioriteten forsendelsene fra utboksen sendes med. Standard er {@link DeliveryPriority#BULK}.
+         */
+        Builder priority(DeliveryPriority priority);
+
+        /**
+         * Gis resultatet av hver forsendelse fra utboksen.
+         */
+        Builder listener(OutboxListener listener);
+
+        /**
+         * Åpner utboksen, og begynner å sende forsendelser som ligger igjen fra før.
+         */
+        Outbox open();
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.delivery;
+
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.representations.MessageDelivery;
+
+/**
+ * Gis resultatet av forsendelser fra en {@link Outbox}. Metodene kalles fra trådene
+ * som sender forsendelsene.
+ */
+public interface OutboxListener {
+
+    OutboxListener NOOP = new OutboxListener() {};
+
+    /**
+     * Forsendelsen er levert.
+     */
+    default void delivered(String messageId, MessageDelivery delivery) {
+    }
+
+    /**
+     * Digipost hadde allerede mottatt forsendelsen, f.eks. fordi den ble sendt på nytt
+     * etter at applikasjonen stoppet før utboksen fikk registrert at den var levert.
+     */
+    default void alreadyDelivered(String messageId) {
+    }
+
+    /**
+     * Forsendelsen ble avvist, og er fjernet fra utboksen uten å bli levert.
+     */
+    default void failed(String messageId, DigipostClientException error) {
+    }
+}
@@ -16,13 +16,17 @@
 package no.digipost.api.client.document;
 
 import no.digipost.api.client.SenderId;
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEventType;
 import no.digipost.api.client.representations.DocumentEvents;
 import no.digipost.api.client.representations.DocumentStatus;
 import no.digipost.api.client.representations.Link;
 
 import java.io.InputStream;
 import java.time.ZonedDateTime;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public interface DocumentApi {
 
@@ -53,4 +57,21 @@ public interface DocumentApi {
      */
     DocumentEvents getDocumentEvents(String organisation, String partId, ZonedDateTime from, ZonedDateTime to, int offset, int maxResults);
 
+    /**
+     * Henter hendelser knyttet til tidligere sendte brev, og gir dem til {@code consumer} én og én etter hvert
+     * som de leses fra responsen, i stedet for å samle alle i en liste. Minnebruken er dermed den samme uansett
+     * hvor mange hendelser som hentes, og hendelser av andre typer enn de angitte hoppes over uten å leses inn.
+     *
+     * @param organisation Organisasjonsnummer
+     * @param partId Frivillig organisasjons-enhet, kan være {@code null}
+     * @param types typene hendelser som skal gis til {@code consumer}
+     * @return antall hendelser i responsen, inkludert de som ble hoppet over, slik at det kan avgjøres om det finnes flere
+     */
+    default int getDocumentEvents(String organisation, String partId, ZonedDateTime from, ZonedDateTime to, int offset, int maxResults,
+                                  Set<DocumentEventType> types, Consumer<? super DocumentEvent> consumer) {
+        DocumentEvents events = getDocumentEvents(organisation, partId, from, to, offset, maxResults);
+        events.getEvents().stream().filter(event -> types.contains(event.getType())).forEach(consumer);
+        return events.getEvents().size();
+    }
+
 }
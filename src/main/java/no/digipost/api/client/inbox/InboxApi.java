@@ -20,6 +20,7 @@ import no.digipost.api.client.representations.inbox.Inbox;
 import no.digipost.api.client.representations.inbox.InboxDocument;
 
 import java.io.InputStream;
+import java.util.function.Consumer;
 
 public interface InboxApi {
 
@@ -33,6 +34,23 @@ public interface InboxApi {
      */
     Inbox getInbox(SenderId senderId, int offset, int limit);
 
+    /**
+     * Get documents from the inbox for the organisation represented by senderId, and give them to the consumer
+     * one at a time as they are read from the response, instead of collecting them in a list. The memory used
+     * is then the same regardless of the limit.
+     *
+     * @param senderId Either an organisation that you operate on behalf of or your brokerId
+     * @param offset Number of documents to skip. For pagination
+     * @param limit Maximum number of documents to retrieve (max 1000)
+     * @param consumer Is given each document
+     * @return The number of documents in the response
+     */
+    default int getInbox(SenderId senderId, int offset, int limit, Consumer<? super InboxDocument> consumer) {
+        Inbox inbox = getInbox(senderId, offset, limit);
+        inbox.documents.forEach(consumer);
+        return inbox.documents.size();
+    }
+
     /**
      * Get the content of a document as a stream. The content is streamed from the server so remember to
      * close the stream to prevent connection leaks.
@@ -19,23 +19,29 @@ import no.digipost.api.client.BrokerId;
 import no.digipost.api.client.DigipostClientConfig;
 import no.digipost.api.client.EventLogger;
 import no.digipost.api.client.SenderId;
+import no.digipost.api.client.delivery.DeliveryPriority;
 import no.digipost.api.client.delivery.MessageDeliveryApi;
 import no.digipost.api.client.document.DocumentApi;
 import no.digipost.api.client.errorhandling.DigipostClientException;
 import no.digipost.api.client.errorhandling.ErrorCode;
 import no.digipost.api.client.inbox.InboxApi;
+import no.digipost.api.client.internal.http.AdaptiveConcurrencyLimit;
 import no.digipost.api.client.internal.http.Headers;
 import no.digipost.api.client.internal.http.MultipartNoLengthCheckHttpEntity;
+import no.digipost.api.client.internal.http.PriorityLanes;
+import no.digipost.api.client.internal.http.RequestCancellation;
+import no.digipost.api.client.internal.http.RequestCoalescer;
+import no.digipost.api.client.internal.http.request.interceptor.RequestAuthenticationInterceptor;
 import no.digipost.api.client.internal.http.request.interceptor.RequestContentHashFilter;
-import no.digipost.api.client.internal.http.request.interceptor.RequestDateInterceptor;
-import no.digipost.api.client.internal.http.request.interceptor.RequestSignatureInterceptor;
-import no.digipost.api.client.internal.http.request.interceptor.RequestUserAgentInterceptor;
-import no.digipost.api.client.internal.http.response.interceptor.ResponseContentSHA256Interceptor;
-import no.digipost.api.client.internal.http.response.interceptor.ResponseDateInterceptor;
-import no.digipost.api.client.internal.http.response.interceptor.ResponseSignatureInterceptor;
+import no.digipost.api.client.internal.http.response.BufferedResponse;
+import no.digipost.api.client.internal.http.response.interceptor.ResponseVerificationInterceptor;
+import no.digipost.api.client.metrics.ApiEndpoint;
+import no.digipost.api.client.metrics.ClientMetrics;
 import no.digipost.api.client.representations.AddDataLink;
 import no.digipost.api.client.representations.AdditionalData;
 import no.digipost.api.client.representations.Autocomplete;
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEventType;
 import no.digipost.api.client.representations.DocumentEvents;
 import no.digipost.api.client.representations.DocumentStatus;
 import no.digipost.api.client.representations.EntryPoint;
@@ -56,6 +62,7 @@ import no.digipost.api.client.security.Signer;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -68,6 +75,7 @@ import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.execchain.RequestAbortedException;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpCoreContext;
 import org.slf4j.Logger;
@@ -75,16 +83,22 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static java.util.Optional.ofNullable;
 import static javax.xml.bind.JAXB.unmarshal;
+import static no.digipost.api.client.delivery.DeliveryPriority.INTERACTIVE;
 import static no.digipost.api.client.internal.ExceptionUtils.asUnchecked;
 import static no.digipost.api.client.internal.ExceptionUtils.exceptionNameAndMessage;
 import static no.digipost.api.client.internal.http.Headers.Accept_DIGIPOST_MEDIA_TYPE_V7;
@@ -92,7 +106,24 @@ import static no.digipost.api.client.internal.http.Headers.Content_Type_DIGIPOST
 import static no.digipost.api.client.internal.http.Headers.X_Digipost_UserId;
 import static no.digipost.api.client.internal.http.UriUtils.withQueryParams;
 import static no.digipost.api.client.internal.http.response.HttpResponseUtils.checkResponse;
+import static no.digipost.api.client.internal.http.response.HttpResponseUtils.errorCodeOf;
 import static no.digipost.api.client.internal.http.response.HttpResponseUtils.safelyOfferEntityStreamExternally;
+import static no.digipost.api.client.metrics.ApiEndpoint.ADD_DATA;
+import static no.digipost.api.client.metrics.ApiEndpoint.AUTOCOMPLETE;
+import static no.digipost.api.client.metrics.ApiEndpoint.CREATE_MESSAGE;
+import static no.digipost.api.client.metrics.ApiEndpoint.DELETE_INBOX_DOCUMENT;
+import static no.digipost.api.client.metrics.ApiEndpoint.DOCUMENT_CONTENT;
+import static no.digipost.api.client.metrics.ApiEndpoint.DOCUMENT_EVENTS;
+import static no.digipost.api.client.metrics.ApiEndpoint.DOCUMENT_STATUS;
+import static no.digipost.api.client.metrics.ApiEndpoint.ENCRYPTION_KEY;
+import static no.digipost.api.client.metrics.ApiEndpoint.IDENTIFICATION;
+import static no.digipost.api.client.metrics.ApiEndpoint.IDENTIFICATION_WITH_ENCRYPTION_KEY;
+import static no.digipost.api.client.metrics.ApiEndpoint.INBOX;
+import static no.digipost.api.client.metrics.ApiEndpoint.INBOX_DOCUMENT_CONTENT;
+import static no.digipost.api.client.metrics.ApiEndpoint.PRINT_ENCRYPTION_CERTIFICATE;
+import static no.digipost.api.client.metrics.ApiEndpoint.SEARCH;
+import static no.digipost.api.client.metrics.ApiEndpoint.SENDER_INFORMATION;
+import static no.digipost.api.client.metrics.ApiEndpoint.USER_ACCOUNTS;
 import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
 import static no.digipost.api.client.util.JAXBContextUtils.marshal;
 import static no.digipost.api.client.util.JAXBContextUtils.unmarshal;
@@ -108,35 +139,99 @@ public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi
 
     private final Cached cached;
     private final EventLogger eventLogger;
+    private final ClientMetrics metrics;
+    private final RequestCoalescer<CoalescingKey> inFlightGets;
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private final PriorityLanes priorityLanes;
 
     // This pattern is hard to get right. The same pattern may not yield the same strings when formatting dates with Joda vs. Java time,
     // which was the case for the pattern "yyyy-MM-dd'T'HH:mm:ss.SSSZZ". See commit messages for 59caeb5737e45a15 and dcf41785a84f42caf935 for details.
     private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSxxx");
 
+    /**
+     * Lists which may be large, and are asked for compressed. Sharing such a response would mean keeping all
+     * of it decompressed in memory, instead of decompressing it while it is unmarshalled.
+     */
+    private static final Set<ApiEndpoint> NOT_COALESCED = EnumSet.of(DOCUMENT_EVENTS, INBOX);
+
+    private static final StreamingUnmarshaller<DocumentEvent> DOCUMENT_EVENT_ELEMENTS = new StreamingUnmarshaller<>(jaxbContext, "event", DocumentEvent.class);
+    private static final StreamingUnmarshaller<InboxDocument> INBOX_DOCUMENT_ELEMENTS = new StreamingUnmarshaller<>("document", InboxDocument.class);
+
     public ApiServiceImpl(DigipostClientConfig config, HttpClientBuilder httpClientBuilder, BrokerId brokerId, Signer signer) {
         this.brokerId = brokerId;
         this.eventLogger = config.eventLogger.withDebugLogTo(LOG);
         this.digipostUrl = config.digipostApiUri;
-
-        this.cached = new Cached(this::fetchEntryPoint);
+        this.metrics = config.metrics;
+        this.inFlightGets = new RequestCoalescer<>(key -> metrics.requestCoalesced(key.endpoint));
+        this.concurrencyLimit = config.maxConcurrencyLimit > 0
+                ? new AdaptiveConcurrencyLimit(config.initialConcurrencyLimit, config.maxConcurrencyLimit, metrics::concurrencyLimitChanged)
+                : null;
+        this.priorityLanes = config.priorityLaneCapacity > 0
+                ? new PriorityLanes(concurrencyLimit != null ? () -> Math.min(config.priorityLaneCapacity, concurrencyLimit.getLimit()) : () -> config.priorityLaneCapacity,
+                        config.reservedInteractiveCapacity, metrics::queuedRequestsChanged)
+                : null;
+
+        this.cached = new Cached(this::fetchEntryPoint, config);
         this.httpClient = httpClientBuilder
-            .addInterceptorLast(new RequestDateInterceptor(config.eventLogger, config.clock))
-            .addInterceptorLast(new RequestUserAgentInterceptor())
-            .addInterceptorLast(new RequestSignatureInterceptor(signer, config.eventLogger, new RequestContentHashFilter(config.eventLogger, Digester.sha256, Headers.X_Content_SHA256)))
-            .addInterceptorLast(new ResponseDateInterceptor(config.clock))
-            .addInterceptorLast(new ResponseContentSHA256Interceptor())
-            .addInterceptorLast(new ResponseSignatureInterceptor(this::getEntryPoint))
+            // compressed responses are asked for explicitly, and must be verified before they are decompressed
+            .disableContentCompression()
+            .addInterceptorLast(new RequestAuthenticationInterceptor(config.eventLogger, config.clock, signer, new RequestContentHashFilter(config.eventLogger, Digester.sha256, Headers.X_Content_SHA256)))
+            .addInterceptorLast(new ResponseVerificationInterceptor(config.clock, this::getEntryPoint))
             .build();
         this.eventLogger.log("Initialiserte apache-klient mot " + config.digipostApiUri);
+
+        if (config.eagerlyLoadEntryPoint) {
+            warmUpEntryPoint();
+        }
+        config.preloadedSenders.forEach(this::preloadSenderInformation);
     }
 
     public EntryPoint getEntryPoint() {
-        return cached.entryPoint.get();
+        return cached.entryPoint();
+    }
+
+    /**
+     * @return the number of requests of the given priority waiting to be sent, because the capacity
+     *         available to the priority is in use. This is always {@code 0} without priority lanes.
+     */
+    public int getQueueDepth(DeliveryPriority priority) {
+        return priorityLanes != null ? priorityLanes.getQueueDepth(priority) : 0;
+    }
+
+    /**
+     * @return the number of {@code GET} requests which did not result in any request to the API,
+     *         because they could share the result of an identical request already in flight.
+     */
+    public long getCoalescedRequestCount() {
+        return inFlightGets.getCoalescedCount();
+    }
+
+    private void warmUpEntryPoint() {
+        try {
+            cached.loadEntryPoint();
+            eventLogger.log("Hentet entry point fra " + digipostUrl);
+        } catch (RuntimeException e) {
+            LOG.warn("Klarte ikke å hente entry point fra {} ved oppstart, vil forsøke igjen ved første forespørsel. {}", digipostUrl, exceptionNameAndMessage(e));
+        }
+    }
+
+    private void preloadSenderInformation(SenderId senderId) {
+        try {
+            cached.senderInformation.preload(senderId.stringValue(), () -> fetchSenderInformation(senderId, INTERACTIVE));
+            eventLogger.log("Hentet avsenderinformasjon for " + senderId);
+        } catch (RuntimeException e) {
+            LOG.warn("Klarte ikke å hente avsenderinformasjon for {} ved oppstart, vil forsøke igjen ved første forespørsel. {}", senderId, exceptionNameAndMessage(e));
+        }
     }
 
 
     @Override
     public CloseableHttpResponse sendMultipartMessage(HttpEntity multipart) {
+        return sendMultipartMessage(multipart, INTERACTIVE);
+    }
+
+    @Override
+    public CloseableHttpResponse sendMultipartMessage(HttpEntity multipart, DeliveryPriority priority) {
         MultipartNoLengthCheckHttpEntity multipartLengthCheckHttpEntity = new MultipartNoLengthCheckHttpEntity(multipart);
 
         EntryPoint entryPoint = getEntryPoint();
@@ -146,40 +241,64 @@ public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi
         httpPost.setHeader("MIME-Version", "1.0");
         httpPost.removeHeaders("Accept-Encoding");
         httpPost.setEntity(multipartLengthCheckHttpEntity);
-        return send(httpPost);
+        return send(CREATE_MESSAGE, httpPost, null, priority);
 
     }
 
     @Override
     public CloseableHttpResponse identifyAndGetEncryptionKey(Identification identification) {
+        return identifyAndGetEncryptionKey(identification, INTERACTIVE);
+    }
+
+    @Override
+    public CloseableHttpResponse identifyAndGetEncryptionKey(Identification identification, DeliveryPriority priority) {
         EntryPoint entryPoint = getEntryPoint();
-        return sendDigipostMedia(identification, entryPoint.getIdentificationWithEncryptionKeyUri().getPath());
+        return sendDigipostMedia(IDENTIFICATION_WITH_ENCRYPTION_KEY, identification, entryPoint.getIdentificationWithEncryptionKeyUri().getPath(), priority);
     }
 
     @Override
     public CloseableHttpResponse getEncryptionKey(URI location) {
         HttpGet httpGet = new HttpGet(location);
         httpGet.setHeader(Accept_DIGIPOST_MEDIA_TYPE_V7);
-        return send(httpGet);
+        return sendCoalesced(ENCRYPTION_KEY, httpGet, INTERACTIVE);
     }
 
     @Override
     public CloseableHttpResponse getEncryptionCertificateForPrint() {
+        return getEncryptionCertificateForPrint(INTERACTIVE);
+    }
+
+    @Override
+    public CloseableHttpResponse getEncryptionCertificateForPrint(DeliveryPriority priority) {
         EntryPoint entryPoint = getEntryPoint();
 
         HttpGet httpGet = new HttpGet(digipostUrl.resolve(entryPoint.getPrintEncryptionCertificate().getPath()));
         httpGet.setHeader(Accept_DIGIPOST_MEDIA_TYPE_V7);
-        return send(httpGet);
+        return sendCoalesced(PRINT_ENCRYPTION_CERTIFICATE, httpGet, priority);
     }
 
     @Override
     public CloseableHttpResponse addData(AddDataLink addDataLink, AdditionalData data) {
-        return sendDigipostMedia(data, addDataLink.getPath());
+        return sendDigipostMedia(ADD_DATA, data, addDataLink.getPath());
     }
 
 
     @Override
     public DocumentEvents getDocumentEvents(String organisation, String partId, ZonedDateTime from, ZonedDateTime to, int offset, int maxResults) {
+        return requestEntity(DOCUMENT_EVENTS, documentEventsRequest(organisation, partId, from, to, offset, maxResults), DocumentEvents.class);
+    }
+
+    @Override
+    public int getDocumentEvents(String organisation, String partId, ZonedDateTime from, ZonedDateTime to, int offset, int maxResults,
+                                 Set<DocumentEventType> types, Consumer<? super DocumentEvent> consumer) {
+        HttpGet httpGet = documentEventsRequest(organisation, partId, from, to, offset, maxResults);
+        return requestStreaming(DOCUMENT_EVENTS, httpGet, content -> DOCUMENT_EVENT_ELEMENTS.stream(content, event -> {
+            String type = event.getAttributeValue(null, "type");
+            return types.stream().anyMatch(included -> included.name().equals(type));
+        }, consumer));
+    }
+
+    private HttpGet documentEventsRequest(String organisation, String partId, ZonedDateTime from, ZonedDateTime to, int offset, int maxResults) {
         URIBuilder builder = new URIBuilder(digipostUrl.resolve(getEntryPoint().getDocumentEventsUri().getPath()))
                 .setParameter("from", DATE_TIME_FORMAT.format(from))
                 .setParameter("to", DATE_TIME_FORMAT.format(to))
@@ -195,7 +314,8 @@ public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi
 
         try {
             HttpGet httpGet = new HttpGet(builder.build());
-            return requestEntity(httpGet, DocumentEvents.class);
+            httpGet.setHeader(Headers.Accept_Encoding_GZIP);
+            return httpGet;
         } catch (URISyntaxException e) {
             throw asUnchecked(e);
         }
@@ -213,39 +333,39 @@ public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi
 
     private DocumentStatus getDocumentStatus(String path) {
         HttpGet httpGet = new HttpGet(digipostUrl.resolve(path));
-        return requestEntity(httpGet, DocumentStatus.class);
+        return requestEntity(DOCUMENT_STATUS, httpGet, DocumentStatus.class);
     }
 
     @Override
     public InputStream getDocumentContent(String path) {
         HttpGet httpGet = new HttpGet(digipostUrl.resolve(path));
-        return requestStream(httpGet);
+        return requestStream(DOCUMENT_CONTENT, httpGet);
     }
 
     @Override
     public Recipients search(String searchString) {
         HttpGet httpGet = new HttpGet(digipostUrl.resolve(createEncodedURIPath(getEntryPoint().getSearchUri().getPath() + "/" + searchString)));
-        return requestEntity(httpGet, Recipients.class);
+        return requestEntity(SEARCH, httpGet, Recipients.class);
     }
 
     @Override
     public Autocomplete searchSuggest(String searchString) {
         HttpGet httpGet = new HttpGet(digipostUrl.resolve(createEncodedURIPath(getEntryPoint().getAutocompleteUri().getPath() + "/" + searchString)));
-        return requestEntity(httpGet, Autocomplete.class);
+        return requestEntity(AUTOCOMPLETE, httpGet, Autocomplete.class);
     }
 
 
     @Override
     public CloseableHttpResponse identifyRecipient(Identification identification) {
-        return sendDigipostMedia(identification, getEntryPoint().getIdentificationUri().getPath());
+        return sendDigipostMedia(IDENTIFICATION, identification, getEntryPoint().getIdentificationUri().getPath());
     }
 
     private EntryPoint fetchEntryPoint() throws IOException {
         HttpGet httpGet = new HttpGet(digipostUrl.resolve(ENTRY_POINT));
         httpGet.setHeader(Accept_DIGIPOST_MEDIA_TYPE_V7);
         final HttpCoreContext httpCoreContext = HttpCoreContext.create();
-        httpCoreContext.setAttribute(ResponseSignatureInterceptor.NOT_SIGNED_RESPONSE, true);
-        try (CloseableHttpResponse response = send(httpGet, httpCoreContext)) {
+        httpCoreContext.setAttribute(ResponseVerificationInterceptor.NOT_SIGNED_RESPONSE, true);
+        try (CloseableHttpResponse response = send(ApiEndpoint.ENTRY_POINT, httpGet, httpCoreContext, INTERACTIVE)) {
 
             if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
                 return unmarshal(jaxbContext, response.getEntity().getContent(), EntryPoint.class);
@@ -260,12 +380,23 @@ public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi
 
     @Override
     public SenderInformation getSenderInformation(SenderId senderId) {
-        return cached.senderInformation.get(senderId.stringValue(),
-                () -> getEntity(SenderInformation.class, getEntryPoint().getSenderInformationUri().getPath() + "/" + senderId.stringValue()));
+        return getSenderInformation(senderId, INTERACTIVE);
+    }
+
+    private SenderInformation getSenderInformation(SenderId senderId, DeliveryPriority priority) {
+        return cached.senderInformation.get(senderId.stringValue(), () -> fetchSenderInformation(senderId, priority));
+    }
+
+    private SenderInformation fetchSenderInformation(SenderId senderId, DeliveryPriority priority) {
+        return getEntity(SENDER_INFORMATION, SenderInformation.class, getEntryPoint().getSenderInformationUri().getPath() + "/" + senderId.stringValue(), priority);
     }
 
     @Override
     public SenderInformation getSenderInformation(String orgnr, String avsenderenhet) {
+        return getSenderInformation(orgnr, avsenderenhet, INTERACTIVE);
+    }
+
+    private SenderInformation getSenderInformation(String orgnr, String avsenderenhet, DeliveryPriority priority) {
         Map<String, String> queryParams = new HashMap<>();
         queryParams.put("org_id", orgnr);
         if (avsenderenhet != null) {
@@ -273,25 +404,41 @@ public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi
         }
 
         return cached.senderInformation.get(orgnr + ofNullable(avsenderenhet).map(enhet -> "-" + enhet).orElse(""),
-                () -> getEntity(SenderInformation.class, getEntryPoint().getSenderInformationUri().getPath(), queryParams));
+                () -> getEntity(SENDER_INFORMATION, SenderInformation.class, getEntryPoint().getSenderInformationUri().getPath(), queryParams, priority));
     }
 
     @Override
     public SenderInformation getSenderInformation(MayHaveSender mayHaveSender) {
+        return getSenderInformation(mayHaveSender, INTERACTIVE);
+    }
+
+    @Override
+    public SenderInformation getSenderInformation(MayHaveSender mayHaveSender, DeliveryPriority priority) {
         AuthorialSender authorialSender = AuthorialSender.resolve(brokerId, mayHaveSender);
         if (authorialSender.is(Type.ACCOUNT_ID)) {
-            return getSenderInformation(authorialSender.getAccountId());
+            return getSenderInformation(authorialSender.getAccountId(), priority);
         } else {
-            return getSenderInformation(authorialSender.getOrganization().organizationId, authorialSender.getOrganization().partId);
+            return getSenderInformation(authorialSender.getOrganization().organizationId, authorialSender.getOrganization().partId, priority);
         }
     }
 
     @Override
     public Inbox getInbox(SenderId senderId, int offset, int limit) {
+        return requestEntity(INBOX, inboxRequest(senderId, offset, limit), Inbox.class);
+    }
+
+    @Override
+    public int getInbox(SenderId senderId, int offset, int limit, Consumer<? super InboxDocument> consumer) {
+        return requestStreaming(INBOX, inboxRequest(senderId, offset, limit), content -> INBOX_DOCUMENT_ELEMENTS.stream(content, document -> true, consumer));
+    }
+
+    private HttpGet inboxRequest(SenderId senderId, int offset, int limit) {
         Map<String, String> queryParams = new HashMap<>();
         queryParams.put("offset", String.valueOf(offset));
         queryParams.put("limit", String.valueOf(limit));
-        return getEntity(Inbox.class, "/" + senderId.stringValue() + "/inbox", queryParams);
+        HttpGet httpGet = new HttpGet(withQueryParams(digipostUrl.resolve("/" + senderId.stringValue() + "/inbox"), queryParams));
+        httpGet.setHeader(Headers.Accept_Encoding_GZIP);
+        return httpGet;
     }
 
     @Override
@@ -299,13 +446,17 @@ public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi
         HttpGet httpGet = new HttpGet(inboxDocument.getContentUri());
         httpGet.setHeader(HttpHeaders.ACCEPT, ContentType.WILDCARD.toString());
         final HttpCoreContext httpCoreContext = HttpCoreContext.create();
-        httpCoreContext.setAttribute(ResponseSignatureInterceptor.NOT_SIGNED_RESPONSE, true);
-        return requestStream(httpGet);
+        httpCoreContext.setAttribute(ResponseVerificationInterceptor.NOT_SIGNED_RESPONSE, true);
+        return requestStream(INBOX_DOCUMENT_CONTENT, httpGet);
     }
 
     @Override
     public void deleteInboxDocument(InboxDocument inboxDocument) {
-        send(new HttpDelete(inboxDocument.getDeleteUri()));
+        try (CloseableHttpResponse response = send(DELETE_INBOX_DOCUMENT, new HttpDelete(inboxDocument.getDeleteUri()))) {
+            checkResponse(response, eventLogger);
+        } catch (IOException e) {
+            throw new DigipostClientException(ErrorCode.GENERAL_ERROR, e.getMessage(), e);
+        }
     }
 
     @Override
@@ -315,7 +466,7 @@ public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi
         ByteArrayOutputStream bao = new ByteArrayOutputStream();
         marshal(jaxbContext, user, bao);
         httpPost.setEntity(new ByteArrayEntity(bao.toByteArray()));
-        return requestEntity(httpPost, UserAccount.class);
+        return requestEntity(USER_ACCOUNTS, httpPost, UserAccount.class);
     }
 
 
@@ -327,67 +478,198 @@ public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi
         }
     }
 
-    private <R> R getEntity(Class<R> entityType, String resourcePath) {
-        return requestEntity(new HttpGet(digipostUrl.resolve(resourcePath)), entityType);
+    private <R> R getEntity(ApiEndpoint endpoint, Class<R> entityType, String resourcePath, DeliveryPriority priority) {
+        return request(endpoint, new HttpGet(digipostUrl.resolve(resourcePath)), entityType, priority, Accept_DIGIPOST_MEDIA_TYPE_V7);
     }
 
-    private <R> R getEntity(Class<R> entityType, String resourcePath, Map<String, ?> queryParams) {
+    private <R> R getEntity(ApiEndpoint endpoint, Class<R> entityType, String resourcePath, Map<String, ?> queryParams, DeliveryPriority priority) {
         HttpGet httpGet = new HttpGet(withQueryParams(digipostUrl.resolve(resourcePath), queryParams));
-        return requestEntity(httpGet, entityType);
+        return request(endpoint, httpGet, entityType, priority, Accept_DIGIPOST_MEDIA_TYPE_V7);
     }
 
-    private <R> InputStream requestStream(HttpRequestBase request) {
-        return request(request, InputStream.class, new Header[0]);
+    private <R> InputStream requestStream(ApiEndpoint endpoint, HttpRequestBase request) {
+        return request(endpoint, request, InputStream.class, INTERACTIVE);
     }
 
-    private <R> R requestEntity(HttpRequestBase request, Class<R> entityType) {
-        return request(request, entityType, Accept_DIGIPOST_MEDIA_TYPE_V7);
+    private <R> R requestEntity(ApiEndpoint endpoint, HttpRequestBase request, Class<R> entityType) {
+        return request(endpoint, request, entityType, INTERACTIVE, Accept_DIGIPOST_MEDIA_TYPE_V7);
     }
 
-    private <R> R request(HttpRequestBase request, Class<R> entityType, Header ... headers) {
+    private <R> R request(ApiEndpoint endpoint, HttpRequestBase request, Class<R> entityType, DeliveryPriority priority, Header ... headers) {
         for (Header header : headers) {
             request.setHeader(header);
         }
 
         if (entityType == InputStream.class) {
             @SuppressWarnings("unchecked")
-            R responseStream = (R) safelyOfferEntityStreamExternally(send(request), eventLogger);
+            R responseStream = (R) safelyOfferEntityStreamExternally(send(endpoint, request, null, priority), eventLogger);
             return responseStream;
+        } else if (request instanceof HttpGet && !NOT_COALESCED.contains(endpoint) && !RequestCancellation.isActive()) {
+            // a cancellable request is not shared, as cancelling it would abort the request for everyone sharing it
+            return unmarshalResponse(sendCoalesced(endpoint, (HttpGet) request, priority), entityType);
         } else {
-            try (CloseableHttpResponse response = send(request)) {
-                checkResponse(response, eventLogger);
-                return unmarshal(response.getEntity().getContent(), entityType);
-            } catch (IOException e) {
-                throw new DigipostClientException(ErrorCode.GENERAL_ERROR, e.getMessage(), e);
+            return unmarshalResponse(send(endpoint, request, null, priority), entityType);
+        }
+
+    }
+
+    /**
+     * Send a request, and read the content of the response while it is received, instead of
+     * unmarshalling all of it. The request is never coalesced, as each caller consumes its own response.
+     */
+    private <R> R requestStreaming(ApiEndpoint endpoint, HttpRequestBase request, Function<InputStream, R> reader) {
+        request.setHeader(Accept_DIGIPOST_MEDIA_TYPE_V7);
+        try (CloseableHttpResponse response = send(endpoint, request)) {
+            checkResponse(response, eventLogger);
+            try (InputStream content = response.getEntity().getContent()) {
+                return reader.apply(content);
             }
+        } catch (IOException e) {
+            throw new DigipostClientException(ErrorCode.GENERAL_ERROR, e.getMessage(), e);
+        }
+    }
+
+    private <R> R unmarshalResponse(CloseableHttpResponse sentRequest, Class<R> entityType) {
+        try (CloseableHttpResponse response = sentRequest) {
+            checkResponse(response, eventLogger);
+            return unmarshal(response.getEntity().getContent(), entityType);
+        } catch (IOException e) {
+            throw new DigipostClientException(ErrorCode.GENERAL_ERROR, e.getMessage(), e);
         }
+    }
 
+    /**
+     * Concurrent identical {@code GET}s will share one exchange with the API, and each
+     * caller gets its own copy of the buffered response, which it unmarshals into its own
+     * instance of the entity, as the entities are mutable. Only requests of the same priority
+     * are coalesced, so that no caller waits for a permit of another priority.
+     */
+    private CloseableHttpResponse sendCoalesced(ApiEndpoint endpoint, HttpGet request, DeliveryPriority priority) {
+        BufferedResponse response = inFlightGets.execute(new CoalescingKey(endpoint, request, priority), () -> BufferedResponse.readAndClose(send(endpoint, request, null, priority)));
+        return response.newResponse();
     }
 
-    private CloseableHttpResponse send(HttpRequestBase request){
-        return send(request, null);
+    private CloseableHttpResponse send(ApiEndpoint endpoint, HttpRequestBase request){
+        return send(endpoint, request, null, INTERACTIVE);
     }
 
-    private CloseableHttpResponse send(HttpRequestBase request, HttpContext context){
+    private CloseableHttpResponse send(ApiEndpoint endpoint, HttpRequestBase request, HttpContext context, DeliveryPriority priority){
+        // registered before waiting for a permit to send, so the call may be cancelled while it waits
+        RequestCancellation.register(request);
+        if (endpoint == ApiEndpoint.ENTRY_POINT) {
+            // the entry point may be loaded while the response to another request is verified, and that request
+            // already holds its permits, so loading the entry point must never wait for any
+            return execute(endpoint, request, context);
+        }
+        if (priorityLanes == null) {
+            return sendWithinConcurrencyLimit(endpoint, request, context);
+        }
         try {
-            request.setHeader(X_Digipost_UserId, brokerId.stringValue());
-            if (context == null) {
-                return httpClient.execute(request);
+            priorityLanes.acquire(priority, request);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw asUnchecked(e);
+        } catch (RequestAbortedException e) {
+            throw asUnchecked(e);
+        }
+        try {
+            return sendWithinConcurrencyLimit(endpoint, request, context);
+        } finally {
+            priorityLanes.release(priority);
+        }
+    }
+
+    private CloseableHttpResponse sendWithinConcurrencyLimit(ApiEndpoint endpoint, HttpRequestBase request, HttpContext context){
+        if (concurrencyLimit == null) {
+            return execute(endpoint, request, context);
+        }
+        AdaptiveConcurrencyLimit.Permit permit;
+        try {
+            permit = concurrencyLimit.acquire(request);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw asUnchecked(e);
+        } catch (RequestAbortedException e) {
+            throw asUnchecked(e);
+        }
+        CloseableHttpResponse response;
+        try {
+            response = execute(endpoint, request, context);
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof InterruptedIOException && !(e.getCause() instanceof RequestAbortedException)) {
+                permit.releaseTimedOut();
             } else {
-                return httpClient.execute(request, context);
+                permit.releaseFailed();
+            }
+            throw e;
+        }
+        permit.release(endpoint, response.getStatusLine().getStatusCode());
+        return response;
+    }
+
+    private CloseableHttpResponse execute(ApiEndpoint endpoint, HttpRequestBase request, HttpContext context){
+        long requestBytes = contentLengthOf(request);
+        long start = System.nanoTime();
+        try {
+            request.setHeader(X_Digipost_UserId, brokerId.stringValue());
+            CloseableHttpResponse response = context == null ? httpClient.execute(request) : httpClient.execute(request, context);
+            int statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity responseEntity = response.getEntity();
+            metrics.responseReceived(endpoint, statusCode, System.nanoTime() - start, requestBytes, responseEntity != null ? responseEntity.getContentLength() : 0);
+            if (metrics != ClientMetrics.NOOP && statusCode / 100 != 2) {
+                metrics.requestFailed(endpoint, errorCodeOf(response));
             }
+            return response;
+        } catch (DigipostClientException e) {
+            metrics.requestFailed(endpoint, e.getErrorCode());
+            throw e;
         } catch (IOException e) {
+            metrics.requestFailed(endpoint, ErrorCode.resolve(e));
             throw asUnchecked(e);
         }
     }
 
-    private CloseableHttpResponse sendDigipostMedia(Object data, String uri) {
+    private static long contentLengthOf(HttpRequestBase request) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            return entity != null ? entity.getContentLength() : 0;
+        }
+        return 0;
+    }
+
+    private CloseableHttpResponse sendDigipostMedia(ApiEndpoint endpoint, Object data, String uri) {
+        return sendDigipostMedia(endpoint, data, uri, INTERACTIVE);
+    }
+
+    private CloseableHttpResponse sendDigipostMedia(ApiEndpoint endpoint, Object data, String uri, DeliveryPriority priority) {
         HttpPost httpPost = new HttpPost(digipostUrl.resolve(uri));
         httpPost.setHeader(Accept_DIGIPOST_MEDIA_TYPE_V7);
         httpPost.setHeader(Content_Type_DIGIPOST_MEDIA_TYPE_V7);
         ByteArrayOutputStream bao = new ByteArrayOutputStream();
         marshal(jaxbContext, data, bao);
         httpPost.setEntity(new ByteArrayEntity(bao.toByteArray()));
-        return send(httpPost);
+        return send(endpoint, httpPost, null, priority);
+    }
+
+
+    private static final class CoalescingKey {
+        final ApiEndpoint endpoint;
+        final String request;
+
+        CoalescingKey(ApiEndpoint endpoint, HttpRequestBase request, DeliveryPriority priority) {
+            this.endpoint = endpoint;
+            Header accept = request.getFirstHeader(HttpHeaders.ACCEPT);
+            this.request = priority + " " + request.getMethod() + " " + request.getURI() + (accept != null ? " " + accept.getValue() : "");
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CoalescingKey && ((CoalescingKey) obj).request.equals(this.request);
+        }
+
+        @Override
+        public int hashCode() {
+            return request.hashCode();
+        }
     }
 }
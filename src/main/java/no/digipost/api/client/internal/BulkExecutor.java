@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executor which {@link BulkTasks bulk operations} run their tasks in. On Java 8 to 20, this is
+ * a bounded pool of daemon threads, as every task occupies a platform thread while it blocks on the API.
+ * <p>
+ * The JAR is multi-release, and on Java 21 and later, the version of this class in
+ * {@code META-INF/versions/21} is used instead, which runs every task in its own virtual thread.
+ */
+final class BulkExecutor {
+
+    private static final int PLATFORM_THREADS = 16;
+
+    private static final Executor EXECUTOR;
+    static {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(PLATFORM_THREADS, PLATFORM_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "digipost-bulk-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        EXECUTOR = executor;
+    }
+
+    static Executor get() {
+        return EXECUTOR;
+    }
+
+    static boolean usesVirtualThreads() {
+        return false;
+    }
+
+    /**
+     * @return how many tasks of one bulk operation may be submitted before any of them has completed.
+     */
+    static int maxConcurrentTasks() {
+        return PLATFORM_THREADS;
+    }
+
+    private BulkExecutor() {
+    }
+}
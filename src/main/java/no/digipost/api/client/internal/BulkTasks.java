@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static no.digipost.api.client.internal.ExceptionUtils.asUnchecked;
+
+/**
+ * Runs the blocking calls of a bulk operation, e.g. one delivery for each of many recipients,
+ * concurrently in the {@link BulkExecutor}. The caller blocks until every task has completed,
+ * and if any of them failed, the first failure is thrown with the others as suppressed exceptions.
+ * At most {@link BulkExecutor#maxConcurrentTasks()} tasks are submitted at a time, and the next one
+ * is not submitted until one of them has completed.
+ */
+public final class BulkTasks {
+
+    /**
+     * @return the result of the task for each item, in the same order as the items.
+     */
+    public static <T, R> List<R> map(Collection<? extends T> items, Function<? super T, ? extends R> task) {
+        List<CompletableFuture<R>> pending = new ArrayList<>(items.size());
+        Semaphore submissions = new Semaphore(BulkExecutor.maxConcurrentTasks());
+        boolean interrupted = false;
+        for (T item : items) {
+            while (true) {
+                try {
+                    submissions.acquire();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            CompletableFuture<R> result;
+            try {
+                result = CompletableFuture.supplyAsync(() -> task.apply(item), BulkExecutor.get());
+            } catch (RuntimeException e) {
+                submissions.release();
+                throw e;
+            }
+            pending.add(result.whenComplete((completed, failed) -> submissions.release()));
+        }
+
+        List<R> results = new ArrayList<>(pending.size());
+        Throwable failure = null;
+        try {
+            for (CompletableFuture<R> result : pending) {
+                while (true) {
+                    try {
+                        results.add(result.get());
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (failure == null) {
+                            failure = cause;
+                        } else if (cause != failure) {
+                            failure.addSuppressed(cause);
+                        }
+                        results.add(null);
+                        break;
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw asUnchecked((Exception) failure);
+        }
+        return results;
+    }
+
+    public static <T> void forEach(Collection<? extends T> items, Consumer<? super T> task) {
+        map(items, item -> {
+            task.accept(item);
+            return null;
+        });
+    }
+
+    /**
+     * @return {@code true} if the tasks run in virtual threads, which is the case on Java 21 and later.
+     */
+    public static boolean usesVirtualThreads() {
+        return BulkExecutor.usesVirtualThreads();
+    }
+
+    private BulkTasks() {
+    }
+}
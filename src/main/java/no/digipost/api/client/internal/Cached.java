@@ -15,25 +15,32 @@
  */
 package no.digipost.api.client.internal;
 
+import no.digipost.api.client.DigipostClientConfig;
 import no.digipost.api.client.representations.EntryPoint;
 import no.digipost.api.client.representations.sender.SenderInformation;
-import no.digipost.cache2.inmemory.Cache;
-import no.digipost.cache2.inmemory.SingleCached;
 
-import java.time.Duration;
 import java.util.concurrent.Callable;
 
-import static no.digipost.cache2.inmemory.CacheConfig.expireAfterAccess;
-import static no.digipost.cache2.inmemory.CacheConfig.useSoftValues;
-
 final class Cached {
 
-    final SingleCached<EntryPoint> entryPoint;
-    final Cache<String, SenderInformation> senderInformation;
+    private static final String ENTRY_POINT_KEY = "/";
+
+    private final Callable<EntryPoint> entryPointFetcher;
+    private final RefreshAheadCache<String, EntryPoint> entryPoint;
+    final RefreshAheadCache<String, SenderInformation> senderInformation;
+
+    Cached(Callable<EntryPoint> entryPointFetcher, DigipostClientConfig config) {
+        this.entryPointFetcher = entryPointFetcher;
+        this.entryPoint = new RefreshAheadCache<>("digipost-entrypoint", config.entryPointCacheRefreshInterval, false, config.clock);
+        this.senderInformation = new RefreshAheadCache<>("sender-information", config.senderInformationCacheTimeToLive, true, config.clock);
+    }
+
+    EntryPoint entryPoint() {
+        return entryPoint.get(ENTRY_POINT_KEY, entryPointFetcher);
+    }
 
-    Cached(Callable<EntryPoint> entryPointFetcher) {
-        this.entryPoint = new SingleCached<>("digipost-entrypoint", entryPointFetcher, expireAfterAccess(Duration.ofMinutes(5)), useSoftValues);
-        this.senderInformation = Cache.create("sender-information", expireAfterAccess(Duration.ofMinutes(5)), useSoftValues);
+    EntryPoint loadEntryPoint() {
+        return entryPoint.preload(ENTRY_POINT_KEY, entryPointFetcher);
     }
 
 }
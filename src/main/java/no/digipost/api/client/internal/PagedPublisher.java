@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import no.digipost.api.client.internal.http.RequestCancellation;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Publishes the elements of a paginated resource of the API, fetching pages according to the demand
+ * of each subscriber. The next page is only fetched when a subscriber has requested more elements
+ * than it has already been given, and at most one page is fetched at a time, so no more than one
+ * page beyond the demand is ever buffered. The fetch runs in the {@link BulkExecutor}, while elements
+ * already fetched are published, and a fetch in flight is aborted if the subscription is cancelled.
+ * <p>
+ * Pagination ends when a page has fewer elements than the page size.
+ */
+public final class PagedPublisher<T> implements Publisher<T> {
+
+    @FunctionalInterface
+    public interface PageFetcher<T> {
+        List<T> fetch(int offset, int limit);
+    }
+
+    private final PageFetcher<T> fetcher;
+    private final int pageSize;
+    private final Executor executor;
+
+    public PagedPublisher(PageFetcher<T> fetcher, int pageSize) {
+        this(fetcher, pageSize, BulkExecutor.get());
+    }
+
+    PagedPublisher(PageFetcher<T> fetcher, int pageSize, Executor executor) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("page size must be at least 1, but was " + pageSize);
+        }
+        this.fetcher = fetcher;
+        this.pageSize = pageSize;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        requireNonNull(subscriber, "subscriber");
+        subscriber.onSubscribe(new PageSubscription(subscriber));
+    }
+
+
+    /**
+     * Every signal to the subscriber is sent from {@link #drain()}, which only one thread
+     * at a time runs, and which owns all the fields which are not volatile or atomic.
+     */
+    private final class PageSubscription implements Subscription {
+
+        private final Subscriber<? super T> subscriber;
+        private final RequestCancellation cancellation = new RequestCancellation();
+        private final AtomicInteger drainers = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        private volatile List<T> fetchedPage;
+        private volatile Throwable fetchFailure;
+
+        private final Deque<T> buffer = new ArrayDeque<>();
+        private int offset;
+        private boolean fetching;
+        private boolean lastPageFetched;
+        private Throwable failure;
+        private boolean done;
+
+        PageSubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("§3.9: demand must be positive, but was " + n);
+            } else {
+                requested.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            cancellation.cancel();
+            drain();
+        }
+
+        private void drain() {
+            if (drainers.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (done) {
+                    return;
+                }
+                if (cancelled) {
+                    terminate();
+                    return;
+                }
+                if (invalidRequest != null) {
+                    cancel();
+                    terminate();
+                    subscriber.onError(invalidRequest);
+                    return;
+                }
+                receiveFetchedPage();
+                fetchIfDemanded();
+
+                long demand = requested.get();
+                long emitted = 0;
+                while (emitted != demand && !buffer.isEmpty()) {
+                    if (cancelled) {
+                        terminate();
+                        return;
+                    }
+                    subscriber.onNext(buffer.poll());
+                    emitted++;
+                }
+                if (emitted > 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+
+                if (buffer.isEmpty() && failure != null) {
+                    terminate();
+                    subscriber.onError(failure);
+                    return;
+                } else if (buffer.isEmpty() && lastPageFetched) {
+                    terminate();
+                    subscriber.onComplete();
+                    return;
+                }
+                fetchIfDemanded();
+                missed = drainers.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void receiveFetchedPage() {
+            if (!fetching) {
+                return;
+            }
+            Throwable fetchFailure = this.fetchFailure;
+            List<T> page = this.fetchedPage;
+            if (fetchFailure != null) {
+                fetching = false;
+                failure = fetchFailure;
+            } else if (page != null) {
+                fetching = false;
+                fetchedPage = null;
+                buffer.addAll(page);
+                offset += page.size();
+                lastPageFetched = page.size() < pageSize;
+            }
+        }
+
+        private void fetchIfDemanded() {
+            if (fetching || lastPageFetched || failure != null || requested.get() <= buffer.size()) {
+                return;
+            }
+            fetching = true;
+            int pageOffset = offset;
+            try {
+                executor.execute(() -> {
+                    try {
+                        fetchedPage = cancellation.run(() -> fetcher.fetch(pageOffset, pageSize));
+                    } catch (Throwable e) {
+                        fetchFailure = e;
+                    }
+                    drain();
+                });
+            } catch (RejectedExecutionException e) {
+                fetchFailure = e;
+                drain();
+            }
+        }
+
+        private void terminate() {
+            done = true;
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static no.digipost.api.client.internal.ExceptionUtils.asUnchecked;
+import static no.digipost.api.client.internal.ExceptionUtils.exceptionNameAndMessage;
+
+/**
+ * A cache which never blocks on a value it has already loaded. When a value becomes older than
+ * the configured refresh interval, the next access triggers a reload in the background, while the
+ * current value is still returned. If the reload fails, the last successfully loaded value is kept.
+ * Only the very first load of a key is done synchronously, and concurrent first-time loads of the
+ * same key will wait for a single load instead of fetching the value each.
+ * <p>
+ * There is at most one reload of each key at a time, and reloads are by default done by a small
+ * number of threads shared by all caches. If too many reloads are already waiting, a reload is dropped,
+ * and will be attempted again on the next access.
+ * <p>
+ * If configured to evict idle entries, values which have not been accessed during a whole refresh
+ * interval are removed, unless they were {@link #preload(Object, Callable) preloaded}.
+ */
+final class RefreshAheadCache<K, V> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RefreshAheadCache.class);
+
+    private static final int REFRESH_THREADS = 2;
+    private static final int MAX_WAITING_REFRESHES = 100;
+    private static final Executor DEFAULT_REFRESH_EXECUTOR = newRefreshExecutor();
+
+    private static Executor newRefreshExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                REFRESH_THREADS, REFRESH_THREADS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_WAITING_REFRESHES), runnable -> {
+                    Thread thread = new Thread(runnable, "digipost-cache-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private final String name;
+    private final Duration refreshInterval;
+    private final boolean evictIdleEntries;
+    private final Clock clock;
+    private final Executor refreshExecutor;
+    private final ConcurrentMap<K, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<Instant> nextEviction;
+
+    RefreshAheadCache(String name, Duration refreshInterval, boolean evictIdleEntries, Clock clock) {
+        this(name, refreshInterval, evictIdleEntries, clock, DEFAULT_REFRESH_EXECUTOR);
+    }
+
+    RefreshAheadCache(String name, Duration refreshInterval, boolean evictIdleEntries, Clock clock, Executor refreshExecutor) {
+        this.name = name;
+        this.refreshInterval = refreshInterval;
+        this.evictIdleEntries = evictIdleEntries;
+        this.clock = clock;
+        this.refreshExecutor = refreshExecutor;
+        this.nextEviction = new AtomicReference<>(clock.instant().plus(refreshInterval));
+    }
+
+    V get(K key, Callable<V> loader) {
+        Instant now = clock.instant();
+        if (evictIdleEntries) {
+            evictIdleEntries(now);
+        }
+        Entry entry = entries.computeIfAbsent(key, k -> new Entry(now));
+        entry.lastAccessed = now;
+        Loaded<V> loaded = entry.loaded;
+        if (loaded == null) {
+            return entry.loadInitially(key, loader);
+        }
+        if (loaded.isOlderThan(refreshInterval, now) && refreshing.add(key)) {
+            refreshInBackground(key, entry, loader);
+        }
+        return loaded.value;
+    }
+
+    /**
+     * Load the value for the given key right away, regardless of any already cached value.
+     * A preloaded value is never evicted, but is refreshed as any other value when accessed.
+     * Exceptions from the loader are propagated to the caller.
+     */
+    V preload(K key, Callable<V> loader) {
+        Entry entry = entries.computeIfAbsent(key, k -> new Entry(clock.instant()));
+        entry.preloaded = true;
+        Loaded<V> loaded = entry.load(loader);
+        return loaded.value;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void evictIdleEntries(Instant now) {
+        Instant evictionDue = nextEviction.get();
+        if (now.isBefore(evictionDue) || !nextEviction.compareAndSet(evictionDue, now.plus(refreshInterval))) {
+            return;
+        }
+        Instant idleSince = now.minus(refreshInterval);
+        entries.values().removeIf(entry -> !entry.preloaded && entry.lastAccessed.isBefore(idleSince));
+    }
+
+    private void refreshInBackground(K key, Entry entry, Callable<V> loader) {
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    entry.load(loader);
+                    LOG.debug("Refreshed '{}' in cache {}", key, name);
+                } catch (Exception e) {
+                    LOG.warn("Unable to refresh '{}' in cache {}, will keep using previously loaded value. {}", key, name, exceptionNameAndMessage(e));
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+            LOG.debug("Too many refreshes waiting, dropped refresh of '{}' in cache {}", key, name);
+        } catch (RuntimeException e) {
+            refreshing.remove(key);
+            LOG.warn("Unable to schedule refresh of '{}' in cache {}. {}", key, name, exceptionNameAndMessage(e));
+        }
+    }
+
+
+    private final class Entry {
+        final ReentrantLock initialLoadLock = new ReentrantLock();
+        volatile Loaded<V> loaded;
+        volatile Instant lastAccessed;
+        volatile boolean preloaded;
+
+        Entry(Instant created) {
+            this.lastAccessed = created;
+        }
+
+        V loadInitially(K key, Callable<V> loader) {
+            initialLoadLock.lock();
+            try {
+                Loaded<V> alreadyLoaded = loaded;
+                if (alreadyLoaded != null) {
+                    return alreadyLoaded.value;
+                }
+                LOG.debug("Loading '{}' into cache {}", key, name);
+                return load(loader).value;
+            } finally {
+                initialLoadLock.unlock();
+            }
+        }
+
+        Loaded<V> load(Callable<V> loader) {
+            V value;
+            try {
+                value = loader.call();
+            } catch (Exception e) {
+                throw asUnchecked(e);
+            }
+            Loaded<V> newlyLoaded = new Loaded<>(value, clock.instant());
+            this.loaded = newlyLoaded;
+            return newlyLoaded;
+        }
+    }
+
+    private static final class Loaded<T> {
+        final T value;
+        final Instant loadedAt;
+
+        Loaded(T value, Instant loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+
+        boolean isOlderThan(Duration age, Instant now) {
+            return loadedAt.plus(age).isBefore(now);
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import java.io.InputStream;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static javax.xml.stream.XMLStreamConstants.END_DOCUMENT;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+import static no.digipost.api.client.internal.ExceptionUtils.exceptionNameAndMessage;
+
+/**
+ * Unmarshals the elements of a list in an XML document one at a time, walking the document with StAX, and
+ * gives each to a consumer before the next is read. The elements are the children of the root element with a
+ * given name, e.g. the {@code event}s of {@code document-events}. Only one element is held in memory at any time,
+ * regardless of how many there are, and elements not {@link #stream(InputStream, Predicate, Consumer) included}
+ * are skipped without being unmarshalled.
+ */
+public final class StreamingUnmarshaller<T> {
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final JAXBContext context;
+    private final String elementName;
+    private final Class<T> type;
+
+    /**
+     * Unmarshal the elements with a context created for their type.
+     */
+    public StreamingUnmarshaller(String elementName, Class<T> type) {
+        this(newContext(type), elementName, type);
+    }
+
+    public StreamingUnmarshaller(JAXBContext context, String elementName, Class<T> type) {
+        this.context = context;
+        this.elementName = elementName;
+        this.type = type;
+    }
+
+    /**
+     * @param include decides, from the start tag the reader is positioned at, if an element should be unmarshalled.
+     *                It may read the attributes of the element, but must not move the reader.
+     * @param consumer is given each included element, in document order
+     * @return the number of elements in the document, including those which were skipped
+     */
+    public int stream(InputStream xml, Predicate<? super XMLStreamReader> include, Consumer<? super T> consumer) {
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(xml);
+            Unmarshaller unmarshaller = context.createUnmarshaller();
+            int elements = 0;
+            int depth = 0;
+            for (int event = reader.getEventType(); event != END_DOCUMENT; ) {
+                if (event == START_ELEMENT && depth == 1 && reader.getLocalName().equals(elementName)) {
+                    elements++;
+                    if (include.test(reader)) {
+                        // leaves the reader at the event following the end of the element
+                        consumer.accept(unmarshaller.unmarshal(reader, type).getValue());
+                    } else {
+                        skipElement(reader);
+                    }
+                    event = reader.getEventType();
+                    continue;
+                } else if (event == START_ELEMENT) {
+                    depth++;
+                } else if (event == END_ELEMENT) {
+                    depth--;
+                }
+                event = reader.next();
+            }
+            return elements;
+        } catch (XMLStreamException | JAXBException e) {
+            throw new RuntimeException("Failed when trying to unmarshal " + elementName + " elements from inputstream. Cause: " + exceptionNameAndMessage(e), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // the stream itself is closed by the caller
+                }
+            }
+        }
+    }
+
+    private static JAXBContext newContext(Class<?> type) {
+        try {
+            return JAXBContext.newInstance(type);
+        } catch (JAXBException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Move the reader from the start of an element to the event following its end.
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        for (int depth = 1; depth > 0; ) {
+            int event = reader.next();
+            if (event == START_ELEMENT) {
+                depth++;
+            } else if (event == END_ELEMENT) {
+                depth--;
+            }
+        }
+        reader.next();
+    }
+}
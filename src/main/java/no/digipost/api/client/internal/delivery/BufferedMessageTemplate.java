@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import no.digipost.api.client.DigipostClientConfig;
+import no.digipost.api.client.delivery.DeliveryPriority;
+import no.digipost.api.client.delivery.MessageTemplate;
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.internal.BulkTasks;
+import no.digipost.api.client.representations.Document;
+import no.digipost.api.client.representations.Message;
+import no.digipost.api.client.representations.Message.MessageBuilder;
+import no.digipost.api.client.representations.MessageDelivery;
+import no.digipost.api.client.representations.MessageRecipient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Objects.requireNonNull;
+import static no.digipost.api.client.delivery.DeliveryPriority.BULK;
+import static no.digipost.api.client.delivery.DeliveryPriority.INTERACTIVE;
+
+/**
+ * Holder innholdet til dokumentene i en mal i {@link ContentBuffers}, som brukes direkte for hver sending.
+ * Valideringer av innholdet blir da tatt vare på i {@link ContentBuffer}-ene, slik at de kun gjøres én gang.
+ */
+final class BufferedMessageTemplate implements MessageTemplate {
+
+    static final class Builder implements MessageTemplate.Builder {
+
+        private final MessageDeliverer sender;
+        private final DigipostClientConfig config;
+        private final List<Document> documents = new ArrayList<>();
+        private final Map<UUID, InputStream> contents = new HashMap<>();
+        private final Map<UUID, InputStream> printContents = new HashMap<>();
+        private Consumer<? super MessageBuilder> messageDetails = message -> {};
+
+        Builder(MessageDeliverer sender, DigipostClientConfig config, Document primaryDocument, List<Document> attachments) {
+            this.sender = sender;
+            this.config = config;
+            this.documents.add(requireNonNull(primaryDocument, "primaryDocument"));
+            this.documents.addAll(attachments);
+        }
+
+        @Override
+        public Builder addContent(Document document, InputStream content) {
+            contents.put(document.uuid, content);
+            printContents.remove(document.uuid);
+            return this;
+        }
+
+        @Override
+        public Builder addContent(Document document, Path content) {
+            return addContent(document, ContentBuffer.streamOf(content));
+        }
+
+        @Override
+        public Builder addContent(Document document, InputStream content, InputStream printContent) {
+            contents.put(document.uuid, content);
+            printContents.put(document.uuid, printContent);
+            return this;
+        }
+
+        @Override
+        public Builder messageDetails(Consumer<? super MessageBuilder> messageDetails) {
+            this.messageDetails = requireNonNull(messageDetails, "messageDetails");
+            return this;
+        }
+
+        @Override
+        public BufferedMessageTemplate build() {
+            for (Document document : documents) {
+                if (!contents.containsKey(document.uuid)) {
+                    throw new IllegalStateException("Document with uuid " + document.uuid + " in the template has no content");
+                }
+            }
+            ContentBuffers buffers = ContentBuffers.from(config);
+            try {
+                Map<Document, TemplateContent> bufferedContents = new LinkedHashMap<>();
+                for (Document document : documents) {
+                    ContentBuffer content = buffers.read(contents.get(document.uuid));
+                    InputStream printContent = printContents.get(document.uuid);
+                    bufferedContents.put(document, new TemplateContent(content, printContent != null ? buffers.read(printContent) : content));
+                }
+                return new BufferedMessageTemplate(sender, bufferedContents, messageDetails, buffers);
+            } catch (IOException | RuntimeException e) {
+                buffers.close();
+                throw DigipostClientException.from(e);
+            }
+        }
+    }
+
+
+    private final MessageDeliverer sender;
+    private final Map<Document, TemplateContent> documents;
+    private final Consumer<? super MessageBuilder> messageDetails;
+    private final ContentBuffers buffers;
+
+    private BufferedMessageTemplate(MessageDeliverer sender, Map<Document, TemplateContent> documents,
+                                    Consumer<? super MessageBuilder> messageDetails, ContentBuffers buffers) {
+        this.sender = sender;
+        this.documents = documents;
+        this.messageDetails = messageDetails;
+        this.buffers = buffers;
+    }
+
+    @Override
+    public MessageDelivery send(MessageRecipient recipient, Consumer<? super MessageBuilder> recipientMessageDetails) {
+        return send(recipient, recipientMessageDetails, INTERACTIVE);
+    }
+
+    @Override
+    public List<MessageDelivery> sendToAll(Collection<? extends MessageRecipient> recipients) {
+        return BulkTasks.map(recipients, recipient -> send(recipient, message -> {}, BULK));
+    }
+
+    private MessageDelivery send(MessageRecipient recipient, Consumer<? super MessageBuilder> recipientMessageDetails, DeliveryPriority priority) {
+        List<Document> documentCopies = new ArrayList<>();
+        Map<UUID, DocumentContent> contents = new HashMap<>();
+        documents.forEach((document, content) -> {
+            Document copy = document.copyDocumentWithUuid(UUID.randomUUID());
+            documentCopies.add(copy);
+            contents.put(copy.uuid, DocumentContent.CreateMultiStreamContent(content.digipost.asInputStream(), content.print.asInputStream()));
+        });
+
+        MessageBuilder message = Message.newMessage(UUID.randomUUID(), documentCopies.get(0))
+                .attachments(unmodifiableList(documentCopies.subList(1, documentCopies.size())))
+                .recipient(recipient);
+        messageDetails.accept(message);
+        recipientMessageDetails.accept(message);
+        return sender.sendMultipartMessage(message.build(), contents, priority);
+    }
+
+    @Override
+    public void close() {
+        buffers.close();
+    }
+
+
+    private static final class TemplateContent {
+        final ContentBuffer digipost;
+        final ContentBuffer print;
+
+        TemplateContent(ContentBuffer digipost, ContentBuffer print) {
+            this.digipost = digipost;
+            this.print = print;
+        }
+    }
+}
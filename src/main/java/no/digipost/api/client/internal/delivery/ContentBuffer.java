@@ -0,0 +1,310 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import no.digipost.api.client.security.Digester;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Content which can be read any number of times, either from memory or from a file. It is
+ * either created by {@link ContentBuffers}, which buffers content read from a stream, or
+ * {@link #streamOf(Path) given} {@link #streamOf(ByteBuffer) directly} by the caller, in which
+ * case the content is used where it is, without being copied.
+ */
+final class ContentBuffer {
+
+    /**
+     * @return a stream of the content of a file, which is recognized by {@link ContentBuffers#read(InputStream)}
+     *         so the file is used as is, instead of being buffered. The file is not opened until needed.
+     */
+    static InputStream streamOf(Path file) {
+        return new BufferedContentStream(() -> new ContentBuffer(file, Files.size(file)));
+    }
+
+    /**
+     * @return a stream of the remaining content of a buffer, which is recognized by {@link ContentBuffers#read(InputStream)}
+     *         so the buffer is used as is, instead of being copied. The position of the given buffer is not changed.
+     */
+    static InputStream streamOf(ByteBuffer content) {
+        return new ContentBuffer(content).asInputStream();
+    }
+
+
+    private final ByteBuffer data;
+    private final Path file;
+    private final long size;
+    private byte[] sha256;
+    private final Map<Object, Object> validations = new HashMap<>();
+
+    /**
+     * Guards the digest and validation results, which may require reading the content. A lock is used
+     * instead of {@code synchronized}, so a virtual thread waiting for the content to be read does not pin
+     * its carrier thread.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    ContentBuffer(byte[] data) {
+        this(ByteBuffer.wrap(data));
+    }
+
+    ContentBuffer(ByteBuffer data) {
+        this.data = data.slice();
+        this.file = null;
+        this.size = this.data.remaining();
+    }
+
+    ContentBuffer(Path file, long size) {
+        this.data = null;
+        this.file = file;
+        this.size = size;
+    }
+
+    long size() {
+        return size;
+    }
+
+    boolean isInMemory() {
+        return file == null;
+    }
+
+    /**
+     * @return the file containing the content, or {@code null} if it is {@link #isInMemory() in memory}
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the content. If the content is not already a complete array in memory, it is copied
+     *         into one, and content in a file is read into memory.
+     */
+    byte[] toByteArray() throws IOException {
+        if (!isInMemory()) {
+            return Files.readAllBytes(file);
+        } else if (data.hasArray() && data.arrayOffset() == 0 && data.array().length == size) {
+            return data.array();
+        } else {
+            byte[] copy = new byte[(int) size];
+            data.duplicate().get(copy);
+            return copy;
+        }
+    }
+
+    InputStream openStream() throws IOException {
+        if (!isInMemory()) {
+            return new BufferedInputStream(Files.newInputStream(file));
+        } else if (data.hasArray()) {
+            return new ByteArrayInputStream(data.array(), data.arrayOffset(), (int) size);
+        } else {
+            return new ByteBufferInputStream(data.duplicate());
+        }
+    }
+
+    /**
+     * @return the SHA-256 digest of the content. Unless it was computed while the content was
+     *         {@link ContentBuffers#read(InputStream, boolean) buffered}, the content is read to compute it.
+     */
+    byte[] sha256() throws IOException {
+        lock.lock();
+        try {
+            if (sha256 == null) {
+                sha256 = Digester.sha256.createDigest(this::writeTo);
+            }
+            return sha256;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    ContentBuffer withSha256(byte[] sha256) {
+        lock.lock();
+        try {
+            this.sha256 = sha256;
+            return this;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the result of validating the content, which is only done the first time it is requested with a given key.
+     * This makes content which is sent several times, e.g. from a {@link no.digipost.api.client.delivery.MessageTemplate},
+     * only be validated once.
+     *
+     * @param key identifies the validation, e.g. the settings it is done with
+     */
+    <R> R validation(Object key, Validation<R> validation) throws IOException {
+        lock.lock();
+        try {
+            @SuppressWarnings("unchecked")
+            R result = (R) validations.get(key);
+            if (result == null) {
+                result = validation.validate();
+                validations.put(key, result);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the content to a stream. Content in a file is transferred using
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, and content in memory is
+     * written directly from where it is.
+     */
+    void writeTo(OutputStream out) throws IOException {
+        if (!isInMemory()) {
+            WritableByteChannel target = Channels.newChannel(out);
+            try (FileChannel source = FileChannel.open(file, READ)) {
+                for (long position = 0; position < size; ) {
+                    position += source.transferTo(position, size - position, target);
+                }
+            }
+        } else if (data.hasArray()) {
+            out.write(data.array(), data.arrayOffset(), (int) size);
+        } else {
+            Channels.newChannel(out).write(data.duplicate());
+        }
+    }
+
+    /**
+     * @return a stream of the content, which is not opened until read from. It is recognized by
+     *         {@link ContentBuffers#read(InputStream)}, so handing the content on as a stream does not
+     *         make it be buffered once more.
+     */
+    InputStream asInputStream() {
+        return new BufferedContentStream(() -> this);
+    }
+
+
+    @FunctionalInterface
+    interface Validation<R> {
+        R validate() throws IOException;
+    }
+
+    @FunctionalInterface
+    interface Source {
+        ContentBuffer get() throws IOException;
+    }
+
+    static final class BufferedContentStream extends InputStream {
+
+        private final Source source;
+        private ContentBuffer buffer;
+        private InputStream opened;
+
+        private BufferedContentStream(Source source) {
+            this.source = source;
+        }
+
+        ContentBuffer buffer() throws IOException {
+            if (buffer == null) {
+                buffer = source.get();
+            }
+            return buffer;
+        }
+
+        private InputStream opened() throws IOException {
+            if (opened == null) {
+                opened = buffer().openStream();
+            }
+            return opened;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return opened().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return opened().read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return opened().skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return opened == null ? 0 : opened.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (opened != null) {
+                opened.close();
+            }
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer content;
+
+        ByteBufferInputStream(ByteBuffer content) {
+            this.content = content;
+        }
+
+        @Override
+        public int read() {
+            return content.hasRemaining() ? content.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            } else if (!content.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(len, content.remaining());
+            content.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, content.remaining()));
+            content.position(content.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return content.remaining();
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import no.digipost.api.client.DigipostClientConfig;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.io.DigestOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates {@link ContentBuffer}s for the content of one message delivery. Content up to a
+ * threshold is kept in memory, while larger content is spooled to temporary files. The
+ * files are deleted when the buffers are {@link #close() closed}, which must be done when
+ * the delivery has completed.
+ */
+final class ContentBuffers implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ContentBuffers.class);
+
+    /**
+     * Buffers which never spool to disk, and so do not need to be closed.
+     */
+    static ContentBuffers inMemory() {
+        return new ContentBuffers(Integer.MAX_VALUE, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    static ContentBuffers from(DigipostClientConfig config) {
+        return new ContentBuffers(config.contentSpoolingThreshold, config.contentSpoolingDirectory);
+    }
+
+    @FunctionalInterface
+    interface Writer {
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+
+    private final int threshold;
+    private final Path directory;
+    private final List<Path> spooledFiles = new ArrayList<>();
+
+    ContentBuffers(int threshold, Path directory) {
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    /**
+     * Buffer the content of a stream. If the stream is {@link ContentBuffer#asInputStream() from a buffer},
+     * e.g. one created by these buffers or a file given by the caller, that buffer is returned as is,
+     * instead of being copied. Content {@link SuppliedContentStream from a supplier} is read from a new
+     * stream, which is closed when it has been read.
+     */
+    ContentBuffer read(InputStream content) throws IOException {
+        return read(content, false);
+    }
+
+    /**
+     * Buffer the content of a stream, and optionally compute its {@link ContentBuffer#sha256() SHA-256 digest}
+     * while it is read.
+     *
+     * @see #read(InputStream)
+     */
+    ContentBuffer read(InputStream content, boolean computeSha256) throws IOException {
+        if (content instanceof ContentBuffer.BufferedContentStream) {
+            return ((ContentBuffer.BufferedContentStream) content).buffer();
+        } else if (content instanceof SuppliedContentStream) {
+            try (InputStream suppliedContent = ((SuppliedContentStream) content).open()) {
+                return copy(suppliedContent, computeSha256);
+            }
+        }
+        return copy(content, computeSha256);
+    }
+
+    private ContentBuffer copy(InputStream content, boolean computeSha256) throws IOException {
+        if (!computeSha256) {
+            return write(out -> IOUtils.copy(content, out));
+        }
+        DigestOutputStream sha256 = new DigestOutputStream(new SHA256Digest());
+        return write(out -> IOUtils.copy(content, new TeeOutputStream(out, sha256))).withSha256(sha256.getDigest());
+    }
+
+    /**
+     * Buffer everything written by the given writer.
+     */
+    ContentBuffer write(Writer writer) throws IOException {
+        DeferredFileOutputStream output = new DeferredFileOutputStream(threshold, "digipost-content-", ".tmp", directory.toFile());
+        try (OutputStream buffering = output) {
+            writer.writeTo(buffering);
+        } finally {
+            if (!output.isInMemory()) {
+                spooledFiles.add(output.getFile().toPath());
+            }
+        }
+        if (output.isInMemory()) {
+            return new ContentBuffer(output.getData());
+        } else {
+            Path file = output.getFile().toPath();
+            LOG.debug("Mellomlagret {} bytes innhold i {}", output.getByteCount(), file);
+            return new ContentBuffer(file, output.getByteCount());
+        }
+    }
+
+    /**
+     * @return whether the content is larger than what is to be kept in memory, and so should be streamed
+     *         instead of being read into memory.
+     */
+    boolean exceedsMemoryThreshold(ContentBuffer content) {
+        return content.size() > threshold;
+    }
+
+    /**
+     * Delete all temporary files created by these buffers.
+     */
+    @Override
+    public void close() {
+        for (Path file : spooledFiles) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOG.warn("Klarte ikke å slette midlertidig fil {}: {} '{}'", file, e.getClass().getSimpleName(), e.getMessage());
+            }
+        }
+        spooledFiles.clear();
+    }
+
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import no.digipost.api.client.errorhandling.ErrorCode;
+import no.digipost.api.client.metrics.DeliveryTimings;
+import no.digipost.api.client.metrics.DeliveryTimings.DocumentBytes;
+import no.digipost.api.client.metrics.DeliveryTimings.Phase;
+import no.digipost.api.client.representations.Document;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Records the time spent in each {@link Phase} of delivering one message, and the sizes of its documents.
+ * A phase timed while another is in progress is deducted from the time of the outer phase, so each phase
+ * only gets the time spent exclusively in it.
+ * <p>
+ * One instance is used for one delivery, by one thread, and is not thread safe.
+ */
+final class DeliveryTimer {
+
+    interface TimedCall<T, X extends Exception> {
+        T call() throws X;
+    }
+
+    interface TimedRun<X extends Exception> {
+        void run() throws X;
+    }
+
+    private final long start = System.nanoTime();
+    private final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+    private final Map<UUID, Long> contentBytes = new LinkedHashMap<>();
+    private final Map<UUID, Long> uploadedBytes = new LinkedHashMap<>();
+    private long nestedNanos = 0;
+
+    <T, X extends Exception> T time(Phase phase, TimedCall<T, X> action) throws X {
+        long phaseStart = System.nanoTime();
+        long nestedBefore = nestedNanos;
+        try {
+            return action.call();
+        } finally {
+            long elapsed = System.nanoTime() - phaseStart;
+            phaseNanos.merge(phase, elapsed - (nestedNanos - nestedBefore), Long::sum);
+            nestedNanos = nestedBefore + elapsed;
+        }
+    }
+
+    <X extends Exception> void run(Phase phase, TimedRun<X> action) throws X {
+        time(phase, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    void contentBytes(Document document, long bytes) {
+        contentBytes.put(document.uuid, bytes);
+    }
+
+    void uploadedBytes(Document document, long bytes) {
+        uploadedBytes.put(document.uuid, bytes);
+    }
+
+    DeliveryTimings complete(String messageId, ErrorCode failure) {
+        Map<UUID, DocumentBytes> documentBytes = new LinkedHashMap<>();
+        uploadedBytes.forEach((uuid, uploaded) -> documentBytes.put(uuid, new DocumentBytes(contentBytes.getOrDefault(uuid, uploaded), uploaded)));
+        return new DeliveryTimings(messageId, System.nanoTime() - start, phaseNanos, documentBytes, failure);
+    }
+}
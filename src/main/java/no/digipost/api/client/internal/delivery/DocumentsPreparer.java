@@ -19,6 +19,7 @@ import no.digipost.api.client.DigipostClientConfig;
 import no.digipost.api.client.errorhandling.DigipostClientException;
 import no.digipost.api.client.errorhandling.ErrorCode;
 import no.digipost.api.client.representations.Channel;
+import no.digipost.api.client.representations.ContentHash;
 import no.digipost.api.client.representations.Document;
 import no.digipost.api.client.representations.Message;
 import no.digipost.api.client.security.Encrypter;
@@ -27,24 +28,31 @@ import no.digipost.print.validate.PdfValidationSettings;
 import no.digipost.print.validate.PdfValidator;
 import no.digipost.sanitizing.HtmlValidationResult;
 import no.digipost.sanitizing.HtmlValidator;
+import org.bouncycastle.util.encoders.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 import static java.util.Optional.empty;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.CONTENT_READING;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.ENCRYPTION;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.HTML_VALIDATION;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.PDF_VALIDATION;
 import static no.digipost.api.client.representations.Channel.PRINT;
 import static no.digipost.api.client.representations.FileType.HTM;
 import static no.digipost.api.client.representations.FileType.HTML;
 import static no.digipost.api.client.representations.FileType.PDF;
+import static no.digipost.api.client.representations.HashAlgorithm.SHA256;
 import static no.digipost.print.validate.PdfValidationResult.EVERYTHING_OK;
 import static no.digipost.sanitizing.HtmlValidationResult.HTML_EVERYTHING_OK;
-import static org.apache.commons.io.IOUtils.toByteArray;
 
 class DocumentsPreparer {
 
@@ -61,6 +69,16 @@ class DocumentsPreparer {
     Map<Document, InputStream> prepare(
             Map<Document, InputStream> documentsAndContent, Message message,
             Encrypter encrypter, Supplier<PdfValidationSettings> pdfValidationSettings, DigipostClientConfig config) throws IOException {
+        return prepare(documentsAndContent, message, encrypter, pdfValidationSettings, config, ContentBuffers.inMemory(), new DeliveryTimer());
+    }
+
+    /**
+     * @param buffers where to buffer the content of documents to encrypt, and the encrypted result. Encrypted content
+     *                is returned as {@link ContentBuffer#asInputStream() streams of these buffers}.
+     */
+    Map<Document, InputStream> prepare(
+            Map<Document, InputStream> documentsAndContent, Message message, Encrypter encrypter, Supplier<PdfValidationSettings> pdfValidationSettings,
+            DigipostClientConfig config, ContentBuffers buffers, DeliveryTimer timer) throws IOException {
 
         final Map<Document, InputStream> prepared = new LinkedHashMap<>();
 
@@ -70,12 +88,17 @@ class DocumentsPreparer {
 
         for (Document document : (Iterable<Document>) documentsAndContent.keySet().stream().sorted(message.documentOrder())::iterator) {
             if (document.willBeEncrypted()) {
-                byte[] byteContent = toByteArray(documentsAndContent.get(document));
+                InputStream content = documentsAndContent.get(document);
+                ContentBuffer bufferedContent = timer.time(CONTENT_READING, () -> buffers.read(content, config.computeContentHash));
+                timer.contentBytes(document, bufferedContent.size());
+                if (config.computeContentHash) {
+                    setContentHash(document, bufferedContent);
+                }
                 LOG.debug("Validerer dokument med uuid '{}' før kryptering", document.uuid);
-                validateAndSetNrOfPages(message.getChannel(), document, byteContent, pdfValidationSettings);
-                validateHtml(document, byteContent, config);
+                timer.run(PDF_VALIDATION, () -> validateAndSetNrOfPages(message.getChannel(), document, bufferedContent, pdfValidationSettings));
+                timer.run(HTML_VALIDATION, () -> validateHtml(document, bufferedContent, config));
                 LOG.debug("Krypterer innhold for dokument med uuid '{}'", document.uuid);
-                prepared.put(document, encrypter.encrypt(byteContent));
+                prepared.put(document, timer.time(ENCRYPTION, () -> encrypt(bufferedContent, encrypter, buffers)));
             } else {
                 prepared.put(document, documentsAndContent.get(document));
             }
@@ -83,12 +106,39 @@ class DocumentsPreparer {
         return prepared;
     }
 
+    /**
+     * Set the content hash of a document, unless it already has one.
+     */
+    static void setContentHash(Document document, ContentBuffer content) throws IOException {
+        if (document.getContentHash() == null) {
+            document.setContentHash(new ContentHash(SHA256, Base64.toBase64String(content.sha256())));
+        }
+    }
+
+    private static InputStream encrypt(ContentBuffer content, Encrypter encrypter, ContentBuffers buffers) throws IOException {
+        if (!buffers.exceedsMemoryThreshold(content)) {
+            return encrypter.encrypt(content.toByteArray());
+        }
+        try (InputStream plainContent = content.openStream()) {
+            return buffers.write(encrypted -> encrypter.encrypt(plainContent, encrypted)).asInputStream();
+        }
+    }
+
+    private void validateHtml(Document document, ContentBuffer content, DigipostClientConfig config) throws IOException {
+        if (document.is(HTML) || document.is(HTM)) {
+            checkHtmlValidation(content.validation(HtmlValidator.class, () -> htmlValidator.valider(content.toByteArray())), config);
+        }
+    }
+
     void validateHtml(Document document, byte[] content, DigipostClientConfig config) {
         HtmlValidationResult htmlValidation = HTML_EVERYTHING_OK;
         if (document.is(HTML) || document.is(HTM)) {
             htmlValidation = htmlValidator.valider(content);
         }
+        checkHtmlValidation(htmlValidation, config);
+    }
 
+    private static void checkHtmlValidation(HtmlValidationResult htmlValidation, DigipostClientConfig config) {
         if (!htmlValidation.okForWeb) {
             throw new DigipostClientException(ErrorCode.INVALID_HTML_CONTENT, htmlValidation.toString());
         }
@@ -102,6 +152,22 @@ class DocumentsPreparer {
     }
 
     Optional<PdfInfo> validateAndSetNrOfPages(Channel channel, Document document, byte[] content, Supplier<PdfValidationSettings> pdfValidationSettings) {
+        return validateAndSetNrOfPages(channel, document, settings -> pdfValidator.validate(content, settings), pdfValidationSettings);
+    }
+
+    private Optional<PdfInfo> validateAndSetNrOfPages(Channel channel, Document document, ContentBuffer content, Supplier<PdfValidationSettings> pdfValidationSettings) {
+        return validateAndSetNrOfPages(channel, document, settings -> {
+            try {
+                return content.validation(settings, () -> content.isInMemory() ?
+                        pdfValidator.validate(content.toByteArray(), settings) : pdfValidator.validate(content.getFile(), settings));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, pdfValidationSettings);
+    }
+
+    private Optional<PdfInfo> validateAndSetNrOfPages(
+            Channel channel, Document document, Function<PdfValidationSettings, PdfValidationResult> validator, Supplier<PdfValidationSettings> pdfValidationSettings) {
         if (channel == PRINT && !document.is(PDF)) {
             throw new DigipostClientException(ErrorCode.INVALID_PDF_CONTENT,
                     "PDF is required for direct-to-print messages. Document with uuid " + document.uuid + " had filetype " + document.getDigipostFileType());
@@ -111,7 +177,7 @@ class DocumentsPreparer {
         Optional<PdfInfo> pdfInfo;
         if (document.is(PDF)) {
             LOG.debug("Validerer PDF-dokument med uuid '{}'", document.uuid);
-            pdfValidation = pdfValidator.validate(content, pdfValidationSettings.get());
+            pdfValidation = validator.apply(pdfValidationSettings.get());
             if (document.willBeEncrypted()) {
                 document.setNumberOfEncryptedPages(pdfValidation.pages);
             }
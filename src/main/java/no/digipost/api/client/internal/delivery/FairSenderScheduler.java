@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import no.digipost.api.client.metrics.ClientMetrics;
+import no.digipost.api.client.representations.sender.AuthorialSender;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import static no.digipost.api.client.internal.ExceptionUtils.asUnchecked;
+
+/**
+ * Lar et begrenset antall forsendelser pågå samtidig, og fordeler kapasiteten rettferdig mellom
+ * avsenderne når det er kø. Hver avsender har sin egen kø, og når en forsendelse er ferdig velges
+ * neste forsendelse med vektet round-robin (smooth weighted round-robin) mellom avsenderne som har
+ * forsendelser i kø. En avsender med dobbelt så stor andel får dermed startet dobbelt så mange
+ * forsendelser som andre avsendere med forsendelser i kø, uavhengig av hvor mange forsendelser
+ * som ligger i køen til hver av dem.
+ */
+final class FairSenderScheduler {
+
+    private final int concurrency;
+    private final ToIntFunction<AuthorialSender> share;
+    private final ClientMetrics metrics;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<AuthorialSender, SenderQueue> queues = new HashMap<>();
+
+    private int inFlight;
+    private int queued;
+
+    /**
+     * @param concurrency hvor mange forsendelser som kan pågå samtidig
+     * @param share andelen til hver avsender, som må være minst 1
+     */
+    FairSenderScheduler(int concurrency, ToIntFunction<AuthorialSender> share, ClientMetrics metrics) {
+        this.concurrency = concurrency;
+        this.share = share;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gjennomfører en forsendelse for en avsender, når det er dennes tur. Om tråden blir avbrutt
+     * (interrupted) mens forsendelsen venter i kø, gis plassen i køen opp og forsendelsen feiler
+     * uten å bli sendt.
+     *
+     * @param sender avsenderen, eller {@code null} om den ikke er kjent
+     */
+    <T> T schedule(AuthorialSender sender, Supplier<T> delivery) {
+        long queuedNanos;
+        try {
+            queuedNanos = awaitTurn(sender);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw asUnchecked(e);
+        }
+        if (sender != null) {
+            metrics.senderDeliveryStarted(sender, queuedNanos);
+        }
+        try {
+            return delivery.get();
+        } finally {
+            completed();
+        }
+    }
+
+    private long awaitTurn(AuthorialSender sender) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (inFlight < concurrency && queued == 0) {
+                inFlight++;
+                return 0;
+            }
+            long start = System.nanoTime();
+            Waiter waiter = new Waiter(lock.newCondition());
+            SenderQueue queue = queues.computeIfAbsent(sender, s -> new SenderQueue(s != null ? Math.max(1, share.applyAsInt(s)) : 1));
+            queue.waiters.add(waiter);
+            queued++;
+            if (sender != null) {
+                metrics.senderDeliveryQueued(sender);
+            }
+            try {
+                while (!waiter.admitted) {
+                    waiter.turn.await();
+                }
+            } catch (InterruptedException e) {
+                if (waiter.admitted) {
+                    completed();
+                } else {
+                    queue.waiters.remove(waiter);
+                    queued--;
+                    if (sender != null) {
+                        metrics.senderDeliveryCancelled(sender);
+                    }
+                }
+                throw e;
+            }
+            return Math.max(1, System.nanoTime() - start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void completed() {
+        lock.lock();
+        try {
+            inFlight--;
+            while (inFlight < concurrency && queued > 0) {
+                Waiter next = nextSenderInTurn().waiters.remove();
+                queued--;
+                inFlight++;
+                next.admitted = true;
+                next.turn.signal();
+            }
+            if (inFlight == 0 && queued == 0) {
+                // vektene til avsenderne må beholdes så lenge noe pågår, også når køen til en avsender er tom
+                // et øyeblikk, ellers får avsendere med korte køer mer enn sin andel av kapasiteten
+                queues.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private SenderQueue nextSenderInTurn() {
+        SenderQueue selected = null;
+        int totalShare = 0;
+        for (SenderQueue queue : queues.values()) {
+            if (queue.waiters.isEmpty()) {
+                continue;
+            }
+            queue.currentWeight += queue.share;
+            totalShare += queue.share;
+            if (selected == null || queue.currentWeight > selected.currentWeight) {
+                selected = queue;
+            }
+        }
+        selected.currentWeight -= totalShare;
+        return selected;
+    }
+
+
+    private static final class SenderQueue {
+        final int share;
+        final Queue<Waiter> waiters = new ArrayDeque<>();
+        int currentWeight;
+
+        SenderQueue(int share) {
+            this.share = share;
+        }
+    }
+
+    private static final class Waiter {
+        final Condition turn;
+        boolean admitted;
+
+        Waiter(Condition turn) {
+            this.turn = turn;
+        }
+    }
+}
@@ -0,0 +1,442 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import no.digipost.api.client.delivery.DeliveryPriority;
+import no.digipost.api.client.delivery.OngoingDelivery;
+import no.digipost.api.client.delivery.Outbox;
+import no.digipost.api.client.delivery.OutboxListener;
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.errorhandling.ErrorCode;
+import no.digipost.api.client.representations.Document;
+import no.digipost.api.client.representations.Message;
+import no.digipost.api.client.representations.MessageDelivery;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.NoHttpResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Arrays.asList;
+import static java.util.Objects.requireNonNull;
+import static no.digipost.api.client.errorhandling.ErrorCode.CONNECTION_ERROR;
+import static no.digipost.api.client.errorhandling.ErrorCode.DIGIPOST_MESSAGE_ALREADY_DELIVERED;
+import static no.digipost.api.client.errorhandling.ErrorCode.DUPLICATE_MESSAGE;
+import static no.digipost.api.client.errorhandling.ErrorCode.MESSAGE_ALREADY_SENT;
+import static no.digipost.api.client.errorhandling.ErrorCode.PRINT_MESSAGE_ALREADY_DELIVERED;
+import static no.digipost.api.client.errorhandling.ErrorType.SERVER;
+import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
+import static no.digipost.api.client.util.JAXBContextUtils.marshal;
+import static no.digipost.api.client.util.JAXBContextUtils.unmarshal;
+
+/**
+ * En {@link Outbox} som lagrer forsendelser i en {@link OutboxLog}, og innhold som ikke allerede
+ * ligger i filer i en egen katalog for hver forsendelse under {@code content}.
+ */
+final class FileOutbox implements Outbox {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileOutbox.class);
+
+    private static final ErrorCode[] ALREADY_DELIVERED = {
+            DUPLICATE_MESSAGE, DIGIPOST_MESSAGE_ALREADY_DELIVERED, PRINT_MESSAGE_ALREADY_DELIVERED, MESSAGE_ALREADY_SENT };
+
+    /**
+     * Timeouts, refused or reset connections, a host name which could not be resolved, and connections
+     * closed before the whole response was received.
+     */
+    private static final List<Class<? extends IOException>> TRANSIENT_IO_FAILURES = asList(
+            InterruptedIOException.class, SocketException.class, UnknownHostException.class,
+            NoHttpResponseException.class, ConnectionClosedException.class);
+
+    static final class Builder implements Outbox.Builder {
+
+        private final MessageDeliverer sender;
+        private final Path directory;
+        private int workers = 4;
+        private long segmentSize = 16 * 1024 * 1024;
+        private Duration initialRetryDelay = Duration.ofSeconds(1);
+        private Duration maxRetryDelay = Duration.ofMinutes(5);
+        private DeliveryPriority priority = DeliveryPriority.BULK;
+        private OutboxListener listener = OutboxListener.NOOP;
+
+        Builder(MessageDeliverer sender, Path directory) {
+            this.sender = sender;
+            this.directory = requireNonNull(directory, "directory");
+        }
+
+        @Override
+        public Builder workers(int workers) {
+            if (workers < 1) {
+                throw new IllegalArgumentException("Utboksen må ha minst én tråd, men fikk " + workers);
+            }
+            this.workers = workers;
+            return this;
+        }
+
+        @Override
+        public Builder segmentSize(long bytes) {
+            this.segmentSize = bytes;
+            return this;
+        }
+
+        @Override
+        public Builder retryDelay(Duration initial, Duration max) {
+            this.initialRetryDelay = requireNonNull(initial, "initial");
+            this.maxRetryDelay = requireNonNull(max, "max");
+            return this;
+        }
+
+        @Override
+        public Builder priority(DeliveryPriority priority) {
+            this.priority = requireNonNull(priority, "priority");
+            return this;
+        }
+
+        @Override
+        public Builder listener(OutboxListener listener) {
+            this.listener = requireNonNull(listener, "listener");
+            return this;
+        }
+
+        @Override
+        public Outbox open() {
+            try {
+                FileOutbox outbox = new FileOutbox(this, OutboxLog.open(directory, segmentSize));
+                outbox.deleteUnreferencedContent();
+                for (OutboxLog.Entry entry : outbox.log.getPending()) {
+                    outbox.schedule(entry, 0, 0);
+                }
+                return outbox;
+            } catch (IOException e) {
+                throw DigipostClientException.from(e);
+            }
+        }
+    }
+
+
+    private final MessageDeliverer sender;
+    private final Path contentDirectory;
+    private final Duration initialRetryDelay;
+    private final Duration maxRetryDelay;
+    private final DeliveryPriority priority;
+    private final OutboxListener listener;
+    private final OutboxLog log;
+    private final ScheduledThreadPoolExecutor workers;
+    private volatile boolean closed;
+
+    private FileOutbox(Builder builder, OutboxLog log) {
+        this.sender = builder.sender;
+        this.contentDirectory = builder.directory.resolve("content");
+        this.initialRetryDelay = builder.initialRetryDelay;
+        this.maxRetryDelay = builder.maxRetryDelay;
+        this.priority = builder.priority;
+        this.listener = builder.listener;
+        this.log = log;
+        this.workers = new ScheduledThreadPoolExecutor(builder.workers, runnable -> {
+            Thread thread = new Thread(runnable, "digipost-outbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.workers.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    @Override
+    public Outbox.Entry add(Message message) {
+        if (closed) {
+            throw new IllegalStateException("Utboksen er lukket");
+        }
+        return new Entry(message);
+    }
+
+    @Override
+    public int getPendingCount() {
+        return log.getPendingCount();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        workers.shutdown();
+        boolean interrupted = false;
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.info("Venter på at forsendelser fra utboksen skal bli ferdig sendt");
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            throw DigipostClientException.from(e);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    private void schedule(OutboxLog.Entry entry, int attempt, long delayMillis) {
+        try {
+            workers.schedule(() -> deliver(entry, attempt), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Utboksen er lukket, og melding med id {} sendes neste gang den åpnes", entry.messageId);
+        }
+    }
+
+    private void deliver(OutboxLog.Entry entry, int attempt) {
+        if (closed) {
+            return;
+        }
+        MessageDelivery delivery;
+        try {
+            delivery = send(unmarshal(jaxbContext, new ByteArrayInputStream(entry.message), Message.class), entry.contents);
+        } catch (RuntimeException sendFailure) {
+            DigipostClientException e = DigipostClientException.from(sendFailure);
+            if (e.isOneOf(ALREADY_DELIVERED)) {
+                complete(entry);
+                notifyListener(() -> listener.alreadyDelivered(entry.messageId));
+            } else if (isTransient(e)) {
+                long delay = retryDelayMillis(attempt);
+                LOG.warn("Sending av melding med id {} fra utboksen feilet, prøver igjen om {} ms: {}", entry.messageId, delay, e.getMessage());
+                schedule(entry, attempt + 1, delay);
+            } else {
+                LOG.warn("Melding med id {} ble avvist, og fjernes fra utboksen: {}", entry.messageId, e.getMessage());
+                complete(entry);
+                notifyListener(() -> listener.failed(entry.messageId, e));
+            }
+            return;
+        }
+        complete(entry);
+        notifyListener(() -> listener.delivered(entry.messageId, delivery));
+    }
+
+    private MessageDelivery send(Message message, List<OutboxLog.Content> contents) {
+        Map<UUID, Document> documents = new LinkedHashMap<>();
+        message.getAllDocuments().forEach(document -> documents.put(document.uuid, document));
+        if (message.isDirectPrint()) {
+            OngoingDelivery.ForPrintOnly delivery = sender.createPrintOnlyMessage(message, priority);
+            for (OutboxLog.Content content : contents) {
+                delivery.addContent(documents.get(content.document), content.printContent != null ? content.printContent : content.content);
+            }
+            return ((OngoingDelivery.SendableDelivery) delivery).send();
+        } else {
+            OngoingDelivery.WithPrintFallback delivery = sender.createMessage(message, priority);
+            for (OutboxLog.Content content : contents) {
+                Document document = documents.get(content.document);
+                if (content.printContent != null) {
+                    delivery.addContent(document, content.content, content.printContent);
+                } else {
+                    delivery.addContent(document, content.content);
+                }
+            }
+            return ((OngoingDelivery.SendableDelivery) delivery).send();
+        }
+    }
+
+    /**
+     * A failure is transient if the API had a problem, or the request failed on the way with a timeout or
+     * a refused, reset or closed connection, which is found from the root cause. The exception is then
+     * usually wrapped in several layers. Other I/O errors, such as content files which can not be read or
+     * a failing TLS handshake, will not go away by trying again, and the message is reported as failed.
+     */
+    private static boolean isTransient(DigipostClientException e) {
+        if (e.getErrorType() == SERVER || e.getErrorCode() == CONNECTION_ERROR) {
+            return true;
+        }
+        Throwable rootCause = ExceptionUtils.getRootCause(e);
+        return TRANSIENT_IO_FAILURES.stream().anyMatch(failure -> failure.isInstance(rootCause));
+    }
+
+    private long retryDelayMillis(int attempt) {
+        long delay = initialRetryDelay.toMillis() << Math.min(attempt, 30);
+        return delay > 0 ? Math.min(delay, maxRetryDelay.toMillis()) : maxRetryDelay.toMillis();
+    }
+
+    private void complete(OutboxLog.Entry entry) {
+        try {
+            log.complete(entry);
+        } catch (IOException e) {
+            LOG.warn("Kunne ikke registrere at melding med id {} er sendt, og den vil bli sendt på nytt neste gang utboksen åpnes: {}", entry.messageId, e.getMessage());
+            return;
+        }
+        for (OutboxLog.Content content : entry.contents) {
+            if (content.ownedByOutbox) {
+                deleteContentDirectory(content.content.getParent());
+            }
+        }
+    }
+
+    private void notifyListener(Runnable notification) {
+        try {
+            notification.run();
+        } catch (RuntimeException e) {
+            LOG.warn("Feil fra {}: {}", listener.getClass().getName(), e.getMessage(), e);
+        }
+    }
+
+    private void deleteUnreferencedContent() throws IOException {
+        if (!Files.isDirectory(contentDirectory)) {
+            return;
+        }
+        Set<Path> referenced = new HashSet<>();
+        for (OutboxLog.Entry entry : log.getPending()) {
+            for (OutboxLog.Content content : entry.contents) {
+                if (content.ownedByOutbox) {
+                    referenced.add(content.content.getParent());
+                }
+            }
+        }
+        try (DirectoryStream<Path> entryDirectories = Files.newDirectoryStream(contentDirectory)) {
+            for (Path entryDirectory : entryDirectories) {
+                if (!referenced.contains(entryDirectory)) {
+                    deleteContentDirectory(entryDirectory);
+                }
+            }
+        }
+    }
+
+    private static void deleteContentDirectory(Path directory) {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            LOG.warn("Kunne ikke slette innhold i {}: {}", directory, e.getMessage());
+        }
+    }
+
+
+    private final class Entry implements Outbox.Entry {
+
+        private final Message message;
+        private final List<OutboxLog.Content> contents = new ArrayList<>();
+        private Path entryDirectory;
+
+        Entry(Message message) {
+            this.message = requireNonNull(message, "message");
+        }
+
+        @Override
+        public Entry addContent(Document document, InputStream content) {
+            contents.add(new OutboxLog.Content(document.uuid, store(content, document.uuid.toString()), null, true));
+            return this;
+        }
+
+        @Override
+        public Entry addContent(Document document, Path content) {
+            contents.add(new OutboxLog.Content(document.uuid, content.toAbsolutePath(), null, false));
+            return this;
+        }
+
+        @Override
+        public Entry addContent(Document document, InputStream content, InputStream printContent) {
+            Path storedContent = store(content, document.uuid.toString());
+            Path storedPrintContent = store(printContent, document.uuid + ".print");
+            contents.add(new OutboxLog.Content(document.uuid, storedContent, storedPrintContent, true));
+            return this;
+        }
+
+        @Override
+        public Entry addContent(Document document, Path content, Path printContent) {
+            contents.add(new OutboxLog.Content(document.uuid, content.toAbsolutePath(), printContent.toAbsolutePath(), false));
+            return this;
+        }
+
+        @Override
+        public String enqueue() {
+            message.getAllDocuments().forEach(document -> {
+                if (contents.stream().noneMatch(content -> content.document.equals(document.uuid))) {
+                    throw new IllegalStateException("Mangler innhold for dokument med uuid " + document.uuid);
+                }
+            });
+            ByteArrayOutputStream messageXml = new ByteArrayOutputStream();
+            marshal(jaxbContext, message, messageXml);
+            OutboxLog.Entry entry = new OutboxLog.Entry(message.messageId, messageXml.toByteArray(), contents);
+            try {
+                if (entryDirectory != null) {
+                    // the content files are forced when written, but they are not durable until their directories are
+                    OutboxLog.forceDirectory(entryDirectory);
+                    OutboxLog.forceDirectory(contentDirectory);
+                    OutboxLog.forceDirectory(contentDirectory.getParent());
+                }
+                log.append(entry);
+            } catch (IOException e) {
+                deleteStoredContent();
+                throw DigipostClientException.from(e);
+            } catch (RuntimeException e) {
+                deleteStoredContent();
+                throw e;
+            }
+            schedule(entry, 0, 0);
+            return message.messageId;
+        }
+
+        private Path store(InputStream content, String fileName) {
+            try (InputStream autoClosed = content) {
+                if (entryDirectory == null) {
+                    entryDirectory = Files.createDirectories(contentDirectory.resolve(UUID.randomUUID().toString()));
+                }
+                Path file = entryDirectory.resolve(fileName);
+                try (FileChannel channel = FileChannel.open(file, CREATE_NEW, WRITE)) {
+                    IOUtils.copyLarge(content, Channels.newOutputStream(channel));
+                    channel.force(true);
+                }
+                return file;
+            } catch (IOException e) {
+                throw DigipostClientException.from(e);
+            }
+        }
+
+        private void deleteStoredContent() {
+            if (entryDirectory != null) {
+                deleteContentDirectory(entryDirectory);
+            }
+        }
+    }
+}
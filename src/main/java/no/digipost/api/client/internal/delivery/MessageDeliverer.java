@@ -15,10 +15,14 @@
  */
 package no.digipost.api.client.internal.delivery;
 
+import no.digipost.api.client.BrokerId;
 import no.digipost.api.client.DigipostClientConfig;
 import no.digipost.api.client.EventLogger;
+import no.digipost.api.client.delivery.DeliveryPriority;
 import no.digipost.api.client.delivery.MessageDeliveryApi;
+import no.digipost.api.client.delivery.MessageTemplate;
 import no.digipost.api.client.delivery.OngoingDelivery;
+import no.digipost.api.client.delivery.Outbox;
 import no.digipost.api.client.errorhandling.DigipostClientException;
 import no.digipost.api.client.errorhandling.ErrorCode;
 import no.digipost.api.client.representations.AddDataLink;
@@ -33,12 +37,13 @@ import no.digipost.api.client.representations.Link;
 import no.digipost.api.client.representations.MediaTypes;
 import no.digipost.api.client.representations.Message;
 import no.digipost.api.client.representations.MessageDelivery;
+import no.digipost.api.client.representations.sender.AuthorialSender;
 import no.digipost.api.client.security.DigipostPublicKey;
 import no.digipost.api.client.security.Encrypter;
 import no.digipost.print.validate.PdfValidator;
 import no.digipost.sanitizing.HtmlValidator;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.FormBodyPartBuilder;
@@ -50,20 +55,30 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.security.cert.X509Certificate;
 import java.time.Clock;
-import java.time.Instant;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
 import java.util.stream.Stream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.time.Duration.ZERO;
-import static java.time.Duration.between;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
+import static no.digipost.api.client.delivery.DeliveryPriority.INTERACTIVE;
 import static no.digipost.api.client.internal.ExceptionUtils.asUnchecked;
 import static no.digipost.api.client.internal.http.response.HttpResponseUtils.checkResponse;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.CONTENT_READING;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.IDENTIFICATION;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.MARSHALLING;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.MULTIPART_ASSEMBLY;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.PRINT_CERTIFICATE;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.RESPONSE_VERIFICATION;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.SENDER_INFORMATION;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.UPLOAD;
 import static no.digipost.api.client.representations.MediaTypes.DIGIPOST_MULTI_MEDIA_SUB_TYPE_V7;
 import static no.digipost.api.client.security.Encrypter.FAIL_IF_TRYING_TO_ENCRYPT;
 import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
@@ -81,28 +96,63 @@ public class MessageDeliverer {
     private final MessageDeliveryApi apiService;
     private final EventLogger eventLogger;
 
-    private Instant printKeyCachedTime = Instant.MIN;
-    private X509Certificate cachedPrintCertificate;
+    private final PrintCertificateCache printCertificateCache;
+    private final BrokerId brokerId;
+    private final FairSenderScheduler senderScheduler;
 
 
     public MessageDeliverer(DigipostClientConfig config, MessageDeliveryApi apiService) {
-        this(config, apiService, new DocumentsPreparer(new PdfValidator(), new HtmlValidator()));
+        this(config, apiService, (BrokerId) null);
+    }
+
+    /**
+     * @param brokerId brukes som avsender av forsendelser uten egen avsender ved
+     *                 {@link DigipostClientConfig.Builder#fairSenderScheduling(int) rettferdig fordeling mellom avsendere}.
+     *                 Kan være {@code null}, og da deler alle slike forsendelser samme kø.
+     */
+    public MessageDeliverer(DigipostClientConfig config, MessageDeliveryApi apiService, BrokerId brokerId) {
+        this(config, apiService, new DocumentsPreparer(new PdfValidator(), new HtmlValidator()), brokerId);
     }
 
     public MessageDeliverer(DigipostClientConfig config, MessageDeliveryApi apiService, DocumentsPreparer documentsPreparer) {
+        this(config, apiService, documentsPreparer, null);
+    }
+
+    private MessageDeliverer(DigipostClientConfig config, MessageDeliveryApi apiService, DocumentsPreparer documentsPreparer, BrokerId brokerId) {
         this.eventLogger = config.eventLogger.withDebugLogTo(LOG);
         this.config = config;
         this.apiService = apiService;
         this.documentsPreparer = documentsPreparer;
         this.clock = config.clock;
+        this.printCertificateCache = new PrintCertificateCache(this::fetchEncryptionCertificateForPrint, config.printKeyCacheTimeToLive, config.cipherProvider, clock);
+        this.brokerId = brokerId;
+        this.senderScheduler = config.fairSchedulingConcurrency > 0
+                ? new FairSenderScheduler(config.fairSchedulingConcurrency, this::senderShare, config.metrics)
+                : null;
     }
 
     public OngoingDelivery.WithPrintFallback createMessage(Message message) {
-        return new WithPrintFallback(message, this);
+        return createMessage(message, INTERACTIVE);
+    }
+
+    public OngoingDelivery.WithPrintFallback createMessage(Message message, DeliveryPriority priority) {
+        return new WithPrintFallback(message, priority, this);
     }
 
     public OngoingDelivery.ForPrintOnly createPrintOnlyMessage(Message printMessage) {
-        return new PrintOnlyMessage(printMessage, this);
+        return createPrintOnlyMessage(printMessage, INTERACTIVE);
+    }
+
+    public OngoingDelivery.ForPrintOnly createPrintOnlyMessage(Message printMessage, DeliveryPriority priority) {
+        return new PrintOnlyMessage(printMessage, priority, this);
+    }
+
+    public MessageTemplate.Builder createMessageTemplate(Document primaryDocument, List<Document> attachments) {
+        return new BufferedMessageTemplate.Builder(this, config, primaryDocument, attachments);
+    }
+
+    public Outbox.Builder newOutbox(Path directory) {
+        return new FileOutbox.Builder(this, directory);
     }
 
 
@@ -113,47 +163,104 @@ public class MessageDeliverer {
      * krypteringsnøkkel.
      */
     public MessageDelivery sendMultipartMessage(Message message, Map<UUID, DocumentContent> documentsAndContent) {
-        EncrypterAndDocsWithInputstream encryptionAndInputStream = createEncrypterIfNecessaryAndMapContentToInputstream(message, documentsAndContent);
-        Map<Document, InputStream> documentInputStream = encryptionAndInputStream.documentsAndInputstream;
-        Message singleChannelMessage = encryptionAndInputStream.getSingleChannelMessage();
+        return sendMultipartMessage(message, documentsAndContent, INTERACTIVE);
+    }
 
+    /**
+     * Sender melding med gitt prioritet.
+     *
+     * @see #sendMultipartMessage(Message, Map)
+     */
+    public MessageDelivery sendMultipartMessage(Message message, Map<UUID, DocumentContent> documentsAndContent, DeliveryPriority priority) {
+        if (senderScheduler == null) {
+            return sendTimedMultipartMessage(message, documentsAndContent, priority);
+        }
+        AuthorialSender sender = brokerId != null || message.getSenderId().isPresent() || message.getSenderOrganization().isPresent()
+                ? AuthorialSender.resolve(brokerId, message)
+                : null;
+        return senderScheduler.schedule(sender, () -> sendTimedMultipartMessage(message, documentsAndContent, priority));
+    }
+
+    private int senderShare(AuthorialSender sender) {
+        Integer share = sender.is(AuthorialSender.Type.ACCOUNT_ID)
+                ? config.senderIdShares.get(sender.getAccountId())
+                : config.senderOrganizationShares.get(sender.getOrganization());
+        return share != null ? share : 1;
+    }
+
+    private MessageDelivery sendTimedMultipartMessage(Message message, Map<UUID, DocumentContent> documentsAndContent, DeliveryPriority priority) {
+        DeliveryTimer timer = new DeliveryTimer();
+        ErrorCode failure = null;
         try {
-            Map<Document, InputStream> preparedDocuments = documentsPreparer.prepare(
-                    documentInputStream, singleChannelMessage, encryptionAndInputStream.encrypter, () -> apiService.getSenderInformation(message).getPdfValidationSettings(), config);
+            return sendMultipartMessage(message, documentsAndContent, priority, timer);
+        } catch (RuntimeException e) {
+            failure = DigipostClientException.from(e).getErrorCode();
+            throw e;
+        } finally {
+            config.metrics.deliveryCompleted(timer.complete(message.messageId, failure));
+        }
+    }
 
-            ByteArrayOutputStream bao = new ByteArrayOutputStream();
-            marshal(jaxbContext, singleChannelMessage, bao);
-            ByteArrayBody attachment = new ByteArrayBody(bao.toByteArray(),
-                    ContentType.create(MediaTypes.DIGIPOST_MEDIA_TYPE_V7, UTF_8), "message");
+    private MessageDelivery sendMultipartMessage(Message message, Map<UUID, DocumentContent> documentsAndContent, DeliveryPriority priority, DeliveryTimer timer) {
+        EncrypterAndDocsWithInputstream encryptionAndInputStream = createEncrypterIfNecessaryAndMapContentToInputstream(message, documentsAndContent, priority, timer);
+        Map<Document, InputStream> documentInputStream = encryptionAndInputStream.documentsAndInputstream;
+        Message singleChannelMessage = encryptionAndInputStream.getSingleChannelMessage();
 
-            MultipartEntityBuilder multipartEntity = MultipartEntityBuilder.create()
-                    .setMode(HttpMultipartMode.STRICT)
-                    .setMimeSubtype(DIGIPOST_MULTI_MEDIA_SUB_TYPE_V7)
-                    .addPart(FormBodyPartBuilder.create("message", attachment)
-                            .addField("Content-Disposition", "attachment;" + " filename=\"message\"")
-                            .build());
+        try (ContentBuffers buffers = ContentBuffers.from(config)) {
+            Map<Document, InputStream> preparedDocuments = documentsPreparer.prepare(
+                    documentInputStream, singleChannelMessage, encryptionAndInputStream.encrypter,
+                    () -> timer.time(SENDER_INFORMATION, () -> apiService.getSenderInformation(message, priority)).getPdfValidationSettings(), config, buffers, timer);
 
+            Map<Document, ContentBuffer> bufferedDocuments = new LinkedHashMap<>();
             for (Entry<Document, InputStream> documentAndContent : preparedDocuments.entrySet()) {
                 Document document = documentAndContent.getKey();
-                InputStream content = documentAndContent.getValue();
-
-
-                byte[] bytes = IOUtils.toByteArray(content);
-                multipartEntity = multipartEntity
-                        .addPart(FormBodyPartBuilder
-                        .create("application", new ByteArrayBody(bytes, ContentType.create("application/" + defaultIfBlank(document.getDigipostFileType(), "octet-stream")), document.uuid.toString()))
-                        .addField("Content-Disposition", "attachment;" + " filename=\"" + document.uuid.toString() + "\"").build());
+                boolean computeContentHash = config.computeContentHash && !document.willBeEncrypted();
+                ContentBuffer bufferedContent = timer.time(CONTENT_READING, () -> buffers.read(documentAndContent.getValue(), computeContentHash));
+                if (computeContentHash) {
+                    DocumentsPreparer.setContentHash(document, bufferedContent);
+                }
+                bufferedDocuments.put(document, bufferedContent);
             }
-            eventLogger.log("*** STARTER INTERAKSJON MED API: SENDER MELDING MED ID " + singleChannelMessage.messageId + " ***");
-            try (CloseableHttpResponse response = apiService.sendMultipartMessage(multipartEntity.build())) {
-                checkResponse(response, eventLogger);
+            if (config.computeContentHash) {
+                copyContentHashes(singleChannelMessage, message);
+            }
+
+            ByteArrayOutputStream bao = new ByteArrayOutputStream();
+            timer.run(MARSHALLING, () -> marshal(jaxbContext, singleChannelMessage, bao));
+            HttpEntity multipart = timer.time(MULTIPART_ASSEMBLY, () -> {
+                ByteArrayBody attachment = new ByteArrayBody(bao.toByteArray(),
+                        ContentType.create(MediaTypes.DIGIPOST_MEDIA_TYPE_V7, UTF_8), "message");
+
+                MultipartEntityBuilder multipartEntity = MultipartEntityBuilder.create()
+                        .setMode(HttpMultipartMode.STRICT)
+                        .setMimeSubtype(DIGIPOST_MULTI_MEDIA_SUB_TYPE_V7)
+                        .addPart(FormBodyPartBuilder.create("message", attachment)
+                                .addField("Content-Disposition", "attachment;" + " filename=\"message\"")
+                                .build());
+
+                for (Entry<Document, ContentBuffer> documentAndContent : bufferedDocuments.entrySet()) {
+                    Document document = documentAndContent.getKey();
+                    ContentBuffer bufferedContent = documentAndContent.getValue();
+                    timer.uploadedBytes(document, bufferedContent.size());
+                    multipartEntity = multipartEntity
+                            .addPart(FormBodyPartBuilder
+                            .create("application", new ContentBufferBody(bufferedContent, ContentType.create("application/" + defaultIfBlank(document.getDigipostFileType(), "octet-stream")), document.uuid.toString()))
+                            .addField("Content-Disposition", "attachment;" + " filename=\"" + document.uuid.toString() + "\"").build());
+                }
+                return multipartEntity.build();
+            });
+            eventLogger.log(() -> "*** STARTER INTERAKSJON MED API: SENDER MELDING MED ID " + singleChannelMessage.messageId + " ***");
+            try (CloseableHttpResponse response = timer.time(UPLOAD, () -> apiService.sendMultipartMessage(multipart, priority))) {
+                return timer.time(RESPONSE_VERIFICATION, () -> {
+                    checkResponse(response, eventLogger);
 
-                eventLogger.log("Brevet ble sendt. Status: [" + response + "]");
+                    eventLogger.log(() -> "Brevet ble sendt. Status: [" + response + "]");
 
-                return unmarshal(jaxbContext, response.getEntity().getContent(), MessageDelivery.class);
+                    return unmarshal(jaxbContext, response.getEntity().getContent(), MessageDelivery.class);
+                });
 
             } catch (IOException e) {
-                throw new DigipostClientException(ErrorCode.GENERAL_ERROR, e.getMessage());
+                throw new DigipostClientException(ErrorCode.GENERAL_ERROR, e.getMessage(), e);
             }
 
         } catch (Exception e) {
@@ -168,7 +275,7 @@ public class MessageDeliverer {
 
             checkResponse(response, eventLogger);
 
-            eventLogger.log("Data ble lagt til dokument. Status: [" + response.toString() + "]");
+            eventLogger.log(() -> "Data ble lagt til dokument. Status: [" + response.toString() + "]");
         } catch (IOException e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -187,7 +294,7 @@ public class MessageDeliverer {
             checkResponse(encryptionKeyResponse, eventLogger);
 
             EncryptionKey key = unmarshal(jaxbContext, encryptionKeyResponse.getEntity().getContent(), EncryptionKey.class);
-            return Encrypter.using(new DigipostPublicKey(key)).encrypt(content);
+            return Encrypter.using(new DigipostPublicKey(key), config.cipherProvider).encrypt(content);
         } catch (IOException e) {
             throw asUnchecked(e);
         }
@@ -195,7 +302,11 @@ public class MessageDeliverer {
     }
 
     public IdentificationResultWithEncryptionKey identifyAndGetEncryptionKey(Identification identification) {
-        try(CloseableHttpResponse response = apiService.identifyAndGetEncryptionKey(identification)){
+        return identifyAndGetEncryptionKey(identification, INTERACTIVE);
+    }
+
+    private IdentificationResultWithEncryptionKey identifyAndGetEncryptionKey(Identification identification, DeliveryPriority priority) {
+        try(CloseableHttpResponse response = apiService.identifyAndGetEncryptionKey(identification, priority)){
             checkResponse(response, eventLogger);
             IdentificationResultWithEncryptionKey result =
                     unmarshal(jaxbContext, response.getEntity().getContent(), IdentificationResultWithEncryptionKey.class);
@@ -214,27 +325,40 @@ public class MessageDeliverer {
     }
 
     public X509Certificate getEncryptionCertificateForPrint() {
-        Instant now = clock.instant();
-
-        if (ZERO.equals(config.printKeyCacheTimeToLive) || between(printKeyCachedTime, now).compareTo(config.printKeyCacheTimeToLive) > 0) {
-            eventLogger.log("*** STARTER INTERAKSJON MED API: HENT KRYPTERINGSNØKKEL FOR PRINT ***");
-            try (CloseableHttpResponse response = apiService.getEncryptionCertificateForPrint()) {
-                checkResponse(response, eventLogger);
-                EncryptionCertificate encryptionCertificate = unmarshal(jaxbContext, response.getEntity().getContent(), EncryptionCertificate.class);
-                cachedPrintCertificate = encryptionCertificate.getX509Certificate();
-                printKeyCachedTime = now;
-                return cachedPrintCertificate;
-            } catch (IOException e) {
-                throw new RuntimeException(e.getMessage(), e);
-            }
-        } else {
-            eventLogger.log("Bruker cachet krypteringsnøkkel for print");
-            return cachedPrintCertificate;
+        return printCertificateCache.get(INTERACTIVE).certificate;
+    }
+
+    private Encrypter getEncrypterForPrint(DeliveryPriority priority) {
+        return printCertificateCache.get(priority).encrypter;
+    }
+
+    private X509Certificate fetchEncryptionCertificateForPrint(DeliveryPriority priority) {
+        eventLogger.log("*** STARTER INTERAKSJON MED API: HENT KRYPTERINGSNØKKEL FOR PRINT ***");
+        try (CloseableHttpResponse response = apiService.getEncryptionCertificateForPrint(priority)) {
+            checkResponse(response, eventLogger);
+            EncryptionCertificate encryptionCertificate = unmarshal(jaxbContext, response.getEntity().getContent(), EncryptionCertificate.class);
+            return encryptionCertificate.getX509Certificate();
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
         }
     }
 
 
 
+    /**
+     * The documents of a message sent to only one channel may be copies of the documents given by the caller,
+     * who should still be able to get the content hashes from their documents.
+     */
+    private static void copyContentHashes(Message singleChannelMessage, Message originalMessage) {
+        Map<UUID, Document> originalDocuments = originalMessage.getAllDocuments().collect(toMap(d -> d.uuid, identity()));
+        singleChannelMessage.getAllDocuments().forEach(document -> {
+            Document original = originalDocuments.get(document.uuid);
+            if (original != null && original != document && original.getContentHash() == null) {
+                original.setContentHash(document.getContentHash());
+            }
+        });
+    }
+
     private void checkThatMessageCanBePreEncrypted(final Document document) {
         Link encryptionKeyLink = document.getEncryptionKeyLink();
         if (encryptionKeyLink == null) {
@@ -246,7 +370,8 @@ public class MessageDeliverer {
 
 
     private EncrypterAndDocsWithInputstream createEncrypterIfNecessaryAndMapContentToInputstream(Message message,
-                                                                                                 Map<UUID, DocumentContent> documentsAndContent) {
+                                                                                                 Map<UUID, DocumentContent> documentsAndContent,
+                                                                                                 DeliveryPriority priority, DeliveryTimer timer) {
         final Map<Document, InputStream> documentsAndInputstream = new LinkedHashMap<>();
         Encrypter encrypter = FAIL_IF_TRYING_TO_ENCRYPT;
         Message singleChannelMessage;
@@ -256,27 +381,27 @@ public class MessageDeliverer {
 
                 if (singleChannelMessage.hasAnyDocumentRequiringEncryption()) {
                     eventLogger.log("Direkte print. Bruker krypteringsnøkkel for print.");
-                    encrypter = Encrypter.using(getEncryptionCertificateForPrint());
+                    encrypter = timer.time(PRINT_CERTIFICATE, () -> getEncrypterForPrint(priority));
                 }
 
             } else if (!message.recipient.hasPrintDetails() && !message.hasAnyDocumentRequiringEncryption()) {
                 singleChannelMessage = setMapAndMessageToDigipost(message, documentsAndContent, documentsAndInputstream);
 
             } else {
-                IdentificationResultWithEncryptionKey result = identifyAndGetEncryptionKey(message.recipient.toIdentification());
+                IdentificationResultWithEncryptionKey result = timer.time(IDENTIFICATION, () -> identifyAndGetEncryptionKey(message.recipient.toIdentification(), priority));
                 if (result.getResultCode() == IdentificationResultCode.DIGIPOST) {
                     singleChannelMessage = setMapAndMessageToDigipost(message, documentsAndContent, documentsAndInputstream);
 
                     if (singleChannelMessage.hasAnyDocumentRequiringEncryption()) {
                         eventLogger.log("Mottaker er Digipost-bruker. Bruker brukers krypteringsnøkkel.");
-                        encrypter = Encrypter.using(new DigipostPublicKey(result.getEncryptionKey()));
+                        encrypter = Encrypter.using(new DigipostPublicKey(result.getEncryptionKey()), config.cipherProvider);
                     }
                 } else if (message.recipient.hasPrintDetails()) {
                     singleChannelMessage = setMapAndMessageToPrint(message, documentsAndContent, documentsAndInputstream);
 
                     if (singleChannelMessage.hasAnyDocumentRequiringEncryption()) {
                         eventLogger.log("Mottaker er ikke Digipost-bruker. Bruker krypteringsnøkkel for print.");
-                        encrypter = Encrypter.using(getEncryptionCertificateForPrint());
+                        encrypter = timer.time(PRINT_CERTIFICATE, () -> getEncrypterForPrint(priority));
                     }
                 } else {
                     throw new DigipostClientException(ErrorCode.UNKNOWN_RECIPIENT, "Mottaker er ikke Digipost-bruker og forsendelse mangler print-fallback.");
@@ -0,0 +1,417 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * A write-ahead log of messages to deliver, kept in segment files in a directory. Each message is
+ * {@link #append(Entry) appended} as an entry, and later {@link #complete(Entry) completed}. When the
+ * log is {@link #open(Path, long) opened}, the entries which were not completed are {@link #getPending() pending},
+ * and should be delivered again.
+ * <p>
+ * Every record in a segment is framed with its length and a CRC32 checksum, so a record which was only
+ * partially written when the process died is detected and discarded. Appending an entry does not return
+ * until the entry has been forced to disk, but concurrent appends share the same force of the file (group commit).
+ * Completions are not forced, as a lost completion only makes the message be delivered once more.
+ * <p>
+ * The log is compacted by deleting segments as soon as all their entries are completed. When the
+ * active segment is full, the pending entries of older segments are carried over to the new segment,
+ * so the older segments can be deleted. When opened, all pending entries are written to a new segment,
+ * and all older segments are deleted.
+ */
+public final class OutboxLog implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OutboxLog.class);
+
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final byte APPENDED = 1;
+    private static final byte COMPLETED = 2;
+    private static final boolean IS_WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+
+    /**
+     * Open the log in the given directory, creating the directory if it does not exist.
+     *
+     * @param segmentSize the size in bytes a segment may reach before a new segment is started
+     */
+    public static OutboxLog open(Path directory, long segmentSize) throws IOException {
+        Files.createDirectories(directory);
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> segmentFiles = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : segmentFiles) {
+                String name = segment.getFileName().toString();
+                segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), segment);
+            }
+        }
+        Map<String, Entry> pending = new LinkedHashMap<>();
+        for (Path segment : segments.values()) {
+            readSegment(segment, pending);
+        }
+        long nextSegment = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        OutboxLog log = new OutboxLog(directory, segmentSize, nextSegment);
+        for (Entry entry : pending.values()) {
+            log.write(entry);
+        }
+        log.force();
+        for (Path segment : segments.values()) {
+            Files.delete(segment);
+        }
+        if (!pending.isEmpty()) {
+            LOG.info("Fant {} meldinger i utboksen {} som ikke er levert", pending.size(), directory);
+        }
+        return log;
+    }
+
+
+    private final Path directory;
+    private final long segmentSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock forceLock = new ReentrantLock();
+    private final Map<String, Entry> pending = new LinkedHashMap<>();
+    private final Map<Long, Integer> pendingPerSegment = new HashMap<>();
+
+    private long activeSegment;
+    private FileChannel active;
+    private long activeSize;
+    private volatile long written;
+    private long forced;
+
+    private OutboxLog(Path directory, long segmentSize, long firstSegment) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        startSegment(firstSegment);
+    }
+
+    /**
+     * @return the entries which are not completed
+     */
+    public List<Entry> getPending() {
+        lock.lock();
+        try {
+            return unmodifiableList(new ArrayList<>(pending.values()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Append an entry to the log, and return when it has been forced to disk.
+     */
+    public void append(Entry entry) throws IOException {
+        long position;
+        lock.lock();
+        try {
+            if (pending.containsKey(entry.messageId)) {
+                throw new IllegalStateException("Melding med id " + entry.messageId + " ligger allerede i utboksen");
+            }
+            if (activeSize >= segmentSize) {
+                rollSegment();
+            }
+            position = write(entry);
+        } finally {
+            lock.unlock();
+        }
+        forceUpTo(position);
+    }
+
+    /**
+     * Mark an entry as completed, so it is not pending if the log is opened again.
+     */
+    public void complete(Entry entry) throws IOException {
+        lock.lock();
+        try {
+            if (pending.remove(entry.messageId) == null) {
+                return;
+            }
+            writeRecord(completedRecord(entry.messageId));
+            int remaining = pendingPerSegment.merge(entry.segment, -1, Integer::sum);
+            if (remaining == 0 && entry.segment != activeSegment) {
+                pendingPerSegment.remove(entry.segment);
+                Files.deleteIfExists(segmentFile(entry.segment));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            force();
+            active.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private long write(Entry entry) throws IOException {
+        long position = writeRecord(appendedRecord(entry));
+        entry.segment = activeSegment;
+        pending.put(entry.messageId, entry);
+        pendingPerSegment.merge(activeSegment, 1, Integer::sum);
+        return position;
+    }
+
+    private long writeRecord(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (record.hasRemaining()) {
+            active.write(record);
+        }
+        activeSize += record.limit();
+        written += record.limit();
+        return written;
+    }
+
+    /**
+     * Forces the active segment, unless another thread has already forced everything up to the given position.
+     * Threads waiting for another force to finish will usually find that it covered their position as well.
+     */
+    private void forceUpTo(long position) throws IOException {
+        forceLock.lock();
+        try {
+            if (forced < position) {
+                long target = written;
+                active.force(false);
+                forced = target;
+            }
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    private void force() throws IOException {
+        forceUpTo(written);
+    }
+
+    private void rollSegment() throws IOException {
+        forceLock.lock();
+        try {
+            active.force(false);
+            forced = written;
+            active.close();
+        } finally {
+            forceLock.unlock();
+        }
+        Collection<Long> olderSegments = new ArrayList<>(pendingPerSegment.keySet());
+        startSegment(activeSegment + 1);
+
+        List<Entry> carriedOver = new ArrayList<>();
+        for (Entry entry : pending.values()) {
+            if (olderSegments.contains(entry.segment)) {
+                carriedOver.add(entry);
+            }
+        }
+        for (Entry entry : carriedOver) {
+            pending.remove(entry.messageId);
+            write(entry);
+        }
+        force();
+        for (Long segment : olderSegments) {
+            pendingPerSegment.remove(segment);
+            Files.deleteIfExists(segmentFile(segment));
+        }
+    }
+
+    private void startSegment(long segment) throws IOException {
+        forceLock.lock();
+        try {
+            activeSegment = segment;
+            active = FileChannel.open(segmentFile(segment), CREATE_NEW, WRITE, APPEND);
+            activeSize = 0;
+            forceDirectory(directory);
+        } finally {
+            forceLock.unlock();
+        }
+        pendingPerSegment.put(segment, 0);
+    }
+
+    /**
+     * Forces the entries of a directory to disk, i.e. makes the files created in it durable, and not only
+     * their content. Directories can not be opened for this on Windows, where NTFS journals the changes of
+     * directories anyway.
+     */
+    static void forceDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            if (!IS_WINDOWS) {
+                throw e;
+            }
+        }
+    }
+
+    private Path segmentFile(long segment) {
+        return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+
+    private static void readSegment(Path segment, Map<String, Entry> pending) throws IOException {
+        long remaining = Files.size(segment);
+        try (DataInputStream records = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            while (remaining >= 8) {
+                int length = records.readInt();
+                int checksum = records.readInt();
+                if (length < 0 || length > remaining - 8) {
+                    LOG.warn("Ufullstendig post i slutten av {} blir ignorert", segment);
+                    return;
+                }
+                byte[] payload = new byte[length];
+                records.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    LOG.warn("Ugyldig sjekksum i {}, resten av segmentet blir ignorert", segment);
+                    return;
+                }
+                readRecord(payload, pending);
+                remaining -= 8 + length;
+            }
+        }
+    }
+
+    private static void readRecord(byte[] payload, Map<String, Entry> pending) throws IOException {
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = record.readByte();
+        String messageId = record.readUTF();
+        if (type == COMPLETED) {
+            pending.remove(messageId);
+            return;
+        }
+        byte[] message = new byte[record.readInt()];
+        record.readFully(message);
+        int contentCount = record.readInt();
+        List<Content> contents = new ArrayList<>(contentCount);
+        for (int i = 0; i < contentCount; i++) {
+            UUID document = new UUID(record.readLong(), record.readLong());
+            Path content = Paths.get(record.readUTF());
+            Path printContent = record.readBoolean() ? Paths.get(record.readUTF()) : null;
+            contents.add(new Content(document, content, printContent, record.readBoolean()));
+        }
+        pending.put(messageId, new Entry(messageId, message, contents));
+    }
+
+    private static byte[] appendedRecord(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entry.message.length);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(APPENDED);
+        record.writeUTF(entry.messageId);
+        record.writeInt(entry.message.length);
+        record.write(entry.message);
+        record.writeInt(entry.contents.size());
+        for (Content content : entry.contents) {
+            record.writeLong(content.document.getMostSignificantBits());
+            record.writeLong(content.document.getLeastSignificantBits());
+            record.writeUTF(content.content.toString());
+            record.writeBoolean(content.printContent != null);
+            if (content.printContent != null) {
+                record.writeUTF(content.printContent.toString());
+            }
+            record.writeBoolean(content.ownedByOutbox);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] completedRecord(String messageId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(COMPLETED);
+        record.writeUTF(messageId);
+        return bytes.toByteArray();
+    }
+
+
+    /**
+     * A message in the log, with references to the files containing the content of its documents.
+     */
+    public static final class Entry {
+        public final String messageId;
+        public final byte[] message;
+        public final List<Content> contents;
+        private long segment;
+
+        public Entry(String messageId, byte[] message, List<Content> contents) {
+            this.messageId = messageId;
+            this.message = message;
+            this.contents = unmodifiableList(new ArrayList<>(contents));
+        }
+    }
+
+    /**
+     * A reference to the content of a document, and optionally to separate content for print.
+     */
+    public static final class Content {
+        public final UUID document;
+        public final Path content;
+        public final Path printContent;
+
+        /**
+         * If the files were written by the outbox, and should be deleted when the message is delivered.
+         */
+        public final boolean ownedByOutbox;
+
+        public Content(UUID document, Path content, Path printContent, boolean ownedByOutbox) {
+            this.document = document;
+            this.content = content;
+            this.printContent = printContent;
+            this.ownedByOutbox = ownedByOutbox;
+        }
+    }
+}
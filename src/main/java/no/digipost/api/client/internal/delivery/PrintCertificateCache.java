@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import no.digipost.api.client.delivery.DeliveryPriority;
+import no.digipost.api.client.security.CipherProvider;
+import no.digipost.api.client.security.Encrypter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import static no.digipost.api.client.internal.ExceptionUtils.exceptionNameAndMessage;
+
+/**
+ * Holds the certificate used to encrypt documents for print, and the {@link Encrypter} using it.
+ * <p>
+ * When the certificate has been held for more than {@link #REFRESH_AHEAD_FRACTION 4/5} of the time to live,
+ * one single caller will fetch a new certificate, while any concurrent callers continue to use the current
+ * one. Should the refresh fail, the current certificate is kept until it expires. Only when there is no
+ * valid certificate at all, callers must wait, and then for one single fetch of the certificate.
+ * <p>
+ * A time to live of {@link Duration#ZERO zero} disables caching, and every call will fetch the certificate.
+ * A certificate is fetched with the {@link DeliveryPriority priority} of the caller who needs it.
+ */
+final class PrintCertificateCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PrintCertificateCache.class);
+
+    static final double REFRESH_AHEAD_FRACTION = 0.8;
+
+    private final Function<DeliveryPriority, X509Certificate> certificateFetcher;
+    private final Duration timeToLive;
+    private final Duration refreshAfter;
+    private final CipherProvider cipherProvider;
+    private final Clock clock;
+
+    private final AtomicReference<PrintEncryption> current = new AtomicReference<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final ReentrantLock fetchLock = new ReentrantLock();
+
+    PrintCertificateCache(Function<DeliveryPriority, X509Certificate> certificateFetcher, Duration timeToLive, CipherProvider cipherProvider, Clock clock) {
+        this.certificateFetcher = certificateFetcher;
+        this.timeToLive = timeToLive;
+        this.refreshAfter = Duration.ofMillis((long) (timeToLive.toMillis() * REFRESH_AHEAD_FRACTION));
+        this.cipherProvider = cipherProvider;
+        this.clock = clock;
+    }
+
+    PrintEncryption get(DeliveryPriority priority) {
+        if (timeToLive.isZero()) {
+            return fetch(priority);
+        }
+        Instant now = clock.instant();
+        PrintEncryption cached = current.get();
+        if (cached == null || cached.isOlderThan(timeToLive, now)) {
+            return fetchReplacing(cached, priority);
+        }
+        if (cached.isOlderThan(refreshAfter, now) && refreshing.compareAndSet(false, true)) {
+            try {
+                return fetchReplacing(cached, priority);
+            } catch (RuntimeException e) {
+                LOG.warn("Klarte ikke å hente nytt krypteringssertifikat for print, bruker eksisterende til det utløper. {}", exceptionNameAndMessage(e));
+            } finally {
+                refreshing.set(false);
+            }
+        }
+        return cached;
+    }
+
+    private PrintEncryption fetchReplacing(PrintEncryption expected, DeliveryPriority priority) {
+        fetchLock.lock();
+        try {
+            PrintEncryption cached = current.get();
+            if (cached != expected) {
+                return cached;
+            }
+            PrintEncryption fetched = fetch(priority);
+            current.set(fetched);
+            return fetched;
+        } finally {
+            fetchLock.unlock();
+        }
+    }
+
+    private PrintEncryption fetch(DeliveryPriority priority) {
+        X509Certificate certificate = certificateFetcher.apply(priority);
+        return new PrintEncryption(certificate, Encrypter.using(certificate, cipherProvider), clock.instant());
+    }
+
+
+    static final class PrintEncryption {
+        final X509Certificate certificate;
+        final Encrypter encrypter;
+        final Instant fetchedAt;
+
+        PrintEncryption(X509Certificate certificate, Encrypter encrypter, Instant fetchedAt) {
+            this.certificate = certificate;
+            this.encrypter = encrypter;
+            this.fetchedAt = fetchedAt;
+        }
+
+        boolean isOlderThan(Duration age, Instant now) {
+            return fetchedAt.plus(age).isBefore(now);
+        }
+    }
+}
@@ -15,15 +15,19 @@
  */
 package no.digipost.api.client.internal.delivery;
 
+import no.digipost.api.client.delivery.DeliveryPriority;
 import no.digipost.api.client.delivery.OngoingDelivery;
 import no.digipost.api.client.representations.Document;
 import no.digipost.api.client.representations.Message;
 import no.digipost.api.client.representations.MessageDelivery;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 /**
  * Sender en forsendelse direkte til print gjennom Digipost i ett kall.
@@ -33,15 +37,17 @@ final class PrintOnlyMessage implements OngoingDelivery.SendableForPrintOnly {
 
     private final MessageDeliverer sender;
     private final Message printMessage;
+    private final DeliveryPriority priority;
     private final Map<UUID, DocumentContent> documents = new LinkedHashMap<>();
 
 
-    PrintOnlyMessage(Message printMessage, MessageDeliverer sender) {
+    PrintOnlyMessage(Message printMessage, DeliveryPriority priority, MessageDeliverer sender) {
         if (!printMessage.isDirectPrint()) {
             throw new IllegalArgumentException("Direct print messages must have PrintDetails and "
                     + "cannot have DigipostAddress, PersonalIdentificationNumber or NameAndAddress");
         }
         this.printMessage = printMessage;
+        this.priority = priority;
         this.sender = sender;
     }
 
@@ -57,10 +63,25 @@ final class PrintOnlyMessage implements OngoingDelivery.SendableForPrintOnly {
         return this;
     }
 
+    @Override
+    public PrintOnlyMessage addContent(Document document, Path content) {
+        return addContent(document, ContentBuffer.streamOf(content));
+    }
+
+    @Override
+    public PrintOnlyMessage addContent(Document document, ByteBuffer content) {
+        return addContent(document, ContentBuffer.streamOf(content));
+    }
+
+    @Override
+    public PrintOnlyMessage addContent(Document document, Supplier<? extends InputStream> content) {
+        return addContent(document, new SuppliedContentStream(content));
+    }
+
 
     @Override
     public MessageDelivery send() {
-        return sender.sendMultipartMessage(printMessage, documents);
+        return sender.sendMultipartMessage(printMessage, documents, priority);
     }
 
 }
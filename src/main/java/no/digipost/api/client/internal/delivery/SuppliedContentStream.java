@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A stream of content from a {@link Supplier}, which is not opened until needed. When
+ * {@link ContentBuffers#read(InputStream) read by ContentBuffers}, a new stream is opened
+ * from the supplier, and closed as soon as it has been read. The content can therefore be
+ * read any number of times, e.g. when a delivery is sent again after failing.
+ */
+final class SuppliedContentStream extends InputStream {
+
+    private final Supplier<? extends InputStream> content;
+    private InputStream opened;
+
+    SuppliedContentStream(Supplier<? extends InputStream> content) {
+        this.content = requireNonNull(content, "content");
+    }
+
+    /**
+     * @return a new stream from the supplier, which must be closed by the caller.
+     */
+    InputStream open() {
+        return requireNonNull(content.get(), "Supplier for innhold ga null");
+    }
+
+    private InputStream opened() {
+        if (opened == null) {
+            opened = open();
+        }
+        return opened;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return opened().read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        return opened().read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        return opened().skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return opened == null ? 0 : opened.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (opened != null) {
+            try {
+                opened.close();
+            } finally {
+                opened = null;
+            }
+        }
+    }
+}
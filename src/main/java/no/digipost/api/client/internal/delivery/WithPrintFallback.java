@@ -15,15 +15,19 @@
  */
 package no.digipost.api.client.internal.delivery;
 
+import no.digipost.api.client.delivery.DeliveryPriority;
 import no.digipost.api.client.delivery.OngoingDelivery;
 import no.digipost.api.client.representations.Document;
 import no.digipost.api.client.representations.Message;
 import no.digipost.api.client.representations.MessageDelivery;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 /**
  * Sender en forsendelse gjennom Digipost i ett kall. Dersom mottaker ikke er
@@ -35,10 +39,12 @@ final class WithPrintFallback implements OngoingDelivery.SendableWithPrintFallba
 
     private final MessageDeliverer sender;
     private final Message message;
+    private final DeliveryPriority priority;
     private final Map<UUID, DocumentContent> documents = new LinkedHashMap<>();
 
-    WithPrintFallback(Message message, MessageDeliverer sender) {
+    WithPrintFallback(Message message, DeliveryPriority priority, MessageDeliverer sender) {
         this.message = message;
+        this.priority = priority;
         this.sender = sender;
     }
 
@@ -60,9 +66,39 @@ final class WithPrintFallback implements OngoingDelivery.SendableWithPrintFallba
         return this;
     }
 
+    @Override
+    public OngoingDelivery.SendableWithPrintFallback addContent(Document document, Path content) {
+        return addContent(document, ContentBuffer.streamOf(content));
+    }
+
+    @Override
+    public OngoingDelivery.SendableWithPrintFallback addContent(Document document, ByteBuffer content) {
+        return addContent(document, ContentBuffer.streamOf(content));
+    }
+
+    @Override
+    public OngoingDelivery.SendableWithPrintFallback addContent(Document document, Supplier<? extends InputStream> content) {
+        return addContent(document, new SuppliedContentStream(content));
+    }
+
+    @Override
+    public OngoingDelivery.SendableWithPrintFallback addContent(Document document, Supplier<? extends InputStream> content, Supplier<? extends InputStream> printContent) {
+        return addContent(document, new SuppliedContentStream(content), new SuppliedContentStream(printContent));
+    }
+
+    @Override
+    public OngoingDelivery.SendableWithPrintFallback addContent(Document document, Path content, Path printContent) {
+        return addContent(document, ContentBuffer.streamOf(content), ContentBuffer.streamOf(printContent));
+    }
+
+    @Override
+    public OngoingDelivery.SendableWithPrintFallback addContent(Document document, ByteBuffer content, ByteBuffer printContent) {
+        return addContent(document, ContentBuffer.streamOf(content), ContentBuffer.streamOf(printContent));
+    }
+
     @Override
     public MessageDelivery send() {
-        return sender.sendMultipartMessage(message, documents);
+        return sender.sendMultipartMessage(message, documents, priority);
     }
 }
 
@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http;
+
+import no.digipost.api.client.metrics.ApiEndpoint;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.execchain.RequestAbortedException;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+import static no.digipost.api.client.metrics.ApiEndpoint.CREATE_MESSAGE;
+
+/**
+ * Limits the number of requests in flight to the API, and adapts the limit to how the API responds,
+ * using additive increase and multiplicative decrease (AIMD). While responses are successful and
+ * latency is stable, the limit is raised by one for every {@code limit} responses, as long as the
+ * requests actually use the limit. When the API is overloaded, i.e. it responds with
+ * {@code 503 Service Unavailable} or {@code 429 Too Many Requests}, or a request times out, the limit
+ * is halved. When the latency of an endpoint is inflated compared to the lowest latency seen for
+ * the endpoint, the limit is reduced by 10%. Latency is only regarded as inflated when it is both twice
+ * the lowest latency and at least 5 milliseconds above it. The latency of sending messages is not regarded,
+ * as it grows with the size of the uploaded documents. The limit is only reduced once for each group of
+ * requests which were in flight at the same time, so a burst of failures does not collapse it.
+ * <p>
+ * A caller which can not get a {@link #acquire(HttpRequestBase) permit} waits until a request in flight
+ * completes, or until it is interrupted or its request is aborted.
+ */
+public final class AdaptiveConcurrencyLimit {
+
+    private static final double OVERLOAD_BACKOFF = 0.5;
+    private static final double LATENCY_BACKOFF = 0.9;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final long MIN_LATENCY_INFLATION_NANOS = 5_000_000;
+    private static final Set<ApiEndpoint> UPLOADS = EnumSet.of(CREATE_MESSAGE);
+
+    /**
+     * How many responses the lowest latency of an endpoint is kept for, before it is reset to the
+     * current latency. This lets the baseline follow permanent changes in the latency of the API.
+     */
+    private static final int BASELINE_RESPONSES = 1000;
+
+    private final int maxLimit;
+    private final IntConsumer limitListener;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+    private final Map<ApiEndpoint, Latency> latencies = new EnumMap<>(ApiEndpoint.class);
+
+    private double limit;
+    private int inFlight;
+    private long lastDecrease = System.nanoTime();
+
+    /**
+     * @param initialLimit the number of requests allowed in flight before any responses are received
+     * @param maxLimit the highest number of requests which will ever be allowed in flight
+     * @param limitListener is given the limit every time it changes to a new whole number
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int maxLimit, IntConsumer limitListener) {
+        if (initialLimit < 1 || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("Ugyldig grense for samtidige forespørsler: initialLimit=" + initialLimit + ", maxLimit=" + maxLimit);
+        }
+        this.limit = initialLimit;
+        this.maxLimit = maxLimit;
+        this.limitListener = limitListener;
+        limitListener.accept(initialLimit);
+    }
+
+    /**
+     * Wait until the given request may be sent. The returned permit must be released exactly once.
+     * {@link HttpRequestBase#abort() Aborting} the request while waiting stops the wait.
+     *
+     * @throws RequestAbortedException if the request is aborted before a permit is acquired
+     */
+    public Permit acquire(HttpRequestBase request) throws InterruptedException, RequestAbortedException {
+        lock.lockInterruptibly();
+        try {
+            request.setCancellable(() -> {
+                lock.lock();
+                try {
+                    permitReleased.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return true;
+            });
+            while (inFlight >= (int) limit) {
+                if (request.isAborted()) {
+                    throw new RequestAbortedException("Request aborted while waiting to be sent");
+                }
+                permitReleased.await();
+            }
+            inFlight++;
+        } finally {
+            request.setCancellable(null);
+            lock.unlock();
+        }
+        return new Permit(System.nanoTime());
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private void release(Permit permit, double decreaseTo, boolean mayIncrease, ApiEndpoint endpoint, long latencyNanos) {
+        int before;
+        int after;
+        lock.lock();
+        try {
+            before = (int) limit;
+            boolean usingLimit = inFlight * 2 >= before;
+            inFlight--;
+            if (decreaseTo == 0 && endpoint != null && !UPLOADS.contains(endpoint) && latencies.computeIfAbsent(endpoint, e -> new Latency()).isInflated(latencyNanos)) {
+                decreaseTo = LATENCY_BACKOFF;
+            }
+            if (decreaseTo > 0) {
+                if (permit.started - lastDecrease > 0) {
+                    limit = Math.max(1, limit * decreaseTo);
+                    lastDecrease = System.nanoTime();
+                }
+            } else if (mayIncrease && usingLimit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            after = (int) limit;
+            if (after > before) {
+                permitReleased.signalAll();
+            } else {
+                permitReleased.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (after != before) {
+            limitListener.accept(after);
+        }
+    }
+
+
+    /**
+     * Permission to have one request in flight, which must be released when the response is received.
+     */
+    public final class Permit {
+
+        private final long started;
+
+        private Permit(long started) {
+            this.started = started;
+        }
+
+        /**
+         * A response was received from the API.
+         */
+        public void release(ApiEndpoint endpoint, int statusCode) {
+            long latencyNanos = System.nanoTime() - started;
+            if (statusCode == 503 || statusCode == 429) {
+                AdaptiveConcurrencyLimit.this.release(this, OVERLOAD_BACKOFF, false, null, latencyNanos);
+            } else {
+                AdaptiveConcurrencyLimit.this.release(this, 0, statusCode < 500, endpoint, latencyNanos);
+            }
+        }
+
+        /**
+         * The request timed out, either while waiting for a connection, connecting, or waiting for the response.
+         */
+        public void releaseTimedOut() {
+            AdaptiveConcurrencyLimit.this.release(this, OVERLOAD_BACKOFF, false, null, 0);
+        }
+
+        /**
+         * The request failed for any other reason than a timeout, which says nothing about the load of the API.
+         */
+        public void releaseFailed() {
+            AdaptiveConcurrencyLimit.this.release(this, 0, false, null, 0);
+        }
+    }
+
+
+    /**
+     * A smoothed latency of an endpoint, compared to the lowest latency seen recently.
+     */
+    private static final class Latency {
+        private double smoothed = -1;
+        private long lowest = Long.MAX_VALUE;
+        private int responses;
+
+        boolean isInflated(long latencyNanos) {
+            smoothed = smoothed < 0 ? latencyNanos : smoothed + LATENCY_SMOOTHING * (latencyNanos - smoothed);
+            if (++responses >= BASELINE_RESPONSES) {
+                responses = 0;
+                lowest = (long) smoothed;
+            }
+            lowest = Math.min(lowest, latencyNanos);
+            return smoothed > lowest * LATENCY_TOLERANCE && smoothed - lowest > MIN_LATENCY_INFLATION_NANOS;
+        }
+    }
+}
@@ -20,6 +20,7 @@ import org.apache.http.message.BasicHeader;
 
 import static no.digipost.api.client.representations.MediaTypes.DIGIPOST_MEDIA_TYPE_V7;
 import static org.apache.http.HttpHeaders.ACCEPT;
+import static org.apache.http.HttpHeaders.ACCEPT_ENCODING;
 import static org.apache.http.HttpHeaders.CONTENT_TYPE;
 
 public final class Headers {
@@ -34,5 +35,6 @@ public final class Headers {
 
     public static final Header Accept_DIGIPOST_MEDIA_TYPE_V7 = new BasicHeader(ACCEPT, DIGIPOST_MEDIA_TYPE_V7);
     public static final Header Content_Type_DIGIPOST_MEDIA_TYPE_V7 = new BasicHeader(CONTENT_TYPE, DIGIPOST_MEDIA_TYPE_V7);
+    public static final Header Accept_Encoding_GZIP = new BasicHeader(ACCEPT_ENCODING, "gzip");
 
 }
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http;
+
+import no.digipost.api.client.delivery.DeliveryPriority;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.execchain.RequestAbortedException;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+import java.util.function.ObjIntConsumer;
+
+import static no.digipost.api.client.delivery.DeliveryPriority.BULK;
+import static no.digipost.api.client.delivery.DeliveryPriority.INTERACTIVE;
+
+/**
+ * Shares a number of concurrent requests between {@link DeliveryPriority priorities}. Interactive
+ * requests may use the whole capacity, while bulk requests may only use what is not reserved for
+ * interactive requests. A bulk request will also wait as long as any interactive request is waiting,
+ * so interactive requests are never queued behind bulk requests. A waiting caller stops waiting when
+ * it is interrupted or its request is aborted.
+ */
+public final class PriorityLanes {
+
+    private final IntSupplier capacity;
+    private final int reserved;
+    private final ObjIntConsumer<DeliveryPriority> queueListener;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Map<DeliveryPriority, Lane> lanes = new EnumMap<>(DeliveryPriority.class);
+
+    private int inFlight;
+
+    /**
+     * @param capacity the number of requests which may be in flight at the same time. This is read
+     *                 every time a request is to be sent, and may change over time.
+     * @param reserved the number of requests which only interactive requests may use
+     * @param queueListener is given the number of waiting requests of a priority every time it changes
+     */
+    public PriorityLanes(IntSupplier capacity, int reserved, ObjIntConsumer<DeliveryPriority> queueListener) {
+        this.capacity = capacity;
+        this.reserved = reserved;
+        this.queueListener = queueListener;
+        for (DeliveryPriority priority : DeliveryPriority.values()) {
+            lanes.put(priority, new Lane());
+        }
+    }
+
+    /**
+     * Wait until the given request of the given priority may be sent. Every acquire must be followed by exactly
+     * one {@link #release(DeliveryPriority) release} with the same priority. {@link HttpRequestBase#abort() Aborting}
+     * the request while waiting stops the wait.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * @throws RequestAbortedException if the request is aborted before it may be sent
+     */
+    public void acquire(DeliveryPriority priority, HttpRequestBase request) throws InterruptedException, RequestAbortedException {
+        Lane lane = lanes.get(priority);
+        lock.lockInterruptibly();
+        try {
+            request.setCancellable(() -> {
+                lock.lock();
+                try {
+                    released.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return true;
+            });
+            if (!mayProceed(priority)) {
+                queueListener.accept(priority, ++lane.waiting);
+                boolean acquired = false;
+                try {
+                    do {
+                        if (request.isAborted()) {
+                            throw new RequestAbortedException("Request aborted while waiting to be sent");
+                        }
+                        released.await();
+                    } while (!(acquired = mayProceed(priority)));
+                } finally {
+                    queueListener.accept(priority, --lane.waiting);
+                    if (!acquired) {
+                        // bulk requests may wait for this request to leave the queue
+                        released.signalAll();
+                    }
+                }
+            }
+            lane.inFlight++;
+            inFlight++;
+        } finally {
+            request.setCancellable(null);
+            lock.unlock();
+        }
+    }
+
+    public void release(DeliveryPriority priority) {
+        lock.lock();
+        try {
+            lanes.get(priority).inFlight--;
+            inFlight--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of requests of the given priority waiting to be sent
+     */
+    public int getQueueDepth(DeliveryPriority priority) {
+        lock.lock();
+        try {
+            return lanes.get(priority).waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean mayProceed(DeliveryPriority priority) {
+        int currentCapacity = capacity.getAsInt();
+        if (inFlight >= currentCapacity) {
+            return false;
+        }
+        if (priority == INTERACTIVE) {
+            return true;
+        }
+        return lanes.get(INTERACTIVE).waiting == 0 && lanes.get(BULK).inFlight < Math.max(1, currentCapacity - reserved);
+    }
+
+    private static final class Lane {
+        int inFlight;
+        int waiting;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http;
+
+import org.apache.http.client.methods.HttpRequestBase;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Makes the requests done by a call to the API possible to abort from another thread. Requests executed
+ * while a call is {@link #run(Supplier) run} with a cancellation are {@link #register(HttpRequestBase) registered}
+ * with it, and {@link #cancel() cancelling} aborts any of them in flight, including reading the response. The
+ * call then fails with the exception from the aborted request.
+ */
+public final class RequestCancellation {
+
+    private static final ThreadLocal<RequestCancellation> CURRENT = new ThreadLocal<>();
+
+    /**
+     * @return {@code true} if the current thread runs a call with a cancellation.
+     */
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Register a request which is about to be executed with the cancellation of the call the
+     * current thread runs, if any. If the call is already cancelled, the request is aborted at once.
+     */
+    public static void register(HttpRequestBase request) {
+        RequestCancellation cancellation = CURRENT.get();
+        if (cancellation != null) {
+            cancellation.inFlight.add(request);
+            if (cancellation.cancelled) {
+                request.abort();
+            }
+        }
+    }
+
+
+    private final Set<HttpRequestBase> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    public <T> T run(Supplier<T> call) {
+        RequestCancellation outer = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return call.get();
+        } finally {
+            inFlight.clear();
+            if (outer != null) {
+                CURRENT.set(outer);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+        inFlight.forEach(HttpRequestBase::abort);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+}
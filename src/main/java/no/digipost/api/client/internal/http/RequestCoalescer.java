@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http;
+
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.errorhandling.ErrorCode;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static no.digipost.api.client.internal.ExceptionUtils.asUnchecked;
+
+/**
+ * Lets concurrent, identical requests share the result of one single execution. The first caller
+ * for a given key executes the request, and any callers arriving with the same key while it is in
+ * flight will wait for, and get, the same result. If the request fails, the caller which executed it
+ * gets the exception, and every waiting caller gets its own {@link DigipostClientException} with the
+ * shared exception as its cause. As soon as the request completes, the next caller with the same key
+ * will trigger a new execution, i.e. results are never cached.
+ * <p>
+ * This must only be used for requests which are safe to repeat and share, e.g. {@code GET}s, and the
+ * result must not be mutable, as every caller gets the same instance.
+ */
+public final class RequestCoalescer<K> {
+
+    private final ConcurrentMap<K, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final Consumer<? super K> coalescedListener;
+
+    public RequestCoalescer() {
+        this(key -> {});
+    }
+
+    /**
+     * @param coalescedListener is given the key of every request which shares the result of a request in flight
+     */
+    public RequestCoalescer(Consumer<? super K> coalescedListener) {
+        this.coalescedListener = coalescedListener;
+    }
+
+    public <T> T execute(K key, Callable<T> request) {
+        CompletableFuture<Object> pending = new CompletableFuture<>();
+        CompletableFuture<Object> alreadyInFlight = inFlight.putIfAbsent(key, pending);
+        if (alreadyInFlight != null) {
+            coalesced.increment();
+            coalescedListener.accept(key);
+            return awaitResultOf(alreadyInFlight);
+        }
+
+        executed.increment();
+        try {
+            T result = request.call();
+            pending.complete(result);
+            return result;
+        } catch (Exception e) {
+            pending.completeExceptionally(e);
+            throw asUnchecked(e);
+        } finally {
+            inFlight.remove(key, pending);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T awaitResultOf(CompletableFuture<Object> inFlight) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return (T) inFlight.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    } else if (cause instanceof DigipostClientException) {
+                        DigipostClientException shared = (DigipostClientException) cause;
+                        throw new DigipostClientException(shared.getErrorCode(), shared.getErrorMessage(), shared);
+                    }
+                    throw new DigipostClientException(ErrorCode.resolve(cause), cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return the number of requests which have actually been executed.
+     */
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    /**
+     * @return the number of requests which did not need to be executed, because they got
+     *         the result of an identical request which was already in flight.
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http.request.interceptor;
+
+import no.digipost.api.client.EventLogger;
+import no.digipost.api.client.internal.http.Headers;
+import no.digipost.api.client.security.RequestMessageSignatureUtil;
+import no.digipost.api.client.security.RequestToSign;
+import no.digipost.api.client.security.Signer;
+import no.digipost.api.client.util.DateUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.protocol.HttpContext;
+import org.bouncycastle.util.encoders.Base64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static no.digipost.api.client.internal.http.Headers.Content_MD5;
+import static no.digipost.api.client.internal.http.Headers.X_Content_SHA256;
+import static no.digipost.api.client.internal.http.Headers.X_Digipost_UserId;
+import static no.digipost.api.client.internal.http.request.interceptor.UserAgent.DIGIPOST_USER_AGENT;
+import static org.apache.http.HttpHeaders.DATE;
+import static org.apache.http.HttpHeaders.USER_AGENT;
+
+/**
+ * Sets the {@code Date}, {@code User-Agent} and content hash headers of every request to the API, and signs
+ * it. The request URI is parsed once, the headers are read once, and only the headers included in the
+ * signature are collected. The formatted {@code Date} header is reused for all requests within the same second.
+ */
+public class RequestAuthenticationInterceptor implements HttpRequestInterceptor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestAuthenticationInterceptor.class);
+
+    private final EventLogger eventLogger;
+    private final Clock clock;
+    private final Signer signer;
+    private final RequestContentHashFilter hashFilter;
+    private volatile FormattedDate lastDate = new FormattedDate(Long.MIN_VALUE, null);
+
+    public RequestAuthenticationInterceptor(EventLogger eventLogger, Clock clock, Signer signer, RequestContentHashFilter hashFilter) {
+        this.eventLogger = (eventLogger != null ? eventLogger : EventLogger.NOOP_LOGGER).withDebugLogTo(LOG);
+        this.clock = clock;
+        this.signer = signer;
+        this.hashFilter = hashFilter;
+    }
+
+    @Override
+    public void process(HttpRequest httpRequest, HttpContext httpContext) throws IOException {
+        String date = currentDate();
+        httpRequest.setHeader(DATE, date);
+        httpRequest.setHeader(USER_AGENT, DIGIPOST_USER_AGENT);
+        if (eventLogger.isEnabled()) {
+            eventLogger.log(getClass().getSimpleName() + " satt headeren " + DATE + "=" + date);
+        }
+
+        if (httpRequest instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) httpRequest).getEntity();
+            if (entity != null) {
+                hashFilter.settContentHashHeader(entity, httpRequest);
+            }
+        }
+
+        String uri = httpRequest.getRequestLine().getUri();
+        URI parsedUri = parse(uri);
+        String rawPath = parsedUri.getRawPath();
+        SignedRequest signedRequest = new SignedRequest(
+                httpRequest.getRequestLine().getMethod(), headersForSignature(httpRequest),
+                rawPath != null ? rawPath : "", ApacheHttpRequestToSign.queryParametersFromURI(uri));
+
+        String stringToSign = RequestMessageSignatureUtil.getCanonicalRequestRepresentation(signedRequest);
+        if (eventLogger.isEnabled()) {
+            eventLogger.log(getClass().getSimpleName() + " beregnet streng som skal signeres:\n" +
+                            "===START SIGNATURSTRENG===\n" +
+                            stringToSign +
+                            "===SLUTT SIGNATURSTRENG===");
+        }
+        String signature = new String(Base64.encode(signer.sign(stringToSign)));
+        httpRequest.setHeader(Headers.X_Digipost_Signature, signature);
+        if (eventLogger.isEnabled()) {
+            eventLogger.log(getClass().getSimpleName() + " satt headeren " + Headers.X_Digipost_Signature + "=" + signature);
+        }
+        httpContext.setAttribute("request-path", parsedUri.getPath());
+    }
+
+    private String currentDate() {
+        Instant now = clock.instant();
+        FormattedDate date = lastDate;
+        if (date.epochSecond != now.getEpochSecond()) {
+            date = new FormattedDate(now.getEpochSecond(), DateUtils.formatDate(now.atZone(ZoneOffset.UTC)));
+            lastDate = date;
+        }
+        return date.value;
+    }
+
+    private static SortedMap<String, String> headersForSignature(HttpRequest httpRequest) {
+        SortedMap<String, String> headers = new TreeMap<>();
+        for (Header header : httpRequest.getAllHeaders()) {
+            String name = header.getName();
+            if (name.equalsIgnoreCase(DATE) || name.equalsIgnoreCase(X_Content_SHA256)
+                    || name.equalsIgnoreCase(X_Digipost_UserId) || name.equalsIgnoreCase(Content_MD5)) {
+                headers.put(name, header.getValue());
+            }
+        }
+        return headers;
+    }
+
+    private static URI parse(String uri) {
+        try {
+            return new URI(uri);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    private static final class FormattedDate {
+        final long epochSecond;
+        final String value;
+
+        FormattedDate(long epochSecond, String value) {
+            this.epochSecond = epochSecond;
+            this.value = value;
+        }
+    }
+
+    private static final class SignedRequest implements RequestToSign {
+        private final String method;
+        private final SortedMap<String, String> headers;
+        private final String path;
+        private final String parameters;
+
+        SignedRequest(String method, SortedMap<String, String> headers, String path, String parameters) {
+            this.method = method;
+            this.headers = headers;
+            this.path = path;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+        @Override
+        public SortedMap<String, String> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public String getParameters() {
+            return parameters;
+        }
+    }
+}
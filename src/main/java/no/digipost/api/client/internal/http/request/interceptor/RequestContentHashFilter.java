@@ -17,11 +17,16 @@ package no.digipost.api.client.internal.http.request.interceptor;
 
 import no.digipost.api.client.EventLogger;
 import no.digipost.api.client.security.Digester;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpRequest;
+import org.apache.http.util.EntityUtils;
 import org.bouncycastle.util.encoders.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.Optional;
+
 public class RequestContentHashFilter {
 
     private static final Logger LOG = LoggerFactory.getLogger(RequestContentHashFilter.class);
@@ -41,9 +46,26 @@ public class RequestContentHashFilter {
     }
 
     public void settContentHashHeader(final byte[] data, final HttpRequest httpRequest) {
-        byte[] result = digester.createDigest(data);
-        String hash = new String(Base64.encode(result));
+        setHashHeader(digester.createDigest(data), httpRequest);
+    }
+
+    /**
+     * Set the hash header of a request with the given entity. A repeatable entity is digested
+     * as it is written, instead of being read into memory.
+     */
+    public void settContentHashHeader(final HttpEntity entity, final HttpRequest httpRequest) throws IOException {
+        if (entity.isRepeatable()) {
+            setHashHeader(digester.createDigest(entity::writeTo), httpRequest);
+        } else {
+            settContentHashHeader(Optional.ofNullable(EntityUtils.toByteArray(entity)).orElseGet(() -> new byte[0]), httpRequest);
+        }
+    }
+
+    private void setHashHeader(byte[] digest, HttpRequest httpRequest) {
+        String hash = new String(Base64.encode(digest));
         httpRequest.setHeader(header, hash);
-        eventLogger.log(RequestContentHashFilter.class.getSimpleName() + " satt headeren " + header + "=" + hash);
+        if (eventLogger.isEnabled()) {
+            eventLogger.log(RequestContentHashFilter.class.getSimpleName() + " satt headeren " + header + "=" + hash);
+        }
     }
 }
@@ -1,30 +0,0 @@
-/**
- * Copyright (C) Posten Norge AS
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *         http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package no.digipost.api.client.internal.http.request.interceptor;
-
-import org.apache.http.HttpRequest;
-import org.apache.http.HttpRequestInterceptor;
-import org.apache.http.protocol.HttpContext;
-
-import static no.digipost.api.client.internal.http.request.interceptor.UserAgent.DIGIPOST_USER_AGENT;
-import static org.apache.http.HttpHeaders.USER_AGENT;
-
-public class RequestUserAgentInterceptor implements HttpRequestInterceptor {
-    @Override
-    public void process(HttpRequest httpRequest, HttpContext httpContext) {
-        httpRequest.setHeader(USER_AGENT, DIGIPOST_USER_AGENT);
-    }
-}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http.response;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+
+/**
+ * A response which has been completely read into memory, and can be handed out
+ * as any number of independent {@link CloseableHttpResponse}s.
+ */
+public final class BufferedResponse {
+
+    public static BufferedResponse readAndClose(CloseableHttpResponse response) throws IOException {
+        try (CloseableHttpResponse autoClosed = response) {
+            HttpEntity entity = response.getEntity();
+            byte[] content = entity != null ? EntityUtils.toByteArray(entity) : null;
+            return new BufferedResponse(response.getStatusLine(), response.getAllHeaders(), content, entity != null ? entity.getContentType() : null);
+        }
+    }
+
+    private final StatusLine statusLine;
+    private final Header[] headers;
+    private final byte[] content;
+    private final Header contentType;
+
+    private BufferedResponse(StatusLine statusLine, Header[] headers, byte[] content, Header contentType) {
+        this.statusLine = statusLine;
+        this.headers = headers;
+        this.content = content;
+        this.contentType = contentType;
+    }
+
+    public CloseableHttpResponse newResponse() {
+        BufferedHttpResponse response = new BufferedHttpResponse(statusLine);
+        response.setHeaders(headers);
+        if (content != null) {
+            ByteArrayEntity entity = new ByteArrayEntity(content);
+            entity.setContentType(contentType);
+            response.setEntity(entity);
+        }
+        return response;
+    }
+
+
+    private static final class BufferedHttpResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+        BufferedHttpResponse(StatusLine statusLine) {
+            super(statusLine);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
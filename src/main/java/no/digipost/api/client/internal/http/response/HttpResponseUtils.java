@@ -79,15 +79,38 @@ public final class HttpResponseUtils {
         StatusLine status = response.getStatusLine();
         if (!responseOk(status)) {
             ErrorMessage error = fetchErrorMessageString(status, response.getEntity());
-            eventLogger.log(error.toString());
-            switch (status.getStatusCode()) {
-                case HttpStatus.SC_INTERNAL_SERVER_ERROR:
-                    throw new DigipostClientException(ErrorCode.SERVER_ERROR, error.getErrorMessage());
-                case HttpStatus.SC_SERVICE_UNAVAILABLE:
-                    throw new DigipostClientException(ErrorCode.API_UNAVAILABLE, error.getErrorMessage());
-                default:
-                    throw new DigipostClientException(error);
-            }
+            eventLogger.log(error::toString);
+            throw toException(status, error);
+        }
+    }
+
+    /**
+     * Resolve the {@link ErrorCode} of a response with an error status, without consuming the response,
+     * i.e. the error message in the response body is only read if the entity is
+     * {@link HttpEntity#isRepeatable() repeatable}. Otherwise the code is resolved from the status code only.
+     *
+     * @return the error code of the response, or {@code null} if the response status is ok.
+     */
+    public static ErrorCode errorCodeOf(HttpResponse response) {
+        StatusLine status = response.getStatusLine();
+        if (responseOk(status)) {
+            return null;
+        }
+        HttpEntity entity = response.getEntity();
+        ErrorMessage error = entity == null || entity.isRepeatable()
+                ? fetchErrorMessageString(status, entity)
+                : new ErrorMessage(ErrorType.fromResponseStatus(status), "status=" + status);
+        return toException(status, error).getErrorCode();
+    }
+
+    private static DigipostClientException toException(StatusLine status, ErrorMessage error) {
+        switch (status.getStatusCode()) {
+            case HttpStatus.SC_INTERNAL_SERVER_ERROR:
+                return new DigipostClientException(ErrorCode.SERVER_ERROR, error.getErrorMessage());
+            case HttpStatus.SC_SERVICE_UNAVAILABLE:
+                return new DigipostClientException(ErrorCode.API_UNAVAILABLE, error.getErrorMessage());
+            default:
+                return new DigipostClientException(error);
         }
     }
 
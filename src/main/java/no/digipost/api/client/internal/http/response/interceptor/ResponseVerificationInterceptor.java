@@ -0,0 +1,268 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http.response.interceptor;
+
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.representations.EntryPoint;
+import no.digipost.api.client.security.ResponseMessageSignatureUtil;
+import no.digipost.api.client.security.ResponseToVerify;
+import no.digipost.api.client.util.DateUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.util.encoders.Base64;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import static no.digipost.api.client.errorhandling.ErrorCode.SERVER_SIGNATURE_ERROR;
+import static no.digipost.api.client.internal.http.Headers.Content_MD5;
+import static no.digipost.api.client.internal.http.Headers.X_Content_SHA256;
+import static no.digipost.api.client.internal.http.Headers.X_Digipost_Signature;
+import static no.digipost.api.client.internal.http.Headers.X_Digipost_UserId;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.http.HttpHeaders.DATE;
+
+/**
+ * Verifies the {@code Date} header, the content hash and the signature of every response from the API,
+ * and decodes gzipped content. The headers are read once, the body is read into memory once, and the
+ * parsed {@code Date} header and Digipost's certificate are reused as long as they are unchanged.
+ * The signature is not verified for requests with the {@link #NOT_SIGNED_RESPONSE} attribute set in their context.
+ */
+public class ResponseVerificationInterceptor implements HttpResponseInterceptor {
+
+    public static final String NOT_SIGNED_RESPONSE = "NOT_SIGNED_RESPONSE";
+
+    private static final Duration ACCEPTABLE_TIME_DIFF = Duration.ofMinutes(5);
+
+    private final Clock clock;
+    private final Supplier<EntryPoint> entryPointResolver;
+    private volatile ParsedDate lastDate = new ParsedDate(null, null);
+    private volatile LoadedCertificate lastCertificate = new LoadedCertificate(null, null);
+
+    public ResponseVerificationInterceptor(Clock clock, Supplier<EntryPoint> entryPointResolver) {
+        this.clock = clock;
+        this.entryPointResolver = entryPointResolver;
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) throws IOException {
+        String date = null;
+        String contentHash = null;
+        String signature = null;
+        SortedMap<String, String> headersForSignature = new TreeMap<>();
+        for (Header header : response.getAllHeaders()) {
+            String name = header.getName();
+            boolean isDate = name.equalsIgnoreCase(DATE);
+            boolean isContentHash = !isDate && name.equalsIgnoreCase(X_Content_SHA256);
+            if (isDate && date == null) {
+                date = header.getValue();
+            } else if (isContentHash && contentHash == null) {
+                contentHash = header.getValue();
+            } else if (signature == null && name.equalsIgnoreCase(X_Digipost_Signature)) {
+                signature = header.getValue();
+            }
+            if (isDate || isContentHash || name.equalsIgnoreCase(X_Digipost_UserId) || name.equalsIgnoreCase(Content_MD5)) {
+                headersForSignature.put(name, header.getValue());
+            }
+        }
+
+        checkDate(date, response);
+        verifyContentHash(contentHash, response);
+        Boolean notSignedResponse = (Boolean) context.getAttribute(NOT_SIGNED_RESPONSE);
+        if (notSignedResponse == null || !notSignedResponse) {
+            verifySignature(signature, new VerifiedResponse(response.getStatusLine().getStatusCode(), headersForSignature, (String) context.getAttribute("request-path")));
+        }
+        decodeContent(response);
+    }
+
+    private void checkDate(String dateHeader, HttpResponse response) {
+        if (isBlank(dateHeader)) {
+            throw new DigipostClientException(SERVER_SIGNATURE_ERROR,
+                    String.format("Missing %s header in response. This header is expected in all response. Http status was %s",
+                            DATE, response.getStatusLine()));
+        }
+        Instant date;
+        ParsedDate parsed = lastDate;
+        if (dateHeader.equals(parsed.header)) {
+            date = parsed.instant;
+        } else {
+            try {
+                date = DateUtils.parseDate(dateHeader).toInstant();
+            } catch (DateTimeParseException e) {
+                throw new DigipostClientException(SERVER_SIGNATURE_ERROR, "Unable to parse Date header '" + dateHeader + "' (is it 'RFC 1123 compliant'?)");
+            }
+            lastDate = new ParsedDate(dateHeader, date);
+        }
+
+        Instant now = clock.instant();
+        if (date.isBefore(now.minus(ACCEPTABLE_TIME_DIFF))) {
+            throw new DigipostClientException(SERVER_SIGNATURE_ERROR, "Date header in response from server is too old: " + dateHeader);
+        }
+        if (date.isAfter(now.plus(ACCEPTABLE_TIME_DIFF))) {
+            throw new DigipostClientException(SERVER_SIGNATURE_ERROR, "Date-header from server is too early: " + dateHeader);
+        }
+    }
+
+    private void verifyContentHash(String contentHash, HttpResponse response) throws IOException {
+        HttpEntity entity = response.getEntity();
+        // an encoded response has no known length when it is sent chunked, but must still be verified
+        if (entity == null || entity.getContent() == null || (entity.getContentLength() <= 0 && entity.getContentEncoding() == null)) {
+            return;
+        }
+        if (isBlank(contentHash)) {
+            throw new DigipostClientException(SERVER_SIGNATURE_ERROR,
+                    String.format("Missing %s header in response. This header is expected when a response body is present. Http response was %s",
+                            X_Content_SHA256, response.getStatusLine()));
+        }
+        byte[] entityBytes = EntityUtils.toByteArray(entity);
+        SHA256Digest digest = new SHA256Digest();
+        digest.update(entityBytes, 0, entityBytes.length);
+        byte[] hash = new byte[digest.getDigestSize()];
+        digest.doFinal(hash, 0);
+        if (!contentHash.equals(new String(Base64.encode(hash)))) {
+            throw new DigipostClientException(SERVER_SIGNATURE_ERROR, X_Content_SHA256 + " header did not match actual response body");
+        }
+        ByteArrayEntity verifiedEntity = new ByteArrayEntity(entityBytes);
+        verifiedEntity.setContentType(entity.getContentType());
+        verifiedEntity.setContentEncoding(entity.getContentEncoding());
+        response.setEntity(verifiedEntity);
+    }
+
+    private void verifySignature(String serverSignature, ResponseToVerify response) {
+        try {
+            if (isBlank(serverSignature)) {
+                throw new DigipostClientException(SERVER_SIGNATURE_ERROR,
+                        "Missing " + X_Digipost_Signature + " header. Signature from server could not be validated");
+            }
+            byte[] serverSignatureBytes = Base64.decode(serverSignature.getBytes());
+            String signatureString = ResponseMessageSignatureUtil.getCanonicalResponseRepresentation(response);
+
+            Signature instance = Signature.getInstance("SHA256WithRSAEncryption");
+            instance.initVerify(certificate());
+            instance.update(signatureString.getBytes());
+            if (!instance.verify(serverSignatureBytes)) {
+                throw new DigipostClientException(SERVER_SIGNATURE_ERROR, "Response from server did not match signature.");
+            }
+        } catch (DigipostClientException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DigipostClientException(SERVER_SIGNATURE_ERROR,
+                    "An exception occured during server response signature verification. "
+                            + e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private X509Certificate certificate() {
+        String pem = entryPointResolver.get().getCertificate();
+        LoadedCertificate loaded = lastCertificate;
+        if (pem != null && pem.equals(loaded.pem)) {
+            return loaded.certificate;
+        }
+        try {
+            CertificateFactory cf = CertificateFactory.getInstance("X.509", BouncyCastleProvider.PROVIDER_NAME);
+            X509Certificate certificate = (X509Certificate) cf.generateCertificate(new ByteArrayInputStream(pem.getBytes()));
+            if (certificate == null) {
+                throw new DigipostClientException(SERVER_SIGNATURE_ERROR,
+                        "Unable to load Digipost's public key. Signature from server could not be validated");
+            }
+            lastCertificate = new LoadedCertificate(pem, certificate);
+            return certificate;
+        } catch (GeneralSecurityException e) {
+            throw new DigipostClientException(SERVER_SIGNATURE_ERROR,
+                    "Unable to load Digipost's public key. Signature from server could not be validated");
+        }
+    }
+
+    private static void decodeContent(HttpResponse response) {
+        HttpEntity entity = response.getEntity();
+        if (entity == null || entity.getContentLength() == 0) {
+            return;
+        }
+        Header contentEncoding = entity.getContentEncoding();
+        if (contentEncoding != null && contentEncoding.getValue().trim().equalsIgnoreCase("gzip")) {
+            response.setEntity(new GzipDecompressingEntity(entity));
+            response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+            response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+        }
+    }
+
+    private static final class ParsedDate {
+        final String header;
+        final Instant instant;
+
+        ParsedDate(String header, Instant instant) {
+            this.header = header;
+            this.instant = instant;
+        }
+    }
+
+    private static final class LoadedCertificate {
+        final String pem;
+        final X509Certificate certificate;
+
+        LoadedCertificate(String pem, X509Certificate certificate) {
+            this.pem = pem;
+            this.certificate = certificate;
+        }
+    }
+
+    private static final class VerifiedResponse implements ResponseToVerify {
+        private final int status;
+        private final SortedMap<String, String> headers;
+        private final String path;
+
+        VerifiedResponse(int status, SortedMap<String, String> headers, String path) {
+            this.status = status;
+            this.headers = headers;
+            this.path = path;
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public SortedMap<String, String> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.metrics;
+
+/**
+ * The endpoints of the Digipost API which the client sends requests to. Metrics are
+ * recorded per endpoint, rather than per URI, as the URIs contain identifiers for
+ * senders, documents, search terms, etc.
+ */
+public enum ApiEndpoint {
+
+    ENTRY_POINT,
+    CREATE_MESSAGE,
+    ADD_DATA,
+    IDENTIFICATION,
+    IDENTIFICATION_WITH_ENCRYPTION_KEY,
+    ENCRYPTION_KEY,
+    PRINT_ENCRYPTION_CERTIFICATE,
+    DOCUMENT_EVENTS,
+    DOCUMENT_STATUS,
+    DOCUMENT_CONTENT,
+    SEARCH,
+    AUTOCOMPLETE,
+    SENDER_INFORMATION,
+    INBOX,
+    INBOX_DOCUMENT_CONTENT,
+    DELETE_INBOX_DOCUMENT,
+    USER_ACCOUNTS
+
+}
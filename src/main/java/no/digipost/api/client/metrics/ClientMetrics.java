@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.metrics;
+
+import no.digipost.api.client.delivery.DeliveryPriority;
+import no.digipost.api.client.errorhandling.ErrorCode;
+import no.digipost.api.client.representations.sender.AuthorialSender;
+
+/**
+ * Receives measurements of the requests the client sends to the Digipost API, and of
+ * the {@link DeliveryTimings deliveries} of messages. All methods
+ * are invoked on the thread sending the request, and implementations should be fast and
+ * thread safe. Every method does nothing by default, so an implementation only needs to
+ * override what it is interested in.
+ * <p>
+ * An implementation is given to the client with
+ * {@link no.digipost.api.client.DigipostClientConfig.Builder#metrics(ClientMetrics)}.
+ * For an implementation keeping the measurements in memory, see {@link InMemoryClientMetrics}.
+ */
+public interface ClientMetrics {
+
+    ClientMetrics NOOP = new ClientMetrics() {};
+
+    /**
+     * A response was received from the API. This is invoked for any response, including
+     * those with a status code indicating an error.
+     *
+     * @param endpoint the endpoint the request was sent to
+     * @param statusCode the HTTP status code of the response
+     * @param latencyNanos the time from the request was sent until the response headers were received and verified
+     * @param requestBytes the size of the request body, {@code 0} if the request had none, or {@code -1} if unknown
+     * @param responseBytes the size of the response body, {@code 0} if the response had none, or {@code -1} if unknown
+     */
+    default void responseReceived(ApiEndpoint endpoint, int statusCode, long latencyNanos, long requestBytes, long responseBytes) {
+    }
+
+    /**
+     * A request failed, either because the API responded with an error, or because of
+     * an error in the client, e.g. a connection failure or an invalid response signature.
+     *
+     * @param endpoint the endpoint the request was sent to
+     * @param errorCode the error the request failed with
+     */
+    default void requestFailed(ApiEndpoint endpoint, ErrorCode errorCode) {
+    }
+
+    /**
+     * A request was not sent, because an identical request to the endpoint was already
+     * in flight, and its response was shared.
+     *
+     * @param endpoint the endpoint of the request
+     */
+    default void requestCoalesced(ApiEndpoint endpoint) {
+    }
+
+    /**
+     * The adaptive limit of concurrent requests to the API changed. This is invoked with the initial limit
+     * when the client is created, and only if the client is configured with
+     * {@link no.digipost.api.client.DigipostClientConfig.Builder#adaptiveConcurrencyLimit(int, int) an adaptive concurrency limit}.
+     *
+     * @param limit the number of requests now allowed in flight at the same time
+     */
+    default void concurrencyLimitChanged(int limit) {
+    }
+
+    /**
+     * The number of requests waiting to be sent with a priority changed. This is only invoked if the client is
+     * configured with {@link no.digipost.api.client.DigipostClientConfig.Builder#priorityLanes(int, int) priority lanes}.
+     *
+     * @param priority the priority of the waiting requests
+     * @param queued the number of requests of the priority now waiting
+     */
+    default void queuedRequestsChanged(DeliveryPriority priority, int queued) {
+    }
+
+    /**
+     * A message from the given sender had to wait in line, because the client was already delivering as many messages as
+     * allowed by {@link no.digipost.api.client.DigipostClientConfig.Builder#fairSenderScheduling(int) fair sender scheduling}.
+     *
+     * @param sender the authorial sender of the message
+     */
+    default void senderDeliveryQueued(AuthorialSender sender) {
+    }
+
+    /**
+     * The delivery of a message from the given sender started. This is only invoked if the client is configured with
+     * {@link no.digipost.api.client.DigipostClientConfig.Builder#fairSenderScheduling(int) fair sender scheduling}.
+     *
+     * @param sender the authorial sender of the message
+     * @param queuedNanos how long the message waited in line, or {@code 0} if it did not have to wait
+     */
+    default void senderDeliveryStarted(AuthorialSender sender, long queuedNanos) {
+    }
+
+    /**
+     * A message from the given sender stopped waiting in line without being delivered, because the delivering thread
+     * was interrupted. This is only invoked if the client is configured with
+     * {@link no.digipost.api.client.DigipostClientConfig.Builder#fairSenderScheduling(int) fair sender scheduling}.
+     *
+     * @param sender the authorial sender of the message
+     */
+    default void senderDeliveryCancelled(AuthorialSender sender) {
+    }
+
+    /**
+     * The delivery of a message completed, either successfully or failing.
+     *
+     * @param timings how the time was spent delivering the message
+     */
+    default void deliveryCompleted(DeliveryTimings timings) {
+    }
+
+}
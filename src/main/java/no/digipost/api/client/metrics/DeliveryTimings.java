@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.metrics;
+
+import no.digipost.api.client.errorhandling.ErrorCode;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * How the time was spent when delivering one message, broken down in {@link Phase phases}, together
+ * with the size of each of its documents. This is given to
+ * {@link ClientMetrics#deliveryCompleted(DeliveryTimings)} for every message sent, including
+ * those failing to be delivered.
+ * <p>
+ * The time of a phase does not include the time of any other phase which happens as part of it,
+ * e.g. fetching {@link Phase#SENDER_INFORMATION sender information} when it is needed to
+ * {@link Phase#PDF_VALIDATION validate a PDF}. Hence the phases add up to at most the
+ * {@link #getTotal() total} time, with any remainder spent outside of any phase.
+ */
+public final class DeliveryTimings {
+
+    public enum Phase {
+        /**
+         * Identifying the recipient and fetching its encryption key.
+         */
+        IDENTIFICATION,
+
+        /**
+         * Fetching the certificate used to encrypt documents for print. This is usually cached.
+         */
+        PRINT_CERTIFICATE,
+
+        /**
+         * Fetching information about the sender, used to validate PDFs. This is usually cached.
+         */
+        SENDER_INFORMATION,
+
+        /**
+         * Reading the content of documents from the given {@link java.io.InputStream}s.
+         */
+        CONTENT_READING,
+
+        PDF_VALIDATION,
+
+        HTML_VALIDATION,
+
+        ENCRYPTION,
+
+        /**
+         * Marshalling the message to XML.
+         */
+        MARSHALLING,
+
+        /**
+         * Building the multipart request with the message and documents.
+         */
+        MULTIPART_ASSEMBLY,
+
+        /**
+         * Sending the request, until the response is received. This includes the validation of
+         * the response signature, hash and date done when receiving the response headers.
+         */
+        UPLOAD,
+
+        /**
+         * Checking the status of the response, and unmarshalling the delivery receipt.
+         */
+        RESPONSE_VERIFICATION
+    }
+
+    public static final class DocumentBytes {
+        private final long content;
+        private final long uploaded;
+
+        public DocumentBytes(long content, long uploaded) {
+            this.content = content;
+            this.uploaded = uploaded;
+        }
+
+        /**
+         * @return the size of the document content as given to the client.
+         */
+        public long getContent() {
+            return content;
+        }
+
+        /**
+         * @return the size of the document as uploaded, which will be larger than the content
+         *         if the document is encrypted.
+         */
+        public long getUploaded() {
+            return uploaded;
+        }
+
+        @Override
+        public String toString() {
+            return content == uploaded ? content + " bytes" : content + " bytes (" + uploaded + " uploaded)";
+        }
+    }
+
+
+    private final String messageId;
+    private final long totalNanos;
+    private final Map<Phase, Long> phaseNanos;
+    private final Map<UUID, DocumentBytes> documentBytes;
+    private final ErrorCode failure;
+
+    public DeliveryTimings(String messageId, long totalNanos, Map<Phase, Long> phaseNanos, Map<UUID, DocumentBytes> documentBytes, ErrorCode failure) {
+        this.messageId = messageId;
+        this.totalNanos = totalNanos;
+        this.phaseNanos = phaseNanos.isEmpty() ? Collections.emptyMap() : unmodifiableMap(new EnumMap<>(phaseNanos));
+        this.documentBytes = unmodifiableMap(new LinkedHashMap<>(documentBytes));
+        this.failure = failure;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public Duration getTotal() {
+        return Duration.ofNanos(totalNanos);
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return the time spent in the given phase, in nanoseconds. {@code 0} if the delivery did not involve the phase.
+     */
+    public long getNanos(Phase phase) {
+        return phaseNanos.getOrDefault(phase, 0L);
+    }
+
+    public Duration get(Phase phase) {
+        return Duration.ofNanos(getNanos(phase));
+    }
+
+    /**
+     * @return the time spent in each phase the delivery involved, in nanoseconds.
+     */
+    public Map<Phase, Long> getPhaseNanos() {
+        return phaseNanos;
+    }
+
+    /**
+     * @return the sizes of the documents of the message, by their UUID.
+     */
+    public Map<UUID, DocumentBytes> getDocumentBytes() {
+        return documentBytes;
+    }
+
+    public boolean isSuccessful() {
+        return failure == null;
+    }
+
+    /**
+     * @return the error which caused the delivery to fail, or {@link Optional#empty() empty} if delivered successfully.
+     */
+    public Optional<ErrorCode> getFailure() {
+        return Optional.ofNullable(failure);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("Delivery of message ").append(messageId)
+                .append(isSuccessful() ? "" : " failed with " + failure)
+                .append(" took ").append(getTotal().toMillis()).append("ms");
+        phaseNanos.forEach((phase, nanos) -> s.append(", ").append(phase).append('=').append(Duration.ofNanos(nanos).toMillis()).append("ms"));
+        documentBytes.forEach((uuid, bytes) -> s.append(", ").append(uuid).append('=').append(bytes));
+        return s.toString();
+    }
+}
@@ -0,0 +1,343 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.metrics;
+
+import no.digipost.api.client.delivery.DeliveryPriority;
+import no.digipost.api.client.errorhandling.ErrorCode;
+import no.digipost.api.client.metrics.DeliveryTimings.Phase;
+import no.digipost.api.client.representations.sender.AuthorialSender;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Collections.unmodifiableSet;
+
+/**
+ * {@link ClientMetrics} keeping counts, byte sums and a {@link LatencyHistogram} for each
+ * {@link ApiEndpoint endpoint} in memory, for as long as the instance lives. The measurements
+ * may be read at any time, e.g. to expose them to a monitoring system, or for logging:
+ *
+ * <pre>{@code
+ * InMemoryClientMetrics metrics = new InMemoryClientMetrics();
+ * DigipostClientConfig config = DigipostClientConfig.newConfiguration().metrics(metrics).build();
+ * ...
+ * Duration p99 = metrics.forEndpoint(ApiEndpoint.CREATE_MESSAGE).getLatency().getPercentile(99);
+ * }</pre>
+ */
+public final class InMemoryClientMetrics implements ClientMetrics {
+
+    private final ConcurrentMap<ApiEndpoint, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+    private final ConcurrentMap<AuthorialSender, SenderMetrics> senders = new ConcurrentHashMap<>();
+    private final LatencyHistogram deliveries = new LatencyHistogram();
+    private final Map<Phase, LatencyHistogram> deliveryPhases = new EnumMap<>(Phase.class);
+    private final LongAdder failedDeliveries = new LongAdder();
+    private volatile int concurrencyLimit = -1;
+    private final Map<DeliveryPriority, AtomicInteger> queuedRequests = new EnumMap<>(DeliveryPriority.class);
+
+    public InMemoryClientMetrics() {
+        for (Phase phase : Phase.values()) {
+            deliveryPhases.put(phase, new LatencyHistogram());
+        }
+        for (DeliveryPriority priority : DeliveryPriority.values()) {
+            queuedRequests.put(priority, new AtomicInteger());
+        }
+    }
+
+    @Override
+    public void responseReceived(ApiEndpoint endpoint, int statusCode, long latencyNanos, long requestBytes, long responseBytes) {
+        EndpointMetrics metrics = forEndpoint(endpoint);
+        metrics.latency.recordNanos(latencyNanos);
+        metrics.statusClasses[statusClassIndex(statusCode)].increment();
+        if (requestBytes > 0) {
+            metrics.requestBytes.add(requestBytes);
+        }
+        if (responseBytes > 0) {
+            metrics.responseBytes.add(responseBytes);
+        }
+    }
+
+    @Override
+    public void requestFailed(ApiEndpoint endpoint, ErrorCode errorCode) {
+        forEndpoint(endpoint).failures.computeIfAbsent(errorCode, c -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void requestCoalesced(ApiEndpoint endpoint) {
+        forEndpoint(endpoint).coalesced.increment();
+    }
+
+    @Override
+    public void concurrencyLimitChanged(int limit) {
+        this.concurrencyLimit = limit;
+    }
+
+    @Override
+    public void queuedRequestsChanged(DeliveryPriority priority, int queued) {
+        queuedRequests.get(priority).set(queued);
+    }
+
+    @Override
+    public void senderDeliveryQueued(AuthorialSender sender) {
+        forSender(sender).queued.incrementAndGet();
+    }
+
+    @Override
+    public void senderDeliveryStarted(AuthorialSender sender, long queuedNanos) {
+        SenderMetrics metrics = forSender(sender);
+        metrics.queueTime.recordNanos(queuedNanos);
+        if (queuedNanos > 0) {
+            metrics.queued.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void senderDeliveryCancelled(AuthorialSender sender) {
+        forSender(sender).queued.decrementAndGet();
+    }
+
+    @Override
+    public void deliveryCompleted(DeliveryTimings timings) {
+        deliveries.recordNanos(timings.getTotalNanos());
+        timings.getPhaseNanos().forEach((phase, nanos) -> deliveryPhases.get(phase).recordNanos(nanos));
+        if (!timings.isSuccessful()) {
+            failedDeliveries.increment();
+        }
+    }
+
+    /**
+     * @return the total time of each message delivery, including failed deliveries.
+     */
+    public LatencyHistogram getDeliveries() {
+        return deliveries;
+    }
+
+    /**
+     * @return the time spent in the given phase, for each message delivery which involved the phase.
+     */
+    public LatencyHistogram getDeliveryPhase(Phase phase) {
+        return deliveryPhases.get(phase);
+    }
+
+    public long getFailedDeliveryCount() {
+        return failedDeliveries.sum();
+    }
+
+    /**
+     * @return the current adaptive limit of concurrent requests, or empty if the client has no such limit
+     */
+    public OptionalInt getConcurrencyLimit() {
+        int limit = concurrencyLimit;
+        return limit > 0 ? OptionalInt.of(limit) : OptionalInt.empty();
+    }
+
+    /**
+     * @return the number of requests with the given priority currently waiting to be sent
+     */
+    public int getQueuedRequests(DeliveryPriority priority) {
+        return queuedRequests.get(priority).get();
+    }
+
+    /**
+     * @return the endpoints which have been measured
+     */
+    public Set<ApiEndpoint> getEndpoints() {
+        return unmodifiableSet(endpoints.keySet());
+    }
+
+    /**
+     * @return the metrics for the given endpoint. If nothing is yet measured for the endpoint,
+     *         the returned instance will be empty, and reflect any later measurements.
+     */
+    public EndpointMetrics forEndpoint(ApiEndpoint endpoint) {
+        return endpoints.computeIfAbsent(endpoint, EndpointMetrics::new);
+    }
+
+    /**
+     * @return the senders which have had messages delivered with fair sender scheduling
+     */
+    public Set<AuthorialSender> getSenders() {
+        return unmodifiableSet(senders.keySet());
+    }
+
+    /**
+     * @return the metrics for the given sender. If nothing is yet measured for the sender,
+     *         the returned instance will be empty, and reflect any later measurements.
+     */
+    public SenderMetrics forSender(AuthorialSender sender) {
+        return senders.computeIfAbsent(sender, SenderMetrics::new);
+    }
+
+    /**
+     * @return the number of failures with the given error code, for all endpoints.
+     */
+    public long getFailureCount(ErrorCode errorCode) {
+        return endpoints.values().stream().mapToLong(metrics -> metrics.getFailureCount(errorCode)).sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder(getClass().getSimpleName()).append(':');
+        endpoints.values().forEach(metrics -> summary.append("\n  ").append(metrics));
+        senders.values().forEach(metrics -> summary.append("\n  ").append(metrics));
+        if (deliveries.getCount() > 0) {
+            summary.append("\n  deliveries=").append(deliveries.getCount()).append(", failed=").append(getFailedDeliveryCount())
+                .append(", p99=").append(deliveries.getPercentile(99).toMillis()).append("ms");
+            deliveryPhases.forEach((phase, histogram) -> {
+                if (histogram.getCount() > 0) {
+                    summary.append("\n    ").append(phase).append(": p50=").append(histogram.getPercentile(50).toMillis())
+                        .append("ms, p99=").append(histogram.getPercentile(99).toMillis()).append("ms");
+                }
+            });
+        }
+        getConcurrencyLimit().ifPresent(limit -> summary.append("\n  concurrencyLimit=").append(limit));
+        return summary.toString();
+    }
+
+    private static int statusClassIndex(int statusCode) {
+        return Math.max(0, Math.min(statusCode / 100, 6) - 1);
+    }
+
+
+    public static final class EndpointMetrics {
+
+        private final ApiEndpoint endpoint;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        private final LongAdder coalesced = new LongAdder();
+        private final LongAdder[] statusClasses = {new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()};
+        private final ConcurrentMap<ErrorCode, LongAdder> failures = new ConcurrentHashMap<>();
+
+        private EndpointMetrics(ApiEndpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        public ApiEndpoint getEndpoint() {
+            return endpoint;
+        }
+
+        /**
+         * @return the number of responses received from the endpoint.
+         */
+        public long getResponseCount() {
+            return latency.getCount();
+        }
+
+        /**
+         * @return the latencies of all responses received from the endpoint.
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getRequestBytes() {
+            return requestBytes.sum();
+        }
+
+        public long getResponseBytes() {
+            return responseBytes.sum();
+        }
+
+        /**
+         * @param statusClass the first digit of the status codes, e.g. {@code 5} for all {@code 5xx} responses
+         * @return the number of responses with a status code in the given class
+         */
+        public long getStatusClassCount(int statusClass) {
+            if (statusClass < 1 || statusClass > 5) {
+                throw new IllegalArgumentException("status class must be within 1 and 5, but was " + statusClass);
+            }
+            return statusClasses[statusClass - 1].sum();
+        }
+
+        public long getFailureCount(ErrorCode errorCode) {
+            LongAdder count = failures.get(errorCode);
+            return count != null ? count.sum() : 0;
+        }
+
+        public Map<ErrorCode, Long> getFailureCounts() {
+            Map<ErrorCode, Long> counts = new EnumMap<>(ErrorCode.class);
+            failures.forEach((errorCode, count) -> counts.put(errorCode, count.sum()));
+            return Collections.unmodifiableMap(counts);
+        }
+
+        /**
+         * @return the number of requests which shared the response of an identical request in flight.
+         */
+        public long getCoalescedCount() {
+            return coalesced.sum();
+        }
+
+        @Override
+        public String toString() {
+            Duration p50 = latency.getPercentile(50);
+            Duration p99 = latency.getPercentile(99);
+            return endpoint + ": responses=" + getResponseCount() + ", p50=" + p50.toMillis() + "ms, p99=" + p99.toMillis() + "ms" +
+                    ", max=" + latency.getMax().toMillis() + "ms, requestBytes=" + getRequestBytes() + ", responseBytes=" + getResponseBytes() +
+                    ", failures=" + getFailureCounts() + ", coalesced=" + getCoalescedCount();
+        }
+    }
+
+
+    public static final class SenderMetrics {
+
+        private final AuthorialSender sender;
+        private final LatencyHistogram queueTime = new LatencyHistogram();
+        private final AtomicInteger queued = new AtomicInteger();
+
+        private SenderMetrics(AuthorialSender sender) {
+            this.sender = sender;
+        }
+
+        public AuthorialSender getSender() {
+            return sender;
+        }
+
+        /**
+         * @return the number of deliveries started for the sender.
+         */
+        public long getDeliveryCount() {
+            return queueTime.getCount();
+        }
+
+        /**
+         * @return the number of messages from the sender currently waiting in line.
+         */
+        public int getQueuedCount() {
+            return queued.get();
+        }
+
+        /**
+         * @return how long each message from the sender waited in line before its delivery started.
+         */
+        public LatencyHistogram getQueueTime() {
+            return queueTime;
+        }
+
+        @Override
+        public String toString() {
+            return sender + ": deliveries=" + getDeliveryCount() + ", queued=" + getQueuedCount() +
+                    ", queueTime p50=" + queueTime.getPercentile(50).toMillis() + "ms, p99=" + queueTime.getPercentile(99).toMillis() + "ms";
+        }
+    }
+}
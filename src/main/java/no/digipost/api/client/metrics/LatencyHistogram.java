@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations with fixed memory usage and constant time recording, in the style of
+ * <a href="http://hdrhistogram.org/">HdrHistogram</a>. Values are counted in buckets with a width
+ * proportional to their magnitude, so any value can be resolved with a precision better than
+ * 1/{@value #SUB_BUCKET_HALF_COUNT} (i.e. 2 significant decimal digits), up to
+ * {@link #HIGHEST_TRACKABLE_NANOS about 18 minutes}. Longer durations are counted as the highest trackable.
+ * <p>
+ * Recording is thread safe and lock free. Reading percentiles while values are
+ * recorded is allowed, but the result will not be an atomic snapshot.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    static final long HIGHEST_TRACKABLE_NANOS = (1L << 40) - 1;
+    private static final int BUCKET_COUNT = indexOf(HIGHEST_TRACKABLE_NANOS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public void record(Duration duration) {
+        recordNanos(duration.toNanos());
+    }
+
+    public void recordNanos(long nanos) {
+        long value = Math.max(0, Math.min(nanos, HIGHEST_TRACKABLE_NANOS));
+        counts.incrementAndGet(indexOf(value));
+        totalCount.increment();
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    public Duration getMax() {
+        return Duration.ofNanos(maxNanos.get());
+    }
+
+    public Duration getMean() {
+        long count = totalCount.sum();
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(totalNanos.sum() / count);
+    }
+
+    /**
+     * @param percentile the percentile, from {@code 0} to {@code 100}, e.g. {@code 99.9}
+     * @return the duration which the given percentage of the recorded durations are equal to or shorter than,
+     *         or {@link Duration#ZERO} if nothing is recorded.
+     */
+    public Duration getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be within 0 and 100, but was " + percentile);
+        }
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return Duration.ZERO;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Duration.ofNanos(Math.min(highestEquivalentValue(i), maxNanos.get()));
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Values below {@link #SUB_BUCKET_COUNT} have a bucket each. Above that, each power of two
+     * is divided into {@link #SUB_BUCKET_HALF_COUNT} equally wide buckets.
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        long subBucket = index - (long) shift * SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+}
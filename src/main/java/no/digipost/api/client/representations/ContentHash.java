@@ -31,6 +31,14 @@ public class ContentHash {
     @XmlAttribute(name = "hash-algorithm")
     private String hashAlgorithm;
 
+    public ContentHash() {
+    }
+
+    public ContentHash(HashAlgorithm hashAlgorithm, String hash) {
+        this.hashAlgorithm = hashAlgorithm.name();
+        this.value = hash;
+    }
+
     public String getHash() {
         return value;
     }
@@ -141,7 +141,18 @@ public class Document extends Representation {
     }
 
     public Document copyDocumentAndSetDigipostFileTypeToPdf(){
-        Document newDoc = new Document(this.uuid, this.subject, new FileType("pdf"), this.openingReceipt, this.smsNotification, this.emailNotification,
+        return copy(this.uuid, new FileType("pdf"));
+    }
+
+    /**
+     * @return a copy of this document, with another uuid.
+     */
+    public Document copyDocumentWithUuid(UUID uuid) {
+        return copy(uuid, this.digipostFileType != null ? new FileType(this.digipostFileType) : null);
+    }
+
+    private Document copy(UUID uuid, FileType fileType) {
+        Document newDoc = new Document(uuid, this.subject, fileType, this.openingReceipt, this.smsNotification, this.emailNotification,
                 this.authenticationLevel, this.sensitivityLevel, this.opened, this.dataType != null ? this.dataType.get() : null, this.getTechnicalType());
 
         newDoc.encrypted  = this.encrypted == null ? null : this.encrypted.copy();
@@ -172,6 +183,10 @@ public class Document extends Representation {
         this.contentHash = contentHash;
     }
 
+    public ContentHash getContentHash() {
+        return contentHash;
+    }
+
     public void setDigipostFileType(FileType fileType) {
         this.digipostFileType = fileType.toString();
     }
@@ -26,7 +26,10 @@ import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlSchemaType;
 import javax.xml.bind.annotation.XmlType;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static java.util.stream.Collectors.joining;
 import static no.digipost.api.client.representations.sender.SenderFeatureName.PRINTVALIDATION_FONTS;
@@ -69,6 +72,13 @@ public class SenderInformation
     @XmlElement(name = "feature", nillable = false)
     private List<SenderFeature> supportedFeatures;
 
+    /**
+     * Derived from {@link #supportedFeatures}, and computed when first needed, as instances of this class
+     * are typically cached and consulted for every message sent.
+     */
+    private transient volatile Map<SenderFeatureName, SenderFeature> featuresByName;
+    private transient volatile PdfValidationSettings pdfValidationSettings;
+
     public SenderInformation() { }
 
     public SenderInformation(SenderId senderId, SenderStatus status, List<SenderFeature> supportedFeatures) {
@@ -95,12 +105,22 @@ public class SenderInformation
     }
 
     public SenderFeature get(SenderFeatureName featureName) {
-        for (SenderFeature feature : supportedFeatures ){
-            if (featureName.equals(feature.getName())) {
-                return feature;
+        return featuresByName().get(featureName);
+    }
+
+    private Map<SenderFeatureName, SenderFeature> featuresByName() {
+        Map<SenderFeatureName, SenderFeature> features = featuresByName;
+        if (features == null) {
+            features = new HashMap<>();
+            if (supportedFeatures != null) {
+                for (SenderFeature feature : supportedFeatures) {
+                    features.putIfAbsent(feature.getName(), feature);
+                }
             }
+            features = Collections.unmodifiableMap(features);
+            featuresByName = features;
         }
-        return null;
+        return features;
     }
 
     @Override
@@ -115,6 +135,15 @@ public class SenderInformation
     }
 
     public PdfValidationSettings getPdfValidationSettings() {
+        PdfValidationSettings settings = pdfValidationSettings;
+        if (settings == null) {
+            settings = createPdfValidationSettings();
+            pdfValidationSettings = settings;
+        }
+        return settings;
+    }
+
+    private PdfValidationSettings createPdfValidationSettings() {
         SenderFeature positiveBleed = get(PRINTVALIDATION_POSITIVE_BLEED);
         SenderFeature negativeBleed = get(PRINTVALIDATION_NEGATIVE_BLEED);
         return new PdfValidationSettings(
@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.security;
+
+import org.bouncycastle.cms.CMSAlgorithm;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.jcajce.JceCMSContentEncryptorBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.OutputEncryptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
+
+/**
+ * The JCE provider used by the {@link Encrypter} to encrypt document content with AES256-CBC.
+ * <p>
+ * The pure Java AES implementation of BouncyCastle does not benefit from the AES instructions of
+ * modern CPUs, which the JDK's own {@code SunJCE} provider uses through intrinsics, and which makes
+ * encrypting large documents considerably faster. {@link #JDK_IF_SUPPORTED} prefers {@code SunJCE}
+ * whenever it supports AES256-CBC, while {@link #FASTEST_AVAILABLE} times the registered providers
+ * supporting AES and selects the fastest of them.
+ */
+public final class CipherProvider {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CipherProvider.class);
+
+    /**
+     * Always use BouncyCastle, which must be registered as a security provider.
+     */
+    public static final CipherProvider BOUNCY_CASTLE = named(BouncyCastleProvider.PROVIDER_NAME);
+
+    /**
+     * Use the JDK's own {@code SunJCE} provider if it is registered and supports AES256-CBC, which it does
+     * on any JDK without restricted cryptography policy, and otherwise BouncyCastle.
+     */
+    public static final CipherProvider JDK_IF_SUPPORTED = new CipherProvider("SunJCE if supported", () -> JdkIfSupported.PROVIDER);
+
+    /**
+     * Use the registered provider which encrypts the fastest with AES256-CBC. The providers are compared
+     * the first time encryption is needed, or the support is {@link #verifyAes256CbcSupport() verified},
+     * and the selected provider is used for the lifetime of the JVM. The comparison warms up each provider
+     * before timing it, which takes a noticeable amount of time at startup.
+     */
+    public static final CipherProvider FASTEST_AVAILABLE = new CipherProvider("fastest available", () -> FastestAvailable.PROVIDER);
+
+    /**
+     * Use the registered provider with the given name, e.g. {@code "SunJCE"} or {@code "BC"}.
+     */
+    public static CipherProvider named(String providerName) {
+        return new CipherProvider(providerName, () -> {
+            Provider provider = Security.getProvider(providerName);
+            if (provider == null) {
+                throw new IllegalStateException("No security provider named " + providerName + " is registered");
+            }
+            return provider;
+        });
+    }
+
+    /**
+     * Use the given provider, which does not need to be registered.
+     */
+    public static CipherProvider using(Provider provider) {
+        return new CipherProvider(provider.getName(), () -> provider);
+    }
+
+    private final String description;
+    private final Supplier<Provider> providerResolver;
+    private volatile Resolved resolved;
+
+    private CipherProvider(String description, Supplier<Provider> providerResolver) {
+        this.description = description;
+        this.providerResolver = providerResolver;
+    }
+
+    /**
+     * @return the provider to encrypt with, resolved the first time it is needed.
+     */
+    public Provider getProvider() {
+        return resolved().provider;
+    }
+
+    OutputEncryptor newEncryptor() throws CMSException {
+        return resolved().encryptorBuilder.build();
+    }
+
+    /**
+     * Verifies that the provider can be resolved and supports AES256-CBC, as required to
+     * encrypt documents.
+     *
+     * @throws RuntimeException if the provider is not available or lacks support
+     */
+    public void verifyAes256CbcSupport() {
+        try {
+            newEncryptor();
+            LOG.debug("Support for AES256_CBC ok using {}", getProvider().getName());
+        } catch (CMSException | RuntimeException e) {
+            throw new RuntimeException("Feil under initialisering av algoritmer med " + description + " provider. " +
+                    "Er Java Cryptographic Extensions (JCE) installert?", e);
+        }
+    }
+
+    private Resolved resolved() {
+        Resolved resolved = this.resolved;
+        if (resolved == null) {
+            resolved = new Resolved(providerResolver.get());
+            this.resolved = resolved;
+        }
+        return resolved;
+    }
+
+    @Override
+    public String toString() {
+        return "CipherProvider " + description;
+    }
+
+
+    private static final class Resolved {
+        final Provider provider;
+        final JceCMSContentEncryptorBuilder encryptorBuilder;
+
+        Resolved(Provider provider) {
+            this.provider = provider;
+            this.encryptorBuilder = new JceCMSContentEncryptorBuilder(CMSAlgorithm.AES256_CBC).setProvider(provider);
+        }
+    }
+
+    private static boolean supportsAes256Cbc(Provider provider) {
+        try {
+            new JceCMSContentEncryptorBuilder(CMSAlgorithm.AES256_CBC).setProvider(provider).build();
+            return true;
+        } catch (CMSException | RuntimeException e) {
+            LOG.debug("{} does not support AES256_CBC: {} '{}'", provider.getName(), e.getClass().getSimpleName(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Resolves the provider of {@link #JDK_IF_SUPPORTED} when this class is first accessed.
+     */
+    private static final class JdkIfSupported {
+
+        static final Provider PROVIDER = select();
+
+        private static Provider select() {
+            Provider sunJce = Security.getProvider("SunJCE");
+            Provider selected = sunJce != null && supportsAes256Cbc(sunJce) ? sunJce : BOUNCY_CASTLE.providerResolver.get();
+            LOG.info("Encrypting documents with AES256_CBC using the {} security provider", selected.getName());
+            return selected;
+        }
+    }
+
+    /**
+     * Compares the registered providers supporting AES when this class is first accessed. Every provider
+     * encrypts the sample a number of times to warm up, i.e. to load the classes and have the JIT compiler
+     * (and any AES intrinsics) kick in, before the providers take turns to encrypt it while being timed,
+     * so that none of them gains from having been measured after the others.
+     */
+    private static final class FastestAvailable {
+
+        private static final int SAMPLE_BYTES = 128 * 1024;
+        private static final int WARMUP_ROUNDS = 200;
+        private static final int MEASURED_ROUNDS = 20;
+
+        static final Provider PROVIDER = select();
+
+        private static Provider select() {
+            Provider[] registered = Security.getProviders("Cipher.AES");
+            if (registered == null) {
+                throw new IllegalStateException("No registered security provider supports AES");
+            }
+            List<Provider> candidates = new ArrayList<>();
+            for (Provider provider : registered) {
+                if (supportsAes256Cbc(provider)) {
+                    candidates.add(provider);
+                }
+            }
+            if (candidates.isEmpty()) {
+                throw new IllegalStateException("No registered security provider supports AES256_CBC");
+            }
+            byte[] sample = new byte[SAMPLE_BYTES];
+            new Random(42).nextBytes(sample);
+
+            long[] fastestNanos = new long[candidates.size()];
+            Arrays.fill(fastestNanos, Long.MAX_VALUE);
+            try {
+                for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                    for (int i = 0; i < candidates.size(); i++) {
+                        long nanos = nanosToEncrypt(sample, candidates.get(i));
+                        if (round >= WARMUP_ROUNDS) {
+                            fastestNanos[i] = Math.min(fastestNanos[i], nanos);
+                        }
+                    }
+                }
+            } catch (CMSException | IOException e) {
+                throw new IllegalStateException("Failed to compare the security providers supporting AES256_CBC", e);
+            }
+
+            int fastest = 0;
+            for (int i = 0; i < candidates.size(); i++) {
+                LOG.debug("{} encrypted {} bytes with AES256_CBC in {} µs", candidates.get(i).getName(), SAMPLE_BYTES, fastestNanos[i] / 1000);
+                if (fastestNanos[i] < fastestNanos[fastest]) {
+                    fastest = i;
+                }
+            }
+            LOG.info("Encrypting documents with AES256_CBC using the {} security provider", candidates.get(fastest).getName());
+            return candidates.get(fastest);
+        }
+
+        private static long nanosToEncrypt(byte[] sample, Provider provider) throws CMSException, IOException {
+            OutputEncryptor encryptor = new JceCMSContentEncryptorBuilder(CMSAlgorithm.AES256_CBC).setProvider(provider).build();
+            long start = System.nanoTime();
+            try (OutputStream encrypting = encryptor.getOutputStream(NULL_OUTPUT_STREAM)) {
+                encrypting.write(sample);
+            }
+            return System.nanoTime() - start;
+        }
+    }
+
+}
@@ -15,9 +15,6 @@
  */
 package no.digipost.api.client.security;
 
-import org.bouncycastle.cms.CMSAlgorithm;
-import org.bouncycastle.cms.CMSException;
-import org.bouncycastle.cms.jcajce.JceCMSContentEncryptorBuilder;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,15 +64,18 @@ public final class CryptoUtil {
         }
     }
 
+    /**
+     * Registers BouncyCastle, which is needed to verify the signatures and certificates of Digipost.
+     * Documents are encrypted with the {@link CipherProvider} of the client, which does not need to be BouncyCastle.
+     */
+    public static void addBouncyCastleProvider() {
+        Security.addProvider(new BouncyCastleProvider());
+        LOG.debug("Registered BouncyCastleProvider");
+    }
+
     public static void addBouncyCastleProviderAndVerify_AES256_CBC_Support() {
-        try {
-            Security.addProvider(new BouncyCastleProvider());
-            LOG.debug("Registered BouncyCastleProvider");
-            new JceCMSContentEncryptorBuilder(CMSAlgorithm.AES256_CBC).setProvider(BouncyCastleProvider.PROVIDER_NAME).build();
-            LOG.debug("Support for AES256_CBC ok");
-        } catch (CMSException e) {
-            throw new RuntimeException("Feil under initialisering av algoritmer. Er Java Cryptographic Excetsions (JCE) installert?", e);
-        }
+        addBouncyCastleProvider();
+        CipherProvider.BOUNCY_CASTLE.verifyAes256CbcSupport();
     }
 
     private CryptoUtil() {
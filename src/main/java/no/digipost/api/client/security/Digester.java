@@ -17,18 +17,54 @@ package no.digipost.api.client.security;
 
 import org.bouncycastle.crypto.ExtendedDigest;
 import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.io.DigestOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 @FunctionalInterface
 public interface Digester {
 
-    final static Digester sha256 = data -> {
-        ExtendedDigest instance = new SHA256Digest();
-        byte[] result = new byte[instance.getDigestSize()];
-        instance.update(data, 0, data.length);
-        instance.doFinal(result, 0);
-        return result;
+    final static Digester sha256 = new Digester() {
+        @Override
+        public byte[] createDigest(byte[] data) {
+            ExtendedDigest instance = new SHA256Digest();
+            byte[] result = new byte[instance.getDigestSize()];
+            instance.update(data, 0, data.length);
+            instance.doFinal(result, 0);
+            return result;
+        }
+
+        @Override
+        public byte[] createDigest(Content content) throws IOException {
+            DigestOutputStream digestStream = new DigestOutputStream(new SHA256Digest());
+            content.writeTo(digestStream);
+            return digestStream.getDigest();
+        }
     };
 
     byte[] createDigest(byte[] data);
 
+    /**
+     * Create a digest of the given content. The default implementation collects the content in memory
+     * and delegates to {@link #createDigest(byte[])}, while implementations may override this to
+     * digest the content as it is written.
+     */
+    default byte[] createDigest(Content content) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        content.writeTo(data);
+        return createDigest(data.toByteArray());
+    }
+
+
+    /**
+     * Content which can write itself to a stream, e.g.
+     * {@link org.apache.http.HttpEntity#writeTo(OutputStream) HttpEntity::writeTo}.
+     */
+    @FunctionalInterface
+    interface Content {
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
 }
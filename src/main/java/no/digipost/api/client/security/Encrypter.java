@@ -17,18 +17,17 @@ package no.digipost.api.client.security;
 
 import no.digipost.api.client.errorhandling.DigipostClientException;
 import org.apache.commons.io.IOUtils;
-import org.bouncycastle.cms.CMSAlgorithm;
 import org.bouncycastle.cms.CMSEnvelopedData;
 import org.bouncycastle.cms.CMSEnvelopedDataGenerator;
+import org.bouncycastle.cms.CMSEnvelopedDataStreamGenerator;
 import org.bouncycastle.cms.CMSException;
 import org.bouncycastle.cms.CMSProcessableByteArray;
-import org.bouncycastle.cms.jcajce.JceCMSContentEncryptorBuilder;
 import org.bouncycastle.cms.jcajce.JceKeyTransRecipientInfoGenerator;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.InvalidKeyException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
@@ -46,26 +45,42 @@ public final class Encrypter {
     public static final Encrypter FAIL_IF_TRYING_TO_ENCRYPT = new Encrypter();
 
     private final JceKeyTransRecipientInfoGenerator keyInfoGenerator;
-    private static final JceCMSContentEncryptorBuilder encryptorBuilder = new JceCMSContentEncryptorBuilder(CMSAlgorithm.AES256_CBC).setProvider(BouncyCastleProvider.PROVIDER_NAME);
+    private final CipherProvider cipherProvider;
 
     public static Encrypter using(DigipostPublicKey key) {
-        return new Encrypter(new JceKeyTransRecipientInfoGenerator(key.publicKeyHash.getBytes(), key.publicKey));
+        return using(key, CipherProvider.BOUNCY_CASTLE);
+    }
+
+    /**
+     * @param cipherProvider the provider used to encrypt the content with AES256-CBC
+     */
+    public static Encrypter using(DigipostPublicKey key, CipherProvider cipherProvider) {
+        return new Encrypter(new JceKeyTransRecipientInfoGenerator(key.publicKeyHash.getBytes(), key.publicKey), cipherProvider);
     }
 
     public static Encrypter using(X509Certificate certificate) {
+        return using(certificate, CipherProvider.BOUNCY_CASTLE);
+    }
+
+    /**
+     * @param cipherProvider the provider used to encrypt the content with AES256-CBC
+     */
+    public static Encrypter using(X509Certificate certificate, CipherProvider cipherProvider) {
         try {
-            return new Encrypter(new JceKeyTransRecipientInfoGenerator(certificate));
+            return new Encrypter(new JceKeyTransRecipientInfoGenerator(certificate), cipherProvider);
         } catch (CertificateEncodingException e) {
             throw new DigipostClientException(FAILED_PREENCRYPTION, "Feil ved kryptering av innhold: " + e.getClass().getSimpleName() + " '" + e.getMessage() + "'", e);
         }
     }
 
-    private Encrypter(JceKeyTransRecipientInfoGenerator keyInfoGenerator) {
+    private Encrypter(JceKeyTransRecipientInfoGenerator keyInfoGenerator, CipherProvider cipherProvider) {
         this.keyInfoGenerator = keyInfoGenerator;
+        this.cipherProvider = cipherProvider;
     }
 
     private Encrypter() {
         keyInfoGenerator = null;
+        cipherProvider = null;
     }
 
     public InputStream encrypt(InputStream content) {
@@ -87,18 +102,48 @@ public final class Encrypter {
             CMSEnvelopedDataGenerator gen = new CMSEnvelopedDataGenerator();
             gen.addRecipientInfoGenerator(keyInfoGenerator);
 
-            CMSEnvelopedData d = gen.generate(new CMSProcessableByteArray(content), encryptorBuilder.build());
+            CMSEnvelopedData d = gen.generate(new CMSProcessableByteArray(content), cipherProvider.newEncryptor());
             return new ByteArrayInputStream(d.getEncoded());
         } catch (Exception e) {
-            if (e instanceof CMSException && getRootCause(e) instanceof InvalidKeyException) {
-                throw new DigipostClientException(FAILED_PREENCRYPTION,
-                        "Ugyldig krypteringsnøkkel. (" + InvalidKeyException.class.getName() + ") Er Java Cryptographic Extensions (JCE) " +
-                        "Unlimited Strength Jurisdiction Policy Files installert? " +
-                        "Dette kan lastes ned fra http://www.oracle.com/technetwork/java/javase/downloads/ under \"Additional Resources\". " +
-                        "Plasser filene US_export_policy.jar og local_policy.jar i ${JAVA_HOME}/jre/lib/security (overskriv eksisterende).", e);
-            } else {
-                throw new DigipostClientException(FAILED_PREENCRYPTION, "Feil ved kryptering av innhold: " + e.getClass().getSimpleName() + " '" + e.getMessage() + "'", e);
+            throw encryptionFailed(e);
+        }
+    }
+
+    /**
+     * Encrypts the content as it is read from the given stream, and writes the result to the given
+     * output stream, i.e. without holding the content in memory. As the length of the content is not known
+     * up front, the result is BER encoded with indefinite lengths, as opposed to the definite length DER
+     * encoding of {@link #encrypt(byte[])}.
+     *
+     * @param content the content to encrypt. The stream is read to the end, but not closed.
+     * @param encrypted where to write the encrypted content. The stream is not closed.
+     */
+    public void encrypt(InputStream content, OutputStream encrypted) {
+        if (keyInfoGenerator == null) {
+            throw new DigipostClientException(ENCRYPTION_KEY_NOT_FOUND, "Trying to preencrypt but have no encryption key.");
+        }
+
+        try {
+            CMSEnvelopedDataStreamGenerator gen = new CMSEnvelopedDataStreamGenerator();
+            gen.addRecipientInfoGenerator(keyInfoGenerator);
+
+            try (OutputStream encrypting = gen.open(encrypted, cipherProvider.newEncryptor())) {
+                IOUtils.copy(content, encrypting);
             }
+        } catch (Exception e) {
+            throw encryptionFailed(e);
+        }
+    }
+
+    private static DigipostClientException encryptionFailed(Exception e) {
+        if (e instanceof CMSException && getRootCause(e) instanceof InvalidKeyException) {
+            return new DigipostClientException(FAILED_PREENCRYPTION,
+                    "Ugyldig krypteringsnøkkel. (" + InvalidKeyException.class.getName() + ") Er Java Cryptographic Extensions (JCE) " +
+                    "Unlimited Strength Jurisdiction Policy Files installert? " +
+                    "Dette kan lastes ned fra http://www.oracle.com/technetwork/java/javase/downloads/ under \"Additional Resources\". " +
+                    "Plasser filene US_export_policy.jar og local_policy.jar i ${JAVA_HOME}/jre/lib/security (overskriv eksisterende).", e);
+        } else {
+            return new DigipostClientException(FAILED_PREENCRYPTION, "Feil ved kryptering av innhold: " + e.getClass().getSimpleName() + " '" + e.getMessage() + "'", e);
         }
     }
 }
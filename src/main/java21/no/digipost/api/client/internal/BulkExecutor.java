@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * The executor which {@link BulkTasks bulk operations} run their tasks in. This is the Java 21 version
+ * of the class, which runs every task in its own virtual thread. A task blocking on the API then only
+ * parks its virtual thread, and does not occupy a platform thread.
+ */
+final class BulkExecutor {
+
+    private static final int MAX_CONCURRENT_TASKS = 256;
+
+    private static final Executor EXECUTOR = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("digipost-bulk-", 1).factory());
+
+    static Executor get() {
+        return EXECUTOR;
+    }
+
+    static boolean usesVirtualThreads() {
+        return true;
+    }
+
+    /**
+     * @return how many tasks of one bulk operation may be submitted before any of them has completed.
+     *         Virtual threads are cheap, but each task still holds its item and result, and a request
+     *         to the API, in memory until it completes.
+     */
+    static int maxConcurrentTasks() {
+        return MAX_CONCURRENT_TASKS;
+    }
+
+    private BulkExecutor() {
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EventLoggerTest {
+
+    private final Logger slf4jLogger = mock(Logger.class);
+
+    @SuppressWarnings("unchecked")
+    private final Supplier<String> message = mock(Supplier.class);
+
+    @Test
+    public void does_not_create_messages_when_debug_is_disabled_for_noop_logger() {
+        EventLogger eventLogger = EventLogger.NOOP_LOGGER.withDebugLogTo(slf4jLogger);
+        eventLogger.log(message);
+
+        assertThat(eventLogger.isEnabled(), is(false));
+        verify(message, never()).get();
+        verify(slf4jLogger, never()).debug(anyString());
+    }
+
+    @Test
+    public void creates_messages_when_debug_is_enabled() {
+        when(slf4jLogger.isDebugEnabled()).thenReturn(true);
+        when(message.get()).thenReturn("message");
+        EventLogger.NOOP_LOGGER.withDebugLogTo(slf4jLogger).log(message);
+
+        verify(slf4jLogger).debug("message");
+    }
+
+    @Test
+    public void custom_event_logger_is_always_enabled() {
+        List<String> logged = new ArrayList<>();
+        EventLogger eventLogger = ((EventLogger) logged::add).withDebugLogTo(slf4jLogger);
+        eventLogger.log(() -> "lazy");
+        eventLogger.log("eager");
+
+        assertThat(eventLogger.isEnabled(), is(true));
+        assertThat(logged, contains("lazy", "eager"));
+    }
+}
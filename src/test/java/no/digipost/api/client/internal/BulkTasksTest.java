@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BulkTasksTest {
+
+    @Test
+    public void runs_tasks_concurrently_and_returns_results_in_order_of_items() {
+        CountDownLatch allStarted = new CountDownLatch(3);
+        List<String> results = BulkTasks.map(asList(1, 2, 3), i -> {
+            allStarted.countDown();
+            try {
+                if (!allStarted.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Tasks did not run concurrently");
+                }
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return "result " + i;
+        });
+
+        assertThat(results, contains("result 1", "result 2", "result 3"));
+    }
+
+    @Test
+    public void throws_first_failure_when_all_tasks_are_done_with_the_others_suppressed() {
+        IllegalStateException failure = assertThrows(IllegalStateException.class, () -> BulkTasks.forEach(asList(1, 2, 3, 4), i -> {
+            if (i % 2 == 0) {
+                throw new IllegalStateException("failed " + i);
+            }
+        }));
+
+        assertThat(failure.getMessage(), is("failed 2"));
+        assertThat(failure.getSuppressed(), arrayWithSize(1));
+        assertThat(failure.getSuppressed()[0].getMessage(), is("failed 4"));
+    }
+
+    @Test
+    public void does_not_suppress_a_failure_in_itself_when_tasks_fail_with_the_same_exception() {
+        IllegalStateException shared = new IllegalStateException("failed");
+        IllegalStateException failure = assertThrows(IllegalStateException.class, () -> BulkTasks.forEach(asList(1, 2, 3), i -> {
+            throw shared;
+        }));
+
+        assertThat(failure, sameInstance(shared));
+        assertThat(failure.getSuppressed(), emptyArray());
+    }
+
+    @Test
+    public void submits_no_more_tasks_than_allowed_to_run_at_the_same_time() throws Exception {
+        int maxConcurrentTasks = BulkExecutor.maxConcurrentTasks();
+        AtomicInteger takenItems = new AtomicInteger();
+        Collection<Integer> items = new AbstractCollection<Integer>() {
+            @Override
+            public Iterator<Integer> iterator() {
+                Iterator<Integer> items = IntStream.range(0, maxConcurrentTasks * 2).iterator();
+                return new Iterator<Integer>() {
+                    @Override
+                    public boolean hasNext() {
+                        return items.hasNext();
+                    }
+
+                    @Override
+                    public Integer next() {
+                        takenItems.incrementAndGet();
+                        return items.next();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return maxConcurrentTasks * 2;
+            }
+        };
+        CountDownLatch started = new CountDownLatch(maxConcurrentTasks);
+        CountDownLatch proceed = new CountDownLatch(1);
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<Integer>> results = caller.submit(() -> BulkTasks.map(items, i -> {
+                started.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return i;
+            }));
+
+            assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+            Thread.sleep(50);
+            assertThat(takenItems.get(), lessThanOrEqualTo(maxConcurrentTasks + 1));
+            proceed.countDown();
+            assertThat(results.get(5, TimeUnit.SECONDS), hasSize(maxConcurrentTasks * 2));
+        } finally {
+            proceed.countDown();
+            caller.shutdownNow();
+        }
+    }
+}
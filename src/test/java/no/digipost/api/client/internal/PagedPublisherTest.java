@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import no.digipost.api.client.internal.http.RequestCancellation;
+import org.apache.http.client.methods.HttpGet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class PagedPublisherTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final List<Integer> fetchedOffsets = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void fetches_pages_only_as_demanded_by_subscriber() {
+        PagedPublisher<Integer> publisher = new PagedPublisher<>((offset, limit) -> {
+            fetchedOffsets.add(offset);
+            return IntStream.range(offset, Math.min(offset + limit, 25)).boxed().collect(Collectors.toList());
+        }, 10, Runnable::run);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        assertThat(fetchedOffsets, empty());
+
+        subscriber.subscription.request(5);
+        assertThat(subscriber.elements, is(range(0, 5)));
+        assertThat(fetchedOffsets, contains(0));
+
+        subscriber.subscription.request(10);
+        assertThat(subscriber.elements, is(range(0, 15)));
+        assertThat(fetchedOffsets, contains(0, 10));
+        assertThat(subscriber.completed.getCount(), is(1L));
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertThat(subscriber.elements, is(range(0, 25)));
+        assertThat(fetchedOffsets, contains(0, 10, 20));
+        assertThat(subscriber.completed.getCount(), is(0L));
+        assertThat(subscriber.error, nullValue());
+    }
+
+    @Test
+    public void cancelling_subscription_aborts_request_in_flight() throws InterruptedException {
+        HttpGet request = new HttpGet("https://api.digipost.no/inbox");
+        CountDownLatch requestInFlight = new CountDownLatch(1);
+        CountDownLatch requestAborted = new CountDownLatch(1);
+        PagedPublisher<Integer> publisher = new PagedPublisher<>((offset, limit) -> {
+            RequestCancellation.register(request);
+            requestInFlight.countDown();
+            while (!request.isAborted()) {
+                Thread.yield();
+            }
+            requestAborted.countDown();
+            throw new IllegalStateException("aborted");
+        }, 10, executor);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        assertThat(requestInFlight.await(5, TimeUnit.SECONDS), is(true));
+        subscriber.subscription.cancel();
+
+        assertThat(requestAborted.await(5, TimeUnit.SECONDS), is(true));
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        assertThat(subscriber.elements, empty());
+        assertThat(subscriber.error, nullValue());
+        assertThat(subscriber.completed.getCount(), is(1L));
+    }
+
+    @Test
+    public void signals_error_for_demand_which_is_not_positive() {
+        PagedPublisher<Integer> publisher = new PagedPublisher<>((offset, limit) -> asList(1, 2), 10, Runnable::run);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+
+        assertThat(subscriber.error, instanceOf(IllegalArgumentException.class));
+        subscriber.subscription.request(1);
+        assertThat(subscriber.elements, empty());
+    }
+
+    private static List<Integer> range(int from, int to) {
+        return IntStream.range(from, to).boxed().collect(Collectors.toList());
+    }
+
+    private static final class RecordingSubscriber implements Subscriber<Integer> {
+        final List<Integer> elements = new CopyOnWriteArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        volatile Subscription subscription;
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Integer element) {
+            elements.add(element);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
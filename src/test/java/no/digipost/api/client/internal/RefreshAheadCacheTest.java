@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import no.digipost.time.ControllableClock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.time.Duration.ofMinutes;
+import static java.time.Duration.ofSeconds;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RefreshAheadCacheTest {
+
+    private final ControllableClock clock = ControllableClock.freezedAt(Instant.now());
+    private final Queue<Runnable> pendingRefreshes = new ArrayDeque<>();
+    private final RefreshAheadCache<String, Integer> cache = new RefreshAheadCache<>("test", ofMinutes(5), false, clock, pendingRefreshes::add);
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Callable<Integer> loader = loads::incrementAndGet;
+
+    @Test
+    public void loads_value_synchronously_only_the_first_time() {
+        assertThat(cache.get("key", loader), is(1));
+        assertThat(cache.get("key", loader), is(1));
+        assertThat(loads.get(), is(1));
+        assertThat(pendingRefreshes.size(), is(0));
+    }
+
+    @Test
+    public void serves_current_value_while_refreshing_in_background() {
+        cache.get("key", loader);
+        clock.timePasses(ofMinutes(5).plus(ofSeconds(1)));
+
+        assertThat(cache.get("key", loader), is(1));
+        assertThat(cache.get("key", loader), is(1));
+        assertThat("only one refresh is triggered", pendingRefreshes.size(), is(1));
+
+        pendingRefreshes.poll().run();
+        assertThat(cache.get("key", loader), is(2));
+    }
+
+    @Test
+    public void keeps_last_loaded_value_when_refresh_fails() {
+        cache.get("key", loader);
+        clock.timePasses(ofMinutes(6));
+
+        cache.get("key", () -> { throw new IllegalStateException("unavailable"); });
+        pendingRefreshes.poll().run();
+        assertThat(cache.get("key", loader), is(1));
+
+        clock.timePasses(ofMinutes(6));
+        cache.get("key", loader);
+        assertThat("new refresh is triggered after the failed one", pendingRefreshes.size(), is(1));
+    }
+
+    @Test
+    public void failing_initial_load_is_propagated() {
+        assertThrows(IllegalStateException.class, () -> cache.get("key", () -> { throw new IllegalStateException("unavailable"); }));
+        assertThat(cache.get("key", loader), is(1));
+    }
+
+    @Test
+    public void preload_replaces_cached_value() {
+        cache.get("key", loader);
+        assertThat(cache.preload("key", loader), is(2));
+        assertThat(cache.get("key", loader), is(2));
+    }
+
+    @Test
+    public void evicts_entries_not_accessed_during_a_refresh_interval_unless_preloaded() {
+        RefreshAheadCache<String, Integer> cache = new RefreshAheadCache<>("evicting", ofMinutes(5), true, clock, pendingRefreshes::add);
+        cache.preload("preloaded", loader);
+        cache.get("idle", loader);
+        clock.timePasses(ofMinutes(3));
+        cache.get("active", loader);
+        assertThat(cache.size(), is(3));
+
+        clock.timePasses(ofMinutes(3));
+        cache.get("active", loader);
+        assertThat(cache.size(), is(2));
+
+        clock.timePasses(ofMinutes(6));
+        cache.get("other", loader);
+        assertThat(cache.size(), is(2));
+    }
+
+    @Test
+    public void does_not_refresh_a_key_again_while_it_is_being_refreshed_after_eviction() {
+        RefreshAheadCache<String, Integer> cache = new RefreshAheadCache<>("evicting", ofMinutes(5), true, clock, pendingRefreshes::add);
+        cache.get("key", loader);
+        clock.timePasses(ofMinutes(3));
+        cache.get("key", loader);
+        clock.timePasses(ofMinutes(3));
+        cache.get("key", loader);
+        assertThat(pendingRefreshes.size(), is(1));
+
+        clock.timePasses(ofMinutes(6));
+        cache.get("other", loader);
+        assertThat("key is evicted while its refresh is waiting", cache.size(), is(1));
+        cache.get("key", loader);
+        clock.timePasses(ofMinutes(3));
+        cache.get("key", loader);
+        clock.timePasses(ofMinutes(3));
+        cache.get("key", loader);
+        assertThat(pendingRefreshes.size(), is(1));
+
+        pendingRefreshes.poll().run();
+        cache.get("key", loader);
+        assertThat("refresh is triggered once the previous one is done", pendingRefreshes.size(), is(1));
+    }
+
+    @Test
+    public void drops_refresh_when_too_many_are_waiting_and_tries_again_on_next_access() {
+        AtomicBoolean rejecting = new AtomicBoolean(true);
+        RefreshAheadCache<String, Integer> cache = new RefreshAheadCache<>("busy", ofMinutes(5), false, clock, refresh -> {
+            if (rejecting.get()) {
+                throw new RejectedExecutionException("queue is full");
+            }
+            pendingRefreshes.add(refresh);
+        });
+        cache.get("key", loader);
+        clock.timePasses(ofMinutes(6));
+        assertThat(cache.get("key", loader), is(1));
+
+        rejecting.set(false);
+        assertThat(cache.get("key", loader), is(1));
+        assertThat(pendingRefreshes.size(), is(1));
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEvents;
+import no.digipost.api.client.representations.inbox.InboxDocument;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static no.digipost.api.client.representations.DocumentEventType.OPENED;
+import static no.digipost.api.client.representations.DocumentEventType.POSTMARKED;
+import static no.digipost.api.client.representations.DocumentEventType.PRINT_FAILED;
+import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
+import static no.digipost.api.client.util.JAXBContextUtils.marshal;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+public class StreamingUnmarshallerTest {
+
+    @Test
+    public void gives_included_events_to_consumer_and_counts_all() {
+        ZonedDateTime now = ZonedDateTime.now();
+        List<DocumentEvent> events = asList(
+                new DocumentEvent(UUID.randomUUID(), OPENED, now, now),
+                new DocumentEvent(UUID.randomUUID(), POSTMARKED, now, now),
+                new DocumentEvent(UUID.randomUUID(), PRINT_FAILED, now, now),
+                new DocumentEvent(UUID.randomUUID(), OPENED, now, now));
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        marshal(jaxbContext, new DocumentEvents(events), xml);
+
+        List<DocumentEvent> opened = new ArrayList<>();
+        int count = new StreamingUnmarshaller<>(jaxbContext, "event", DocumentEvent.class)
+                .stream(new ByteArrayInputStream(xml.toByteArray()), event -> event.getAttributeValue(null, "type").equals("OPENED"), opened::add);
+
+        assertThat(count, is(4));
+        assertThat(opened, hasSize(2));
+        assertThat(opened.get(0).getUuid(), is(events.get(0).getUuid()));
+        assertThat(opened.get(1).getUuid(), is(events.get(3).getUuid()));
+    }
+
+    @Test
+    public void unmarshals_only_children_of_root_with_given_name() {
+        String xml = "<inbox xmlns=\"http://api.digipost.no/schema/v7\">"
+                + "<document><id>1</id><subject>Med vedlegg</subject>"
+                + "<attachment><id>2</id><subject>Vedlegg</subject></attachment>"
+                + "</document>"
+                + "<document><id>3</id><subject>Uten vedlegg</subject></document>"
+                + "</inbox>";
+
+        List<InboxDocument> documents = new ArrayList<>();
+        int count = new StreamingUnmarshaller<>("document", InboxDocument.class).stream(new ByteArrayInputStream(xml.getBytes(UTF_8)), document -> true, documents::add);
+
+        assertThat(count, is(2));
+        assertThat(documents.stream().map(InboxDocument::getSubject).toArray(), is(new Object[] {"Med vedlegg", "Uten vedlegg"}));
+        assertThat(documents.get(0).getAttachments().stream().map(InboxDocument::getId).toArray(), is(new Object[] {2L}));
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import no.digipost.api.client.security.Digester;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class ContentBuffersTest {
+
+    @TempDir
+    Path spoolDirectory;
+
+    @Test
+    public void keeps_content_below_threshold_in_memory() throws Exception {
+        try (ContentBuffers buffers = new ContentBuffers(10, spoolDirectory)) {
+            ContentBuffer buffer = buffers.read(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+            assertThat(buffer.isInMemory(), is(true));
+            assertThat(buffer.size(), is(3L));
+            assertThat(buffer.toByteArray(), is(new byte[] {1, 2, 3}));
+            assertThat(Files.list(spoolDirectory).count(), is(0L));
+        }
+    }
+
+    @Test
+    public void spools_content_above_threshold_to_file_which_is_deleted_when_closed() throws Exception {
+        byte[] content = new byte[100];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        ContentBuffer buffer;
+        try (ContentBuffers buffers = new ContentBuffers(10, spoolDirectory)) {
+            buffer = buffers.read(new ByteArrayInputStream(content));
+            assertThat(buffer.isInMemory(), is(false));
+            assertThat(buffer.getFile().getParent(), is(spoolDirectory));
+            assertThat(buffer.size(), is(100L));
+            try (InputStream spooled = buffer.openStream()) {
+                assertThat(IOUtils.toByteArray(spooled), is(content));
+            }
+        }
+        assertThat(Files.exists(buffer.getFile()), is(false));
+    }
+
+    @Test
+    public void does_not_buffer_own_buffered_content_again() throws Exception {
+        try (ContentBuffers buffers = new ContentBuffers(10, spoolDirectory)) {
+            ContentBuffer spooled = buffers.write(out -> out.write(new byte[50]));
+            ContentBuffer inMemory = buffers.write(out -> out.write(new byte[5]));
+
+            assertThat(buffers.read(spooled.asInputStream()), sameInstance(spooled));
+            assertThat(buffers.read(inMemory.asInputStream()), sameInstance(inMemory));
+            assertThat(Files.list(spoolDirectory).count(), is(1L));
+        }
+    }
+
+    @Test
+    public void buffered_content_stream_is_readable() throws Exception {
+        try (ContentBuffers buffers = new ContentBuffers(10, spoolDirectory);
+             InputStream stream = buffers.write(out -> out.write(new byte[] {7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17})).asInputStream()) {
+            assertThat(IOUtils.toByteArray(stream).length, is(11));
+        }
+    }
+
+    @Test
+    public void uses_file_given_by_caller_as_is_and_does_not_delete_it() throws Exception {
+        Path file = Files.write(spoolDirectory.resolve("content.pdf"), new byte[] {1, 2, 3, 4, 5});
+        ContentBuffer buffer;
+        try (ContentBuffers buffers = new ContentBuffers(2, spoolDirectory)) {
+            buffer = buffers.read(ContentBuffer.streamOf(file));
+            assertThat(buffer.getFile(), is(file));
+            assertThat(buffer.size(), is(5L));
+            ByteArrayOutputStream written = new ByteArrayOutputStream();
+            buffer.writeTo(written);
+            assertThat(written.toByteArray(), is(new byte[] {1, 2, 3, 4, 5}));
+        }
+        assertThat(Files.exists(file), is(true));
+        assertThat(Files.list(spoolDirectory).count(), is(1L));
+    }
+
+    @Test
+    public void uses_remaining_content_of_byte_buffer_without_changing_its_position() throws Exception {
+        ByteBuffer direct = ByteBuffer.allocateDirect(6);
+        direct.put(new byte[] {1, 2, 3, 4, 5, 6}).position(2);
+        try (ContentBuffers buffers = new ContentBuffers(2, spoolDirectory)) {
+            ContentBuffer buffer = buffers.read(ContentBuffer.streamOf(direct));
+            assertThat(buffer.isInMemory(), is(true));
+            assertThat(buffer.toByteArray(), is(new byte[] {3, 4, 5, 6}));
+            try (InputStream stream = buffer.openStream()) {
+                assertThat(IOUtils.toByteArray(stream), is(new byte[] {3, 4, 5, 6}));
+            }
+            ByteArrayOutputStream written = new ByteArrayOutputStream();
+            buffer.writeTo(written);
+            assertThat(written.toByteArray(), is(new byte[] {3, 4, 5, 6}));
+        }
+        assertThat(direct.position(), is(2));
+        assertThat(Files.list(spoolDirectory).count(), is(0L));
+    }
+
+    @Test
+    public void opens_and_closes_supplied_content_each_time_it_is_read() throws Exception {
+        AtomicInteger opened = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        InputStream supplied = new SuppliedContentStream(() -> {
+            opened.incrementAndGet();
+            return new ByteArrayInputStream(new byte[] {1, 2, 3}) {
+                @Override
+                public void close() {
+                    closed.incrementAndGet();
+                }
+            };
+        });
+        assertThat(opened.get(), is(0));
+
+        try (ContentBuffers buffers = new ContentBuffers(10, spoolDirectory)) {
+            assertThat(buffers.read(supplied).toByteArray(), is(new byte[] {1, 2, 3}));
+            assertThat(buffers.read(supplied).toByteArray(), is(new byte[] {1, 2, 3}));
+        }
+        assertThat(opened.get(), is(2));
+        assertThat(closed.get(), is(2));
+    }
+
+    @Test
+    public void computes_sha256_while_reading_or_from_buffered_content() throws Exception {
+        byte[] content = new byte[100];
+        byte[] expectedSha256 = Digester.sha256.createDigest(content);
+        Path file = Files.write(spoolDirectory.resolve("content"), content);
+        try (ContentBuffers buffers = new ContentBuffers(10, spoolDirectory)) {
+            assertThat(buffers.read(new ByteArrayInputStream(content), true).sha256(), is(expectedSha256));
+            assertThat(buffers.read(new ByteArrayInputStream(content)).sha256(), is(expectedSha256));
+            assertThat(buffers.read(ContentBuffer.streamOf(file), true).sha256(), is(expectedSha256));
+        }
+    }
+
+    @Test
+    public void keeps_validation_results_with_the_content() throws Exception {
+        AtomicInteger validations = new AtomicInteger();
+        try (ContentBuffers buffers = new ContentBuffers(10, spoolDirectory)) {
+            ContentBuffer buffer = buffers.read(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+            assertThat(buffer.validation("a", () -> "valid-" + validations.incrementAndGet()), is("valid-1"));
+            assertThat(buffer.validation("a", () -> "valid-" + validations.incrementAndGet()), is("valid-1"));
+            assertThat(buffer.validation("b", () -> "valid-" + validations.incrementAndGet()), is("valid-2"));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import no.digipost.api.client.metrics.DeliveryTimings;
+import no.digipost.api.client.representations.Document;
+import no.digipost.api.client.representations.FileType;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static no.digipost.api.client.errorhandling.ErrorCode.INVALID_PDF_CONTENT;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.ENCRYPTION;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.PDF_VALIDATION;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.SENDER_INFORMATION;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class DeliveryTimerTest {
+
+    private final DeliveryTimer timer = new DeliveryTimer();
+
+    @Test
+    public void nested_phase_is_deducted_from_outer_phase() throws InterruptedException {
+        timer.run(PDF_VALIDATION, () -> {
+            timer.run(SENDER_INFORMATION, () -> Thread.sleep(50));
+            Thread.sleep(5);
+        });
+        DeliveryTimings timings = timer.complete("id", null);
+
+        assertThat(timings.get(SENDER_INFORMATION).toMillis(), greaterThanOrEqualTo(50L));
+        assertThat(timings.get(PDF_VALIDATION).toMillis(), greaterThanOrEqualTo(5L));
+        assertThat(timings.get(PDF_VALIDATION).toMillis(), lessThan(50L));
+        assertThat(timings.getTotalNanos(), greaterThanOrEqualTo(timings.getNanos(SENDER_INFORMATION) + timings.getNanos(PDF_VALIDATION)));
+        assertThat(timings.getNanos(ENCRYPTION), is(0L));
+    }
+
+    @Test
+    public void records_document_sizes_and_failure() {
+        Document encrypted = new Document(UUID.randomUUID(), "encrypted", FileType.PDF).encrypt();
+        Document plain = new Document(UUID.randomUUID(), "plain", FileType.PDF);
+        timer.contentBytes(encrypted, 100);
+        timer.uploadedBytes(encrypted, 150);
+        timer.uploadedBytes(plain, 80);
+        DeliveryTimings timings = timer.complete("id", INVALID_PDF_CONTENT);
+
+        assertThat(timings.getDocumentBytes().get(encrypted.uuid).getContent(), is(100L));
+        assertThat(timings.getDocumentBytes().get(encrypted.uuid).getUploaded(), is(150L));
+        assertThat(timings.getDocumentBytes().get(plain.uuid).getContent(), is(80L));
+        assertThat(timings.isSuccessful(), is(false));
+        assertThat(timings.getFailure().get(), is(INVALID_PDF_CONTENT));
+    }
+}
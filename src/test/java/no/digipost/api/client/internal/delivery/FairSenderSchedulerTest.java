@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import no.digipost.api.client.BrokerId;
+import no.digipost.api.client.metrics.InMemoryClientMetrics;
+import no.digipost.api.client.representations.sender.AuthorialSender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static no.digipost.api.client.representations.MayHaveSender.NO_SENDER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class FairSenderSchedulerTest {
+
+    private static final AuthorialSender A = AuthorialSender.resolve(BrokerId.of(1), NO_SENDER);
+    private static final AuthorialSender B = AuthorialSender.resolve(BrokerId.of(2), NO_SENDER);
+    private static final AuthorialSender C = AuthorialSender.resolve(BrokerId.of(3), NO_SENDER);
+
+    private final InMemoryClientMetrics metrics = new InMemoryClientMetrics();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void senders_with_waiting_messages_take_turns_according_to_their_shares() throws Exception {
+        FairSenderScheduler scheduler = new FairSenderScheduler(1, sender -> sender.equals(A) ? 2 : 1, metrics);
+        CountDownLatch blocking = new CountDownLatch(1);
+        CountDownLatch completeBlocking = new CountDownLatch(1);
+        List<Future<?>> deliveries = new ArrayList<>();
+        deliveries.add(executor.submit(() -> scheduler.schedule(C, () -> {
+            blocking.countDown();
+            await(completeBlocking);
+            return C;
+        })));
+        blocking.await(5, TimeUnit.SECONDS);
+
+        List<AuthorialSender> delivered = new CopyOnWriteArrayList<>();
+        for (AuthorialSender sender : new AuthorialSender[] {A, A, A, A, A, A, B, B, B}) {
+            int queued = metrics.forSender(sender).getQueuedCount();
+            deliveries.add(executor.submit(() -> scheduler.schedule(sender, () -> delivered.add(sender))));
+            while (metrics.forSender(sender).getQueuedCount() == queued) {
+                Thread.sleep(1);
+            }
+        }
+        completeBlocking.countDown();
+        for (Future<?> delivery : deliveries) {
+            delivery.get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(delivered, contains(A, B, A, A, B, A, A, B, A));
+        assertThat(metrics.forSender(A).getDeliveryCount(), is(6L));
+        assertThat(metrics.forSender(A).getQueuedCount(), is(0));
+        assertThat(metrics.forSender(C).getDeliveryCount(), is(1L));
+    }
+
+    @Test
+    public void delivers_without_waiting_below_the_concurrency_limit() {
+        FairSenderScheduler scheduler = new FairSenderScheduler(2, sender -> 1, metrics);
+        assertThat(scheduler.schedule(A, () -> scheduler.schedule(B, () -> "levert")), is("levert"));
+        assertThat(metrics.forSender(A).getQueueTime().getMax().toNanos(), is(0L));
+        assertThat(metrics.forSender(B).getDeliveryCount(), is(1L));
+    }
+
+    @Test
+    public void senders_keep_their_turn_when_their_queue_is_empty_for_a_moment() throws Exception {
+        FairSenderScheduler scheduler = new FairSenderScheduler(1, sender -> sender.equals(A) ? 3 : 2, metrics);
+        CountDownLatch blocking = new CountDownLatch(1);
+        CountDownLatch completeBlocking = new CountDownLatch(1);
+        List<Future<?>> deliveries = new CopyOnWriteArrayList<>();
+        deliveries.add(executor.submit(() -> scheduler.schedule(C, () -> {
+            blocking.countDown();
+            await(completeBlocking);
+            return C;
+        })));
+        blocking.await(5, TimeUnit.SECONDS);
+
+        List<AuthorialSender> delivered = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            queue(A, () -> deliveries.add(executor.submit(() -> scheduler.schedule(A, () -> delivered.add(A)))));
+        }
+        Callable<Boolean> deliveryFromB = new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return scheduler.schedule(B, () -> {
+                    delivered.add(B);
+                    if (delivered.stream().filter(B::equals).count() < 3) {
+                        // B har aldri mer enn én forsendelse i kø, og neste legges i kø mens denne pågår
+                        queue(B, () -> deliveries.add(executor.submit(this)));
+                    }
+                    return true;
+                });
+            }
+        };
+        queue(B, () -> deliveries.add(executor.submit(deliveryFromB)));
+        completeBlocking.countDown();
+        while (delivered.size() < 7) {
+            Thread.sleep(1);
+        }
+        for (Future<?> delivery : deliveries) {
+            delivery.get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(delivered, contains(A, B, A, B, A, A, B));
+    }
+
+    @Test
+    public void waiting_in_line_stops_when_interrupted() throws Exception {
+        FairSenderScheduler scheduler = new FairSenderScheduler(1, sender -> 1, metrics);
+        CountDownLatch blocking = new CountDownLatch(1);
+        CountDownLatch completeBlocking = new CountDownLatch(1);
+        Future<?> blocker = executor.submit(() -> scheduler.schedule(C, () -> {
+            blocking.countDown();
+            await(completeBlocking);
+            return C;
+        }));
+        blocking.await(5, TimeUnit.SECONDS);
+
+        List<AuthorialSender> delivered = new CopyOnWriteArrayList<>();
+        Future<?> interrupted = queue(A, () -> executor.submit(() -> scheduler.schedule(A, () -> delivered.add(A))));
+        Future<?> next = queue(B, () -> executor.submit(() -> scheduler.schedule(B, () -> delivered.add(B))));
+        interrupted.cancel(true);
+        while (metrics.forSender(A).getQueuedCount() > 0) {
+            Thread.sleep(1);
+        }
+
+        completeBlocking.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        next.get(5, TimeUnit.SECONDS);
+        assertThat(delivered, contains(B));
+        assertThat(metrics.forSender(A).getDeliveryCount(), is(0L));
+        assertThat(scheduler.schedule(A, () -> "levert uten å vente"), is("levert uten å vente"));
+        assertThat(metrics.forSender(A).getQueueTime().getMax().toNanos(), is(0L));
+    }
+
+    private <T> T queue(AuthorialSender sender, Supplier<T> submit) {
+        int queued = metrics.forSender(sender).getQueuedCount();
+        T submitted = submit.get();
+        try {
+            while (metrics.forSender(sender).getQueuedCount() == queued) {
+                Thread.sleep(1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return submitted;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -20,6 +20,9 @@ import no.digipost.api.client.delivery.MessageDeliveryApi;
 import no.digipost.api.client.delivery.OngoingDelivery.SendableForPrintOnly;
 import no.digipost.api.client.delivery.OngoingDelivery.SendableWithPrintFallback;
 import no.digipost.api.client.internal.http.StatusLineMock;
+import no.digipost.api.client.metrics.ClientMetrics;
+import no.digipost.api.client.metrics.DeliveryTimings;
+import no.digipost.api.client.metrics.DeliveryTimings.DocumentBytes;
 import no.digipost.api.client.representations.Channel;
 import no.digipost.api.client.representations.DigipostAddress;
 import no.digipost.api.client.representations.DigipostUri;
@@ -63,7 +66,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.cert.X509Certificate;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -77,6 +82,10 @@ import static java.time.ZonedDateTime.now;
 import static java.util.Arrays.asList;
 import static java.util.stream.Stream.concat;
 import static no.digipost.api.client.DigipostClientConfig.newConfiguration;
+import static no.digipost.api.client.delivery.DeliveryPriority.INTERACTIVE;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.ENCRYPTION;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.PDF_VALIDATION;
+import static no.digipost.api.client.metrics.DeliveryTimings.Phase.UPLOAD;
 import static no.digipost.api.client.pdf.EksempelPdf.pdf20Pages;
 import static no.digipost.api.client.pdf.EksempelPdf.printablePdf1Page;
 import static no.digipost.api.client.pdf.EksempelPdf.printablePdf2Pages;
@@ -93,8 +102,14 @@ import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
 import static no.digipost.api.client.util.JAXBContextUtils.marshal;
 import static org.apache.http.HttpStatus.SC_OK;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
@@ -130,6 +145,7 @@ public class MessageDelivererTest {
     @Spy
     private HtmlValidator htmlValidator;
 
+    private final List<DeliveryTimings> deliveries = new ArrayList<>();
     private MessageDeliverer sender;
     private MessageDeliverer cachelessSender;
     private EncryptionKey fakeEncryptionKey = FakeEncryptionKey.createFakeEncryptionKey();
@@ -145,40 +161,63 @@ public class MessageDelivererTest {
                 .entity(new ByteArrayEntity(bao.toByteArray()))
                 .build();
 
-        sender = new MessageDeliverer(newConfiguration().clock(clock).build(), api, new DocumentsPreparer(pdfValidator, htmlValidator));
+        sender = new MessageDeliverer(newConfiguration().clock(clock).metrics(new ClientMetrics() {
+            @Override
+            public void deliveryCompleted(DeliveryTimings timings) {
+                deliveries.add(timings);
+            }
+        }).build(), api, new DocumentsPreparer(pdfValidator, htmlValidator));
 
         cachelessSender = new MessageDeliverer(newConfiguration().clock(clock).disablePrintKeyCache().build(), api, new DocumentsPreparer(pdfValidator, htmlValidator));
     }
 
     @Test
     public void skal_bruke_cached_print_encryption_key() {
-        when(api.getEncryptionCertificateForPrint()).thenReturn(encryptionCertificateResponse);
+        when(api.getEncryptionCertificateForPrint(INTERACTIVE)).thenReturn(encryptionCertificateResponse);
 
         sender.getEncryptionCertificateForPrint();
-        then(api).should(times(1)).getEncryptionCertificateForPrint();
+        then(api).should(times(1)).getEncryptionCertificateForPrint(INTERACTIVE);
 
-        clock.timePasses(ofMinutes(5));
+        clock.timePasses(ofMinutes(4));
         sender.getEncryptionCertificateForPrint();
-        then(api).should(times(1)).getEncryptionCertificateForPrint();
+        then(api).should(times(1)).getEncryptionCertificateForPrint(INTERACTIVE);
 
         clock.timePasses(ofMillis(1));
         sender.getEncryptionCertificateForPrint();
-        then(api).should(times(2)).getEncryptionCertificateForPrint();
+        then(api).should(times(2)).getEncryptionCertificateForPrint(INTERACTIVE);
+
+        clock.timePasses(ofMinutes(5).plusMillis(1));
+        sender.getEncryptionCertificateForPrint();
+        then(api).should(times(3)).getEncryptionCertificateForPrint(INTERACTIVE);
+    }
+
+    @Test
+    public void skal_bruke_cached_print_encryption_key_dersom_forhaandshenting_feiler() {
+        when(api.getEncryptionCertificateForPrint(INTERACTIVE)).thenReturn(encryptionCertificateResponse).thenThrow(new IllegalStateException("API unavailable"));
+
+        X509Certificate certificate = sender.getEncryptionCertificateForPrint();
+
+        clock.timePasses(ofMinutes(4).plusMillis(1));
+        assertThat(sender.getEncryptionCertificateForPrint(), sameInstance(certificate));
+        then(api).should(times(2)).getEncryptionCertificateForPrint(INTERACTIVE);
+
+        clock.timePasses(ofMinutes(1));
+        assertThrows(IllegalStateException.class, sender::getEncryptionCertificateForPrint);
     }
 
     @Test
     public void skal_ikke_bruke_cached_print_encryption_key_da_encryption_er_avskrudd() {
-        when(api.getEncryptionCertificateForPrint()).thenReturn(encryptionCertificateResponse);
+        when(api.getEncryptionCertificateForPrint(INTERACTIVE)).thenReturn(encryptionCertificateResponse);
 
         cachelessSender.getEncryptionCertificateForPrint();
-        then(api).should(times(1)).getEncryptionCertificateForPrint();
+        then(api).should(times(1)).getEncryptionCertificateForPrint(INTERACTIVE);
 
         cachelessSender.getEncryptionCertificateForPrint();
-        then(api).should(times(2)).getEncryptionCertificateForPrint();
+        then(api).should(times(2)).getEncryptionCertificateForPrint(INTERACTIVE);
 
         clock.timePasses(ofMinutes(10));
         cachelessSender.getEncryptionCertificateForPrint();
-        then(api).should(times(3)).getEncryptionCertificateForPrint();
+        then(api).should(times(3)).getEncryptionCertificateForPrint(INTERACTIVE);
     }
 
 
@@ -194,7 +233,7 @@ public class MessageDelivererTest {
 
         when(mockClientResponse.getEntity()).thenReturn(new ByteArrayEntity(bao.toByteArray()));
 
-        when(api.identifyAndGetEncryptionKey(any(Identification.class))).thenReturn(mockClientResponse);
+        when(api.identifyAndGetEncryptionKey(any(Identification.class), eq(INTERACTIVE))).thenReturn(mockClientResponse);
 
         CloseableHttpResponse response = Mockito.mock(CloseableHttpResponse.class);
         ByteArrayOutputStream bao2 = new ByteArrayOutputStream();
@@ -204,7 +243,7 @@ public class MessageDelivererTest {
         when(response.getEntity()).thenReturn(new ByteArrayEntity(bao2.toByteArray()));
         when(response.getStatusLine()).thenReturn(new StatusLineMock(200));
 
-        when(api.sendMultipartMessage(any(HttpEntity.class))).thenReturn(response);
+        when(api.sendMultipartMessage(any(HttpEntity.class), eq(INTERACTIVE))).thenReturn(response);
 
         final Document printDocument = new Document(UUID.randomUUID(), "subject", FileType.HTML);
         final List<Document> printAttachments = asList(new Document(UUID.randomUUID(), "attachment", FileType.HTML));
@@ -288,8 +327,8 @@ public class MessageDelivererTest {
     @Test
     public void passes_pdf_validation_for_printonly_message() throws IOException {
         UUID messageId = UUID.randomUUID();
-        when(api.getEncryptionCertificateForPrint()).thenReturn(encryptionCertificateResponse);
-        when(api.sendMultipartMessage(any(HttpEntity.class))).thenReturn(mockClientResponse);
+        when(api.getEncryptionCertificateForPrint(INTERACTIVE)).thenReturn(encryptionCertificateResponse);
+        when(api.sendMultipartMessage(any(HttpEntity.class), eq(INTERACTIVE))).thenReturn(mockClientResponse);
         when(mockClientResponse.getStatusLine()).thenReturn(new StatusLineMock(SC_OK));
 
         final Document printDocument = new Document(UUID.randomUUID(), "subject", FileType.PDF).encrypt();
@@ -308,7 +347,7 @@ public class MessageDelivererTest {
         PrintRecipient recipient = new PrintRecipient("Rallhild Ralleberg", new NorwegianAddress("0560", "Oslo"));
         PrintRecipient returnAddress = new PrintRecipient("Megacorp", new NorwegianAddress("0105", "Oslo"));
 
-        when(api.getSenderInformation(any(MayHaveSender.class))).thenReturn(new SenderInformation(SenderId.of(1337), VALID_SENDER,
+        when(api.getSenderInformation(any(MayHaveSender.class), eq(INTERACTIVE))).thenReturn(new SenderInformation(SenderId.of(1337), VALID_SENDER,
                 asList(
                         DIGIPOST_DELIVERY.withNoParam(), DELIVERY_DIRECT_TO_PRINT.withNoParam(), DELIVERY_DIRECT_TO_PRINT.withNoParam(),
                         PRINTVALIDATION_FONTS.withNoParam(), PRINTVALIDATION_MARGINS_LEFT.withNoParam(), PRINTVALIDATION_PDFVERSION.withNoParam())
@@ -327,5 +366,17 @@ public class MessageDelivererTest {
         assertThat(delivery.getStatus(), is(DELIVERED_TO_PRINT));
         then(pdfValidator).should(times(2)).validate(any(byte[].class), any(PdfValidationSettings.class));
         reset(pdfValidator);
+
+        assertThat(deliveries, hasSize(1));
+        DeliveryTimings timings = deliveries.get(0);
+        assertThat(timings.isSuccessful(), is(true));
+        assertThat(timings.getMessageId(), is(messageId.toString()));
+        assertThat(timings.getNanos(PDF_VALIDATION), greaterThan(0L));
+        assertThat(timings.getNanos(ENCRYPTION), greaterThan(0L));
+        assertThat(timings.getNanos(UPLOAD), greaterThan(0L));
+        assertThat(timings.getPhaseNanos().values().stream().mapToLong(Long::longValue).sum(), lessThanOrEqualTo(timings.getTotalNanos()));
+        assertThat(timings.getDocumentBytes().size(), is(2));
+        DocumentBytes primaryDocumentBytes = timings.getDocumentBytes().get(printDocument.uuid);
+        assertThat(primaryDocumentBytes.getUploaded(), greaterThan(primaryDocumentBytes.getContent()));
     }
 }
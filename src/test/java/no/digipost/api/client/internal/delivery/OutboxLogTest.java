@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class OutboxLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void entries_which_are_not_completed_are_pending_when_log_is_opened_again() throws Exception {
+        UUID document = UUID.randomUUID();
+        try (OutboxLog log = OutboxLog.open(directory, 1024)) {
+            log.append(entry("1", new OutboxLog.Content(document, Paths.get("/data/1.pdf"), Paths.get("/data/1-print.pdf"), false)));
+            OutboxLog.Entry second = entry("2");
+            log.append(second);
+            log.append(entry("3"));
+            log.complete(second);
+        }
+
+        try (OutboxLog log = OutboxLog.open(directory, 1024)) {
+            List<OutboxLog.Entry> pending = log.getPending();
+            assertThat(pending.stream().map(entry -> entry.messageId).collect(toList()), contains("1", "3"));
+            OutboxLog.Entry first = pending.get(0);
+            assertThat(new String(first.message, UTF_8), is("<message>1</message>"));
+            assertThat(first.contents.get(0).document, is(document));
+            assertThat(first.contents.get(0).content, is(Paths.get("/data/1.pdf")));
+            assertThat(first.contents.get(0).printContent, is(Paths.get("/data/1-print.pdf")));
+            assertThat(pending.get(1).contents.get(0).printContent, nullValue());
+            for (OutboxLog.Entry entry : pending) {
+                log.complete(entry);
+            }
+        }
+
+        try (OutboxLog log = OutboxLog.open(directory, 1024)) {
+            assertThat(log.getPending(), empty());
+        }
+    }
+
+    @Test
+    public void ignores_partially_written_entry_at_end_of_log() throws Exception {
+        try (OutboxLog log = OutboxLog.open(directory, 1024)) {
+            log.append(entry("1"));
+        }
+        Path segment = Files.list(directory).findFirst().get();
+        long completeSize = Files.size(segment);
+        try (OutboxLog log = OutboxLog.open(directory, 1024)) {
+            log.append(entry("2"));
+        }
+        segment = Files.list(directory).findFirst().get();
+        byte[] bytes = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(bytes, bytes.length - 3), StandardOpenOption.TRUNCATE_EXISTING);
+
+        try (OutboxLog log = OutboxLog.open(directory, 1024)) {
+            assertThat(log.getPending().stream().map(entry -> entry.messageId).collect(toList()), contains("1"));
+        }
+        assertThat(Files.size(Files.list(directory).findFirst().get()), is(completeSize));
+    }
+
+    @Test
+    public void deletes_segments_when_all_their_entries_are_completed() throws Exception {
+        try (OutboxLog log = OutboxLog.open(directory, 100)) {
+            OutboxLog.Entry first = entry("1");
+            log.append(first);
+            for (int i = 2; i <= 10; i++) {
+                OutboxLog.Entry entry = entry(String.valueOf(i));
+                log.append(entry);
+                log.complete(entry);
+            }
+            assertThat(Files.list(directory).count(), is(1L));
+            log.complete(first);
+            assertThat(log.getPendingCount(), is(0));
+        }
+        try (OutboxLog log = OutboxLog.open(directory, 100)) {
+            assertThat(log.getPending(), empty());
+        }
+    }
+
+    private static OutboxLog.Entry entry(String messageId) {
+        return entry(messageId, new OutboxLog.Content(UUID.randomUUID(), Paths.get(messageId + ".pdf"), null, true));
+    }
+
+    private static OutboxLog.Entry entry(String messageId, OutboxLog.Content content) {
+        return new OutboxLog.Entry(messageId, ("<message>" + messageId + "</message>").getBytes(UTF_8), singletonList(content));
+    }
+}
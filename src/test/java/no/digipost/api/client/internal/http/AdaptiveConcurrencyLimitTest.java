@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.execchain.RequestAbortedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static no.digipost.api.client.metrics.ApiEndpoint.CREATE_MESSAGE;
+import static no.digipost.api.client.metrics.ApiEndpoint.DOCUMENT_STATUS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private final List<Integer> limits = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void callers_wait_for_a_permit_when_the_limit_is_reached() throws Exception {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(1, 1, limits::add);
+        AdaptiveConcurrencyLimit.Permit first = acquire(concurrencyLimit);
+
+        Future<AdaptiveConcurrencyLimit.Permit> second = executor.submit(() -> acquire(concurrencyLimit));
+        assertThrows(TimeoutException.class, () -> second.get(100, TimeUnit.MILLISECONDS));
+
+        first.release(CREATE_MESSAGE, 200);
+        second.get(5, TimeUnit.SECONDS).release(CREATE_MESSAGE, 200);
+        assertThat(concurrencyLimit.getInFlight(), is(0));
+    }
+
+    @Test
+    public void raises_limit_while_requests_use_it_and_succeed() throws Exception {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(2, 10, limits::add);
+        for (int i = 0; i < 100; i++) {
+            List<AdaptiveConcurrencyLimit.Permit> permits = new ArrayList<>();
+            for (int p = 0; p < concurrencyLimit.getLimit(); p++) {
+                permits.add(acquire(concurrencyLimit));
+            }
+            permits.forEach(permit -> permit.release(DOCUMENT_STATUS, 200));
+        }
+        assertThat(concurrencyLimit.getLimit(), is(10));
+        assertThat(limits.get(0), is(2));
+        assertThat(limits.get(1), is(3));
+    }
+
+    @Test
+    public void does_not_raise_limit_when_it_is_not_used() throws Exception {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(8, 100, limits::add);
+        for (int i = 0; i < 100; i++) {
+            acquire(concurrencyLimit).release(CREATE_MESSAGE, 200);
+        }
+        assertThat(concurrencyLimit.getLimit(), is(8));
+    }
+
+    @Test
+    public void halves_limit_once_for_requests_overloading_the_api_at_the_same_time() throws Exception {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(8, 8, limits::add);
+        List<AdaptiveConcurrencyLimit.Permit> permits = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            permits.add(acquire(concurrencyLimit));
+        }
+        permits.forEach(permit -> permit.release(CREATE_MESSAGE, 503));
+        assertThat(concurrencyLimit.getLimit(), is(4));
+
+        acquire(concurrencyLimit).releaseTimedOut();
+        assertThat(concurrencyLimit.getLimit(), is(2));
+
+        acquire(concurrencyLimit).releaseFailed();
+        acquire(concurrencyLimit).release(CREATE_MESSAGE, 500);
+        assertThat(concurrencyLimit.getLimit(), is(2));
+        assertThat(limits, contains(8, 4, 2));
+    }
+
+    @Test
+    public void reduces_limit_when_latency_is_inflated() throws Exception {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(10, 10, limits::add);
+        acquire(concurrencyLimit).release(DOCUMENT_STATUS, 200);
+
+        AdaptiveConcurrencyLimit.Permit slow = acquire(concurrencyLimit);
+        Thread.sleep(50);
+        slow.release(DOCUMENT_STATUS, 200);
+        assertThat(concurrencyLimit.getLimit(), is(9));
+        assertThat(limits.size(), greaterThan(1));
+    }
+
+    @Test
+    public void latency_of_uploading_messages_does_not_reduce_limit() throws Exception {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(10, 10, limits::add);
+        acquire(concurrencyLimit).release(CREATE_MESSAGE, 200);
+
+        AdaptiveConcurrencyLimit.Permit largeUpload = acquire(concurrencyLimit);
+        Thread.sleep(50);
+        largeUpload.release(CREATE_MESSAGE, 200);
+        assertThat(concurrencyLimit.getLimit(), is(10));
+    }
+
+    @Test
+    public void waiting_for_a_permit_stops_when_the_request_is_aborted() throws Exception {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(1, 1, limits::add);
+        AdaptiveConcurrencyLimit.Permit first = acquire(concurrencyLimit);
+
+        HttpGet request = new HttpGet("/");
+        Future<AdaptiveConcurrencyLimit.Permit> waiting = executor.submit(() -> concurrencyLimit.acquire(request));
+        assertThrows(TimeoutException.class, () -> waiting.get(100, TimeUnit.MILLISECONDS));
+        request.abort();
+
+        ExecutionException aborted = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertThat(aborted.getCause(), instanceOf(RequestAbortedException.class));
+        first.release(DOCUMENT_STATUS, 200);
+        assertThat(concurrencyLimit.getInFlight(), is(0));
+    }
+
+    @Test
+    public void waiting_for_a_permit_stops_when_interrupted() throws Exception {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(1, 1, limits::add);
+        acquire(concurrencyLimit);
+
+        Future<AdaptiveConcurrencyLimit.Permit> waiting = executor.submit(() -> acquire(concurrencyLimit));
+        assertThrows(TimeoutException.class, () -> waiting.get(100, TimeUnit.MILLISECONDS));
+        waiting.cancel(true);
+
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        assertThat(concurrencyLimit.getInFlight(), is(1));
+    }
+
+    private static AdaptiveConcurrencyLimit.Permit acquire(AdaptiveConcurrencyLimit concurrencyLimit) throws Exception {
+        return concurrencyLimit.acquire(new HttpGet("/"));
+    }
+}
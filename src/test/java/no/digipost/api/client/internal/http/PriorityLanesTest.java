@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http;
+
+import no.digipost.api.client.delivery.DeliveryPriority;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.execchain.RequestAbortedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static no.digipost.api.client.delivery.DeliveryPriority.BULK;
+import static no.digipost.api.client.delivery.DeliveryPriority.INTERACTIVE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PriorityLanesTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void bulk_requests_only_use_capacity_not_reserved_for_interactive_requests() throws Exception {
+        PriorityLanes lanes = new PriorityLanes(() -> 3, 1, (priority, queued) -> {});
+        acquire(lanes, BULK);
+        acquire(lanes, BULK);
+
+        Future<?> thirdBulk = executor.submit(() -> acquire(lanes, BULK));
+        assertThrows(TimeoutException.class, () -> thirdBulk.get(100, TimeUnit.MILLISECONDS));
+        assertThat(lanes.getQueueDepth(BULK), is(1));
+
+        acquire(lanes, INTERACTIVE);
+        lanes.release(BULK);
+        thirdBulk.get(5, TimeUnit.SECONDS);
+        assertThat(lanes.getQueueDepth(BULK), is(0));
+    }
+
+    @Test
+    public void waiting_interactive_requests_go_before_waiting_bulk_requests() throws Exception {
+        PriorityLanes lanes = new PriorityLanes(() -> 2, 0, (priority, queued) -> {});
+        acquire(lanes, BULK);
+        acquire(lanes, BULK);
+
+        Future<?> bulk = executor.submit(() -> acquire(lanes, BULK));
+        waitUntilQueued(lanes, BULK);
+        Future<?> interactive = executor.submit(() -> acquire(lanes, INTERACTIVE));
+        waitUntilQueued(lanes, INTERACTIVE);
+
+        lanes.release(BULK);
+        interactive.get(5, TimeUnit.SECONDS);
+        assertThrows(TimeoutException.class, () -> bulk.get(100, TimeUnit.MILLISECONDS));
+
+        lanes.release(INTERACTIVE);
+        bulk.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void waiting_for_a_lane_stops_when_the_request_is_aborted() throws Exception {
+        List<Integer> queuedInteractive = new CopyOnWriteArrayList<>();
+        PriorityLanes lanes = new PriorityLanes(() -> 1, 0, (priority, queued) -> {
+            if (priority == INTERACTIVE) {
+                queuedInteractive.add(queued);
+            }
+        });
+        acquire(lanes, BULK);
+
+        HttpGet request = new HttpGet("/");
+        Future<?> interactive = executor.submit(() -> {
+            lanes.acquire(INTERACTIVE, request);
+            return null;
+        });
+        waitUntilQueued(lanes, INTERACTIVE);
+        Future<?> bulk = executor.submit(() -> acquire(lanes, BULK));
+        waitUntilQueued(lanes, BULK);
+        request.abort();
+
+        ExecutionException aborted = assertThrows(ExecutionException.class, () -> interactive.get(5, TimeUnit.SECONDS));
+        assertThat(aborted.getCause(), instanceOf(RequestAbortedException.class));
+        assertThat(lanes.getQueueDepth(INTERACTIVE), is(0));
+        assertThat(queuedInteractive, contains(1, 0));
+
+        lanes.release(BULK);
+        bulk.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void waiting_for_a_lane_stops_when_interrupted() throws Exception {
+        PriorityLanes lanes = new PriorityLanes(() -> 1, 0, (priority, queued) -> {});
+        acquire(lanes, INTERACTIVE);
+
+        Future<?> waiting = executor.submit(() -> acquire(lanes, INTERACTIVE));
+        waitUntilQueued(lanes, INTERACTIVE);
+        waiting.cancel(true);
+
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        assertThat(lanes.getQueueDepth(INTERACTIVE), is(0));
+    }
+
+    private static Void acquire(PriorityLanes lanes, DeliveryPriority priority) throws InterruptedException, RequestAbortedException {
+        lanes.acquire(priority, new HttpGet("/"));
+        return null;
+    }
+
+    private static void waitUntilQueued(PriorityLanes lanes, DeliveryPriority priority) throws InterruptedException {
+        while (lanes.getQueueDepth(priority) == 0) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http;
+
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RequestCoalescerTest {
+
+    private final RequestCoalescer<String> coalescer = new RequestCoalescer<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrent_identical_requests_share_one_execution() throws Exception {
+        CountDownLatch requestInFlight = new CountDownLatch(1);
+        CountDownLatch completeRequest = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        Object result = new Object();
+
+        Future<Object> first = executor.submit(() -> coalescer.execute("GET /a", () -> {
+            executions.incrementAndGet();
+            requestInFlight.countDown();
+            completeRequest.await();
+            return result;
+        }));
+        requestInFlight.await(5, TimeUnit.SECONDS);
+
+        Future<Object> second = executor.submit(() -> coalescer.execute("GET /a", () -> {
+            executions.incrementAndGet();
+            return new Object();
+        }));
+        while (coalescer.getCoalescedCount() == 0) {
+            Thread.sleep(1);
+        }
+        completeRequest.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS), sameInstance(result));
+        assertThat(second.get(5, TimeUnit.SECONDS), sameInstance(result));
+        assertThat(executions.get(), is(1));
+        assertThat(coalescer.getExecutedCount(), is(1L));
+        assertThat(coalescer.getCoalescedCount(), is(1L));
+    }
+
+    @Test
+    public void completed_requests_are_not_reused() {
+        AtomicInteger executions = new AtomicInteger();
+        assertThat(coalescer.execute("GET /a", executions::incrementAndGet), is(1));
+        assertThat(coalescer.execute("GET /a", executions::incrementAndGet), is(2));
+        assertThat(coalescer.execute("GET /b", executions::incrementAndGet), is(3));
+        assertThat(coalescer.getCoalescedCount(), is(0L));
+    }
+
+    @Test
+    public void every_waiting_caller_gets_its_own_exception_caused_by_the_failed_request() throws Exception {
+        CountDownLatch requestInFlight = new CountDownLatch(1);
+        CountDownLatch failRequest = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("failed");
+
+        Future<Object> first = executor.submit(() -> coalescer.execute("GET /a", () -> {
+            requestInFlight.countDown();
+            failRequest.await();
+            throw failure;
+        }));
+        requestInFlight.await(5, TimeUnit.SECONDS);
+        Future<Object> second = executor.submit(() -> coalescer.execute("GET /a", Object::new));
+        Future<Object> third = executor.submit(() -> coalescer.execute("GET /a", Object::new));
+        while (coalescer.getCoalescedCount() < 2) {
+            Thread.sleep(1);
+        }
+        failRequest.countDown();
+
+        Throwable executorFailure = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS)).getCause();
+        Throwable secondFailure = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS)).getCause();
+        Throwable thirdFailure = assertThrows(ExecutionException.class, () -> third.get(5, TimeUnit.SECONDS)).getCause();
+        assertThat(executorFailure, sameInstance(failure));
+        assertThat(secondFailure, instanceOf(DigipostClientException.class));
+        assertThat(secondFailure.getCause(), sameInstance(failure));
+        assertThat(thirdFailure.getCause(), sameInstance(failure));
+        assertThat(secondFailure, not(sameInstance(thirdFailure)));
+    }
+
+    @Test
+    public void failing_request_is_rethrown_and_not_reused() {
+        assertThrows(IllegalStateException.class, () -> coalescer.execute("GET /a", () -> { throw new IllegalStateException("failed"); }));
+        assertThat(coalescer.execute("GET /a", () -> "ok"), is("ok"));
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http.request.interceptor;
+
+import no.digipost.api.client.internal.http.Headers;
+import no.digipost.api.client.security.Digester;
+import no.digipost.api.client.security.RequestMessageSignatureUtil;
+import no.digipost.api.client.security.TestCertificate;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.bouncycastle.util.encoders.Base64;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import static no.digipost.api.client.internal.http.request.interceptor.UserAgent.DIGIPOST_USER_AGENT;
+import static org.apache.http.HttpHeaders.DATE;
+import static org.apache.http.HttpHeaders.USER_AGENT;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class RequestAuthenticationInterceptorTest {
+
+    private static final byte[] CONTENT = {1, 2, 3, 4};
+
+    private final Clock clock = Clock.fixed(Instant.parse("2014-11-04T21:10:58.123Z"), ZoneId.of("Europe/Oslo"));
+    private final RequestContentHashFilter hashFilter = new RequestContentHashFilter(Digester.sha256, Headers.X_Content_SHA256);
+    private final RequestAuthenticationInterceptor interceptor =
+            new RequestAuthenticationInterceptor(null, clock, TestCertificate.get().signer(), hashFilter);
+    private final HttpContext context = new BasicHttpContext();
+
+    @Test
+    public void sets_date_user_agent_content_hash_and_signature_of_request_with_body() throws IOException {
+        HttpPost request = new HttpPost("https://api.digipost.no/messages/1234/Documents?type=Brev");
+        request.setHeader(Headers.X_Digipost_UserId, "1234");
+        request.setHeader(Headers.Content_Type_DIGIPOST_MEDIA_TYPE_V7);
+        request.setEntity(new ByteArrayEntity(CONTENT));
+
+        interceptor.process(request, context);
+
+        assertThat(request.getFirstHeader(DATE).getValue(), is("Tue, 04 Nov 2014 21:10:58 GMT"));
+        assertThat(request.getFirstHeader(USER_AGENT).getValue(), is(DIGIPOST_USER_AGENT));
+        assertThat(request.getFirstHeader(Headers.X_Content_SHA256).getValue(), is(new String(Base64.encode(Digester.sha256.createDigest(CONTENT)))));
+        assertThat(request.getFirstHeader(Headers.X_Digipost_Signature).getValue(), is(expectedSignature(request)));
+        assertThat(context.getAttribute("request-path"), is("/messages/1234/Documents"));
+    }
+
+    @Test
+    public void sets_date_user_agent_and_signature_of_request_without_body() throws IOException {
+        HttpGet request = new HttpGet("https://api.digipost.no/inbox/1234?offset=0&limit=100");
+
+        interceptor.process(request, context);
+
+        assertThat(request.getFirstHeader(DATE).getValue(), is("Tue, 04 Nov 2014 21:10:58 GMT"));
+        assertThat(request.getFirstHeader(USER_AGENT).getValue(), is(DIGIPOST_USER_AGENT));
+        assertThat(request.getFirstHeader(Headers.X_Content_SHA256), nullValue());
+        assertThat(request.getFirstHeader(Headers.X_Digipost_Signature).getValue(), is(expectedSignature(request)));
+        assertThat(context.getAttribute("request-path"), is("/inbox/1234"));
+    }
+
+    private static String expectedSignature(HttpRequest request) {
+        return new String(Base64.encode(TestCertificate.get().signer().sign(
+                RequestMessageSignatureUtil.getCanonicalRequestRepresentation(new ApacheHttpRequestToSign(request)))));
+    }
+}
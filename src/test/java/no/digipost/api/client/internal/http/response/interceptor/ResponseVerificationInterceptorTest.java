@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http.response.interceptor;
+
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.internal.http.Headers;
+import no.digipost.api.client.representations.EntryPoint;
+import no.digipost.api.client.security.CryptoUtil;
+import no.digipost.api.client.security.ResponseMessageSignatureUtil;
+import no.digipost.api.client.security.TestCertificate;
+import no.digipost.api.client.util.DateUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.util.encoders.Base64;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.zip.GZIPOutputStream;
+
+import static co.unruly.matchers.Java8Matchers.where;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.http.HttpHeaders.DATE;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ResponseVerificationInterceptorTest {
+
+    private static final ZoneId UTC = ZoneId.of("UTC");
+    private static final ZonedDateTime NOW = ZonedDateTime.of(2014, 11, 4, 21, 10, 58, 0, UTC);
+    private static final byte[] CONTENT = "<inbox/>".getBytes(UTF_8);
+
+    private final EntryPoint entryPoint = new EntryPoint(TestCertificate.get().pem());
+    private final ResponseVerificationInterceptor interceptor = new ResponseVerificationInterceptor(Clock.fixed(NOW.toInstant(), UTC), () -> entryPoint);
+    private final HttpContext context = new BasicHttpContext();
+
+    @BeforeAll
+    public static void addBouncyCastleProvider() {
+        CryptoUtil.addBouncyCastleProviderAndVerify_AES256_CBC_Support();
+    }
+
+    @Test
+    public void accepts_signed_response_with_valid_date_and_content_hash() throws IOException {
+        context.setAttribute("request-path", "/inbox/1234");
+        HttpResponse response = signedResponse(NOW, sha256(CONTENT));
+
+        interceptor.process(response, context);
+        interceptor.process(signedResponse(NOW, sha256(CONTENT)), context);
+
+        assertThat(EntityUtils.toByteArray(response.getEntity()), is(CONTENT));
+    }
+
+    @Test
+    public void rejects_response_with_content_not_matching_its_hash() {
+        context.setAttribute("request-path", "/inbox/1234");
+        HttpResponse response = signedResponse(NOW, sha256("<inbox></inbox>".getBytes(UTF_8)));
+
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> interceptor.process(response, context));
+        assertThat(thrown, where(Exception::getMessage, containsString("X-Content-SHA256 header did not match actual response body")));
+    }
+
+    @Test
+    public void rejects_response_with_too_old_date() {
+        context.setAttribute("request-path", "/inbox/1234");
+        HttpResponse response = signedResponse(NOW.minusMinutes(6), sha256(CONTENT));
+
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> interceptor.process(response, context));
+        assertThat(thrown, where(Exception::getMessage, containsString("Date header in response from server is too old")));
+    }
+
+    @Test
+    public void rejects_response_with_too_early_date() {
+        context.setAttribute("request-path", "/inbox/1234");
+        HttpResponse response = signedResponse(NOW.plusMinutes(6), sha256(CONTENT));
+
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> interceptor.process(response, context));
+        assertThat(thrown, where(Exception::getMessage, containsString("Date-header from server is too early")));
+    }
+
+    @Test
+    public void rejects_response_without_date() {
+        context.setAttribute("request-path", "/inbox/1234");
+        HttpResponse response = signedResponse(NOW, sha256(CONTENT));
+        response.removeHeaders(DATE);
+
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> interceptor.process(response, context));
+        assertThat(thrown, where(Exception::getMessage, containsString("Missing Date header in response")));
+    }
+
+    @Test
+    public void rejects_response_with_date_not_in_rfc_1123_format() {
+        context.setAttribute("request-path", "/inbox/1234");
+        HttpResponse response = signedResponse(NOW, sha256(CONTENT));
+        response.setHeader(DATE, "16. januar 2012 - 16:14:23");
+
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> interceptor.process(response, context));
+        assertThat(thrown, where(Exception::getMessage, containsString("Unable to parse Date header '16. januar 2012 - 16:14:23'")));
+    }
+
+    @Test
+    public void rejects_response_with_content_but_without_content_hash() {
+        context.setAttribute("request-path", "/inbox/1234");
+        HttpResponse response = signedResponse(NOW, sha256(CONTENT));
+        response.removeHeaders(Headers.X_Content_SHA256);
+
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> interceptor.process(response, context));
+        assertThat(thrown, where(Exception::getMessage, containsString("Missing X-Content-SHA256 header in response")));
+    }
+
+    @Test
+    public void rejects_response_without_signature() {
+        context.setAttribute("request-path", "/inbox/1234");
+        HttpResponse response = signedResponse(NOW, sha256(CONTENT));
+        response.removeHeaders(Headers.X_Digipost_Signature);
+
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> interceptor.process(response, context));
+        assertThat(thrown, where(Exception::getMessage, containsString("Missing X-Digipost-Signature header")));
+    }
+
+    @Test
+    public void accepts_response_without_signature_for_request_not_requiring_it() throws IOException {
+        context.setAttribute("request-path", "/inbox/1234");
+        context.setAttribute(ResponseVerificationInterceptor.NOT_SIGNED_RESPONSE, true);
+        HttpResponse response = signedResponse(NOW, sha256(CONTENT));
+        response.removeHeaders(Headers.X_Digipost_Signature);
+
+        interceptor.process(response, context);
+
+        assertThat(EntityUtils.toByteArray(response.getEntity()), is(CONTENT));
+    }
+
+    @Test
+    public void decodes_gzipped_content() throws IOException {
+        context.setAttribute("request-path", "/inbox/1234");
+        byte[] gzipped = gzip(CONTENT);
+        HttpResponse response = signedResponse(NOW, sha256(gzipped));
+        ByteArrayEntity entity = new ByteArrayEntity(gzipped);
+        entity.setContentEncoding("gzip");
+        response.setEntity(entity);
+
+        interceptor.process(response, context);
+
+        assertThat(EntityUtils.toByteArray(response.getEntity()), is(CONTENT));
+    }
+
+    @Test
+    public void rejects_response_signed_for_another_path() {
+        context.setAttribute("request-path", "/inbox/1234");
+        HttpResponse response = signedResponse(NOW, sha256(CONTENT));
+        context.setAttribute("request-path", "/inbox/5678");
+
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> interceptor.process(response, context));
+        assertThat(thrown, where(Exception::getMessage, containsString("Response from server did not match signature")));
+    }
+
+    private HttpResponse signedResponse(ZonedDateTime date, String contentHash) {
+        BasicHttpResponse response = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        response.setHeader(DATE, DateUtils.formatDate(date));
+        response.setHeader(Headers.X_Content_SHA256, contentHash);
+        String signature = new String(Base64.encode(CryptoUtil.sign(TestCertificate.get().privateKey,
+                ResponseMessageSignatureUtil.getCanonicalResponseRepresentation(new ApacheHttpResponseToVerify(context, response)))));
+        response.setHeader(Headers.X_Digipost_Signature, signature);
+        response.setEntity(new ByteArrayEntity(CONTENT));
+        return response;
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(content);
+        }
+        return gzipped.toByteArray();
+    }
+
+    private static String sha256(byte[] content) {
+        SHA256Digest digest = new SHA256Digest();
+        digest.update(content, 0, content.length);
+        byte[] hash = new byte[digest.getDigestSize()];
+        digest.doFinal(hash, 0);
+        return new String(Base64.encode(hash));
+    }
+}
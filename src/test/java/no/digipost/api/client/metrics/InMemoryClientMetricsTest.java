@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.metrics;
+
+import no.digipost.api.client.metrics.InMemoryClientMetrics.EndpointMetrics;
+import org.junit.jupiter.api.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static no.digipost.api.client.errorhandling.ErrorCode.API_UNAVAILABLE;
+import static no.digipost.api.client.errorhandling.ErrorCode.CONNECTION_ERROR;
+import static no.digipost.api.client.metrics.ApiEndpoint.CREATE_MESSAGE;
+import static no.digipost.api.client.metrics.ApiEndpoint.IDENTIFICATION;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+
+public class InMemoryClientMetricsTest {
+
+    private final InMemoryClientMetrics metrics = new InMemoryClientMetrics();
+
+    @Test
+    public void keeps_measurements_per_endpoint() {
+        metrics.responseReceived(CREATE_MESSAGE, 200, MILLISECONDS.toNanos(40), 1000, 300);
+        metrics.responseReceived(CREATE_MESSAGE, 503, MILLISECONDS.toNanos(20), 1000, -1);
+        metrics.requestFailed(CREATE_MESSAGE, API_UNAVAILABLE);
+        metrics.requestFailed(IDENTIFICATION, CONNECTION_ERROR);
+        metrics.requestCoalesced(IDENTIFICATION);
+
+        EndpointMetrics createMessage = metrics.forEndpoint(CREATE_MESSAGE);
+        assertThat(createMessage.getResponseCount(), is(2L));
+        assertThat(createMessage.getRequestBytes(), is(2000L));
+        assertThat(createMessage.getResponseBytes(), is(300L));
+        assertThat(createMessage.getStatusClassCount(2), is(1L));
+        assertThat(createMessage.getStatusClassCount(5), is(1L));
+        assertThat(createMessage.getFailureCount(API_UNAVAILABLE), is(1L));
+        assertThat(createMessage.getLatency().getPercentile(99).toMillis(), is(40L));
+
+        EndpointMetrics identification = metrics.forEndpoint(IDENTIFICATION);
+        assertThat(identification.getResponseCount(), is(0L));
+        assertThat(identification.getFailureCount(CONNECTION_ERROR), is(1L));
+        assertThat(identification.getCoalescedCount(), is(1L));
+
+        assertThat(metrics.getEndpoints(), containsInAnyOrder(CREATE_MESSAGE, IDENTIFICATION));
+        assertThat(metrics.getFailureCount(CONNECTION_ERROR), is(1L));
+    }
+}
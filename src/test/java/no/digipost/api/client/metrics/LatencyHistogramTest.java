@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static java.time.Duration.ofMillis;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.quicktheories.QuickTheory.qt;
+import static org.quicktheories.generators.SourceDSL.longs;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void empty_histogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(histogram.getPercentile(99), is(Duration.ZERO));
+        assertThat(histogram.getMean(), is(Duration.ZERO));
+    }
+
+    @Test
+    public void resolves_percentiles_with_two_significant_digits() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(ofMillis(millis));
+        }
+
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.getPercentile(50).toNanos(), is(both(greaterThanOrEqualTo(ofMillis(50).toNanos())).and(lessThanOrEqualTo(ofMillis(51).toNanos()))));
+        assertThat(histogram.getPercentile(99).toNanos(), is(both(greaterThanOrEqualTo(ofMillis(99).toNanos())).and(lessThanOrEqualTo(ofMillis(101).toNanos()))));
+        assertThat(histogram.getPercentile(100), is(ofMillis(100)));
+        assertThat(histogram.getMax(), is(ofMillis(100)));
+    }
+
+    @Test
+    public void every_value_is_within_the_range_of_its_bucket() {
+        qt()
+            .forAll(longs().between(0, LatencyHistogram.HIGHEST_TRACKABLE_NANOS))
+            .check(value -> {
+                int index = LatencyHistogram.indexOf(value);
+                long highest = LatencyHistogram.highestEquivalentValue(index);
+                return value <= highest
+                    && (index == 0 || LatencyHistogram.highestEquivalentValue(index - 1) < value)
+                    && highest - value <= value / 64;
+            });
+    }
+
+    @Test
+    public void durations_beyond_highest_trackable_are_counted_as_highest_trackable() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Duration.ofDays(1));
+        assertThat(histogram.getPercentile(50), is(Duration.ofNanos(LatencyHistogram.HIGHEST_TRACKABLE_NANOS)));
+    }
+}
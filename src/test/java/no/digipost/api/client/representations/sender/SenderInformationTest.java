@@ -22,10 +22,17 @@ import java.util.Collections;
 
 import static java.util.Arrays.asList;
 import static no.digipost.api.client.representations.XmlTestHelper.marshallValidateAndUnmarshall;
+import static no.digipost.api.client.representations.sender.SenderFeatureName.DELIVERY_DIRECT_TO_PRINT;
 import static no.digipost.api.client.representations.sender.SenderFeatureName.DIGIPOST_DELIVERY;
+import static no.digipost.api.client.representations.sender.SenderFeatureName.PRINTVALIDATION_FONTS;
+import static no.digipost.api.client.representations.sender.SenderFeatureName.PRINTVALIDATION_POSITIVE_BLEED;
 import static no.digipost.api.client.representations.sender.SenderStatus.NO_INFO_AVAILABLE;
 import static no.digipost.api.client.representations.sender.SenderStatus.VALID_SENDER;
 import static org.apache.commons.lang3.builder.EqualsBuilder.reflectionEquals;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SenderInformationTest {
@@ -41,4 +48,22 @@ public class SenderInformationTest {
         assertTrue(reflectionEquals(senderInformation, unmarshalled));
     }
 
+    @Test
+    public void looksUpFeaturesAndDerivesPdfValidationSettingsOnce() {
+        SenderInformation senderInformation = new SenderInformation(SenderId.of(1L), VALID_SENDER,
+                asList(DIGIPOST_DELIVERY.withNoParam(), PRINTVALIDATION_FONTS.withNoParam(), PRINTVALIDATION_POSITIVE_BLEED.withParam("3"), PRINTVALIDATION_POSITIVE_BLEED.withParam("5")));
+
+        assertTrue(senderInformation.hasEnabled(DIGIPOST_DELIVERY));
+        assertThat(senderInformation.get(DELIVERY_DIRECT_TO_PRINT), nullValue());
+        assertThat(senderInformation.get(PRINTVALIDATION_POSITIVE_BLEED).getIntParam(), is(3));
+        assertThat(senderInformation.getPdfValidationSettings().validateFonts, is(true));
+        assertThat(senderInformation.getPdfValidationSettings(), sameInstance(senderInformation.getPdfValidationSettings()));
+    }
+
+    @Test
+    public void senderWithoutFeaturesHasNoFeaturesEnabled() {
+        SenderInformation senderInformation = new SenderInformation(null, NO_INFO_AVAILABLE, Collections.<SenderFeature>emptyList());
+        assertThat(senderInformation.hasEnabled(DIGIPOST_DELIVERY), is(false));
+    }
+
 }
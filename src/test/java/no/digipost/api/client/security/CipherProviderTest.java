@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.security;
+
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.cms.CMSEnvelopedDataParser;
+import org.bouncycastle.cms.RecipientInformation;
+import org.bouncycastle.cms.jcajce.JceKeyTransEnvelopedRecipient;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.security.Security;
+import java.util.Random;
+
+import static co.unruly.matchers.Java8Matchers.where;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CipherProviderTest {
+
+    private static final TestCertificate certificate = TestCertificate.get();
+
+    @BeforeAll
+    public static void addBouncyCastleProvider() {
+        CryptoUtil.addBouncyCastleProvider();
+    }
+
+    @Test
+    public void selects_a_registered_provider_supporting_AES() throws Exception {
+        CipherProvider.FASTEST_AVAILABLE.verifyAes256CbcSupport();
+        String selected = CipherProvider.FASTEST_AVAILABLE.getProvider().getName();
+        assertThat(Security.getProvider(selected).getService("Cipher", "AES"), notNullValue());
+        assertEncryptsDecryptableContent(CipherProvider.FASTEST_AVAILABLE);
+    }
+
+    @Test
+    public void prefers_the_JDK_provider_when_it_supports_AES256_CBC() throws Exception {
+        assertThat(CipherProvider.JDK_IF_SUPPORTED.getProvider().getName(), is("SunJCE"));
+        assertEncryptsDecryptableContent(CipherProvider.JDK_IF_SUPPORTED);
+    }
+
+    @Test
+    public void content_encrypted_with_the_JDK_provider_is_decryptable_by_BouncyCastle() throws Exception {
+        assertEncryptsDecryptableContent(CipherProvider.named("SunJCE"));
+        assertEncryptsDecryptableContent(CipherProvider.BOUNCY_CASTLE);
+    }
+
+    @Test
+    public void fails_verification_of_provider_which_is_not_registered() {
+        RuntimeException thrown = assertThrows(RuntimeException.class, CipherProvider.named("NoSuchProvider")::verifyAes256CbcSupport);
+        assertThat(thrown, where(Throwable::getMessage, containsString("NoSuchProvider")));
+    }
+
+    private static void assertEncryptsDecryptableContent(CipherProvider cipherProvider) throws Exception {
+        byte[] content = new byte[50_000];
+        new Random(42).nextBytes(content);
+        byte[] encrypted = IOUtils.toByteArray(Encrypter.using(certificate.certificate, cipherProvider).encrypt(content));
+
+        CMSEnvelopedDataParser envelopedData = new CMSEnvelopedDataParser(encrypted);
+        RecipientInformation recipient = envelopedData.getRecipientInfos().getRecipients().iterator().next();
+        try (InputStream decrypted = recipient.getContentStream(new JceKeyTransEnvelopedRecipient(certificate.privateKey).setProvider("BC")).getContentStream()) {
+            assertThat(IOUtils.toByteArray(decrypted), is(content));
+        }
+    }
+}
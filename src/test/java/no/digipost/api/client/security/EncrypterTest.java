@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.security;
+
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.cms.CMSEnvelopedDataParser;
+import org.bouncycastle.cms.RecipientInformation;
+import org.bouncycastle.cms.jcajce.JceKeyTransEnvelopedRecipient;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class EncrypterTest {
+
+    private static final TestCertificate certificate = TestCertificate.get();
+
+    @BeforeAll
+    public static void addBouncyCastleProvider() {
+        CryptoUtil.addBouncyCastleProviderAndVerify_AES256_CBC_Support();
+    }
+
+    @Test
+    public void encrypts_content_in_memory() throws Exception {
+        byte[] content = randomBytes(10_000);
+        byte[] encrypted = IOUtils.toByteArray(Encrypter.using(certificate.certificate).encrypt(content));
+        assertThat(decrypt(encrypted), is(content));
+    }
+
+    @Test
+    public void encrypts_streamed_content() throws Exception {
+        byte[] content = randomBytes(200_000);
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        Encrypter.using(certificate.certificate).encrypt(new ByteArrayInputStream(content), encrypted);
+        assertThat(decrypt(encrypted.toByteArray()), is(content));
+    }
+
+    private static byte[] decrypt(byte[] encrypted) throws Exception {
+        CMSEnvelopedDataParser envelopedData = new CMSEnvelopedDataParser(encrypted);
+        RecipientInformation recipient = envelopedData.getRecipientInfos().getRecipients().iterator().next();
+        try (InputStream decrypted = recipient.getContentStream(new JceKeyTransEnvelopedRecipient(certificate.privateKey)).getContentStream()) {
+            return IOUtils.toByteArray(decrypted);
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.security;
+
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Enumeration;
+
+/**
+ * The key and certificate of the PKCS12 key store in the test resources, which can be used
+ * both to sign requests, and to act as Digipost when signing responses.
+ */
+public final class TestCertificate {
+
+    private static final String KEYSTORE = "certificate.p12";
+    private static final String PASSWORD = "Qwer12345";
+
+    private static final TestCertificate INSTANCE = load();
+
+    public static TestCertificate get() {
+        return INSTANCE;
+    }
+
+    private static TestCertificate load() {
+        try (InputStream keyStoreStream = TestCertificate.class.getResourceAsStream(KEYSTORE)) {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(keyStoreStream, PASSWORD.toCharArray());
+            Enumeration<String> aliases = keyStore.aliases();
+            while (aliases.hasMoreElements()) {
+                String alias = aliases.nextElement();
+                if (keyStore.isKeyEntry(alias)) {
+                    PrivateKey privateKey = (PrivateKey) keyStore.getKey(alias, PASSWORD.toCharArray());
+                    return new TestCertificate(privateKey, (X509Certificate) keyStore.getCertificate(alias));
+                }
+            }
+            throw new IllegalStateException("No key found in " + KEYSTORE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to load " + KEYSTORE + ": " + e.getClass().getSimpleName() + " '" + e.getMessage() + "'", e);
+        }
+    }
+
+
+    public final PrivateKey privateKey;
+    public final X509Certificate certificate;
+
+    private TestCertificate(PrivateKey privateKey, X509Certificate certificate) {
+        this.privateKey = privateKey;
+        this.certificate = certificate;
+    }
+
+    public Signer signer() {
+        return Signer.using(privateKey);
+    }
+
+    /**
+     * @return the certificate in PEM format, as given in the entry point of the Digipost API.
+     */
+    public String pem() {
+        StringWriter pem = new StringWriter();
+        try (JcaPEMWriter writer = new JcaPEMWriter(pem)) {
+            writer.writeObject(certificate);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return pem.toString();
+    }
+}
@@ -0,0 +1,505 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.testing;
+
+import no.digipost.api.client.SenderId;
+import no.digipost.api.client.representations.DigipostUri;
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEvents;
+import no.digipost.api.client.representations.EncryptionCertificate;
+import no.digipost.api.client.representations.EncryptionKey;
+import no.digipost.api.client.representations.EntryPoint;
+import no.digipost.api.client.representations.ErrorMessage;
+import no.digipost.api.client.representations.ErrorType;
+import no.digipost.api.client.representations.Identification;
+import no.digipost.api.client.representations.IdentificationResult;
+import no.digipost.api.client.representations.IdentificationResultWithEncryptionKey;
+import no.digipost.api.client.representations.Link;
+import no.digipost.api.client.representations.Message;
+import no.digipost.api.client.representations.MessageDelivery;
+import no.digipost.api.client.representations.Relation;
+import no.digipost.api.client.representations.sender.SenderInformation;
+import no.digipost.api.client.security.CryptoUtil;
+import no.digipost.api.client.security.Digester;
+import no.digipost.api.client.security.FakeEncryptionKey;
+import no.digipost.api.client.security.TestCertificate;
+import no.digipost.api.client.util.DateUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static no.digipost.api.client.internal.http.Headers.X_Content_SHA256;
+import static no.digipost.api.client.internal.http.Headers.X_Digipost_Signature;
+import static no.digipost.api.client.representations.DocumentEventType.OPENED;
+import static no.digipost.api.client.representations.MediaTypes.DIGIPOST_MEDIA_TYPE_V7;
+import static no.digipost.api.client.representations.MessageStatus.COMPLETE;
+import static no.digipost.api.client.representations.Relation.CREATE_MESSAGE;
+import static no.digipost.api.client.representations.Relation.DOCUMENT_EVENTS;
+import static no.digipost.api.client.representations.Relation.GET_PRINT_ENCRYPTION_CERTIFICATE;
+import static no.digipost.api.client.representations.Relation.GET_SENDER_INFORMATION;
+import static no.digipost.api.client.representations.Relation.IDENTIFY_RECIPIENT;
+import static no.digipost.api.client.representations.Relation.IDENTIFY_RECIPIENT_WITH_ENCRYPTION_KEY;
+import static no.digipost.api.client.representations.sender.SenderStatus.VALID_SENDER;
+import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
+import static no.digipost.api.client.util.JAXBContextUtils.marshal;
+import static no.digipost.api.client.util.JAXBContextUtils.unmarshal;
+import static org.apache.http.HttpStatus.SC_CONFLICT;
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.apache.http.HttpStatus.SC_OK;
+import static org.apache.http.HttpStatus.SC_SERVICE_UNAVAILABLE;
+
+/**
+ * An embeddable stand-in for the Digipost API, running on the loopback interface, which
+ * a {@link no.digipost.api.client.DigipostClient DigipostClient} can be pointed to for
+ * exercising the client end to end without any network access.
+ * <p>
+ * All responses are signed with the {@link TestCertificate}, which is also the certificate
+ * given in the entry point, and include the {@code Date} and {@code X-Content-SHA256}
+ * headers, so they will pass the verification done by the client. Requests are <em>not</em>
+ * verified. Recipients identified by Digipost address are Digipost users, while any other
+ * recipient is identified as not being a Digipost user, i.e. messages with print details will
+ * be sent to print. Every message is delivered once, and sending a message with the same
+ * message id again gives {@code 409 Conflict} with the error code {@code DUPLICATE_MESSAGE}.
+ * <p>
+ * Latency, failures, dropped connections and the size of the responses are configured using {@link #newServer()}.
+ */
+public final class FakeDigipostApi implements AutoCloseable {
+
+    public static Builder newServer() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private Duration latency = Duration.ZERO;
+        private double failureRate = 0;
+        private int failureStatus = SC_SERVICE_UNAVAILABLE;
+        private int droppedConnections = 0;
+        private int documentEvents = 10;
+        private int inboxDocuments = 10;
+        private int deleteStatus = 0;
+        private int documentContentBytes = 1024;
+        private Clock clock = Clock.systemDefaultZone();
+
+        private Builder() {
+        }
+
+        /**
+         * Delay every response with the given duration.
+         */
+        public Builder latency(Duration latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /**
+         * Respond with the given status code and an error message to a random share of the requests.
+         * Fetching the entry point never fails.
+         *
+         * @param rate the share of requests to fail, between 0 and 1
+         * @param statusCode the HTTP status code of the failed requests
+         */
+        public Builder failureRate(double rate, int statusCode) {
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException("failure rate must be between 0 and 1, was " + rate);
+            }
+            this.failureRate = rate;
+            this.failureStatus = statusCode;
+            return this;
+        }
+
+        /**
+         * Close the connection without responding to the given number of requests, which the client sees as
+         * e.g. a {@code NoHttpResponseException}. Fetching the entry point never fails.
+         */
+        public Builder dropConnections(int requests) {
+            this.droppedConnections = requests;
+            return this;
+        }
+
+        /**
+         * The maximum number of document events to include in one response.
+         * Default is 10.
+         */
+        public Builder documentEvents(int maxEventsPerResponse) {
+            this.documentEvents = maxEventsPerResponse;
+            return this;
+        }
+
+        /**
+         * The number of documents in the inbox, which is also the maximum number of documents to include
+         * in one inbox response. Deleted documents are left out of later responses. Default is 10.
+         */
+        public Builder inboxDocuments(int maxDocumentsPerResponse) {
+            this.inboxDocuments = maxDocumentsPerResponse;
+            return this;
+        }
+
+        /**
+         * Respond to every request to delete an inbox document with the given status code, and keep the
+         * document in the inbox, also when the status code says the document was deleted.
+         */
+        public Builder failDeletes(int statusCode) {
+            this.deleteStatus = statusCode;
+            return this;
+        }
+
+        /**
+         * The size of the content of inbox documents. Default is 1 kB.
+         */
+        public Builder documentContentBytes(int bytes) {
+            this.documentContentBytes = bytes;
+            return this;
+        }
+
+        /**
+         * The clock to use for the {@code Date} header of the responses.
+         */
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public FakeDigipostApi start() {
+            return new FakeDigipostApi(this);
+        }
+    }
+
+
+    private static final String NAMESPACE = "http://api.digipost.no/schema/v7";
+    private static final ContentType DIGIPOST_XML = ContentType.create(DIGIPOST_MEDIA_TYPE_V7, UTF_8);
+    private static final ContentType PDF = ContentType.create("application/pdf");
+
+    private final HttpServer server;
+    private final URI uri;
+    private final Builder config;
+    private final TestCertificate certificate = TestCertificate.get();
+    private final EncryptionKey encryptionKey = FakeEncryptionKey.createFakeEncryptionKey();
+    private final byte[] entryPoint;
+    private final byte[] documentContent;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final AtomicInteger droppedConnections;
+    private final LongAdder deliveredMessages = new LongAdder();
+    private final Set<String> deliveredMessageIds = ConcurrentHashMap.newKeySet();
+    private final Set<String> deletedInboxDocuments = ConcurrentHashMap.newKeySet();
+    private final LongAdder receivedBytes = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+
+    private FakeDigipostApi(Builder config) {
+        this.config = config;
+        this.droppedConnections = new AtomicInteger(config.droppedConnections);
+        this.documentContent = new byte[config.documentContentBytes];
+        new Random(42).nextBytes(documentContent);
+        this.server = ServerBootstrap.bootstrap()
+                .setLocalAddress(InetAddress.getLoopbackAddress())
+                .setSocketConfig(SocketConfig.custom().setSoTimeout(30_000).setTcpNoDelay(true).build())
+                .setServerInfo("FakeDigipostApi")
+                .registerHandler("*", this::handle)
+                .create();
+        try {
+            server.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.uri = URI.create("http://" + server.getInetAddress().getHostAddress() + ":" + server.getLocalPort() + "/");
+        this.entryPoint = toXml(new EntryPoint(certificate.pem(),
+                link(CREATE_MESSAGE, "messages"),
+                link(IDENTIFY_RECIPIENT, "identification"),
+                link(IDENTIFY_RECIPIENT_WITH_ENCRYPTION_KEY, "identification-with-encryption-key"),
+                link(GET_PRINT_ENCRYPTION_CERTIFICATE, "printkey"),
+                link(GET_SENDER_INFORMATION, "senders/information"),
+                link(DOCUMENT_EVENTS, "documents/events")));
+    }
+
+    /**
+     * @return the URI to give as {@link no.digipost.api.client.DigipostClientConfig.Builder#digipostApiUri(URI) digipostApiUri}
+     *         to the client
+     */
+    public URI getUri() {
+        return uri;
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getFailedRequestCount() {
+        return failedRequests.sum();
+    }
+
+    public long getDeliveredMessageCount() {
+        return deliveredMessages.sum();
+    }
+
+    /**
+     * @return the total size of all request bodies received
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.sum();
+    }
+
+    /**
+     * @return the total size of all response bodies sent, as they were sent, i.e. after any compression
+     */
+    public long getSentBytes() {
+        return sentBytes.sum();
+    }
+
+    @Override
+    public void close() {
+        server.shutdown(100, TimeUnit.MILLISECONDS);
+    }
+
+
+    private void handle(HttpRequest request, HttpResponse response, HttpContext context) throws IOException {
+        requests.increment();
+        byte[] requestBody = request instanceof HttpEntityEnclosingRequest ? readBody(((HttpEntityEnclosingRequest) request).getEntity()) : new byte[0];
+        receivedBytes.add(requestBody.length);
+
+        URI requestUri = URI.create(request.getRequestLine().getUri());
+        String method = request.getRequestLine().getMethod();
+        String[] path = requestUri.getPath().substring(1).split("/");
+        delay();
+
+        if (path[0].isEmpty()) {
+            respond(requestUri, response, SC_OK, entryPoint, DIGIPOST_XML);
+            return;
+        }
+        if (droppedConnections.getAndUpdate(remaining -> Math.max(remaining - 1, 0)) > 0) {
+            failedRequests.increment();
+            throw new IOException("Injisert brudd i forbindelsen fra " + getClass().getSimpleName());
+        }
+        if (config.failureRate > 0 && ThreadLocalRandom.current().nextDouble() < config.failureRate) {
+            failedRequests.increment();
+            ErrorType errorType = config.failureStatus >= 500 ? ErrorType.SERVER : ErrorType.CLIENT_DATA;
+            respond(requestUri, response, config.failureStatus, toXml(new ErrorMessage(errorType, "Injisert feil fra " + getClass().getSimpleName())), DIGIPOST_XML);
+            return;
+        }
+
+        byte[] body;
+        ContentType contentType = DIGIPOST_XML;
+        if (path[0].equals("messages") && method.equals("POST")) {
+            Message message = parseMessage(requestBody);
+            if (!deliveredMessageIds.add(message.messageId)) {
+                respond(requestUri, response, SC_CONFLICT, toXml(new ErrorMessage(ErrorType.CLIENT_DATA, "DUPLICATE_MESSAGE", "Melding med id " + message.messageId + " er allerede levert")), DIGIPOST_XML);
+                return;
+            }
+            body = toXml(deliver(message));
+        } else if (path[0].equals("identification") && method.equals("POST")) {
+            body = identify(requestBody, false);
+        } else if (path[0].equals("identification-with-encryption-key") && method.equals("POST")) {
+            body = identify(requestBody, true);
+        } else if (path[0].equals("printkey")) {
+            body = toXml(new EncryptionCertificate(certificate.pem()));
+        } else if (path[0].equals("senders") && path.length >= 2 && path[1].equals("information")) {
+            SenderId senderId = SenderId.of(path.length > 2 ? Long.parseLong(path[2]) : 1);
+            body = toXml(new SenderInformation(senderId, VALID_SENDER, emptyList()));
+        } else if (path[0].equals("documents") && path.length == 2 && path[1].equals("events")) {
+            body = toXml(documentEvents(Math.min(config.documentEvents, intParameter(requestUri, "maxResults", config.documentEvents))));
+        } else if (path.length == 2 && path[1].equals("inbox")) {
+            body = inbox(path[0], Math.min(config.inboxDocuments, intParameter(requestUri, "limit", config.inboxDocuments)));
+        } else if (path.length == 5 && path[1].equals("inbox") && path[4].equals("content")) {
+            body = documentContent;
+            contentType = PDF;
+        } else if (path.length == 4 && path[1].equals("inbox") && method.equals("DELETE")) {
+            if (config.deleteStatus / 100 == 2) {
+                respond(requestUri, response, config.deleteStatus, null, DIGIPOST_XML);
+                return;
+            } else if (config.deleteStatus != 0) {
+                failedRequests.increment();
+                respond(requestUri, response, config.deleteStatus, toXml(new ErrorMessage(ErrorType.CLIENT_DATA, "Injisert feil fra " + getClass().getSimpleName())), DIGIPOST_XML);
+                return;
+            }
+            deletedInboxDocuments.add(path[0] + "/" + path[3]);
+            body = null;
+        } else {
+            respond(requestUri, response, SC_NOT_FOUND, toXml(new ErrorMessage(ErrorType.CLIENT_DATA, "Fant ikke " + method + " " + requestUri.getPath())), DIGIPOST_XML);
+            return;
+        }
+        Header acceptEncoding = request.getFirstHeader(HttpHeaders.ACCEPT_ENCODING);
+        respond(requestUri, response, SC_OK, body, contentType, acceptEncoding != null && acceptEncoding.getValue().contains("gzip"));
+    }
+
+    private static Message parseMessage(byte[] multipart) {
+        String content = new String(multipart, ISO_8859_1);
+        int messageStart = content.indexOf("<?xml");
+        int messageEnd = content.indexOf("</message>", messageStart) + "</message>".length();
+        return unmarshal(jaxbContext, new ByteArrayInputStream(multipart, messageStart, messageEnd - messageStart), Message.class);
+    }
+
+    private MessageDelivery deliver(Message message) {
+        deliveredMessages.increment();
+        return new MessageDelivery(message.messageId, message.getChannel(), COMPLETE, ZonedDateTime.now(config.clock));
+    }
+
+    private byte[] identify(byte[] identificationXml, boolean includeEncryptionKey) {
+        Identification identification = unmarshal(jaxbContext, new ByteArrayInputStream(identificationXml), Identification.class);
+        if (identification.getDigipostAddress() != null) {
+            IdentificationResult digipostUser = IdentificationResult.digipost(identification.getDigipostAddress());
+            return toXml(includeEncryptionKey ? new IdentificationResultWithEncryptionKey(digipostUser, encryptionKey) : digipostUser);
+        } else {
+            String result = "<result>IDENTIFIED</result>";
+            String xml = includeEncryptionKey
+                    ? "<identification-result-with-encryption-key xmlns=\"" + NAMESPACE + "\"><identification-result>" + result + "</identification-result></identification-result-with-encryption-key>"
+                    : "<identification-result xmlns=\"" + NAMESPACE + "\">" + result + "</identification-result>";
+            return xml.getBytes(UTF_8);
+        }
+    }
+
+    private DocumentEvents documentEvents(int count) {
+        List<DocumentEvent> events = new ArrayList<>(count);
+        ZonedDateTime now = ZonedDateTime.now(config.clock);
+        for (int i = 0; i < count; i++) {
+            events.add(new DocumentEvent(UUID.randomUUID(), OPENED, now, now.minusDays(1)));
+        }
+        return new DocumentEvents(events);
+    }
+
+    private byte[] inbox(String senderId, int count) {
+        StringBuilder inbox = new StringBuilder("<inbox xmlns=\"" + NAMESPACE + "\">");
+        String deliveryTime = ZonedDateTime.now(config.clock).toOffsetDateTime().toString();
+        for (int id = 1, included = 0; id <= config.inboxDocuments && included < count; id++) {
+            if (deletedInboxDocuments.contains(senderId + "/" + id)) {
+                continue;
+            }
+            included++;
+            String documentUri = uri + senderId + "/inbox/documents/" + id;
+            inbox.append("<document>")
+                .append("<id>").append(id).append("</id>")
+                .append("<subject>Dokument ").append(id).append("</subject>")
+                .append("<sender>Avsender AS</sender>")
+                .append("<delivery-time>").append(deliveryTime).append("</delivery-time>")
+                .append("<authentication-level>PASSWORD</authentication-level>")
+                .append("<content-type>application/pdf</content-type>")
+                .append("<content-uri>").append(documentUri).append("/content</content-uri>")
+                .append("<delete-uri>").append(documentUri).append("</delete-uri>")
+                .append("</document>");
+        }
+        return inbox.append("</inbox>").toString().getBytes(UTF_8);
+    }
+
+    private void respond(URI requestUri, HttpResponse response, int status, byte[] body, ContentType contentType) {
+        respond(requestUri, response, status, body, contentType, false);
+    }
+
+    /**
+     * @param gzip if the body should be compressed, in which case the content hash is computed of the compressed bytes
+     */
+    private void respond(URI requestUri, HttpResponse response, int status, byte[] body, ContentType contentType, boolean gzip) {
+        response.setStatusCode(status);
+        String date = DateUtils.formatDate(ZonedDateTime.now(config.clock));
+        response.setHeader("Date", date);
+        StringBuilder signatureString = new StringBuilder()
+                .append(status).append("\n")
+                .append(requestUri.getPath().toLowerCase()).append("\n")
+                .append("date: ").append(date).append("\n");
+        if (body != null && body.length > 0) {
+            byte[] sentBody = gzip ? gzip(body) : body;
+            String contentHash = Base64.getEncoder().encodeToString(Digester.sha256.createDigest(sentBody));
+            response.setHeader(X_Content_SHA256, contentHash);
+            ByteArrayEntity entity = new ByteArrayEntity(sentBody, contentType);
+            if (gzip) {
+                entity.setContentEncoding("gzip");
+            }
+            response.setEntity(entity);
+            sentBytes.add(sentBody.length);
+            signatureString.append(X_Content_SHA256.toLowerCase()).append(": ").append(contentHash).append("\n");
+        }
+        response.setHeader(X_Digipost_Signature, Base64.getEncoder().encodeToString(CryptoUtil.sign(certificate.privateKey, signatureString.toString())));
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private void delay() {
+        if (!config.latency.isZero()) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(config.latency.toNanos());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Link link(Relation relation, String path) {
+        return new Link(relation, new DigipostUri(uri.resolve(path)));
+    }
+
+    private static int intParameter(URI uri, String name, int defaultValue) {
+        return URLEncodedUtils.parse(uri, UTF_8).stream()
+                .filter(parameter -> parameter.getName().equals(name))
+                .map(NameValuePair::getValue)
+                .findFirst()
+                .map(Integer::parseInt)
+                .orElse(defaultValue);
+    }
+
+    private static byte[] readBody(HttpEntity entity) throws IOException {
+        return entity != null ? EntityUtils.toByteArray(entity) : new byte[0];
+    }
+
+    private static byte[] toXml(Object representation) {
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        marshal(jaxbContext, representation, xml);
+        return xml.toByteArray();
+    }
+
+}
@@ -0,0 +1,665 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.testing;
+
+import no.digipost.api.client.BrokerId;
+import no.digipost.api.client.DigipostClient;
+import no.digipost.api.client.DigipostClientConfig;
+import no.digipost.api.client.SenderId;
+import no.digipost.api.client.delivery.DeliveryPriority;
+import no.digipost.api.client.delivery.MessageTemplate;
+import no.digipost.api.client.delivery.OngoingDelivery.SendableWithPrintFallback;
+import no.digipost.api.client.delivery.Outbox;
+import no.digipost.api.client.delivery.OutboxListener;
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.errorhandling.ErrorCode;
+import no.digipost.api.client.internal.ApiServiceImpl;
+import no.digipost.api.client.metrics.ClientMetrics;
+import no.digipost.api.client.metrics.InMemoryClientMetrics;
+import no.digipost.api.client.representations.DigipostAddress;
+import no.digipost.api.client.representations.Document;
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.Message;
+import no.digipost.api.client.representations.MessageDelivery;
+import no.digipost.api.client.representations.MessageRecipient;
+import no.digipost.api.client.representations.NameAndAddress;
+import no.digipost.api.client.representations.NorwegianAddress;
+import no.digipost.api.client.representations.PrintDetails;
+import no.digipost.api.client.representations.PrintRecipient;
+import no.digipost.api.client.representations.inbox.Inbox;
+import no.digipost.api.client.representations.inbox.InboxDocument;
+import no.digipost.api.client.security.Digester;
+import no.digipost.api.client.security.TestCertificate;
+import no.digipost.http.client3.DigipostHttpClientFactory;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.bouncycastle.util.encoders.Base64;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import static java.util.Arrays.asList;
+import static no.digipost.api.client.DigipostClientConfig.newConfiguration;
+import static no.digipost.api.client.delivery.DeliveryPriority.BULK;
+import static no.digipost.api.client.metrics.ApiEndpoint.INBOX;
+import static no.digipost.api.client.metrics.ApiEndpoint.PRINT_ENCRYPTION_CERTIFICATE;
+import static no.digipost.api.client.pdf.EksempelPdf.printablePdf1Page;
+import static no.digipost.api.client.representations.Channel.DIGIPOST;
+import static no.digipost.api.client.representations.Channel.PRINT;
+import static no.digipost.api.client.representations.DocumentEventType.OPENED;
+import static no.digipost.api.client.representations.DocumentEventType.POSTMARKED;
+import static no.digipost.api.client.representations.FileType.PDF;
+import static no.digipost.api.client.representations.MessageStatus.COMPLETE;
+import static org.apache.commons.io.IOUtils.toInputStream;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class FakeDigipostApiTest {
+
+    private FakeDigipostApi api;
+    private DigipostClient client;
+
+    @BeforeEach
+    public void startServer() {
+        api = FakeDigipostApi.newServer().documentEvents(1000).inboxDocuments(1000).start();
+        client = clientFor(api);
+    }
+
+    @AfterEach
+    public void stopServer() {
+        api.close();
+    }
+
+    @Test
+    public void delivers_messages_to_digipost_and_print() {
+        Document unencrypted = new Document(UUID.randomUUID(), "Ukryptert", PDF);
+        MessageDelivery delivery = client.createMessage(digipostMessage(unencrypted)).addContent(unencrypted, printablePdf1Page()).send();
+        assertThat(delivery.getChannel(), is(DIGIPOST));
+        assertThat(delivery.getStatus(), is(COMPLETE));
+
+        Document encrypted = new Document(UUID.randomUUID(), "Kryptert", PDF).encrypt();
+        assertThat(client.createMessage(digipostMessage(encrypted)).addContent(encrypted, printablePdf1Page()).send().getChannel(), is(DIGIPOST));
+
+        Document print = new Document(UUID.randomUUID(), "Print", PDF);
+        Message printMessage = Message.newMessage(UUID.randomUUID(), print)
+                .printDetails(new PrintDetails(
+                        new PrintRecipient("Joe Schmoe", new NorwegianAddress("7845", "Far away")),
+                        new PrintRecipient("Dolly Parton", new NorwegianAddress("8942", "Farther away"))))
+                .build();
+        assertThat(client.createPrintOnlyMessage(printMessage).addContent(print, printablePdf1Page()).send().getChannel(), is(PRINT));
+
+        Document fallback = new Document(UUID.randomUUID(), "Print-fallback", PDF);
+        Message printFallbackMessage = Message.newMessage(UUID.randomUUID(), fallback)
+                .recipient(new MessageRecipient(new NameAndAddress("Joe Schmoe", "Gate 1", null, "7845", "Far away"), printMessage.recipient.getPrintDetails()))
+                .build();
+        assertThat(client.createMessage(printFallbackMessage).addContent(fallback, printablePdf1Page(), printablePdf1Page()).send().getChannel(), is(PRINT));
+
+        assertThat(api.getDeliveredMessageCount(), is(4L));
+    }
+
+    @Test
+    public void delivers_content_spooled_to_disk(@TempDir Path spoolDirectory) throws IOException {
+        client = clientFor(api, config -> config.spoolContentToDiskAbove(100, spoolDirectory));
+
+        Document unencrypted = new Document(UUID.randomUUID(), "Ukryptert", PDF);
+        Document encrypted = new Document(UUID.randomUUID(), "Kryptert", PDF).encrypt();
+        Message message = Message.newMessage(UUID.randomUUID(), unencrypted).attachments(encrypted)
+                .recipient(new MessageRecipient(new DigipostAddress("test.testesen#1234")))
+                .build();
+        client.createMessage(message).addContent(unencrypted, printablePdf1Page()).addContent(encrypted, printablePdf1Page()).send();
+
+        assertThat(api.getDeliveredMessageCount(), is(1L));
+        assertThat(Files.list(spoolDirectory).count(), is(0L));
+    }
+
+    @Test
+    public void delivers_content_from_files_and_byte_buffers(@TempDir Path directory) throws IOException {
+        Path pdf = directory.resolve("brev.pdf");
+        try (InputStream content = printablePdf1Page()) {
+            Files.copy(content, pdf);
+        }
+        ByteBuffer directPdf = ByteBuffer.allocateDirect((int) Files.size(pdf));
+        directPdf.put(Files.readAllBytes(pdf)).flip();
+
+        Document fromFile = new Document(UUID.randomUUID(), "Fil", PDF);
+        Document fromBuffer = new Document(UUID.randomUUID(), "Buffer", PDF).encrypt();
+        Message message = Message.newMessage(UUID.randomUUID(), fromFile).attachments(fromBuffer)
+                .recipient(new MessageRecipient(new DigipostAddress("test.testesen#1234")))
+                .build();
+        client.createMessage(message).addContent(fromFile, pdf).addContent(fromBuffer, directPdf).send();
+
+        Document print = new Document(UUID.randomUUID(), "Print", PDF).encrypt();
+        Message printMessage = Message.newMessage(UUID.randomUUID(), print)
+                .printDetails(new PrintDetails(
+                        new PrintRecipient("Joe Schmoe", new NorwegianAddress("7845", "Far away")),
+                        new PrintRecipient("Dolly Parton", new NorwegianAddress("8942", "Farther away"))))
+                .build();
+        client.createPrintOnlyMessage(printMessage).addContent(print, pdf).send();
+
+        assertThat(api.getDeliveredMessageCount(), is(2L));
+        assertThat(directPdf.position(), is(0));
+        assertThat(Files.exists(pdf), is(true));
+    }
+
+    @Test
+    public void opens_supplied_content_when_sending() {
+        AtomicInteger opened = new AtomicInteger();
+
+        Document document = new Document(UUID.randomUUID(), "Levert", PDF).encrypt();
+        SendableWithPrintFallback delivery = client.createMessage(digipostMessage(document)).addContent(document, () -> {
+            opened.incrementAndGet();
+            return printablePdf1Page();
+        });
+        assertThat(opened.get(), is(0));
+
+        delivery.send();
+        assertThat(opened.get(), is(1));
+        assertThat(api.getDeliveredMessageCount(), is(1L));
+    }
+
+    @Test
+    public void computes_content_hash_of_documents() throws IOException {
+        client = clientFor(api, DigipostClientConfig.Builder::computeContentHash);
+        String expectedHash;
+        try (InputStream pdf = printablePdf1Page()) {
+            expectedHash = Base64.toBase64String(Digester.sha256.createDigest(IOUtils.toByteArray(pdf)));
+        }
+
+        Document unencrypted = new Document(UUID.randomUUID(), "Ukryptert", PDF);
+        Document encrypted = new Document(UUID.randomUUID(), "Kryptert", PDF).encrypt();
+        Message message = Message.newMessage(UUID.randomUUID(), unencrypted).attachments(encrypted)
+                .recipient(new MessageRecipient(new DigipostAddress("test.testesen#1234")))
+                .build();
+        client.createMessage(message).addContent(unencrypted, printablePdf1Page()).addContent(encrypted, printablePdf1Page()).send();
+
+        Document print = new Document(UUID.randomUUID(), "Print", PDF);
+        Message printMessage = Message.newMessage(UUID.randomUUID(), print)
+                .printDetails(new PrintDetails(
+                        new PrintRecipient("Joe Schmoe", new NorwegianAddress("7845", "Far away")),
+                        new PrintRecipient("Dolly Parton", new NorwegianAddress("8942", "Farther away"))))
+                .build();
+        client.createPrintOnlyMessage(printMessage).addContent(print, printablePdf1Page()).send();
+
+        for (Document document : asList(unencrypted, encrypted, print)) {
+            assertThat(document.getContentHash().getHashAlgorithm(), is("SHA256"));
+            assertThat(document.getContentHash().getHash(), is(expectedHash));
+        }
+    }
+
+    @Test
+    public void sends_documents_from_template_to_several_recipients() {
+        Document letter = new Document(UUID.randomUUID(), "Brev", PDF);
+        Document encrypted = new Document(UUID.randomUUID(), "Kryptert vedlegg", PDF).encrypt();
+        MessageDelivery toPrint;
+        Set<String> messageIds = new HashSet<>();
+        try (MessageTemplate template = client.createMessageTemplate(letter, encrypted)
+                .addContent(letter, printablePdf1Page())
+                .addContent(encrypted, printablePdf1Page())
+                .messageDetails(message -> message.invoiceReference("Kampanje"))
+                .build()) {
+
+            for (int i = 0; i < 3; i++) {
+                MessageDelivery delivery = template.send(new MessageRecipient(new DigipostAddress("test.testesen#" + i)));
+                assertThat(delivery.getChannel(), is(DIGIPOST));
+                messageIds.add(delivery.getMessageId());
+            }
+            toPrint = template.send(new MessageRecipient(new PrintDetails(
+                    new PrintRecipient("Joe Schmoe", new NorwegianAddress("7845", "Far away")),
+                    new PrintRecipient("Dolly Parton", new NorwegianAddress("8942", "Farther away")))));
+        }
+        messageIds.add(toPrint.getMessageId());
+
+        assertThat(toPrint.getChannel(), is(PRINT));
+        assertThat(messageIds, hasSize(4));
+        assertThat(api.getDeliveredMessageCount(), is(4L));
+    }
+
+    @Test
+    public void sends_documents_from_template_to_all_recipients_concurrently() {
+        Document letter = new Document(UUID.randomUUID(), "Brev", PDF);
+        List<MessageRecipient> recipients = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            recipients.add(new MessageRecipient(new DigipostAddress("test.testesen#" + i)));
+        }
+        List<MessageDelivery> deliveries;
+        try (MessageTemplate template = client.createMessageTemplate(letter).addContent(letter, printablePdf1Page()).build()) {
+            deliveries = template.sendToAll(recipients);
+        }
+
+        assertThat(deliveries, hasSize(20));
+        assertThat(deliveries.stream().map(MessageDelivery::getMessageId).distinct().count(), is(20L));
+        assertThat(api.getDeliveredMessageCount(), is(20L));
+    }
+
+    @Test
+    public void delivers_messages_left_in_outbox_when_it_is_opened_again(@TempDir Path directory) throws Exception {
+        Document letter = new Document(UUID.randomUUID(), "Fra utboksen", PDF);
+        Message letterMessage = digipostMessage(letter);
+        Document alreadyDelivered = new Document(UUID.randomUUID(), "Levert fra før", PDF);
+        Message alreadyDeliveredMessage = digipostMessage(alreadyDelivered);
+        Path content = directory.resolve("brev.pdf");
+        Files.write(content, IOUtils.toByteArray(printablePdf1Page()));
+
+        restartServer(FakeDigipostApi.newServer().failureRate(1, 503));
+        try (Outbox outbox = client.newOutbox(directory.resolve("outbox")).retryDelay(Duration.ofMinutes(1), Duration.ofMinutes(1)).open()) {
+            outbox.add(letterMessage).addContent(letter, content).enqueue();
+            outbox.add(alreadyDeliveredMessage).addContent(alreadyDelivered, printablePdf1Page()).enqueue();
+            assertThat(outbox.getPendingCount(), is(2));
+        }
+
+        restartServer(FakeDigipostApi.newServer());
+        client.createMessage(alreadyDeliveredMessage).addContent(alreadyDelivered, printablePdf1Page()).send();
+
+        CountDownLatch completed = new CountDownLatch(2);
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        List<String> duplicates = new CopyOnWriteArrayList<>();
+        OutboxListener listener = new OutboxListener() {
+            @Override
+            public void delivered(String messageId, MessageDelivery delivery) {
+                delivered.add(messageId);
+                completed.countDown();
+            }
+
+            @Override
+            public void alreadyDelivered(String messageId) {
+                duplicates.add(messageId);
+                completed.countDown();
+            }
+        };
+        try (Outbox outbox = client.newOutbox(directory.resolve("outbox")).listener(listener).open()) {
+            assertThat(completed.await(10, TimeUnit.SECONDS), is(true));
+            assertThat(outbox.getPendingCount(), is(0));
+        }
+
+        assertThat(delivered, contains(letterMessage.messageId));
+        assertThat(duplicates, contains(alreadyDeliveredMessage.messageId));
+        assertThat(api.getDeliveredMessageCount(), is(2L));
+        assertThat(Files.list(directory.resolve("outbox").resolve("content")).count(), is(0L));
+        try (Outbox outbox = client.newOutbox(directory.resolve("outbox")).open()) {
+            assertThat(outbox.getPendingCount(), is(0));
+        }
+    }
+
+    @Test
+    public void retries_delivery_from_outbox_when_the_connection_is_dropped(@TempDir Path directory) throws Exception {
+        restartServer(FakeDigipostApi.newServer().dropConnections(2));
+        Document letter = new Document(UUID.randomUUID(), "Brudd i forbindelsen", PDF);
+        Message message = digipostMessage(letter);
+
+        CountDownLatch delivered = new CountDownLatch(1);
+        List<DigipostClientException> failures = new CopyOnWriteArrayList<>();
+        OutboxListener listener = new OutboxListener() {
+            @Override
+            public void delivered(String messageId, MessageDelivery delivery) {
+                delivered.countDown();
+            }
+
+            @Override
+            public void failed(String messageId, DigipostClientException error) {
+                failures.add(error);
+            }
+        };
+        try (Outbox outbox = client.newOutbox(directory).retryDelay(Duration.ofMillis(10), Duration.ofMillis(50)).listener(listener).open()) {
+            outbox.add(message).addContent(letter, printablePdf1Page()).enqueue();
+
+            assertThat(delivered.await(10, TimeUnit.SECONDS), is(true));
+            assertThat(outbox.getPendingCount(), is(0));
+        }
+        assertThat(failures, empty());
+        assertThat(api.getFailedRequestCount(), is(2L));
+        assertThat(api.getDeliveredMessageCount(), is(1L));
+    }
+
+    @Test
+    public void reports_failure_without_retrying_when_outbox_content_can_not_be_read(@TempDir Path directory) throws Exception {
+        Document letter = new Document(UUID.randomUUID(), "Uleselig innhold", PDF);
+        Message message = digipostMessage(letter);
+        Path content = Files.createDirectory(directory.resolve("brev.pdf"));
+
+        CountDownLatch failed = new CountDownLatch(1);
+        List<DigipostClientException> failures = new CopyOnWriteArrayList<>();
+        OutboxListener listener = new OutboxListener() {
+            @Override
+            public void failed(String messageId, DigipostClientException error) {
+                failures.add(error);
+                failed.countDown();
+            }
+        };
+        try (Outbox outbox = client.newOutbox(directory.resolve("outbox")).retryDelay(Duration.ofMillis(10), Duration.ofMillis(50)).listener(listener).open()) {
+            outbox.add(message).addContent(letter, content).enqueue();
+
+            assertThat(failed.await(10, TimeUnit.SECONDS), is(true));
+            assertThat(outbox.getPendingCount(), is(0));
+        }
+        assertThat(failures, hasSize(1));
+        assertThat(api.getDeliveredMessageCount(), is(0L));
+    }
+
+    @Test
+    public void serves_document_events_and_inbox_of_configured_size() throws IOException {
+        restartServer(FakeDigipostApi.newServer().documentEvents(50).inboxDocuments(3).documentContentBytes(2048));
+
+        assertThat(client.getDocumentEvents(ZonedDateTime.now().minusDays(1), ZonedDateTime.now(), 0, 20).getEvents(), hasSize(20));
+        assertThat(client.getDocumentEvents(ZonedDateTime.now().minusDays(1), ZonedDateTime.now(), 0, 100).getEvents(), hasSize(50));
+
+        Inbox inbox = client.getInbox(SenderId.of(1234));
+        assertThat(inbox.documents, hasSize(3));
+        try (InputStream content = client.getInboxDocumentContent(inbox.documents.get(0))) {
+            assertThat(IOUtils.toByteArray(content).length, is(2048));
+        }
+        client.deleteInboxDocument(inbox.documents.get(0));
+    }
+
+    @Test
+    public void drains_inbox() {
+        restartServer(FakeDigipostApi.newServer().inboxDocuments(150));
+        Set<Long> handled = ConcurrentHashMap.newKeySet();
+
+        assertThat(client.drainInbox(SenderId.of(1234), document -> handled.add(document.getId())), is(150));
+        assertThat(handled, hasSize(150));
+        assertThat(client.getInbox(SenderId.of(1234)).documents, empty());
+    }
+
+    @Test
+    public void stops_draining_inbox_when_deleting_a_document_fails() {
+        restartServer(FakeDigipostApi.newServer().inboxDocuments(150).failDeletes(403));
+        AtomicInteger handled = new AtomicInteger();
+
+        assertThrows(DigipostClientException.class, () -> client.drainInbox(SenderId.of(1234), document -> handled.incrementAndGet()));
+        assertThat(handled.get(), lessThanOrEqualTo(100));
+        assertThat(client.getInbox(SenderId.of(1234)).documents, hasSize(100));
+    }
+
+    @Test
+    public void stops_draining_inbox_when_deleted_documents_are_still_in_the_inbox() {
+        restartServer(FakeDigipostApi.newServer().inboxDocuments(5).failDeletes(204));
+        AtomicInteger handled = new AtomicInteger();
+
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> client.drainInbox(SenderId.of(1234), document -> handled.incrementAndGet()));
+        assertThat(thrown.getErrorCode(), is(ErrorCode.SERVER_ERROR));
+        assertThat(handled.get(), is(5));
+    }
+
+    @Test
+    public void coalesced_requests_get_their_own_instance_of_the_response() throws Exception {
+        restartServer(FakeDigipostApi.newServer().latency(Duration.ofMillis(200)));
+        InMemoryClientMetrics metrics = new InMemoryClientMetrics();
+        DigipostClientConfig config = newConfiguration().digipostApiUri(api.getUri()).metrics(metrics).build();
+        ApiServiceImpl apiService = new ApiServiceImpl(config, DigipostHttpClientFactory.createDefaultBuilder(), BrokerId.of(1234), TestCertificate.get().signer());
+        apiService.getEntryPoint();
+
+        List<byte[]> certificates = concurrently(2, () -> {
+            try (CloseableHttpResponse response = apiService.getEncryptionCertificateForPrint()) {
+                return EntityUtils.toByteArray(response.getEntity());
+            }
+        });
+
+        assertThat(metrics.forEndpoint(PRINT_ENCRYPTION_CERTIFICATE).getCoalescedCount(), is(1L));
+        assertThat(certificates.get(0).length, greaterThan(0));
+        assertThat(certificates.get(1), is(certificates.get(0)));
+    }
+
+    @Test
+    public void does_not_coalesce_requests_for_large_lists() throws Exception {
+        restartServer(FakeDigipostApi.newServer().inboxDocuments(2).latency(Duration.ofMillis(200)));
+        InMemoryClientMetrics metrics = new InMemoryClientMetrics();
+        client = clientFor(api, config -> config.metrics(metrics));
+
+        List<Inbox> inboxes = concurrently(2, () -> client.getInbox(SenderId.of(1234)));
+
+        assertThat(metrics.forEndpoint(INBOX).getCoalescedCount(), is(0L));
+        assertThat(inboxes.get(0).documents, hasSize(2));
+        assertThat(inboxes.get(1).documents, hasSize(2));
+    }
+
+    @Test
+    public void publishes_document_events_as_demanded() throws InterruptedException {
+        List<DocumentEvent> events = new CopyOnWriteArrayList<>();
+        CountDownLatch demandedEventsReceived = new CountDownLatch(45);
+        client.publishDocumentEvents(ZonedDateTime.now().minusDays(1), ZonedDateTime.now(), 20).subscribe(new Subscriber<DocumentEvent>() {
+            private Subscription subscription;
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(45);
+            }
+
+            @Override
+            public void onNext(DocumentEvent event) {
+                events.add(event);
+                demandedEventsReceived.countDown();
+                if (events.size() == 45) {
+                    subscription.cancel();
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        assertThat(demandedEventsReceived.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(events, hasSize(45));
+    }
+
+    @Test
+    public void receives_document_events_and_inbox_compressed() {
+        long sentBefore = api.getSentBytes();
+        assertThat(client.getDocumentEvents(ZonedDateTime.now().minusDays(1), ZonedDateTime.now(), 0, 1000).getEvents(), hasSize(1000));
+        assertThat(client.getInbox(SenderId.of(1234), 0, 1000).documents, hasSize(1000));
+
+        assertThat("bytes sent for 1000 events and 1000 inbox documents", api.getSentBytes() - sentBefore, lessThan(100_000L));
+    }
+
+    @Test
+    public void streams_document_events_and_inbox_one_element_at_a_time() {
+        AtomicInteger opened = new AtomicInteger();
+        assertThat(client.getDocumentEvents(ZonedDateTime.now().minusDays(1), ZonedDateTime.now(), 0, 1000, EnumSet.of(OPENED), event -> opened.incrementAndGet()), is(1000));
+        assertThat(opened.get(), is(1000));
+        assertThat(client.getDocumentEvents(ZonedDateTime.now().minusDays(1), ZonedDateTime.now(), 0, 1000, EnumSet.of(POSTMARKED), event -> opened.incrementAndGet()), is(1000));
+        assertThat(opened.get(), is(1000));
+
+        List<InboxDocument> documents = new ArrayList<>();
+        assertThat(client.getInbox(SenderId.of(1234), 0, 1000, documents::add), is(1000));
+        assertThat(documents.get(999).getId(), is(1000L));
+    }
+
+    @Test
+    public void injects_failures() {
+        restartServer(FakeDigipostApi.newServer().failureRate(1, 503));
+
+        Document document = new Document(UUID.randomUUID(), "Feiler", PDF);
+        assertThrows(DigipostClientException.class,
+                () -> client.createMessage(digipostMessage(document)).addContent(document, toInputStream("innhold", "UTF-8")).send());
+        assertThat(api.getFailedRequestCount(), is(1L));
+        assertThat(api.getDeliveredMessageCount(), is(0L));
+    }
+
+    @Test
+    public void cuts_adaptive_concurrency_limit_when_api_is_unavailable() {
+        restartServer(FakeDigipostApi.newServer().failureRate(1, 503));
+        InMemoryClientMetrics metrics = new InMemoryClientMetrics();
+        client = clientFor(api, config -> config.adaptiveConcurrencyLimit(4, 8).metrics(metrics));
+        assertThat(metrics.getConcurrencyLimit().getAsInt(), is(4));
+
+        Document document = new Document(UUID.randomUUID(), "Feiler", PDF);
+        assertThrows(DigipostClientException.class,
+                () -> client.createMessage(digipostMessage(document)).addContent(document, toInputStream("innhold", "UTF-8")).send());
+        assertThat(metrics.getConcurrencyLimit().getAsInt(), is(2));
+    }
+
+    @Test
+    public void loads_entry_point_when_verifying_first_response_within_concurrency_limit_of_one() {
+        client = clientFor(api, config -> config.adaptiveConcurrencyLimit(1, 8));
+        Inbox inbox = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> client.getInbox(SenderId.of(1234)));
+        assertThat(inbox.documents, not(empty()));
+    }
+
+    @Test
+    public void loads_entry_point_when_verifying_first_response_with_all_priority_lanes_in_use() {
+        client = clientFor(api, config -> config.priorityLanes(1, 0));
+        Inbox inbox = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> client.getInbox(SenderId.of(1234)));
+        assertThat(inbox.documents, not(empty()));
+    }
+
+    @Test
+    public void delivers_bulk_and_interactive_messages_in_priority_lanes() throws Exception {
+        restartServer(FakeDigipostApi.newServer().latency(Duration.ofMillis(50)));
+        InMemoryClientMetrics metrics = new InMemoryClientMetrics();
+        client = clientFor(api, config -> config.priorityLanes(2, 1).metrics(metrics));
+
+        ExecutorService bulkJob = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<MessageDelivery>> bulk = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                Document document = new Document(UUID.randomUUID(), "Masseutsendelse", PDF);
+                bulk.add(bulkJob.submit(() -> client.createMessage(digipostMessage(document), BULK).addContent(document, printablePdf1Page()).send()));
+            }
+            Document interactive = new Document(UUID.randomUUID(), "Interaktiv", PDF);
+            assertThat(client.createMessage(digipostMessage(interactive)).addContent(interactive, printablePdf1Page()).send().getChannel(), is(DIGIPOST));
+            for (Future<MessageDelivery> delivery : bulk) {
+                assertThat(delivery.get(10, TimeUnit.SECONDS).getChannel(), is(DIGIPOST));
+            }
+        } finally {
+            bulkJob.shutdownNow();
+        }
+        assertThat(api.getDeliveredMessageCount(), is(9L));
+        assertThat(metrics.getQueuedRequests(BULK), is(0));
+    }
+
+    @Test
+    public void requests_made_to_send_bulk_messages_do_not_queue_as_interactive() throws Exception {
+        restartServer(FakeDigipostApi.newServer().latency(Duration.ofMillis(50)));
+        List<DeliveryPriority> queuedPriorities = new CopyOnWriteArrayList<>();
+        client = clientFor(api, config -> config.priorityLanes(2, 1).metrics(new ClientMetrics() {
+            @Override
+            public void queuedRequestsChanged(DeliveryPriority priority, int queued) {
+                queuedPriorities.add(priority);
+            }
+        }));
+        PrintDetails printDetails = new PrintDetails(
+                new PrintRecipient("Joe Schmoe", new NorwegianAddress("7845", "Far away")),
+                new PrintRecipient("Dolly Parton", new NorwegianAddress("8942", "Farther away")));
+
+        ExecutorService bulkJob = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<MessageDelivery>> bulk = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                Document document = new Document(UUID.randomUUID(), "Masseutsendelse", PDF).encrypt();
+                Message message = Message.newMessage(UUID.randomUUID(), document)
+                        .recipient(new MessageRecipient(new NameAndAddress("Joe Schmoe", "Gate 1", null, "7845", "Far away"), printDetails))
+                        .build();
+                bulk.add(bulkJob.submit(() -> client.createMessage(message, BULK).addContent(document, printablePdf1Page(), printablePdf1Page()).send()));
+            }
+            for (Future<MessageDelivery> delivery : bulk) {
+                assertThat(delivery.get(10, TimeUnit.SECONDS).getChannel(), is(PRINT));
+            }
+        } finally {
+            bulkJob.shutdownNow();
+        }
+        assertThat(queuedPriorities, not(empty()));
+        assertThat(queuedPriorities, everyItem(is(BULK)));
+    }
+
+    /**
+     * Make the given number of calls at the same time, each on its own thread.
+     */
+    private static <T> List<T> concurrently(int calls, Callable<T> call) throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(calls);
+        try {
+            CountDownLatch ready = new CountDownLatch(calls);
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < calls; i++) {
+                futures.add(callers.submit(() -> {
+                    ready.countDown();
+                    ready.await();
+                    return call.call();
+                }));
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get(5, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private void restartServer(FakeDigipostApi.Builder server) {
+        api.close();
+        api = server.start();
+        client = clientFor(api);
+    }
+
+    private static DigipostClient clientFor(FakeDigipostApi api) {
+        return clientFor(api, config -> config);
+    }
+
+    private static DigipostClient clientFor(FakeDigipostApi api, UnaryOperator<DigipostClientConfig.Builder> configuration) {
+        DigipostClientConfig config = configuration.apply(newConfiguration().digipostApiUri(api.getUri())).build();
+        return new DigipostClient(config, BrokerId.of(1234), TestCertificate.get().signer());
+    }
+
+    private static Message digipostMessage(Document primaryDocument) {
+        return Message.newMessage(UUID.randomUUID(), primaryDocument)
+                .recipient(new MessageRecipient(new DigipostAddress("test.testesen#1234")))
+                .build();
+    }
+}
@@ -0,0 +1,396 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.testing;
+
+import no.digipost.api.client.BrokerId;
+import no.digipost.api.client.DigipostClient;
+import no.digipost.api.client.delivery.OngoingDelivery;
+import no.digipost.api.client.metrics.LatencyHistogram;
+import no.digipost.api.client.pdf.EksempelPdf;
+import no.digipost.api.client.representations.DigipostAddress;
+import no.digipost.api.client.representations.Document;
+import no.digipost.api.client.representations.Message;
+import no.digipost.api.client.representations.MessageRecipient;
+import no.digipost.api.client.representations.NameAndAddress;
+import no.digipost.api.client.representations.NorwegianAddress;
+import no.digipost.api.client.representations.PrintDetails;
+import no.digipost.api.client.representations.PrintRecipient;
+import no.digipost.api.client.security.TestCertificate;
+import no.digipost.http.client3.DigipostHttpClientFactory;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static no.digipost.api.client.DigipostClientConfig.newConfiguration;
+import static no.digipost.api.client.representations.FileType.PDF;
+
+/**
+ * Drives a number of concurrent senders, each sending messages as fast as possible through one shared
+ * {@link DigipostClient} for a fixed duration, and reports throughput, latency, heap usage and time spent
+ * on garbage collection. Unless {@link Builder#digipostApiUri(URI) given an URI}, the messages are sent to
+ * a {@link FakeDigipostApi} started for the load test.
+ * <p>
+ * Run from the command line with e.g.
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=no.digipost.api.client.testing.LoadTest \
+ *     -Dsenders=16 -Dduration=PT1M -DdocumentBytes=102400
+ * </pre>
+ * See {@link #main(String[])} for all the available system properties.
+ */
+public final class LoadTest {
+
+    /**
+     * Runs a load test configured with the following system properties:
+     * <ul>
+     *   <li>{@code senders}, the number of concurrent senders (default 8)</li>
+     *   <li>{@code warmup} and {@code duration}, as ISO-8601 durations (default {@code PT10S} and {@code PT30S})</li>
+     *   <li>{@code documents}, the number of documents in each message (default 1)</li>
+     *   <li>{@code documentBytes}, the size of each document (default 10240)</li>
+     *   <li>{@code printShare}, the share of messages to recipients which are not Digipost users,
+     *       and will be sent to print (default 0.2)</li>
+     *   <li>{@code encrypt}, whether to encrypt the documents (default false)</li>
+     *   <li>{@code serverLatency}, the latency of the fake API as an ISO-8601 duration (default {@code PT0.02S})</li>
+     *   <li>{@code digipostApiUri} and {@code brokerId}, to run against another API than the fake one</li>
+     * </ul>
+     */
+    public static void main(String[] args) {
+        Builder loadTest = newLoadTest()
+                .senders(Integer.getInteger("senders", 8))
+                .warmup(Duration.parse(System.getProperty("warmup", "PT10S")))
+                .duration(Duration.parse(System.getProperty("duration", "PT30S")))
+                .documentsPerMessage(Integer.getInteger("documents", 1))
+                .documentBytes(Integer.getInteger("documentBytes", 10240))
+                .printShare(Double.parseDouble(System.getProperty("printShare", "0.2")))
+                .encrypt(Boolean.getBoolean("encrypt"))
+                .serverLatency(Duration.parse(System.getProperty("serverLatency", "PT0.02S")));
+        String digipostApiUri = System.getProperty("digipostApiUri");
+        if (digipostApiUri != null) {
+            loadTest.digipostApiUri(URI.create(digipostApiUri)).brokerId(BrokerId.of(Long.getLong("brokerId", 1234)));
+        }
+        System.out.println(loadTest.run());
+    }
+
+    public static Builder newLoadTest() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private int senders = 8;
+        private Duration warmup = Duration.ZERO;
+        private Duration duration = Duration.ofSeconds(30);
+        private int documentsPerMessage = 1;
+        private int documentBytes = 10240;
+        private double printShare = 0;
+        private boolean encrypt = false;
+        private Duration serverLatency = Duration.ZERO;
+        private URI digipostApiUri;
+        private BrokerId brokerId = BrokerId.of(1234);
+
+        private Builder() {
+        }
+
+        public Builder senders(int senders) {
+            this.senders = senders;
+            return this;
+        }
+
+        /**
+         * For how long to send messages before starting to measure.
+         */
+        public Builder warmup(Duration warmup) {
+            this.warmup = warmup;
+            return this;
+        }
+
+        /**
+         * For how long to send messages and measure, after any {@link #warmup(Duration) warmup}.
+         */
+        public Builder duration(Duration duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        public Builder documentsPerMessage(int documents) {
+            if (documents < 1) {
+                throw new IllegalArgumentException("A message must have at least one document, was " + documents);
+            }
+            this.documentsPerMessage = documents;
+            return this;
+        }
+
+        /**
+         * The size of each document. Encrypted documents must be valid PDFs, and will be an
+         * {@link EksempelPdf#printablePdf1Page() example PDF} regardless of this setting.
+         */
+        public Builder documentBytes(int bytes) {
+            this.documentBytes = bytes;
+            return this;
+        }
+
+        /**
+         * The share of messages which should be sent to a recipient identified by name and address, and
+         * with print details. The {@link FakeDigipostApi} will identify these as not being Digipost users,
+         * and so these messages will be sent to print.
+         *
+         * @param share between 0 and 1
+         */
+        public Builder printShare(double share) {
+            if (share < 0 || share > 1) {
+                throw new IllegalArgumentException("print share must be between 0 and 1, was " + share);
+            }
+            this.printShare = share;
+            return this;
+        }
+
+        public Builder encrypt(boolean encrypt) {
+            this.encrypt = encrypt;
+            return this;
+        }
+
+        /**
+         * The latency of the {@link FakeDigipostApi}. Not applicable if {@link #digipostApiUri(URI) running
+         * against another API}.
+         */
+        public Builder serverLatency(Duration latency) {
+            this.serverLatency = latency;
+            return this;
+        }
+
+        /**
+         * Run against the API at the given URI, instead of starting a {@link FakeDigipostApi}. Requests
+         * are signed with the {@link TestCertificate}.
+         */
+        public Builder digipostApiUri(URI uri) {
+            this.digipostApiUri = uri;
+            return this;
+        }
+
+        public Builder brokerId(BrokerId brokerId) {
+            this.brokerId = brokerId;
+            return this;
+        }
+
+        public Result run() {
+            if (digipostApiUri != null) {
+                return new LoadTest(this, digipostApiUri).run();
+            }
+            try (FakeDigipostApi api = FakeDigipostApi.newServer().latency(serverLatency).start()) {
+                return new LoadTest(this, api.getUri()).run();
+            }
+        }
+    }
+
+
+    private final Builder settings;
+    private final DigipostClient client;
+    private final byte[] documentContent;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong heapHighWaterMark = new AtomicLong();
+    private volatile boolean measuring = false;
+    private volatile boolean running = true;
+
+    private LoadTest(Builder settings, URI digipostApiUri) {
+        this.settings = settings;
+        this.client = new DigipostClient(newConfiguration().digipostApiUri(digipostApiUri).build(), settings.brokerId,
+                TestCertificate.get().signer(),
+                DigipostHttpClientFactory.createDefaultBuilder().setMaxConnPerRoute(settings.senders).setMaxConnTotal(settings.senders));
+        this.documentContent = settings.encrypt ? examplePdf() : randomBytes(settings.documentBytes);
+    }
+
+    private Result run() {
+        ExecutorService senders = Executors.newFixedThreadPool(settings.senders);
+        ScheduledExecutorService heapSampler = Executors.newSingleThreadScheduledExecutor();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < settings.senders; i++) {
+                running.add(senders.submit(this::sendUntilStopped));
+            }
+            sleep(settings.warmup);
+
+            long gcTimeBefore = gcTimeMillis(), gcCountBefore = gcCount();
+            heapSampler.scheduleAtFixedRate(() -> heapHighWaterMark.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max), 0, 10, TimeUnit.MILLISECONDS);
+            long start = System.nanoTime();
+            measuring = true;
+            sleep(settings.duration);
+            measuring = false;
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            long gcTime = gcTimeMillis() - gcTimeBefore, gcCount = gcCount() - gcCountBefore;
+
+            this.running = false;
+            for (Future<?> sender : running) {
+                sender.get();
+            }
+            return new Result(settings, elapsed, latency, failures.sum(), heapHighWaterMark.get(), Duration.ofMillis(gcTime), gcCount);
+        } catch (Exception e) {
+            throw new RuntimeException("Lasttesten feilet: " + e.getClass().getSimpleName() + " '" + e.getMessage() + "'", e);
+        } finally {
+            heapSampler.shutdownNow();
+            senders.shutdownNow();
+        }
+    }
+
+    private void sendUntilStopped() {
+        while (running) {
+            long start = System.nanoTime();
+            try {
+                send(ThreadLocalRandom.current().nextDouble() < settings.printShare);
+                if (measuring) {
+                    latency.recordNanos(System.nanoTime() - start);
+                }
+            } catch (RuntimeException e) {
+                if (measuring) {
+                    failures.increment();
+                }
+            }
+        }
+    }
+
+    private void send(boolean toPrint) {
+        List<Document> documents = new ArrayList<>(settings.documentsPerMessage);
+        for (int i = 0; i < settings.documentsPerMessage; i++) {
+            Document document = new Document(UUID.randomUUID(), "Dokument " + i, PDF);
+            documents.add(settings.encrypt ? document.encrypt() : document);
+        }
+        MessageRecipient recipient = toPrint
+                ? new MessageRecipient(new NameAndAddress("Joe Schmoe", "Gate 1", null, "7845", "Far away"), new PrintDetails(
+                        new PrintRecipient("Joe Schmoe", new NorwegianAddress("Gate 1", "7845", "Far away")),
+                        new PrintRecipient("Avsender AS", new NorwegianAddress("Gate 2", "8942", "Farther away"))))
+                : new MessageRecipient(new DigipostAddress("test.testesen#1234"));
+        Message message = Message.newMessage(UUID.randomUUID(), documents.get(0))
+                .recipient(recipient)
+                .attachments(documents.subList(1, documents.size()))
+                .build();
+
+        OngoingDelivery.SendableWithPrintFallback delivery = client.createMessage(message).addContent(documents.get(0), documentContent, documentContent);
+        for (Document attachment : documents.subList(1, documents.size())) {
+            delivery = delivery.addContent(attachment, documentContent, documentContent);
+        }
+        delivery.send();
+    }
+
+    private static byte[] examplePdf() {
+        try {
+            return IOUtils.toByteArray(EksempelPdf.printablePdf1Page());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static long gcTimeMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static void sleep(Duration duration) throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(duration.toNanos());
+    }
+
+
+    public static final class Result {
+        private final Builder settings;
+        private final Duration elapsed;
+        private final LatencyHistogram latency;
+        private final long failures;
+        private final long heapHighWaterMark;
+        private final Duration gcTime;
+        private final long gcCount;
+
+        private Result(Builder settings, Duration elapsed, LatencyHistogram latency, long failures, long heapHighWaterMark, Duration gcTime, long gcCount) {
+            this.settings = settings;
+            this.elapsed = elapsed;
+            this.latency = latency;
+            this.failures = failures;
+            this.heapHighWaterMark = heapHighWaterMark;
+            this.gcTime = gcTime;
+            this.gcCount = gcCount;
+        }
+
+        public long getSentMessages() {
+            return latency.getCount();
+        }
+
+        public long getFailedMessages() {
+            return failures;
+        }
+
+        public double getMessagesPerSecond() {
+            return getSentMessages() / (elapsed.toNanos() / 1_000_000_000.0);
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getHeapHighWaterMarkBytes() {
+            return heapHighWaterMark;
+        }
+
+        public Duration getGcTime() {
+            return gcTime;
+        }
+
+        public long getGcCount() {
+            return gcCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%d senders, %d %s document(s) per message, %.0f%% to print, over %s%n" +
+                    "sent:       %d messages (%d failed)%n" +
+                    "throughput: %.1f messages/s%n" +
+                    "latency:    p50 %d ms, p95 %d ms, p99 %d ms, max %d ms%n" +
+                    "heap:       %d MB high-water mark%n" +
+                    "gc:         %d ms in %d collections",
+                    settings.senders, settings.documentsPerMessage, settings.encrypt ? "encrypted" : settings.documentBytes + " byte", settings.printShare * 100, elapsed,
+                    getSentMessages(), failures,
+                    getMessagesPerSecond(),
+                    latency.getPercentile(50).toMillis(), latency.getPercentile(95).toMillis(), latency.getPercentile(99).toMillis(), latency.getMax().toMillis(),
+                    heapHighWaterMark / (1024 * 1024),
+                    gcTime.toMillis(), gcCount);
+        }
+    }
+}
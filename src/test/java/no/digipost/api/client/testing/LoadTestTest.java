@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.testing;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+@Tag("load")
+public class LoadTestTest {
+
+    @Test
+    public void reports_throughput_and_latency_of_messages_sent_to_digipost_and_print() {
+        LoadTest.Result result = LoadTest.newLoadTest()
+                .senders(4)
+                .duration(Duration.ofSeconds(1))
+                .documentsPerMessage(2)
+                .documentBytes(1024)
+                .printShare(0.5)
+                .run();
+
+        assertThat(result.getFailedMessages(), is(0L));
+        assertThat(result.getSentMessages(), greaterThan(0L));
+        assertThat(result.getMessagesPerSecond(), greaterThan(0.0));
+        assertThat(result.getLatency().getPercentile(99), greaterThan(Duration.ZERO));
+        assertThat(result.getHeapHighWaterMarkBytes(), greaterThan(0L));
+    }
+}